@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * {@link SequenceBarrier}的公共部分：保存等待策略、生产者游标和依赖的序列，并处理中断标记。
+ * 子类只需要实现{@link #waitFor(long)}，使每种形状的栏栅都是一个final类，
+ * {@link BatchEventProcessor}中对栏栅的调用可以被JIT内联。
+ */
+abstract class AbstractSequenceBarrier implements SequenceBarrier
+{
+    // 等待策略
+    protected final WaitStrategy waitStrategy;
+    // 当消费者之前没有依赖关系的时候, 那么dependentSequence=cursorSequence
+    // 存在依赖关系的时候, dependentSequence的get方法得到的是所有依赖序列中最小的值
+    // 所谓的依赖关系是有两个消费者A、B, 其中B需要在A之后进行消费, 这A的序列就是B需要依赖的序列, 因为B的消费速度不能超过A。
+    protected final Sequence dependentSequence;
+    // 两个以上依赖时dependentSequence是一个记录最小值的序列组, 否则为null
+    protected final CachedMinimumSequenceGroup dependentGroup;
+    // cursorSequence 代表的是写指针; 代表事件发布者发布到那个位置
+    protected final Sequence cursorSequence;
+    // 判断是否执行shutdown
+    private volatile boolean alerted = false;
+
+    /**
+     * @param waitStrategy       等待策略
+     * @param cursorSequence     生产者序号
+     * @param dependentSequences 依赖的Sequence
+     */
+    AbstractSequenceBarrier(
+        final WaitStrategy waitStrategy,
+        final Sequence cursorSequence,
+        final Sequence[] dependentSequences)
+    {
+        this.waitStrategy = waitStrategy;
+        this.cursorSequence = cursorSequence;
+        this.dependentSequence = dependentSequenceFor(cursorSequence, dependentSequences);
+        this.dependentGroup = dependentSequence instanceof CachedMinimumSequenceGroup
+            ? (CachedMinimumSequenceGroup) dependentSequence : null;
+    }
+
+    /**
+     * 按依赖的数量选择最简单的实现：没有依赖时直接使用生产者的序号，只有一个依赖时直接使用该序列，
+     * 两个依赖时使用不需要循环的{@link TwoSequenceGroup}，更多的依赖才使用{@link FixedSequenceGroup}。
+     *
+     * @param cursorSequence     生产者序号
+     * @param dependentSequences 依赖的Sequence
+     * @return 等待策略需要跟踪的序列
+     */
+    static Sequence dependentSequenceFor(final Sequence cursorSequence, final Sequence[] dependentSequences)
+    {
+        final Sequence dependentSequence;
+        switch (dependentSequences.length)
+        {
+            case 0:
+                dependentSequence = cursorSequence;
+                break;
+            case 1:
+                dependentSequence = dependentSequences[0];
+                break;
+            case 2:
+                dependentSequence = new TwoSequenceGroup(dependentSequences[0], dependentSequences[1]);
+                break;
+            default:
+                dependentSequence = new FixedSequenceGroup(dependentSequences);
+                break;
+        }
+        return dependentSequence;
+    }
+
+    /**
+     * 获取当前序列
+     */
+    @Override
+    public long getCursor()
+    {
+        return dependentSequence.get();
+    }
+
+    /**
+     * 判断是否中断
+     */
+    @Override
+    public boolean isAlerted()
+    {
+        return alerted;
+    }
+
+    /**
+     * 中断
+     */
+    @Override
+    public void alert()
+    {
+        // 设置通知标记
+        alerted = true;
+        // 如果有线程以阻塞的方式等待序列, 将其唤醒
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    /**
+     * 清除中断
+     */
+    @Override
+    public void clearAlert()
+    {
+        alerted = false;
+    }
+
+    /**
+     * 检查是否中断
+     */
+    @Override
+    public void checkAlert() throws AlertException
+    {
+        if (alerted)
+        {
+            throw AlertException.INSTANCE;
+        }
+    }
+}
@@ -35,7 +35,7 @@ public abstract class AbstractSequencer implements Sequencer
     // 标识消费者追上生产者时所使用的等待策略
     protected final WaitStrategy waitStrategy;
     // 生产者的已经发布到的sequence; cursor这个序列就是用来标识生产者的当前序列
-    protected final Sequence cursor = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+    protected final Sequence cursor;
     // 消费者处理到的序列对象
     protected volatile Sequence[] gatingSequences = new Sequence[0];
 
@@ -53,6 +53,18 @@ public abstract class AbstractSequencer implements Sequencer
 	 * @param waitStrategy sequencer使用的等待策略
 	 */
     public AbstractSequencer(int bufferSize, WaitStrategy waitStrategy)
+    {
+        this(bufferSize, waitStrategy, new Sequence(Sequencer.INITIAL_CURSOR_VALUE));
+    }
+
+	/**
+	 * 使用外部提供的游标构造，例如存放在共享内存中的{@link MappedSequence}，使其他进程可以看到生产者的游标。
+	 *
+	 * @param bufferSize   entries总数必须是2的正幂。
+	 * @param waitStrategy sequencer使用的等待策略
+	 * @param cursor       生产者的游标
+	 */
+    protected AbstractSequencer(int bufferSize, WaitStrategy waitStrategy, Sequence cursor)
     {
         if (bufferSize < 1)
         {
@@ -65,6 +77,7 @@ public abstract class AbstractSequencer implements Sequencer
 
         this.bufferSize = bufferSize;
         this.waitStrategy = waitStrategy;
+        this.cursor = cursor;
     }
 
     /**
@@ -100,6 +113,28 @@ public abstract class AbstractSequencer implements Sequencer
         SequenceGroups.addSequences(this, SEQUENCE_UPDATER, this, gatingSequences);
     }
 
+    /**
+     * 按序列当前的值添加gatingSequence
+     *
+     * @see Sequencer#tryAddGatingSequences(Sequence...)
+     */
+    @Override
+    public final boolean tryAddGatingSequences(Sequence... gatingSequences)
+    {
+        return SequenceGroups.tryAddSequences(this, SEQUENCE_UPDATER, this, gatingSequences);
+    }
+
+    /**
+     * 按序列当前的值设置gatingSequences，不像{@link #addGatingSequences(Sequence...)}那样把它们重置为游标。
+     * 只能在序列器被使用之前调用，例如消费者序列已经保存在共享内存中时。
+     *
+     * @param gatingSequences 消费者序列
+     */
+    final void setGatingSequences(final Sequence... gatingSequences)
+    {
+        this.gatingSequences = gatingSequences.clone();
+    }
+
     /**
      * 从gatingSequence移除序列
      * 
@@ -146,6 +181,19 @@ public abstract class AbstractSequencer implements Sequencer
         return EventPoller.newInstance(dataProvider, this, new Sequence(), cursor, gatingSequences);
     }
 
+	/**
+	 * 为此序列创建一个不参与门控的事件轮询器。
+	 * 
+	 * @param dataProvider    此事件轮询器用户的数据源
+	 * @param gatingSequences 上游消费者的序列
+	 * @return 不会阻塞生产者的事件轮询器
+	 */
+    @Override
+    public <T> EventPoller<T> newLossyPoller(DataProvider<T> dataProvider, Sequence... gatingSequences)
+    {
+        return EventPoller.newLossyInstance(dataProvider, this, new Sequence(), cursor, gatingSequences);
+    }
+
     @Override
     public String toString()
     {
@@ -15,7 +15,9 @@
  */
 package com.lmax.disruptor;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * event模式单线程处理。用于处理来自{@link RingBuffer}的消费者的批处理语义，并将可用事件委派给{@link EventHandler}。
@@ -35,6 +37,9 @@ public final class BatchEventProcessor<T>
     private static final int IDLE = 0;
     private static final int HALTED = IDLE + 1;
     private static final int RUNNING = HALTED + 1;
+    // 表示当前没有待执行的快照请求
+    private static final long NO_SNAPSHOT = -1L;
+    private static final ProgressListener[] NO_LISTENERS = new ProgressListener[0];
 
     // 表示当前事件处理器的运行状态
     private final AtomicInteger running = new AtomicInteger(IDLE);
@@ -47,11 +52,37 @@ public final class BatchEventProcessor<T>
     // 处理事件的回调接口
     private final EventHandler<? super T> eventHandler;
     // 事件处理器使用的序列
-    private final Sequence sequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+    private final Sequence sequence;
     // 超时处理器
     private final TimeoutHandler timeoutHandler;
     // 每次循环取得一批可用事件后，在实际处理前调用
     private final BatchStartAware batchStartAware;
+    // 快照处理器
+    private final SnapshotAware snapshotAware;
+    // 请求快照的序列，处理完该序列后在处理器线程上执行快照
+    private volatile long snapshotSequence = NO_SNAPSHOT;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<BatchEventProcessor> SNAPSHOT_SEQUENCE_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(BatchEventProcessor.class, "snapshotSequence");
+    // 不参与门控(lossy)模式下生产者的游标，为null时表示普通模式
+    private Cursored lossyCursor;
+    private int lossyBufferSize;
+    // 因被套圈而跳过的事件数量
+    private volatile long lostEventCount = 0L;
+    // 为true时，事件处理出错后继续处理同一批次中剩余的事件
+    private boolean recoverWithinBatch = false;
+    // 一个批次最多处理的事件数量减1，默认不限制
+    private long batchLimitOffset = Long.MAX_VALUE;
+    // 一个批次最长的处理时间，0表示不限制
+    private long maxBatchNanos = 0L;
+    // 事件处理器实现了SequenceReleaseAware时为true，此时记录正在处理的序列
+    private final boolean releaseAware;
+    // 正在处理的事件的序列，只由处理器线程读写
+    private long processingSequence = Sequencer.INITIAL_CURSOR_VALUE;
+    // 运行处理器的线程
+    private volatile Thread processorThread;
+    // 序列更新后通知的监听器，修改时整体替换数组
+    private volatile ProgressListener[] progressListeners = NO_LISTENERS;
 
     /**
 	 * 构造一个{@link EventProcessor}，它将在{@link EventHandler#onEvent(Object, long, boolean)}
@@ -65,8 +96,26 @@ public final class BatchEventProcessor<T>
         final DataProvider<T> dataProvider,
         final SequenceBarrier sequenceBarrier,
         final EventHandler<? super T> eventHandler)
+    {
+        this(dataProvider, sequenceBarrier, eventHandler, new Sequence(Sequencer.INITIAL_CURSOR_VALUE));
+    }
+
+    /**
+	 * 使用外部提供的序列记录进度，例如存放在共享内存中的{@link MappedSequence}，使其他进程中的生产者可以把它作为门控序列。
+	 *
+	 * @param dataProvider    发布的事件
+	 * @param sequenceBarrier 序列栏栅
+	 * @param eventHandler    调度事件的委托。
+	 * @param sequence        记录处理进度的序列
+	 */
+    BatchEventProcessor(
+        final DataProvider<T> dataProvider,
+        final SequenceBarrier sequenceBarrier,
+        final EventHandler<? super T> eventHandler,
+        final Sequence sequence)
     {
         this.dataProvider = dataProvider;
+        this.sequence = sequence;
         this.sequenceBarrier = sequenceBarrier;
         this.eventHandler = eventHandler;
 
@@ -79,6 +128,14 @@ public final class BatchEventProcessor<T>
             (eventHandler instanceof BatchStartAware) ? (BatchStartAware) eventHandler : null;
         timeoutHandler =
             (eventHandler instanceof TimeoutHandler) ? (TimeoutHandler) eventHandler : null;
+        snapshotAware =
+            (eventHandler instanceof SnapshotAware) ? (SnapshotAware) eventHandler : null;
+
+        releaseAware = eventHandler instanceof SequenceReleaseAware;
+        if (releaseAware)
+        {
+            ((SequenceReleaseAware) eventHandler).setSequenceReleaser(new BatchSequenceReleaser());
+        }
     }
 
     @Override
@@ -115,6 +172,143 @@ public final class BatchEventProcessor<T>
         this.exceptionHandler = exceptionHandler;
     }
 
+	/**
+	 * 切换到不参与门控(lossy)模式，适用于监控、采样等不能阻塞生产者的消费者，必须在处理器启动之前调用。
+	 * 此时不要把{@link #getSequence()}加入RingBuffer的门控序列。处理器在每个批次开始前检查是否被生产者套圈，
+	 * 如果是则跳到最新发布的序列，并通过{@link #getLostEventCount()}和{@link EventLossAware}报告跳过的事件数量。
+	 * 由于生产者不会等待该处理器，批次中的事件在处理过程中仍然可能被覆盖，这里的检测是尽力而为的。
+	 *
+	 * @param cursored   生产者的游标，通常就是RingBuffer
+	 * @param bufferSize RingBuffer的大小
+	 */
+    public void setLossy(final Cursored cursored, final int bufferSize)
+    {
+        if (null == cursored)
+        {
+            throw new NullPointerException();
+        }
+
+        this.lossyCursor = cursored;
+        this.lossyBufferSize = bufferSize;
+    }
+
+	/**
+	 * 设置事件处理出错后的恢复方式，必须在处理器启动之前调用。
+	 * 默认情况下每个出错的事件都会结束当前批次，更新序列后重新通过栏栅等待；
+	 * 设置为true后，出错的事件交给{@link ExceptionHandler}处理，然后继续处理同一批次中剩余的事件，
+	 * 只在批次结束时更新一次序列。大量事件出错时可以避免每个事件都经过一次栏栅和等待策略。
+	 *
+	 * @param recoverWithinBatch 是否在批次内恢复
+	 */
+    public void setRecoverWithinBatch(final boolean recoverWithinBatch)
+    {
+        this.recoverWithinBatch = recoverWithinBatch;
+    }
+
+	/**
+	 * 限制一个批次最多处理的事件数量，必须在处理器启动之前调用。
+	 * 默认情况下一个批次处理栏栅返回的所有事件，长时间停顿之后一个批次可能是整个RingBuffer，
+	 * 在批次结束之前序列不会更新，上游的生产者和下游的消费者都要等待。
+	 * 设置之后每处理maxBatchSize个事件就结束批次并更新一次序列，最后一个事件的endOfBatch为true。
+	 *
+	 * @param maxBatchSize 一个批次最多处理的事件数量
+	 */
+    public void setMaxBatchSize(final int maxBatchSize)
+    {
+        if (maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("maxBatchSize must not be less than 1");
+        }
+
+        this.batchLimitOffset = maxBatchSize - 1L;
+    }
+
+	/**
+	 * 限制一个批次最长的处理时间，必须在处理器启动之前调用。
+	 * 每个事件处理之前检查批次已经用去的时间，超过限制时当前事件作为批次的最后一个事件，endOfBatch为true，处理后更新序列。
+	 * 每个事件都要读取一次时钟，适用于单个事件处理较慢的消费者。{@link BatchStartAware}收到的批次大小不考虑时间限制。
+	 *
+	 * @param maxBatchTime 一个批次最长的处理时间
+	 * @param unit         maxBatchTime的单位
+	 */
+    public void setMaxBatchTime(final long maxBatchTime, final TimeUnit unit)
+    {
+        if (maxBatchTime <= 0)
+        {
+            throw new IllegalArgumentException("maxBatchTime must be greater than 0");
+        }
+
+        this.maxBatchNanos = unit.toNanos(maxBatchTime);
+    }
+
+	/**
+	 * 注册一个监听器，处理器每处理完一个批次、更新序列之后在处理器线程上通知它。可以在处理器运行时调用。
+	 *
+	 * @param progressListener 要注册的监听器
+	 */
+    public synchronized void addProgressListener(final ProgressListener progressListener)
+    {
+        if (null == progressListener)
+        {
+            throw new NullPointerException();
+        }
+
+        final ProgressListener[] current = progressListeners;
+        final ProgressListener[] updated = new ProgressListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = progressListener;
+        progressListeners = updated;
+    }
+
+	/**
+	 * 移除一个监听器
+	 *
+	 * @param progressListener 要移除的监听器
+	 * @return 如果监听器已注册并被移除，则返回true
+	 */
+    public synchronized boolean removeProgressListener(final ProgressListener progressListener)
+    {
+        final ProgressListener[] current = progressListeners;
+        for (int i = 0; i < current.length; i++)
+        {
+            if (current[i] == progressListener)
+            {
+                final ProgressListener[] updated = current.length == 1 ? NO_LISTENERS : new ProgressListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                progressListeners = updated;
+                return true;
+            }
+        }
+        return false;
+    }
+
+	/**
+	 * @return 不参与门控模式下因被套圈而跳过的事件数量
+	 */
+    public long getLostEventCount()
+    {
+        return lostEventCount;
+    }
+
+	/**
+	 * 请求{@link SnapshotAware}的处理器在处理完给定序列后保存快照。
+	 * 包含该序列的批次会在该序列处截断，因此快照恰好反映该序列之前(含)的全部事件。
+	 * 如果请求到达时该序列已被处理，则在当前已处理的序列上保存快照。
+	 *
+	 * @param sequence 需要保存快照的序列
+	 * @throws IllegalStateException 如果eventHandler没有实现{@link SnapshotAware}
+	 */
+    public void requestSnapshot(final long sequence)
+    {
+        if (null == snapshotAware)
+        {
+            throw new IllegalStateException("Event handler does not implement SnapshotAware");
+        }
+
+        snapshotSequence = sequence;
+    }
+
 	/**
 	 * 在halt()之后让另一个线程重新运行此方法是可以的。
 	 * 
@@ -128,6 +322,8 @@ public final class BatchEventProcessor<T>
         {
         	// 先清除序列栅栏的通知状态
             sequenceBarrier.clearAlert();
+            processorThread = Thread.currentThread();
+            processingSequence = sequence.get();
             // 如果eventHandler实现了LifecycleAware，这里会对其进行一个启动通知。
             notifyStart();
             try
@@ -143,8 +339,10 @@ public final class BatchEventProcessor<T>
             {
             	// 判断一下消费者是否实现了LifecycleAware ,如果实现了这个接口那么此时会发送一个停止通知
                 notifyShutdown();
+                processorThread = null;
                 // 重新设置状态
                 running.set(IDLE);
+                notifyStop();
             }
         }
         else
@@ -168,13 +366,36 @@ public final class BatchEventProcessor<T>
         T event = null;
         // 获取要申请的序列
         long nextSequence = sequence.get() + 1L;
+        // 批次内恢复时正在把出错的事件交给exceptionHandler
+        boolean reportingException = false;
         // 循环处理事件。除非超时或者中断
         while (true)
         {
             try
             {
             	// 根据等待策略来等待可用的序列值
-                final long availableSequence = sequenceBarrier.waitFor(nextSequence);
+                long availableSequence = sequenceBarrier.waitFor(nextSequence);
+                // 不参与门控时，等待期间可能已被生产者套圈
+                if (lossyCursor != null && lossyCursor.getCursor() - nextSequence >= lossyBufferSize - 1)
+                {
+                    nextSequence = skipLappedEvents(nextSequence);
+                    continue;
+                }
+
+                // 批次大小超过限制时截断, 剩余的事件留给下一次循环
+                if (availableSequence - nextSequence > batchLimitOffset)
+                {
+                    availableSequence = nextSequence + batchLimitOffset;
+                }
+
+                // 有快照请求时在快照序列处截断批次
+                final long snapshotAt = snapshotSequence;
+                if (snapshotAt >= nextSequence && snapshotAt < availableSequence)
+                {
+                    availableSequence = snapshotAt;
+                }
+                final long batchStartNanos = maxBatchNanos > 0 ? System.nanoTime() : 0L;
+
                 if (batchStartAware != null && availableSequence >= nextSequence)
                 {
                     batchStartAware.onBatchStart(availableSequence - nextSequence + 1);
@@ -183,14 +404,46 @@ public final class BatchEventProcessor<T>
                 // 根据可用的序列值获取事件。批量处理nextSequence到availableSequence之间的事件
                 while (nextSequence <= availableSequence)
                 {
+                    // 批次处理时间超过限制时, 当前事件作为批次的最后一个事件
+                    if (maxBatchNanos > 0 && System.nanoTime() - batchStartNanos >= maxBatchNanos)
+                    {
+                        availableSequence = nextSequence;
+                    }
                 	// 获取事件
                     event = dataProvider.get(nextSequence);
+                    if (releaseAware)
+                    {
+                        processingSequence = nextSequence;
+                    }
                     // 触发事件
-                    eventHandler.onEvent(event, nextSequence, nextSequence == availableSequence);
+                    if (recoverWithinBatch)
+                    {
+                        // 批次内恢复: 出错的事件交给exceptionHandler后继续处理下一个事件, 不结束批次
+                        try
+                        {
+                            eventHandler.onEvent(event, nextSequence, nextSequence == availableSequence);
+                        }
+                        catch (final Exception ex)
+                        {
+                            reportingException = true;
+                            exceptionHandler.handleEventException(ex, nextSequence, event);
+                            reportingException = false;
+                        }
+                    }
+                    else
+                    {
+                        eventHandler.onEvent(event, nextSequence, nextSequence == availableSequence);
+                    }
                     nextSequence++;
                 }
                 // 设置事件处理者处理到的序列值。事件发布者会根据availableSequence判断是否发布事件
                 sequence.set(availableSequence);
+                notifyProgress(availableSequence);
+
+                if (snapshotAt != NO_SNAPSHOT && snapshotAt < nextSequence)
+                {
+                    notifySnapshot(snapshotAt, nextSequence - 1L);
+                }
             }
             catch (final TimeoutException e)
             {
@@ -207,19 +460,62 @@ public final class BatchEventProcessor<T>
             }
             catch (final Throwable ex)
             {
+                if (reportingException)
+                {
+                    // 批次内恢复时exceptionHandler自己抛出了异常，这个事件已经报告过，与默认方式一样停止处理器
+                    throw asUnchecked(ex);
+                }
             	// 这里可能用户消费者事件出错。如果自己实现了ExceptionHandler那么就不会影响继续消费
                 exceptionHandler.handleEventException(ex, nextSequence, event);
                 // 如果出现异常则设置为nextSequence
                 sequence.set(nextSequence);
+                notifyProgress(nextSequence);
                 nextSequence++;
             }
         }
     }
 
+    /**
+     * 检查事件处理器释放的序列，只允许在处理器线程上释放已经处理到的槽，并且序列不会倒退
+     */
+    private final class BatchSequenceReleaser implements SequenceReleaser
+    {
+        @Override
+        public void release(final long releasedSequence)
+        {
+            if (Thread.currentThread() != processorThread)
+            {
+                throw new IllegalStateException("Sequences can only be released on the event processor thread");
+            }
+            if (releasedSequence > processingSequence)
+            {
+                throw new IllegalArgumentException(
+                    "Cannot release sequence " + releasedSequence + " beyond the event being processed " + processingSequence);
+            }
+
+            if (releasedSequence > sequence.get())
+            {
+                sequence.set(releasedSequence);
+            }
+        }
+    }
+
+    private static RuntimeException asUnchecked(final Throwable ex)
+    {
+        if (ex instanceof Error)
+        {
+            throw (Error) ex;
+        }
+        return ex instanceof RuntimeException ? (RuntimeException) ex : new IllegalStateException(ex);
+    }
+
     private void earlyExit()
     {
         notifyStart();
         notifyShutdown();
+        // 启动之前已经被停止，退出之后回到空闲状态，等待停止的线程可以通过isRunning()看到处理器已经结束
+        running.compareAndSet(HALTED, IDLE);
+        notifyStop();
     }
 
     private void notifyTimeout(final long availableSequence)
@@ -237,6 +533,75 @@ public final class BatchEventProcessor<T>
         }
     }
 
+    private long skipLappedEvents(final long nextSequence)
+    {
+        final long newestSequence = lossyCursor.getCursor();
+        final long lost = newestSequence - nextSequence;
+        lostEventCount += lost;
+        sequence.set(newestSequence - 1L);
+
+        if (eventHandler instanceof EventLossAware)
+        {
+            try
+            {
+                ((EventLossAware) eventHandler).onEventsLost(nextSequence, lost);
+            }
+            catch (Throwable e)
+            {
+                exceptionHandler.handleEventException(e, nextSequence, null);
+            }
+        }
+
+        return newestSequence;
+    }
+
+    private void notifyStop()
+    {
+        final ProgressListener[] listeners = progressListeners;
+        final long finalSequence = sequence.get();
+        for (int i = 0; i < listeners.length; i++)
+        {
+            try
+            {
+                listeners[i].onStop(finalSequence);
+            }
+            catch (Throwable e)
+            {
+                exceptionHandler.handleOnShutdownException(e);
+            }
+        }
+    }
+
+    private void notifyProgress(final long processedSequence)
+    {
+        final ProgressListener[] listeners = progressListeners;
+        for (int i = 0; i < listeners.length; i++)
+        {
+            try
+            {
+                listeners[i].onProgress(processedSequence);
+            }
+            catch (Throwable e)
+            {
+                exceptionHandler.handleEventException(e, processedSequence, null);
+            }
+        }
+    }
+
+    private void notifySnapshot(final long snapshotAt, final long processedSequence)
+    {
+        // 处理批次期间可能有新的快照请求，只清除已经完成的这一个
+        SNAPSHOT_SEQUENCE_UPDATER.compareAndSet(this, snapshotAt, NO_SNAPSHOT);
+        try
+        {
+            snapshotAware.onSnapshot(processedSequence);
+        }
+        catch (Throwable e)
+        {
+            exceptionHandler.handleEventException(e, processedSequence, null);
+        }
+    }
+
 	/**
 	 * processor启动时通知EventHandler
 	 */
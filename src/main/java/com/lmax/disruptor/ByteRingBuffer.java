@@ -0,0 +1,365 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import sun.misc.Unsafe;
+
+import com.lmax.disruptor.util.Util;
+
+/**
+ * 面向字节的环形缓冲区，用于长度可变的消息，例如FIX、SBE编码的报文。
+ * <p>
+ * 与{@link RingBuffer}按槽位申请不同，生产者按字节数申请空间，所有消息以带长度前缀的记录连续地存放在同一块
+ * 堆内或堆外的缓冲区中，不需要为每个槽位按最大长度分配，也不需要额外的byte[]。
+ * 每条记录以8字节的头开始：前4个字节是记录长度(包括头)，后4个字节是消息类型；记录按8字节对齐。
+ * 剩余的空间放不下一条记录时，生产者在缓冲区末尾写入一条填充记录，然后从缓冲区开头继续写入。
+ * </p>
+ * <p>
+ * 支持多个生产者和单个消费者。多个生产者通过{@link Sequence}的CAS申请空间，申请到的区域由各自独立写入，
+ * 提交时以有序写的方式把记录长度改为正数，消费者据此判断记录是否可读。消费者在回调中直接读取缓冲区中的记录，不发生复制，
+ * 回调返回之后记录所在的空间会被清零并交还给生产者，因此不能在回调之外保留对记录的引用。
+ * </p>
+ * <pre>
+ * int index = ringBuffer.tryClaim(MSG_TYPE, length);
+ * if (index &gt;= 0)
+ * {
+ *     ringBuffer.buffer().put(index, ...);
+ *     ringBuffer.commit(index);
+ * }
+ * </pre>
+ */
+public final class ByteRingBuffer
+{
+    /**
+     * 记录头的长度
+     */
+    public static final int HEADER_LENGTH = 8;
+    /**
+     * 记录的对齐字节数
+     */
+    public static final int ALIGNMENT = 8;
+    /**
+     * 填充记录的消息类型，用户的消息类型不能使用它
+     */
+    public static final int PADDING_TYPE_ID = -1;
+    /**
+     * {@link #tryClaim(int, int)}在没有足够空间时的返回值
+     */
+    public static final int INSUFFICIENT_CAPACITY = -2;
+
+    private static final Unsafe UNSAFE = Util.getUnsafe();
+    private static final long BYTE_ARRAY_BASE = UNSAFE.arrayBaseOffset(byte[].class);
+    private static final int TYPE_OFFSET = 4;
+
+    // 按本机字节序访问的缓冲区，与Unsafe的访问一致
+    private final ByteBuffer buffer;
+    // Unsafe寻址用的对象和偏移量，堆外缓冲区时对象为null，偏移量为内存地址
+    private final Object base;
+    private final long baseOffset;
+    private final int capacity;
+    private final int mask;
+    private final int maxMessageLength;
+
+    // 生产者已申请到的字节位置，多个生产者通过CAS修改
+    private final Sequence tail = new Sequence(0L);
+    // 消费者已读完并清零的字节位置
+    private final Sequence head = new Sequence(0L);
+
+    /**
+     * 在给定的缓冲区上创建字节环形缓冲区，整个缓冲区(从0到capacity)都用来存放记录。
+     *
+     * @param buffer 堆内或堆外的缓冲区，容量必须是2的幂且不小于{@link #HEADER_LENGTH}的2倍，内容必须全部为0
+     * @throws IllegalArgumentException 如果容量不符合要求，或者缓冲区是只读的
+     */
+    public ByteRingBuffer(final ByteBuffer buffer)
+    {
+        final int capacity = buffer.capacity();
+        if (capacity < 2 * HEADER_LENGTH)
+        {
+            throw new IllegalArgumentException("capacity must not be less than " + 2 * HEADER_LENGTH);
+        }
+        if (Integer.bitCount(capacity) != 1)
+        {
+            throw new IllegalArgumentException("capacity must be a power of 2");
+        }
+
+        if (buffer.isDirect())
+        {
+            this.base = null;
+            this.baseOffset = Util.getAddressFromDirectByteBuffer(buffer);
+        }
+        else if (buffer.hasArray())
+        {
+            this.base = buffer.array();
+            this.baseOffset = BYTE_ARRAY_BASE + buffer.arrayOffset();
+        }
+        else
+        {
+            throw new IllegalArgumentException("buffer must be writable");
+        }
+
+        this.buffer = buffer.duplicate().order(ByteOrder.nativeOrder());
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.maxMessageLength = capacity / 8;
+    }
+
+    /**
+     * 申请一段空间写入长度为length的消息。申请成功之后必须调用{@link #commit(int)}或{@link #abort(int)}，
+     * 否则消费者会停在这条记录上。
+     *
+     * @param typeId 消息类型，不能是{@link #PADDING_TYPE_ID}
+     * @param length 消息的字节数
+     * @return 消息在{@link #buffer()}中的起始下标，没有足够的空间时返回{@link #INSUFFICIENT_CAPACITY}
+     * @throws IllegalArgumentException 如果typeId是{@link #PADDING_TYPE_ID}，或者length超过{@link #maxMessageLength()}
+     */
+    public int tryClaim(final int typeId, final int length)
+    {
+        checkTypeId(typeId);
+        checkLength(length);
+
+        final int recordLength = length + HEADER_LENGTH;
+        final int required = align(recordLength);
+        long currentTail;
+        int tailIndex;
+        int padding;
+        do
+        {
+            currentTail = tail.get();
+            final long currentHead = head.get();
+            if (required > capacity - (int) (currentTail - currentHead))
+            {
+                return INSUFFICIENT_CAPACITY;
+            }
+
+            tailIndex = (int) currentTail & mask;
+            padding = 0;
+            final int toBufferEnd = capacity - tailIndex;
+            if (required > toBufferEnd)
+            {
+                // 需要在末尾填充并从开头写入，开头到消费者位置之间必须放得下整条记录
+                if (required > ((int) currentHead & mask))
+                {
+                    return INSUFFICIENT_CAPACITY;
+                }
+                padding = toBufferEnd;
+            }
+        }
+        while (!tail.compareAndSet(currentTail, currentTail + padding + required));
+
+        if (padding != 0)
+        {
+            UNSAFE.putInt(base, baseOffset + tailIndex + TYPE_OFFSET, PADDING_TYPE_ID);
+            UNSAFE.putOrderedInt(base, baseOffset + tailIndex, padding);
+            tailIndex = 0;
+        }
+
+        UNSAFE.putInt(base, baseOffset + tailIndex + TYPE_OFFSET, typeId);
+        UNSAFE.putOrderedInt(base, baseOffset + tailIndex, -recordLength);
+
+        return tailIndex + HEADER_LENGTH;
+    }
+
+    /**
+     * 提交申请到的记录，使消费者可以读取它
+     *
+     * @param index {@link #tryClaim(int, int)}返回的下标
+     */
+    public void commit(final int index)
+    {
+        final long lengthOffset = baseOffset + index - HEADER_LENGTH;
+        final int recordLength = UNSAFE.getInt(base, lengthOffset);
+        UNSAFE.putOrderedInt(base, lengthOffset, -recordLength);
+    }
+
+    /**
+     * 放弃申请到的记录，消费者会把它当作填充记录跳过
+     *
+     * @param index {@link #tryClaim(int, int)}返回的下标
+     */
+    public void abort(final int index)
+    {
+        final long lengthOffset = baseOffset + index - HEADER_LENGTH;
+        final int recordLength = UNSAFE.getInt(base, lengthOffset);
+        UNSAFE.putInt(base, lengthOffset + TYPE_OFFSET, PADDING_TYPE_ID);
+        UNSAFE.putOrderedInt(base, lengthOffset, -recordLength);
+    }
+
+    /**
+     * 把src中的消息复制到缓冲区中并提交
+     *
+     * @param typeId 消息类型，不能是{@link #PADDING_TYPE_ID}
+     * @param src    消息的内容
+     * @param offset 消息在src中的起始下标
+     * @param length 消息的字节数
+     * @return 写入成功返回true，没有足够的空间返回false
+     */
+    public boolean write(final int typeId, final byte[] src, final int offset, final int length)
+    {
+        if (offset < 0 || length < 0 || offset + length > src.length)
+        {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", src.length=" + src.length);
+        }
+
+        final int index = tryClaim(typeId, length);
+        if (index == INSUFFICIENT_CAPACITY)
+        {
+            return false;
+        }
+
+        UNSAFE.copyMemory(src, BYTE_ARRAY_BASE + offset, base, baseOffset + index, length);
+        commit(index);
+        return true;
+    }
+
+    /**
+     * 按顺序读取已提交的消息，直到遇到未提交的记录、到达缓冲区末尾或者读够messageCountLimit条。
+     * 回调返回之后记录的空间被交还给生产者；回调抛出异常时，这条记录也被视为已读。
+     *
+     * @param handler           处理消息的回调
+     * @param messageCountLimit 最多读取的消息数量
+     * @return 读取的消息数量
+     * @throws Exception 回调抛出的异常
+     */
+    public int read(final Handler handler, final int messageCountLimit) throws Exception
+    {
+        final long currentHead = head.get();
+        final int headIndex = (int) currentHead & mask;
+        final int contiguousLength = capacity - headIndex;
+        int bytesRead = 0;
+        int messagesRead = 0;
+        try
+        {
+            while (bytesRead < contiguousLength && messagesRead < messageCountLimit)
+            {
+                final int recordIndex = headIndex + bytesRead;
+                final int recordLength = UNSAFE.getIntVolatile(base, baseOffset + recordIndex);
+                if (recordLength <= 0)
+                {
+                    break;
+                }
+
+                bytesRead += align(recordLength);
+                final int typeId = UNSAFE.getInt(base, baseOffset + recordIndex + TYPE_OFFSET);
+                if (typeId != PADDING_TYPE_ID)
+                {
+                    ++messagesRead;
+                    handler.onMessage(typeId, buffer, recordIndex + HEADER_LENGTH, recordLength - HEADER_LENGTH);
+                }
+            }
+        }
+        finally
+        {
+            if (bytesRead != 0)
+            {
+                // 清零之后生产者下一圈写入时才能通过记录长度判断提交状态
+                UNSAFE.setMemory(base, baseOffset + headIndex, bytesRead, (byte) 0);
+                head.set(currentHead + bytesRead);
+            }
+        }
+
+        return messagesRead;
+    }
+
+    /**
+     * 读取所有已提交的消息，见{@link #read(Handler, int)}
+     *
+     * @param handler 处理消息的回调
+     * @return 读取的消息数量
+     * @throws Exception 回调抛出的异常
+     */
+    public int read(final Handler handler) throws Exception
+    {
+        return read(handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 生产者写入、消费者读取记录所用的缓冲区，按本机字节序访问。只能访问申请到的或回调中给出的区域。
+     *
+     * @return 缓冲区
+     */
+    public ByteBuffer buffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * @return 缓冲区的字节数
+     */
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return 单条消息的最大字节数
+     */
+    public int maxMessageLength()
+    {
+        return maxMessageLength;
+    }
+
+    /**
+     * 已申请但还没有被消费者读完的字节数，包括记录头和填充
+     *
+     * @return 已使用的字节数
+     */
+    public int size()
+    {
+        return (int) (tail.get() - head.get());
+    }
+
+    private void checkTypeId(final int typeId)
+    {
+        if (typeId == PADDING_TYPE_ID)
+        {
+            throw new IllegalArgumentException("typeId " + PADDING_TYPE_ID + " is reserved for padding");
+        }
+    }
+
+    private void checkLength(final int length)
+    {
+        if (length < 0 || length > maxMessageLength)
+        {
+            throw new IllegalArgumentException("length must be between 0 and " + maxMessageLength + ": " + length);
+        }
+    }
+
+    private static int align(final int length)
+    {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * 处理{@link ByteRingBuffer}中的消息
+     */
+    public interface Handler
+    {
+        /**
+         * 处理一条消息，消息的内容只在回调期间有效
+         *
+         * @param typeId 消息类型
+         * @param buffer 存放消息的缓冲区
+         * @param index  消息在buffer中的起始下标
+         * @param length 消息的字节数
+         * @throws Exception 如果处理失败
+         */
+        void onMessage(int typeId, ByteBuffer buffer, int index, int length) throws Exception;
+    }
+}
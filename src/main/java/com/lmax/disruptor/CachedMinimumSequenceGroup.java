@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 记录上一次扫描得到的最小值的序列组。
+ * <p>
+ * 与{@link MultiProducerSequencer}中的gatingSequenceCache一样，序列只会增加，上一次扫描得到的最小值总是当前最小值的下界。
+ * 等待者要求的序列不超过缓存的值时可以直接使用缓存，不需要再读取每一个上游序列；否则调用{@link #get()}重新扫描并更新缓存。
+ * </p>
+ */
+abstract class CachedMinimumSequenceGroup extends Sequence
+{
+    private final Sequence cachedMinimum = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+
+    /**
+     * 获取不小于requiredSequence的最小值，缓存的值足够时不重新扫描。
+     *
+     * @param requiredSequence 等待者要求的序列
+     * @return 组的最小序列值，缓存命中时可能比实际的最小值小，但不小于requiredSequence
+     */
+    public final long get(final long requiredSequence)
+    {
+        final long cachedValue = cachedMinimum.get();
+        return cachedValue >= requiredSequence ? cachedValue : get();
+    }
+
+    /**
+     * 获取上一次扫描得到的最小值
+     *
+     * @return 上一次扫描得到的最小值
+     */
+    public final long getCachedMinimum()
+    {
+        return cachedMinimum.get();
+    }
+
+    /**
+     * 子类扫描完所有序列后调用，记录最小值
+     *
+     * @param minimum 扫描得到的最小值
+     * @return minimum
+     */
+    protected final long cacheMinimum(final long minimum)
+    {
+        cachedMinimum.set(minimum);
+        return minimum;
+    }
+}
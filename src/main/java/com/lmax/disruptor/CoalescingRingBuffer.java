@@ -0,0 +1,248 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.Collection;
+
+import sun.misc.Unsafe;
+
+import com.lmax.disruptor.util.Util;
+
+/**
+ * 按key合并的环形缓冲区，用于行情这类只关心每个key最新值的场景。
+ * <p>
+ * 生产者发布带key的更新，如果同一个key还有尚未被消费的更新，则直接在原位置覆盖它的值；
+ * 消费者每次批量取出的都是各个key的最新值，且按key第一次进入缓冲区的顺序排列。
+ * 与{@link RingBuffer}不同，慢消费者不会被迫处理每一次更新，生产者也只有在不同key的数量超过容量时才会被拒绝。
+ * </p>
+ * <p>
+ * 只支持单个生产者线程和单个消费者线程，两者都是无锁的。key使用long类型以避免装箱。
+ * </p>
+ * <p>
+ * 内部用三个序列描述状态: nextWrite是下一个写入的位置；firstWrite之前的位置已被消费者认领，不能再原位覆盖；
+ * lastRead是消费者已经读完的位置，生产者在写入新位置之前负责清理它及之前的槽位。
+ * </p>
+ *
+ * @param <E> 缓冲区中存储的值的类型
+ */
+public final class CoalescingRingBuffer<E>
+{
+    private static final Unsafe UNSAFE = Util.getUnsafe();
+    private static final long BASE = UNSAFE.arrayBaseOffset(Object[].class);
+    private static final long SCALE = UNSAFE.arrayIndexScale(Object[].class);
+
+    // 下一个写入的位置，只由生产者修改
+    private final Sequence nextWrite = new Sequence(1L);
+    // 生产者已经清理到的位置，只由生产者访问
+    private long lastCleaned = 0L;
+    // 因缓冲区已满被拒绝的次数，只由生产者修改
+    private volatile long rejectionCount = 0L;
+    // 每个槽位的key，只由生产者访问
+    private final long[] keys;
+    // 每个槽位的值，通过Unsafe以volatile语义访问
+    private final Object[] values;
+    private final int mask;
+    private final int capacity;
+
+    // 消费者认领的第一个不可再覆盖的位置
+    private final Sequence firstWrite = new Sequence(1L);
+    // 消费者已经读完的位置
+    private final Sequence lastRead = new Sequence(0L);
+
+    /**
+     * 创建合并缓冲区。
+     *
+     * @param capacity 同时可以挂起的不同key的最大数量，必须是2的幂
+     * @throws IllegalArgumentException 如果capacity不是2的幂
+     */
+    public CoalescingRingBuffer(final int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity must not be less than 1");
+        }
+        if (Integer.bitCount(capacity) != 1)
+        {
+            throw new IllegalArgumentException("capacity must be a power of 2");
+        }
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+    }
+
+    /**
+     * 发布一个带key的更新。如果同一个key的更新还没有被消费者认领，它的值会被原地覆盖，否则追加到缓冲区末尾。
+     * 只能由单个生产者线程调用。
+     *
+     * @param key   更新的key
+     * @param value 最新的值
+     * @return 如果更新被接受返回true，缓冲区已满时返回false
+     */
+    public boolean offer(final long key, final E value)
+    {
+        final long nextWrite = this.nextWrite.get();
+
+        for (long updatePosition = firstWrite.get(); updatePosition < nextWrite; updatePosition++)
+        {
+            final int index = mask(updatePosition);
+
+            if (key == keys[index])
+            {
+                setValue(index, value);
+
+                // 覆盖之后再检查一次，确认消费者在此之前还没有认领这个位置
+                if (updatePosition >= firstWrite.get())
+                {
+                    return true;
+                }
+                break;
+            }
+        }
+
+        return add(key, value);
+    }
+
+    /**
+     * 取出所有挂起的更新。只能由单个消费者线程调用。
+     *
+     * @param bucket 接收更新的集合
+     * @return 取出的更新数量
+     */
+    public int poll(final Collection<? super E> bucket)
+    {
+        return fill(bucket, nextWrite.get());
+    }
+
+    /**
+     * 最多取出maxItems个挂起的更新。只能由单个消费者线程调用。
+     *
+     * @param bucket   接收更新的集合
+     * @param maxItems 本次最多取出的数量
+     * @return 取出的更新数量
+     */
+    public int poll(final Collection<? super E> bucket, final int maxItems)
+    {
+        final long claimUpTo = Math.min(firstWrite.get() + maxItems, nextWrite.get());
+        return fill(bucket, claimUpTo);
+    }
+
+    /**
+     * @return 当前挂起的更新数量
+     */
+    public int size()
+    {
+        return (int) (nextWrite.get() - lastRead.get() - 1L);
+    }
+
+    /**
+     * @return 同时可以挂起的不同key的最大数量
+     */
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    public boolean isEmpty()
+    {
+        return firstWrite.get() == nextWrite.get();
+    }
+
+    public boolean isFull()
+    {
+        return size() == capacity;
+    }
+
+    /**
+     * @return 因缓冲区已满被拒绝的更新数量
+     */
+    public long rejectionCount()
+    {
+        return rejectionCount;
+    }
+
+    private boolean add(final long key, final E value)
+    {
+        if (isFull())
+        {
+            rejectionCount++;
+            return false;
+        }
+
+        cleanUp();
+        store(key, value);
+        return true;
+    }
+
+    private void cleanUp()
+    {
+        final long lastRead = this.lastRead.get();
+
+        if (lastRead == lastCleaned)
+        {
+            return;
+        }
+
+        while (lastCleaned < lastRead)
+        {
+            lastCleaned++;
+            setValue(mask(lastCleaned), null);
+        }
+    }
+
+    private void store(final long key, final E value)
+    {
+        final long nextWrite = this.nextWrite.get();
+        final int index = mask(nextWrite);
+
+        keys[index] = key;
+        setValue(index, value);
+
+        this.nextWrite.set(nextWrite + 1L);
+    }
+
+    private int fill(final Collection<? super E> bucket, final long claimUpTo)
+    {
+        // 必须是volatile写，保证随后读到的值不早于生产者在这之前看到的firstWrite
+        firstWrite.setVolatile(claimUpTo);
+
+        final long lastRead = this.lastRead.get();
+        for (long readIndex = lastRead + 1L; readIndex < claimUpTo; readIndex++)
+        {
+            bucket.add(getValue(mask(readIndex)));
+        }
+
+        this.lastRead.set(claimUpTo - 1L);
+        return (int) (claimUpTo - lastRead - 1L);
+    }
+
+    private int mask(final long value)
+    {
+        return ((int) value) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E getValue(final int index)
+    {
+        return (E) UNSAFE.getObjectVolatile(values, BASE + (index * SCALE));
+    }
+
+    private void setValue(final int index, final E value)
+    {
+        UNSAFE.putObjectVolatile(values, BASE + (index * SCALE), value);
+    }
+}
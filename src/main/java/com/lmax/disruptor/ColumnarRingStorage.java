@@ -0,0 +1,477 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 列式(struct-of-arrays)的事件存储。根据一个只包含基本类型getter/setter的事件接口，为每个属性创建一个基本类型数组，
+ * 同一个序列的各个属性分别存放在各自数组的同一个下标上。
+ * <p>
+ * 事件接口由继承{@link Flyweight}的类实现，它在构造时通过{@link #getColumn(String, Class)}取得需要的列，
+ * 每个getter/setter按{@link Flyweight#sequence()}直接读写对应的列，没有反射和装箱。
+ * {@link #newCursor(FlyweightFactory)}为每个消费者(以及生产者)创建一个游标，游标是一个{@link DataProvider}，
+ * 每次{@link DataProvider#get(long)}只是把同一个flyweight移动到给定的序列，因此可以与任意{@link Sequencer}、
+ * {@link SequenceBarrier}和{@link BatchEventProcessor}一起使用，并且只会触及flyweight读写的列：
+ * </p>
+ * <pre>
+ * final class QuoteFlyweight extends ColumnarRingStorage.Flyweight implements Quote
+ * {
+ *     private final ColumnarRingStorage.LongColumn price;
+ *
+ *     QuoteFlyweight(ColumnarRingStorage&lt;Quote&gt; storage)
+ *     {
+ *         price = storage.getColumn("price", ColumnarRingStorage.LongColumn.class);
+ *     }
+ *
+ *     public long getPrice() { return price.get(sequence()); }
+ *     public void setPrice(long value) { price.set(sequence(), value); }
+ * }
+ *
+ * ColumnarRingStorage&lt;Quote&gt; storage = ColumnarRingStorage.create(Quote.class, 1024);
+ * SingleProducerSequencer sequencer = new SingleProducerSequencer(1024, new YieldingWaitStrategy());
+ *
+ * DataProvider&lt;Quote&gt; producerCursor = storage.newCursor(factory);
+ * long sequence = sequencer.next();
+ * producerCursor.get(sequence).setPrice(42L);
+ * sequencer.publish(sequence);
+ *
+ * // 消费者: new BatchEventProcessor&lt;Quote&gt;(storage.newCursor(factory), sequencer.newBarrier(), handler)
+ * </pre>
+ * <p>
+ * 与{@link RingBuffer}一样，写入由发布序列保证对消费者可见。游标不是线程安全的，每个线程使用自己的游标。
+ * </p>
+ *
+ * @param <E> 事件接口的类型
+ */
+public final class ColumnarRingStorage<E>
+{
+    private final Map<String, Column> columns;
+    private final int bufferSize;
+
+    private ColumnarRingStorage(final Class<E> eventInterface, final int bufferSize)
+    {
+        if (bufferSize < 1)
+        {
+            throw new IllegalArgumentException("bufferSize must not be less than 1");
+        }
+        if (Integer.bitCount(bufferSize) != 1)
+        {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+        if (!eventInterface.isInterface())
+        {
+            throw new IllegalArgumentException(eventInterface.getName() + " is not an interface");
+        }
+
+        this.bufferSize = bufferSize;
+        this.columns = createColumns(eventInterface, bufferSize);
+    }
+
+    /**
+     * 为事件接口创建列式存储。接口的每个方法都必须是基本类型属性的getter(getXxx/isXxx)或setter(setXxx)，
+     * 且每个属性都同时有getter和setter。
+     *
+     * @param <E>            事件接口的类型
+     * @param eventInterface 事件接口
+     * @param bufferSize     槽位的数量，必须是2的幂，与配合使用的{@link Sequencer}的容量相同
+     * @return 列式存储
+     * @throws IllegalArgumentException 如果bufferSize不是2的幂，或者eventInterface不符合要求
+     */
+    public static <E> ColumnarRingStorage<E> create(final Class<E> eventInterface, final int bufferSize)
+    {
+        return new ColumnarRingStorage<E>(eventInterface, bufferSize);
+    }
+
+    /**
+     * 创建一个游标。游标持有factory创建的唯一一个flyweight，{@link DataProvider#get(long)}把它移动到给定的序列之后返回它。
+     *
+     * @param factory 创建实现了事件接口的{@link Flyweight}
+     * @return 新的游标，只能由一个线程使用
+     * @throws IllegalArgumentException 如果factory创建的对象不是{@link Flyweight}
+     */
+    public DataProvider<E> newCursor(final FlyweightFactory<E> factory)
+    {
+        final E flyweight = factory.newInstance(this);
+        if (!(flyweight instanceof Flyweight))
+        {
+            throw new IllegalArgumentException(flyweight + " does not extend " + Flyweight.class.getName());
+        }
+        return new Cursor<E>(flyweight);
+    }
+
+    /**
+     * 获取属性对应的列
+     *
+     * @param <C>        列的类型
+     * @param property   属性名，例如getPrice/setPrice对应price
+     * @param columnType 列的类型，与属性的基本类型对应，例如long对应{@link LongColumn}
+     * @return 属性对应的列
+     * @throws IllegalArgumentException 如果属性不存在或者类型不匹配
+     */
+    public <C extends Column> C getColumn(final String property, final Class<C> columnType)
+    {
+        final Column column = columns.get(property);
+        if (column == null)
+        {
+            throw new IllegalArgumentException("Unknown property: " + property);
+        }
+        if (!columnType.isInstance(column))
+        {
+            throw new IllegalArgumentException(
+                "Property " + property + " is stored in a " + column.getClass().getSimpleName());
+        }
+        return columnType.cast(column);
+    }
+
+    /**
+     * @return 槽位的数量
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    private static Map<String, Column> createColumns(final Class<?> eventInterface, final int bufferSize)
+    {
+        final Map<String, Method> getters = new HashMap<String, Method>();
+        final Map<String, Method> setters = new HashMap<String, Method>();
+        for (final Method method : eventInterface.getMethods())
+        {
+            final String name = method.getName();
+            final Class<?>[] parameterTypes = method.getParameterTypes();
+            if (name.startsWith("set") && name.length() > 3 && parameterTypes.length == 1 &&
+                parameterTypes[0].isPrimitive() && method.getReturnType() == void.class)
+            {
+                setters.put(propertyName(name, 3), method);
+            }
+            else if (name.startsWith("get") && name.length() > 3 && parameterTypes.length == 0 &&
+                method.getReturnType().isPrimitive() && method.getReturnType() != void.class)
+            {
+                getters.put(propertyName(name, 3), method);
+            }
+            else if (name.startsWith("is") && name.length() > 2 && parameterTypes.length == 0 &&
+                method.getReturnType() == boolean.class)
+            {
+                getters.put(propertyName(name, 2), method);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Not a primitive getter or setter: " + method);
+            }
+        }
+
+        final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+        for (final Map.Entry<String, Method> entry : getters.entrySet())
+        {
+            final String property = entry.getKey();
+            final Method getter = entry.getValue();
+            final Method setter = setters.remove(property);
+            if (setter == null || setter.getParameterTypes()[0] != getter.getReturnType())
+            {
+                throw new IllegalArgumentException("Property " + property + " needs a getter and a setter of the same type");
+            }
+
+            columns.put(property, newColumn(getter.getReturnType(), bufferSize));
+        }
+        if (!setters.isEmpty())
+        {
+            throw new IllegalArgumentException("Properties without a getter: " + setters.keySet());
+        }
+        return columns;
+    }
+
+    private static String propertyName(final String methodName, final int prefixLength)
+    {
+        return Character.toLowerCase(methodName.charAt(prefixLength)) + methodName.substring(prefixLength + 1);
+    }
+
+    private static Column newColumn(final Class<?> type, final int bufferSize)
+    {
+        final Column column;
+        if (type == long.class)
+        {
+            column = new LongColumn(bufferSize);
+        }
+        else if (type == int.class)
+        {
+            column = new IntColumn(bufferSize);
+        }
+        else if (type == double.class)
+        {
+            column = new DoubleColumn(bufferSize);
+        }
+        else if (type == float.class)
+        {
+            column = new FloatColumn(bufferSize);
+        }
+        else if (type == short.class)
+        {
+            column = new ShortColumn(bufferSize);
+        }
+        else if (type == byte.class)
+        {
+            column = new ByteColumn(bufferSize);
+        }
+        else if (type == char.class)
+        {
+            column = new CharColumn(bufferSize);
+        }
+        else
+        {
+            column = new BooleanColumn(bufferSize);
+        }
+        return column;
+    }
+
+    /**
+     * 创建实现事件接口的flyweight，由{@link #newCursor(FlyweightFactory)}为每个游标调用一次
+     *
+     * @param <E> 事件接口的类型
+     */
+    public interface FlyweightFactory<E>
+    {
+        /**
+         * @param storage 列式存储，flyweight从中取得它需要的列
+         * @return 继承{@link Flyweight}并实现事件接口的新对象
+         */
+        E newInstance(ColumnarRingStorage<E> storage);
+    }
+
+    /**
+     * 实现事件接口的flyweight的基类，记录游标当前所在的序列
+     */
+    public abstract static class Flyweight
+    {
+        private long sequence;
+
+        /**
+         * @return 游标当前所在的序列，getter/setter用它访问列
+         */
+        protected final long sequence()
+        {
+            return sequence;
+        }
+    }
+
+    private static final class Cursor<E> implements DataProvider<E>
+    {
+        private final E flyweight;
+        private final Flyweight position;
+
+        Cursor(final E flyweight)
+        {
+            this.flyweight = flyweight;
+            this.position = (Flyweight) flyweight;
+        }
+
+        @Override
+        public E get(final long sequence)
+        {
+            position.sequence = sequence;
+            return flyweight;
+        }
+    }
+
+    /**
+     * 一个属性的所有槽位，按序列访问。子类只保存对应基本类型的数组和读写方法。
+     */
+    public abstract static class Column
+    {
+        private final int mask;
+
+        Column(final int bufferSize)
+        {
+            this.mask = bufferSize - 1;
+        }
+
+        final int index(final long sequence)
+        {
+            return (int) sequence & mask;
+        }
+    }
+
+    public static final class LongColumn extends Column
+    {
+        private final long[] values;
+
+        LongColumn(final int bufferSize)
+        {
+            super(bufferSize);
+            this.values = new long[bufferSize];
+        }
+
+        public long get(final long sequence)
+        {
+            return values[index(sequence)];
+        }
+
+        public void set(final long sequence, final long value)
+        {
+            values[index(sequence)] = value;
+        }
+    }
+
+    public static final class IntColumn extends Column
+    {
+        private final int[] values;
+
+        IntColumn(final int bufferSize)
+        {
+            super(bufferSize);
+            this.values = new int[bufferSize];
+        }
+
+        public int get(final long sequence)
+        {
+            return values[index(sequence)];
+        }
+
+        public void set(final long sequence, final int value)
+        {
+            values[index(sequence)] = value;
+        }
+    }
+
+    public static final class DoubleColumn extends Column
+    {
+        private final double[] values;
+
+        DoubleColumn(final int bufferSize)
+        {
+            super(bufferSize);
+            this.values = new double[bufferSize];
+        }
+
+        public double get(final long sequence)
+        {
+            return values[index(sequence)];
+        }
+
+        public void set(final long sequence, final double value)
+        {
+            values[index(sequence)] = value;
+        }
+    }
+
+    public static final class FloatColumn extends Column
+    {
+        private final float[] values;
+
+        FloatColumn(final int bufferSize)
+        {
+            super(bufferSize);
+            this.values = new float[bufferSize];
+        }
+
+        public float get(final long sequence)
+        {
+            return values[index(sequence)];
+        }
+
+        public void set(final long sequence, final float value)
+        {
+            values[index(sequence)] = value;
+        }
+    }
+
+    public static final class ShortColumn extends Column
+    {
+        private final short[] values;
+
+        ShortColumn(final int bufferSize)
+        {
+            super(bufferSize);
+            this.values = new short[bufferSize];
+        }
+
+        public short get(final long sequence)
+        {
+            return values[index(sequence)];
+        }
+
+        public void set(final long sequence, final short value)
+        {
+            values[index(sequence)] = value;
+        }
+    }
+
+    public static final class ByteColumn extends Column
+    {
+        private final byte[] values;
+
+        ByteColumn(final int bufferSize)
+        {
+            super(bufferSize);
+            this.values = new byte[bufferSize];
+        }
+
+        public byte get(final long sequence)
+        {
+            return values[index(sequence)];
+        }
+
+        public void set(final long sequence, final byte value)
+        {
+            values[index(sequence)] = value;
+        }
+    }
+
+    public static final class CharColumn extends Column
+    {
+        private final char[] values;
+
+        CharColumn(final int bufferSize)
+        {
+            super(bufferSize);
+            this.values = new char[bufferSize];
+        }
+
+        public char get(final long sequence)
+        {
+            return values[index(sequence)];
+        }
+
+        public void set(final long sequence, final char value)
+        {
+            values[index(sequence)] = value;
+        }
+    }
+
+    public static final class BooleanColumn extends Column
+    {
+        private final boolean[] values;
+
+        BooleanColumn(final int bufferSize)
+        {
+            super(bufferSize);
+            this.values = new boolean[bufferSize];
+        }
+
+        public boolean get(final long sequence)
+        {
+            return values[index(sequence)];
+        }
+
+        public void set(final long sequence, final boolean value)
+        {
+            values[index(sequence)] = value;
+        }
+    }
+}
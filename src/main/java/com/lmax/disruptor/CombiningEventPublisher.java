@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 合并发布(flat combining)：适用于大量低频发布的生产者线程共享一个多生产者RingBuffer的场景。
+ * <p>
+ * 发布线程先把转换器放进无锁的合并数组，然后尝试成为合并者。合并者一次取走数组中所有待发布的请求，
+ * 只调用一次{@link RingBuffer#next(int)}申请序列，依次转换后只调用一次{@link RingBuffer#publish(long, long)}，
+ * 因此等待策略的{@link WaitStrategy#signalAllWhenBlocking()}也只调用一次，{@link BlockingWaitStrategy}不会在每次发布时都获取锁。
+ * 其他线程等待合并者完成自己的请求后返回，返回时事件已经发布。
+ * </p>
+ * <p>
+ * 转换器抛出的异常不影响同一批次中的其他事件，事件所在的序列仍然会被发布，异常由提交这个转换器的线程重新抛出。
+ * </p>
+ *
+ * @param <E> 事件的类型
+ */
+public final class CombiningEventPublisher<E>
+{
+    private final RingBuffer<E> ringBuffer;
+    private final AtomicReferenceArray<PublishRequest<E>> slots;
+    private final AtomicBoolean combining = new AtomicBoolean(false);
+    private final AtomicInteger nextHomeSlot = new AtomicInteger(0);
+    private final ThreadLocal<PublishRequest<E>> requestForThread = new ThreadLocal<PublishRequest<E>>();
+
+    // 以下字段只由持有combining的合并者访问
+    private final PublishRequest<E>[] batch;
+    private final int[] batchSlots;
+
+    /**
+     * @param ringBuffer 事件发布到的RingBuffer
+     * @param slotCount  合并数组的大小，即一次最多合并的请求数量，不能大于RingBuffer的大小
+     */
+    @SuppressWarnings("unchecked")
+    public CombiningEventPublisher(final RingBuffer<E> ringBuffer, final int slotCount)
+    {
+        if (slotCount < 1)
+        {
+            throw new IllegalArgumentException("slotCount must not be less than 1");
+        }
+        if (slotCount > ringBuffer.getBufferSize())
+        {
+            throw new IllegalArgumentException("slotCount must not be greater than the ring buffer size");
+        }
+
+        this.ringBuffer = ringBuffer;
+        this.slots = new AtomicReferenceArray<PublishRequest<E>>(slotCount);
+        this.batch = (PublishRequest<E>[]) new PublishRequest<?>[slotCount];
+        this.batchSlots = new int[slotCount];
+    }
+
+    /**
+     * 发布一个事件，返回时事件已经发布。
+     *
+     * @param translator 用于填充事件
+     * @see RingBuffer#publishEvent(EventTranslator)
+     */
+    public void publishEvent(final EventTranslator<E> translator)
+    {
+        final PublishRequest<E> request = requestForCurrentThread();
+        request.translator = translator;
+        submit(request);
+    }
+
+    /**
+     * 发布一个带参数的事件，返回时事件已经发布。
+     *
+     * @param translator 用于填充事件
+     * @param arg0       传给转换器的参数
+     * @param <A>        参数的类型
+     * @see RingBuffer#publishEvent(EventTranslatorOneArg, Object)
+     */
+    @SuppressWarnings("unchecked")
+    public <A> void publishEvent(final EventTranslatorOneArg<E, A> translator, final A arg0)
+    {
+        final PublishRequest<E> request = requestForCurrentThread();
+        request.translatorOneArg = (EventTranslatorOneArg<E, Object>) translator;
+        request.arg0 = arg0;
+        submit(request);
+    }
+
+    /**
+     * @return 已经放入合并数组、还没有被合并者取走的请求数量
+     */
+    int getPendingCount()
+    {
+        int pending = 0;
+        for (int i = 0, slotCount = slots.length(); i < slotCount; i++)
+        {
+            if (null != slots.get(i))
+            {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    private PublishRequest<E> requestForCurrentThread()
+    {
+        PublishRequest<E> request = requestForThread.get();
+        if (null == request)
+        {
+            request = new PublishRequest<E>(nextHomeSlot.getAndIncrement() % slots.length());
+            requestForThread.set(request);
+        }
+        return request;
+    }
+
+    private void submit(final PublishRequest<E> request)
+    {
+        request.completed = false;
+        while (!deposit(request))
+        {
+            // 合并数组已满，帮助合并后重试
+            tryCombine();
+        }
+
+        while (!request.completed)
+        {
+            if (!tryCombine())
+            {
+                Thread.yield();
+            }
+        }
+
+        final Throwable failure = request.failure;
+        request.clear();
+        if (failure instanceof RuntimeException)
+        {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error)
+        {
+            throw (Error) failure;
+        }
+    }
+
+    private boolean deposit(final PublishRequest<E> request)
+    {
+        final int slotCount = slots.length();
+        for (int i = 0; i < slotCount; i++)
+        {
+            final int index = (request.homeSlot + i) % slotCount;
+            if (slots.compareAndSet(index, null, request))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean tryCombine()
+    {
+        if (!combining.compareAndSet(false, true))
+        {
+            return false;
+        }
+
+        try
+        {
+            combine();
+        }
+        finally
+        {
+            combining.set(false);
+        }
+        return true;
+    }
+
+    private void combine()
+    {
+        int count = 0;
+        for (int i = 0, slotCount = slots.length(); i < slotCount; i++)
+        {
+            final PublishRequest<E> request = slots.get(i);
+            if (null != request)
+            {
+                batch[count] = request;
+                batchSlots[count] = i;
+                count++;
+            }
+        }
+
+        if (0 == count)
+        {
+            return;
+        }
+
+        final long hi = ringBuffer.next(count);
+        final long lo = hi - (count - 1);
+        try
+        {
+            for (int i = 0; i < count; i++)
+            {
+                batch[i].translateTo(ringBuffer.get(lo + i), lo + i);
+            }
+        }
+        finally
+        {
+            ringBuffer.publish(lo, hi);
+            for (int i = 0; i < count; i++)
+            {
+                final PublishRequest<E> request = batch[i];
+                batch[i] = null;
+                slots.set(batchSlots[i], null);
+                request.completed = true;
+            }
+        }
+    }
+
+    /**
+     * 一个发布线程的请求，每个线程重复使用同一个对象。
+     */
+    private static final class PublishRequest<E>
+    {
+        private final int homeSlot;
+        private EventTranslator<E> translator;
+        private EventTranslatorOneArg<E, Object> translatorOneArg;
+        private Object arg0;
+        private Throwable failure;
+        private volatile boolean completed;
+
+        PublishRequest(final int homeSlot)
+        {
+            this.homeSlot = homeSlot;
+        }
+
+        void translateTo(final E event, final long sequence)
+        {
+            try
+            {
+                if (null != translator)
+                {
+                    translator.translateTo(event, sequence);
+                }
+                else
+                {
+                    translatorOneArg.translateTo(event, sequence, arg0);
+                }
+            }
+            catch (final Throwable ex)
+            {
+                failure = ex;
+            }
+        }
+
+        void clear()
+        {
+            translator = null;
+            translatorOneArg = null;
+            arg0 = null;
+            failure = null;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.lmax.disruptor.util.Util;
+
+/**
+ * 等待某个序列被处理链末端的所有消费者处理完：发布请求后可以阻塞等待，也可以注册回调，例如处理完之后回复请求方。
+ * <p>
+ * 等待者按序列保存在与RingBuffer同样大小的环中。末端的{@link BatchEventProcessor}每处理完一个批次，
+ * 通过{@link ProgressListener}通知这里，由其中一个处理器线程一次完成从上次完成的序列到所有末端消费者的最小序列之间的所有等待者，
+ * 回调通常在这个处理器线程上执行，超时的等待者取消等待时也可能顺便完成已经处理完的等待者。
+ * </p>
+ * <p>
+ * 等待的序列必须已经通过next()申请，这样环中同一位置上更早的等待者一定已经完成。
+ * {@link Callback}对象在回调执行之后可以重复注册，{@link #awaitProcessed(long)}每个线程复用同一个等待者，都不需要为每个请求分配对象。
+ * </p>
+ * <p>
+ * 回调在处理器线程上执行，回调中不能注册新的回调或者等待，否则可能与完成者互相等待。
+ * 回调抛出的异常交给{@link #setExceptionHandler(ExceptionHandler)}设置的异常处理程序，不会传到处理器中，也不影响其它等待者。
+ * </p>
+ */
+public final class CompletionRing implements ProgressListener
+{
+    private final int indexMask;
+    private final AtomicReferenceArray<Callback> waiters;
+    private final Sequence[] terminalSequences;
+    private final Sequence completedSequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+    private final AtomicBoolean completing = new AtomicBoolean(false);
+    private final ThreadLocal<ThreadWaiter> waiterForThread = new ThreadLocal<ThreadWaiter>();
+    private volatile ExceptionHandler<? super Callback> exceptionHandler = new IgnoreExceptionHandler();
+
+    /**
+     * 序列被处理完之后执行的回调
+     */
+    public abstract static class Callback
+    {
+        // 注册时写入, 回调执行之前不会改变
+        private volatile long sequence;
+
+        /**
+         * 在完成它的处理器线程上执行，实现应当尽快返回。
+         *
+         * @param sequence 已经被所有末端消费者处理完的序列
+         */
+        public abstract void onProcessed(long sequence);
+    }
+
+    /**
+     * @param bufferSize         RingBuffer的大小
+     * @param terminalProcessors 处理链末端的消费者，所有消费者都处理完一个序列才算完成
+     */
+    public CompletionRing(final int bufferSize, final BatchEventProcessor<?>... terminalProcessors)
+    {
+        if (Integer.bitCount(bufferSize) != 1)
+        {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+        if (terminalProcessors.length == 0)
+        {
+            throw new IllegalArgumentException("At least one terminal processor is required");
+        }
+
+        this.indexMask = bufferSize - 1;
+        this.waiters = new AtomicReferenceArray<Callback>(bufferSize);
+        this.terminalSequences = new Sequence[terminalProcessors.length];
+        for (int i = 0; i < terminalProcessors.length; i++)
+        {
+            terminalSequences[i] = terminalProcessors[i].getSequence();
+        }
+        completedSequence.set(Util.getMinimumSequence(terminalSequences));
+
+        for (final BatchEventProcessor<?> processor : terminalProcessors)
+        {
+            processor.addProgressListener(this);
+        }
+    }
+
+    /**
+     * 设置处理回调异常的{@link ExceptionHandler}，默认记录日志
+     *
+     * @param exceptionHandler 回调抛出异常时调用, 参数依次为异常、序列和回调
+     */
+    public void setExceptionHandler(final ExceptionHandler<? super Callback> exceptionHandler)
+    {
+        if (null == exceptionHandler)
+        {
+            throw new NullPointerException();
+        }
+
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    /**
+     * @return 已经被所有末端消费者处理完的序列
+     */
+    public long getCompletedSequence()
+    {
+        return completedSequence.get();
+    }
+
+    /**
+     * 注册一个回调，sequence被所有末端消费者处理完之后执行。如果已经处理完，回调立即在当前线程上执行。
+     *
+     * @param sequence 已申请的序列
+     * @param callback 回调，执行之前不能再次注册
+     */
+    public void onProcessed(final long sequence, final Callback callback)
+    {
+        if (sequence <= completedSequence.get())
+        {
+            callback.onProcessed(sequence);
+            return;
+        }
+
+        callback.sequence = sequence;
+        final int index = (int) sequence & indexMask;
+        while (!waiters.compareAndSet(index, null, callback))
+        {
+            // 同一位置上更早的等待者已经处理完, 只是还没有被完成
+            advance();
+            Thread.yield();
+        }
+
+        // 完成者可能在放入之前已经扫描过这个位置
+        if (sequence <= completedSequence.get() && removeCompleted(index, callback))
+        {
+            callback.onProcessed(sequence);
+        }
+    }
+
+    /**
+     * 阻塞直到sequence被所有末端消费者处理完
+     *
+     * @param sequence 已申请的序列
+     */
+    public void awaitProcessed(final long sequence)
+    {
+        final ThreadWaiter waiter = waiterForCurrentThread();
+        onProcessed(sequence, waiter);
+        while (!waiter.done)
+        {
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * 阻塞直到sequence被所有末端消费者处理完，或者超时
+     *
+     * @param sequence 已申请的序列
+     * @param timeout  最长等待时间
+     * @param unit     timeout的单位
+     * @throws TimeoutException 如果超时之前序列还没有处理完
+     */
+    public void awaitProcessed(final long sequence, final long timeout, final TimeUnit unit) throws TimeoutException
+    {
+        final ThreadWaiter waiter = waiterForCurrentThread();
+        onProcessed(sequence, waiter);
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!waiter.done)
+        {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+            {
+                if (removeCompleted((int) sequence & indexMask, waiter))
+                {
+                    throw TimeoutException.INSTANCE;
+                }
+                // 完成者已经取走了等待者, 马上就会完成
+                while (!waiter.done)
+                {
+                    Thread.yield();
+                }
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * 末端消费者更新了序列
+     */
+    @Override
+    public void onProgress(final long sequence)
+    {
+        advance();
+    }
+
+    /**
+     * 末端消费者停止之后不会再更新序列，等待者继续等到超时
+     */
+    @Override
+    public void onStop(final long sequence)
+    {
+    }
+
+    private void advance()
+    {
+        while (true)
+        {
+            final long upTo = Util.getMinimumSequence(terminalSequences);
+            if (upTo <= completedSequence.get() || !completing.compareAndSet(false, true))
+            {
+                return;
+            }
+
+            try
+            {
+                completeUpTo(upTo);
+            }
+            finally
+            {
+                completing.set(false);
+            }
+        }
+    }
+
+    private void completeUpTo(final long upTo)
+    {
+        final long from = Math.max(completedSequence.get() + 1L, upTo - indexMask);
+        // 先更新完成的序列, 之后放入的等待者由注册的线程自己完成
+        completedSequence.set(upTo);
+
+        for (long sequence = from; sequence <= upTo; sequence++)
+        {
+            final int index = (int) sequence & indexMask;
+            final Callback callback = waiters.get(index);
+            if (null != callback && callback.sequence <= upTo && waiters.compareAndSet(index, callback, null))
+            {
+                complete(callback);
+            }
+        }
+    }
+
+    // 回调的异常不能传给处理器，否则默认的异常处理程序会停止末端消费者
+    private void complete(final Callback callback)
+    {
+        final long sequence = callback.sequence;
+        try
+        {
+            callback.onProcessed(sequence);
+        }
+        catch (final Throwable ex)
+        {
+            exceptionHandler.handleEventException(ex, sequence, callback);
+        }
+    }
+
+    /**
+     * 与完成者互斥地从环中取走等待者，取走之后由调用者完成它
+     */
+    private boolean removeCompleted(final int index, final Callback callback)
+    {
+        while (!completing.compareAndSet(false, true))
+        {
+            Thread.yield();
+        }
+
+        final boolean removed;
+        try
+        {
+            removed = waiters.compareAndSet(index, callback, null);
+        }
+        finally
+        {
+            completing.set(false);
+        }
+
+        // 持有标志期间末端消费者的进度通知被advance()放弃了，这里重新检查，否则要等到下一个批次才会完成
+        advance();
+        return removed;
+    }
+
+    private ThreadWaiter waiterForCurrentThread()
+    {
+        ThreadWaiter waiter = waiterForThread.get();
+        if (null == waiter)
+        {
+            waiter = new ThreadWaiter(Thread.currentThread());
+            waiterForThread.set(waiter);
+        }
+        waiter.done = false;
+        return waiter;
+    }
+
+    private static final class ThreadWaiter extends Callback
+    {
+        private final Thread thread;
+        private volatile boolean done;
+
+        ThreadWaiter(final Thread thread)
+        {
+            this.thread = thread;
+        }
+
+        @Override
+        public void onProcessed(final long sequence)
+        {
+            done = true;
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.lmax.disruptor.util.Util;
+
+/**
+ * 协作式的事件处理器。与{@link BatchEventProcessor}不同，它不独占线程：
+ * 由{@link CooperativeScheduler}的载体线程调度，每次通过{@link EventPoller}最多处理budget个事件后让出线程，
+ * 没有可用事件时不占用线程，直到上游的序列前进后再次被调度。
+ * <p>
+ * 同一时刻最多只有一个载体线程运行同一个处理器，因此{@link EventHandler}仍然按序列顺序、单线程地看到事件，
+ * 但相邻两次回调可能发生在不同的线程上。如果{@link EventHandler}实现了{@link LifecycleAware}，
+ * 会在第一次被调度时和停止之后在载体线程上得到通知。
+ * </p>
+ * <p>
+ * 不通过调度器而是直接调用{@link #run()}时，处理器在调用线程上循环运行直到停止，与{@link BatchEventProcessor}一样独占该线程。
+ * </p>
+ *
+ * @param <T> 事件的类型
+ */
+public final class CooperativeEventProcessor<T> implements EventProcessor
+{
+    private static final int IDLE = 0;
+    private static final int HALTED = IDLE + 1;
+    private static final int RUNNING = HALTED + 1;
+    // 直接运行时没有可用事件后先让出线程的次数，之后改为挂起
+    private static final int IDLE_YIELD_COUNT = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // 表示当前事件处理器的运行状态
+    private final AtomicInteger running = new AtomicInteger(IDLE);
+    // 为true时表示处理器已经在调度器的就绪队列中或者正在某个载体线程上运行
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    // 异常处理器
+    private ExceptionHandler<? super T> exceptionHandler = new FatalExceptionHandler();
+    // 处理事件的回调接口
+    private final EventHandler<? super T> eventHandler;
+    // 从RingBuffer中取出事件的轮询器
+    private final EventPoller<T> poller;
+    private final PollHandler pollHandler = new PollHandler();
+    // 生产者的游标和上游消费者的序列，用于判断是否有可用的事件
+    private final Cursored cursor;
+    private final Sequence[] dependentSequences;
+    // 运行该处理器的调度器，在处理器启动时设置
+    private CooperativeScheduler scheduler;
+    // 只在载体线程上读写，由scheduled标志保证同一时刻只有一个线程访问
+    private boolean started = false;
+    private int budget;
+    private int processedCount;
+
+    /**
+	 * 构造一个协作式的事件处理器，启动时通过{@link CooperativeScheduler#execute(Runnable)}交给调度器运行
+	 *
+	 * @param ringBuffer         事件所在的RingBuffer
+	 * @param eventHandler       处理事件的回调接口
+	 * @param dependentSequences 上游消费者的序列，为空时只依赖生产者
+	 */
+    public CooperativeEventProcessor(
+        final RingBuffer<T> ringBuffer,
+        final EventHandler<? super T> eventHandler,
+        final Sequence... dependentSequences)
+    {
+        this.eventHandler = eventHandler;
+        this.poller = ringBuffer.newPoller(dependentSequences);
+        this.cursor = ringBuffer;
+        this.dependentSequences = dependentSequences;
+    }
+
+    @Override
+    public Sequence getSequence()
+    {
+        return poller.getSequence();
+    }
+
+    /**
+     * 请求停止处理器。处理器会在下一次被调度时通知{@link LifecycleAware#onShutdown()}并从调度器中移除，
+     * 因此需要在调度器停止之前调用。
+     */
+    @Override
+    public void halt()
+    {
+        if (running.compareAndSet(RUNNING, HALTED) && null != scheduler)
+        {
+            scheduler.schedule(this);
+        }
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running.get() != IDLE;
+    }
+
+    /**
+     * 不经过调度器，在调用线程上循环处理事件直到{@link #halt()}。没有可用事件时先让出线程，之后每次挂起一小段时间。
+     *
+     * @throws IllegalStateException 处理器已经在运行
+     */
+    @Override
+    public void run()
+    {
+        if (!running.compareAndSet(IDLE, RUNNING))
+        {
+            throw new IllegalStateException("Thread is already running");
+        }
+
+        budget = Integer.MAX_VALUE;
+        int idleCount = 0;
+        try
+        {
+            while (isRunning())
+            {
+                if (runSlice())
+                {
+                    idleCount = 0;
+                }
+                else if (isRunning())
+                {
+                    idleCount = idle(idleCount);
+                }
+            }
+        }
+        catch (final RuntimeException | Error ex)
+        {
+            throw ex;
+        }
+        catch (final Exception ex)
+        {
+            throw new RuntimeException(ex);
+        }
+    }
+
+	/**
+	 * 设置一个新的{@link ExceptionHandler}来处理从{@link CooperativeEventProcessor}传播的异常。
+	 * 异常处理器再抛出异常时，处理器会停止，与{@link BatchEventProcessor}的线程退出一致。
+	 *
+	 * @param exceptionHandler 替换现有的exceptionHandler
+	 */
+    public void setExceptionHandler(final ExceptionHandler<? super T> exceptionHandler)
+    {
+        if (null == exceptionHandler)
+        {
+            throw new NullPointerException();
+        }
+
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    void start(final CooperativeScheduler scheduler, final int budget)
+    {
+        this.scheduler = scheduler;
+        this.budget = budget;
+        if (!running.compareAndSet(IDLE, RUNNING))
+        {
+            throw new IllegalStateException("Thread is already running");
+        }
+    }
+
+    boolean trySchedule()
+    {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    void clearScheduled()
+    {
+        scheduled.set(false);
+    }
+
+    /**
+     * @return 处理器停止之后还没有通知关闭，或者有可用的事件时返回true
+     */
+    boolean needsSlice()
+    {
+        final int state = running.get();
+        return HALTED == state ||
+            (RUNNING == state && Util.getMinimumSequence(dependentSequences, cursor.getCursor()) > poller.getSequence().get());
+    }
+
+    /**
+     * 在载体线程上运行一次，最多处理budget个事件
+     *
+     * @return 处理了事件时返回true，此时可能还有更多的事件
+     * @throws Exception 异常处理器抛出的异常，此时处理器已经停止
+     */
+    boolean runSlice() throws Exception
+    {
+        if (!started)
+        {
+            started = true;
+            notifyStart();
+        }
+
+        if (HALTED == running.get())
+        {
+            stop();
+            return false;
+        }
+
+        processedCount = 0;
+        try
+        {
+            return EventPoller.PollState.PROCESSING == poller.poll(pollHandler);
+        }
+        catch (final Throwable ex)
+        {
+            stop();
+            throw ex;
+        }
+    }
+
+    private void stop()
+    {
+        notifyShutdown();
+        started = false;
+        running.set(IDLE);
+    }
+
+    private static int idle(final int idleCount)
+    {
+        if (idleCount < IDLE_YIELD_COUNT)
+        {
+            Thread.yield();
+        }
+        else
+        {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        return idleCount + 1;
+    }
+
+    private void notifyStart()
+    {
+        if (eventHandler instanceof LifecycleAware)
+        {
+            try
+            {
+                ((LifecycleAware) eventHandler).onStart();
+            }
+            catch (final Throwable ex)
+            {
+                exceptionHandler.handleOnStartException(ex);
+            }
+        }
+    }
+
+    private void notifyShutdown()
+    {
+        if (eventHandler instanceof LifecycleAware)
+        {
+            try
+            {
+                ((LifecycleAware) eventHandler).onShutdown();
+            }
+            catch (final Throwable ex)
+            {
+                exceptionHandler.handleOnShutdownException(ex);
+            }
+        }
+    }
+
+    /**
+     * 把轮询到的事件交给EventHandler，处理满budget个事件后结束本次轮询
+     */
+    private final class PollHandler implements EventPoller.Handler<T>
+    {
+        @Override
+        public boolean onEvent(final T event, final long sequence, final boolean endOfBatch) throws Exception
+        {
+            final boolean budgetExhausted = ++processedCount >= budget;
+            try
+            {
+                eventHandler.onEvent(event, sequence, endOfBatch || budgetExhausted);
+            }
+            catch (final Throwable ex)
+            {
+                exceptionHandler.handleEventException(ex, sequence, event);
+            }
+            return !budgetExhausted;
+        }
+    }
+}
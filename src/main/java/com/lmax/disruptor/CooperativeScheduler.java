@@ -0,0 +1,335 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * M:N的协作式调度器：用少量共享的载体线程运行许多{@link CooperativeEventProcessor}。
+ * <p>
+ * 载体线程从就绪队列中取出处理器，每次最多处理budget个事件；处理了事件的处理器重新排到队尾，
+ * 没有可用事件的处理器不再占用线程。就绪队列为空时载体线程扫描所有处理器，把有可用事件的重新调度，
+ * 仍然没有时挂起，直到RingBuffer发布事件时通过{@link #wrap(WaitStrategy)}返回的等待策略唤醒，
+ * 或者超时后重新扫描(上游不在本调度器中运行时依赖超时发现它的进度)。
+ * </p>
+ * <p>
+ * 调度器实现了{@link Executor}，可以直接交给Disruptor启动消费者：{@link CooperativeEventProcessor}由载体线程运行，
+ * 其它的{@link Runnable}(例如{@link WorkProcessor})仍然在threadFactory创建的独立线程上运行。
+ * </p>
+ */
+public final class CooperativeScheduler implements Executor
+{
+    private static final CooperativeEventProcessor<?>[] NO_PROCESSORS = new CooperativeEventProcessor<?>[0];
+    // 载体线程没有被唤醒时重新扫描处理器的间隔
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ThreadFactory threadFactory;
+    private final int carrierCount;
+    private final int budget;
+    // 等待载体线程运行的处理器
+    private final Queue<CooperativeEventProcessor<?>> readyQueue = new ConcurrentLinkedQueue<>();
+    // 挂起等待唤醒的载体线程
+    private final Queue<Thread> parkedCarriers = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    // 所有正在运行的处理器，写时复制
+    private volatile CooperativeEventProcessor<?>[] processors = NO_PROCESSORS;
+    private volatile boolean running = true;
+    // 上次扫描之后有新的事件发布或者有处理器前进
+    private volatile boolean signalled = false;
+
+    /**
+	 * 创建调度器，载体线程在第一个处理器启动时创建
+	 *
+	 * @param carrierCount  载体线程的数量
+	 * @param budget        处理器每次被调度时最多处理的事件数量
+	 * @param threadFactory 创建载体线程和运行其它{@link Runnable}的线程
+	 */
+    public CooperativeScheduler(final int carrierCount, final int budget, final ThreadFactory threadFactory)
+    {
+        if (carrierCount < 1)
+        {
+            throw new IllegalArgumentException("carrierCount must be > 0");
+        }
+        if (budget < 1)
+        {
+            throw new IllegalArgumentException("budget must be > 0");
+        }
+
+        this.carrierCount = carrierCount;
+        this.budget = budget;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+	 * 包装RingBuffer使用的等待策略，发布事件时在通知原有的等待策略之后唤醒挂起的载体线程
+	 *
+	 * @param waitStrategy 原有的等待策略，用于不在调度器中运行的消费者
+	 * @return 发布事件时会唤醒载体线程的等待策略
+	 */
+    public WaitStrategy wrap(final WaitStrategy waitStrategy)
+    {
+        return new SignallingWaitStrategy(waitStrategy, this);
+    }
+
+    /**
+	 * 启动{@link CooperativeEventProcessor}时把它交给载体线程运行，其它的{@link Runnable}在新线程上运行
+	 *
+	 * @param command 要运行的处理器
+	 * @throws RejectedExecutionException 调度器已经停止，或者无法创建线程
+	 */
+    @Override
+    public void execute(final Runnable command)
+    {
+        if (!running)
+        {
+            throw new RejectedExecutionException("Scheduler has been halted");
+        }
+
+        if (command instanceof CooperativeEventProcessor)
+        {
+            final CooperativeEventProcessor<?> processor = (CooperativeEventProcessor<?>) command;
+            processor.start(this, budget);
+            register(processor);
+            startCarriers();
+            schedule(processor);
+        }
+        else
+        {
+            newThread(command).start();
+        }
+    }
+
+    /**
+	 * 通知调度器可能有新的事件可以处理，挂起的载体线程会被唤醒并重新扫描处理器
+	 */
+    public void signal()
+    {
+        if (!signalled)
+        {
+            signalled = true;
+        }
+
+        final Thread parkedCarrier = parkedCarriers.peek();
+        if (null != parkedCarrier)
+        {
+            LockSupport.unpark(parkedCarrier);
+        }
+    }
+
+    /**
+	 * 停止载体线程。仍在运行的处理器不会再收到{@link LifecycleAware#onShutdown()}通知，
+	 * 因此应该先停止使用该调度器的Disruptor。
+	 */
+    public void halt()
+    {
+        running = false;
+        for (final Thread parkedCarrier : parkedCarriers)
+        {
+            LockSupport.unpark(parkedCarrier);
+        }
+    }
+
+    /**
+	 * @return 正在运行的处理器数量
+	 */
+    public int getProcessorCount()
+    {
+        return processors.length;
+    }
+
+    void schedule(final CooperativeEventProcessor<?> processor)
+    {
+        if (processor.trySchedule())
+        {
+            readyQueue.offer(processor);
+            signal();
+        }
+    }
+
+    private void startCarriers()
+    {
+        if (started.compareAndSet(false, true))
+        {
+            for (int i = 0; i < carrierCount; i++)
+            {
+                newThread(new Carrier()).start();
+            }
+        }
+    }
+
+    private Thread newThread(final Runnable runnable)
+    {
+        final Thread thread = threadFactory.newThread(runnable);
+        if (null == thread)
+        {
+            throw new RejectedExecutionException("Failed to create thread to run: " + runnable);
+        }
+        return thread;
+    }
+
+    private synchronized void register(final CooperativeEventProcessor<?> processor)
+    {
+        final CooperativeEventProcessor<?>[] current = processors;
+        final CooperativeEventProcessor<?>[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = processor;
+        processors = updated;
+    }
+
+    private synchronized void deregister(final CooperativeEventProcessor<?> processor)
+    {
+        final CooperativeEventProcessor<?>[] current = processors;
+        int index = -1;
+        for (int i = 0; i < current.length; i++)
+        {
+            if (current[i] == processor)
+            {
+                index = i;
+                break;
+            }
+        }
+
+        if (index >= 0)
+        {
+            final CooperativeEventProcessor<?>[] updated = new CooperativeEventProcessor<?>[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            processors = updated;
+        }
+    }
+
+    /**
+     * 运行处理器一次，处理了事件的处理器重新调度，同时通知依赖它的处理器
+     */
+    private void runSlice(final CooperativeEventProcessor<?> processor)
+    {
+        boolean progressed = false;
+        try
+        {
+            progressed = processor.runSlice();
+        }
+        catch (final Throwable ex)
+        {
+            // 异常已经交给处理器的异常处理器，处理器已经停止。载体线程还要继续运行其它处理器，
+            // 所以不能让异常结束线程，而是交给载体线程的UncaughtExceptionHandler，避免异常被静默丢弃
+            final Thread carrier = Thread.currentThread();
+            carrier.getUncaughtExceptionHandler().uncaughtException(carrier, ex);
+        }
+
+        processor.clearScheduled();
+
+        if (!processor.isRunning())
+        {
+            deregister(processor);
+        }
+        else if (progressed)
+        {
+            signalled = true;
+            schedule(processor);
+        }
+        else if (processor.needsSlice())
+        {
+            // 清除调度标志之前到达的事件不会再触发调度，这里需要重新检查
+            schedule(processor);
+        }
+    }
+
+    /**
+     * @return 有处理器被调度时返回true
+     */
+    private boolean scheduleReadyProcessors()
+    {
+        signalled = false;
+        boolean scheduled = false;
+        for (final CooperativeEventProcessor<?> processor : processors)
+        {
+            if (processor.needsSlice() && processor.trySchedule())
+            {
+                readyQueue.offer(processor);
+                scheduled = true;
+            }
+        }
+        return scheduled;
+    }
+
+    private void park()
+    {
+        final Thread carrier = Thread.currentThread();
+        parkedCarriers.offer(carrier);
+        if (!signalled && running)
+        {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        parkedCarriers.remove(carrier);
+    }
+
+    private final class Carrier implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            while (running)
+            {
+                final CooperativeEventProcessor<?> processor = readyQueue.poll();
+                if (null != processor)
+                {
+                    runSlice(processor);
+                }
+                else if (!scheduleReadyProcessors())
+                {
+                    park();
+                }
+            }
+        }
+    }
+
+    /**
+     * 发布事件时唤醒挂起的载体线程，等待的部分委托给原有的等待策略
+     */
+    private static final class SignallingWaitStrategy implements WaitStrategy
+    {
+        private final WaitStrategy waitStrategy;
+        private final CooperativeScheduler scheduler;
+
+        SignallingWaitStrategy(final WaitStrategy waitStrategy, final CooperativeScheduler scheduler)
+        {
+            this.waitStrategy = waitStrategy;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public long waitFor(
+            final long sequence, final Sequence cursor, final Sequence dependentSequence, final SequenceBarrier barrier)
+            throws AlertException, InterruptedException, TimeoutException
+        {
+            return waitStrategy.waitFor(sequence, cursor, dependentSequence, barrier);
+        }
+
+        @Override
+        public void signalAllWhenBlocking()
+        {
+            waitStrategy.signalAllWhenBlocking();
+            scheduler.signal();
+        }
+    }
+}
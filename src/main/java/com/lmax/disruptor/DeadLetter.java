@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * {@link DeadLetterQueue}中的事件：处理出错的事件的副本，以及它在主RingBuffer中的序列和出错的原因。
+ *
+ * @param <T> 主流程中的事件类型
+ */
+public final class DeadLetter<T>
+{
+    private final T event;
+    private long sequence;
+    private Throwable cause;
+    // 以下字段只由重试线程访问，clear()在重试线程释放槽之后由生产者调用
+    private int attempts;
+    private long dueNanos;
+    private boolean completed;
+
+    DeadLetter(final T event)
+    {
+        this.event = event;
+    }
+
+    /**
+     * @return 出错的事件的副本
+     */
+    public T getEvent()
+    {
+        return event;
+    }
+
+    /**
+     * @return 事件在主RingBuffer中的序列
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * @return 最后一次处理出错的原因
+     */
+    public Throwable getCause()
+    {
+        return cause;
+    }
+
+    // 在复制事件之前调用，复制失败时cause为null，重试线程会跳过这个死信
+    void clear()
+    {
+        cause = null;
+        attempts = 0;
+        completed = false;
+    }
+
+    void set(final long sequence, final Throwable cause)
+    {
+        this.sequence = sequence;
+        this.cause = cause;
+    }
+
+    boolean isFilled()
+    {
+        return cause != null;
+    }
+
+    // 记录一次失败的重试，返回已经重试的次数
+    int failed(final Throwable cause)
+    {
+        this.cause = cause;
+        return ++attempts;
+    }
+
+    long getDueNanos()
+    {
+        return dueNanos;
+    }
+
+    void setDueNanos(final long dueNanos)
+    {
+        this.dueNanos = dueNanos;
+    }
+
+    boolean isCompleted()
+    {
+        return completed;
+    }
+
+    void complete()
+    {
+        completed = true;
+    }
+}
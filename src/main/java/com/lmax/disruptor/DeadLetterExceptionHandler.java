@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 把处理出错的事件转存到另一个RingBuffer(死信队列)中的异常处理程序。
+ * <p>
+ * 通过{@link Translator}把出错的事件、它在主RingBuffer中的序列和异常复制到死信RingBuffer，使用{@link RingBuffer#tryNext()}申请槽，
+ * 死信RingBuffer已满时不会阻塞主流程，而是交给fallback处理。
+ * 与{@link BatchEventProcessor#setRecoverWithinBatch(boolean)}一起使用时，出错的事件不会打断批次。
+ * </p>
+ * <p>
+ * 已经申请的槽无法归还，所以即使translator抛出异常，槽也会被发布，此时原来的异常(附带translator的异常)交给fallback处理。
+ * 如果translator可能失败，它应该先把死信事件标记为无效，死信的消费者需要跳过这些事件，见{@link DeadLetterQueue}。
+ * </p>
+ *
+ * @param <T> 主流程中的事件类型
+ * @param <D> 死信RingBuffer中的事件类型
+ */
+public final class DeadLetterExceptionHandler<T, D> implements ExceptionHandler<T>
+{
+    /**
+     * 把出错的事件复制到死信事件中
+     *
+     * @param <D> 死信RingBuffer中的事件类型
+     * @param <T> 主流程中的事件类型
+     */
+    public interface Translator<D, T>
+    {
+        /**
+         * @param deadLetter 死信RingBuffer中申请到的事件
+         * @param sequence   出错的事件在主RingBuffer中的序列
+         * @param event      出错的事件
+         * @param cause      处理事件时抛出的异常
+         */
+        void translateTo(D deadLetter, long sequence, T event, Throwable cause);
+    }
+
+    private final RingBuffer<D> deadLetters;
+    private final Translator<? super D, ? super T> translator;
+    private final ExceptionHandler<? super T> fallback;
+
+    /**
+     * @param deadLetters 死信RingBuffer
+     * @param translator  把出错的事件和异常复制到死信事件中
+     * @param fallback    死信RingBuffer已满或者复制失败时使用的异常处理程序，以及处理启动和关闭时的异常
+     */
+    public DeadLetterExceptionHandler(
+        final RingBuffer<D> deadLetters,
+        final Translator<? super D, ? super T> translator,
+        final ExceptionHandler<? super T> fallback)
+    {
+        this.deadLetters = deadLetters;
+        this.translator = translator;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void handleEventException(final Throwable ex, final long sequence, final T event)
+    {
+        final long deadLetterSequence;
+        try
+        {
+            deadLetterSequence = deadLetters.tryNext();
+        }
+        catch (final InsufficientCapacityException e)
+        {
+            fallback.handleEventException(ex, sequence, event);
+            return;
+        }
+
+        try
+        {
+            translator.translateTo(deadLetters.get(deadLetterSequence), sequence, event, ex);
+        }
+        catch (final Throwable translateFailure)
+        {
+            if (translateFailure != ex)
+            {
+                ex.addSuppressed(translateFailure);
+            }
+            fallback.handleEventException(ex, sequence, event);
+        }
+        finally
+        {
+            deadLetters.publish(deadLetterSequence);
+        }
+    }
+
+    @Override
+    public void handleOnStartException(final Throwable ex)
+    {
+        fallback.handleOnStartException(ex);
+    }
+
+    @Override
+    public void handleOnShutdownException(final Throwable ex)
+    {
+        fallback.handleOnShutdownException(ex);
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 死信队列：处理出错的事件被复制到一个独立的RingBuffer中，由单独的重试线程按退避时间重试。
+ * <p>
+ * 作为{@link ExceptionHandler}使用，通常通过Disruptor与批次内恢复一起配置，重试线程随Disruptor启动和停止:
+ * </p>
+ * <pre>
+ * <code>disruptor.handleExceptionsFor(handler).withDeadLetterQueue(deadLetterQueue);</code>
+ * </pre>
+ * <p>
+ * 出错的事件由{@link DeadLetterExceptionHandler}通过copier复制到死信RingBuffer中，死信RingBuffer已满时不会阻塞主流程。
+ * 复制失败的槽被标记为无效，重试线程会跳过它。
+ * 重试线程对每个死信最多调用retryHandler maxAttempts次，第n次重试安排在上一次之后initialBackoff * 2^(n-1)，
+ * 所有等待中的死信按到期时间排序，一个反复失败的事件不会推迟其它死信的重试。
+ * 所有重试都失败的事件，以及死信RingBuffer已满时无法保存的事件，都会报告给failureHandler。
+ * 死信RingBuffer使用{@link SleepingWaitStrategy}，发布时不需要唤醒重试线程，故障风暴中主流程的开销只有一次复制和发布。
+ * </p>
+ * <p>
+ * 死信的槽在重试结束之前不会被释放，等待重试的死信最多有bufferSize个。
+ * </p>
+ *
+ * @param <T> 主流程中的事件类型
+ */
+public final class DeadLetterQueue<T> implements ExceptionHandler<T>, EventProcessor
+{
+    // 没有到期的死信时，重试线程检查新死信的间隔
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RingBuffer<DeadLetter<T>> ringBuffer;
+    private final DeadLetterExceptionHandler<T, DeadLetter<T>> deadLetterHandler;
+    private final EventHandler<? super T> retryHandler;
+    private final ExceptionHandler<? super T> failureHandler;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final EventPoller<DeadLetter<T>> poller;
+    private final EventPoller.Handler<DeadLetter<T>> scheduler = new Scheduler();
+    // 死信RingBuffer的生产者只能覆盖这个序列之前的槽
+    private final Sequence releasedSequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+    private final PriorityQueue<DeadLetter<T>> pending;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * @param eventFactory   用于预分配死信事件副本的工厂
+     * @param copier         把出错的事件复制到死信中的副本, 参数依次为副本、序列和出错的事件
+     * @param bufferSize     死信RingBuffer的大小，必须是2的幂
+     * @param retryHandler   重试时调用的事件处理器
+     * @param failureHandler 报告最终失败的事件
+     * @param maxAttempts    每个死信最多重试的次数
+     * @param initialBackoff 第一次重试之前的等待时间
+     * @param unit           initialBackoff的时间单位
+     */
+    public DeadLetterQueue(
+        final EventFactory<T> eventFactory,
+        final EventTranslatorOneArg<T, T> copier,
+        final int bufferSize,
+        final EventHandler<? super T> retryHandler,
+        final ExceptionHandler<? super T> failureHandler,
+        final int maxAttempts,
+        final long initialBackoff,
+        final TimeUnit unit)
+    {
+        if (maxAttempts < 1)
+        {
+            throw new IllegalArgumentException("maxAttempts must not be less than 1");
+        }
+
+        this.ringBuffer = RingBuffer.createMultiProducer(
+            new EventFactory<DeadLetter<T>>()
+            {
+                @Override
+                public DeadLetter<T> newInstance()
+                {
+                    return new DeadLetter<T>(eventFactory.newInstance());
+                }
+            },
+            bufferSize,
+            new SleepingWaitStrategy());
+        this.deadLetterHandler = new DeadLetterExceptionHandler<T, DeadLetter<T>>(
+            ringBuffer,
+            new DeadLetterExceptionHandler.Translator<DeadLetter<T>, T>()
+            {
+                @Override
+                public void translateTo(final DeadLetter<T> deadLetter, final long sequence, final T event, final Throwable cause)
+                {
+                    deadLetter.clear();
+                    copier.translateTo(deadLetter.getEvent(), sequence, event);
+                    deadLetter.set(sequence, cause);
+                }
+            },
+            failureHandler);
+        this.retryHandler = retryHandler;
+        this.failureHandler = failureHandler;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = unit.toNanos(initialBackoff);
+        this.poller = ringBuffer.newPoller();
+        this.pending = new PriorityQueue<DeadLetter<T>>(bufferSize, new Comparator<DeadLetter<T>>()
+        {
+            @Override
+            public int compare(final DeadLetter<T> o1, final DeadLetter<T> o2)
+            {
+                return Long.signum(o1.getDueNanos() - o2.getDueNanos());
+            }
+        });
+        ringBuffer.addGatingSequences(releasedSequence);
+    }
+
+    /**
+     * 不通过Disruptor使用时，单独启动重试线程
+     *
+     * @param threadFactory 创建重试线程的工厂
+     * @throws IllegalStateException 如果已经启动
+     */
+    public void start(final ThreadFactory threadFactory)
+    {
+        if (running.get())
+        {
+            throw new IllegalStateException("Dead letter queue has already been started");
+        }
+        threadFactory.newThread(this).start();
+    }
+
+    /**
+     * 停止重试线程，尚未重试的死信会保留下来，再次启动后继续重试。
+     */
+    @Override
+    public void halt()
+    {
+        running.set(false);
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running.get();
+    }
+
+    /**
+     * @return 死信RingBuffer中已经被释放的槽的序列
+     */
+    @Override
+    public Sequence getSequence()
+    {
+        return releasedSequence;
+    }
+
+    @Override
+    public void run()
+    {
+        if (!running.compareAndSet(false, true))
+        {
+            throw new IllegalStateException("Thread is already running");
+        }
+
+        try
+        {
+            while (running.get())
+            {
+                pollNewLetters();
+                final long now = System.nanoTime();
+                retryDueLetters(now);
+                releaseCompleted();
+                LockSupport.parkNanos(nextParkNanos(now));
+            }
+        }
+        finally
+        {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 把出错的事件复制到死信RingBuffer中，已满或复制失败时报告给failureHandler。
+     */
+    @Override
+    public void handleEventException(final Throwable ex, final long sequence, final T event)
+    {
+        deadLetterHandler.handleEventException(ex, sequence, event);
+    }
+
+    @Override
+    public void handleOnStartException(final Throwable ex)
+    {
+        failureHandler.handleOnStartException(ex);
+    }
+
+    @Override
+    public void handleOnShutdownException(final Throwable ex)
+    {
+        failureHandler.handleOnShutdownException(ex);
+    }
+
+    /**
+     * @return 还没有释放的死信数量，包括正在等待重试的死信
+     */
+    public long getPendingCount()
+    {
+        return ringBuffer.getCursor() - releasedSequence.get();
+    }
+
+    private void pollNewLetters()
+    {
+        try
+        {
+            poller.poll(scheduler);
+        }
+        catch (final Exception ex)
+        {
+            // Scheduler不会抛出受检异常
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void retryDueLetters(final long now)
+    {
+        DeadLetter<T> deadLetter = pending.peek();
+        while (deadLetter != null && deadLetter.getDueNanos() - now <= 0)
+        {
+            pending.poll();
+            retry(deadLetter, now);
+            deadLetter = pending.peek();
+        }
+    }
+
+    private void retry(final DeadLetter<T> deadLetter, final long now)
+    {
+        try
+        {
+            retryHandler.onEvent(deadLetter.getEvent(), deadLetter.getSequence(), true);
+            deadLetter.complete();
+        }
+        catch (final Exception ex)
+        {
+            final int attempts = deadLetter.failed(ex);
+            if (attempts < maxAttempts)
+            {
+                deadLetter.setDueNanos(now + backoffNanos(attempts));
+                pending.add(deadLetter);
+            }
+            else
+            {
+                deadLetter.complete();
+                failureHandler.handleEventException(ex, deadLetter.getSequence(), deadLetter.getEvent());
+            }
+        }
+    }
+
+    // 第attempts次失败之后的等待时间: initialBackoff * 2^attempts，不会溢出
+    private long backoffNanos(final int attempts)
+    {
+        return initialBackoffNanos << Math.min(attempts, Long.numberOfLeadingZeros(initialBackoffNanos) - 1);
+    }
+
+    // 从队头开始释放已经完成的死信的槽，槽只能按顺序释放
+    private void releaseCompleted()
+    {
+        final long polledSequence = poller.getSequence().get();
+        long released = releasedSequence.get();
+        while (released < polledSequence && ringBuffer.get(released + 1).isCompleted())
+        {
+            released++;
+        }
+        releasedSequence.set(released);
+    }
+
+    private long nextParkNanos(final long now)
+    {
+        final DeadLetter<T> next = pending.peek();
+        return next == null ? MAX_IDLE_PARK_NANOS : Math.min(next.getDueNanos() - now, MAX_IDLE_PARK_NANOS);
+    }
+
+    private final class Scheduler implements EventPoller.Handler<DeadLetter<T>>
+    {
+        @Override
+        public boolean onEvent(final DeadLetter<T> deadLetter, final long sequence, final boolean endOfBatch)
+        {
+            if (deadLetter.isFilled())
+            {
+                deadLetter.setDueNanos(System.nanoTime() + initialBackoffNanos);
+                pending.add(deadLetter);
+            }
+            else
+            {
+                deadLetter.complete();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 不参与门控(lossy)的消费者的事件处理器实现此接口后，会在消费者被生产者套圈、跳过事件时得到通知。
+ *
+ * @see BatchEventProcessor#setLossy(Cursored, int)
+ * @see EventPoller#newLossyInstance(DataProvider, Sequencer, Sequence, Sequence, Sequence...)
+ */
+public interface EventLossAware
+{
+    /**
+     * 消费者被套圈后跳过了一段事件。
+     *
+     * @param firstLostSequence 第一个被跳过的序列
+     * @param count             被跳过的事件数量
+     */
+    void onEventsLost(long firstLostSequence, long count);
+}
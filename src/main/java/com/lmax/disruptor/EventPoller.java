@@ -9,6 +9,11 @@ public class EventPoller<T>
     private final Sequencer sequencer;
     private final Sequence sequence;
     private final Sequence gatingSequence;
+    private final CachedMinimumSequenceGroup gatingGroup;
+    // 是否为不参与门控的消费者，此时需要检测是否被生产者套圈
+    private final boolean lossy;
+    // 因被套圈而跳过的事件数量
+    private volatile long lostEventCount = 0L;
 
     public interface Handler<T>
     {
@@ -25,19 +30,38 @@ public class EventPoller<T>
         final Sequencer sequencer,
         final Sequence sequence,
         final Sequence gatingSequence)
+    {
+        this(dataProvider, sequencer, sequence, gatingSequence, false);
+    }
+
+    private EventPoller(
+        final DataProvider<T> dataProvider,
+        final Sequencer sequencer,
+        final Sequence sequence,
+        final Sequence gatingSequence,
+        final boolean lossy)
     {
         this.dataProvider = dataProvider;
         this.sequencer = sequencer;
         this.sequence = sequence;
         this.gatingSequence = gatingSequence;
+        this.gatingGroup = gatingSequence instanceof CachedMinimumSequenceGroup
+            ? (CachedMinimumSequenceGroup) gatingSequence : null;
+        this.lossy = lossy;
     }
 
     public PollState poll(final Handler<T> eventHandler) throws Exception
     {
+        if (lossy)
+        {
+            skipLappedEvents(eventHandler);
+        }
+
         final long currentSequence = sequence.get();
         long nextSequence = currentSequence + 1;
-        // 取最小值
-        final long availableSequence = sequencer.getHighestPublishedSequence(nextSequence, gatingSequence.get());
+        // 取最小值, 多个上游时缓存的最小值已经足够则不重新扫描
+        final long gatingValue = null != gatingGroup ? gatingGroup.get(nextSequence) : gatingSequence.get();
+        final long availableSequence = sequencer.getHighestPublishedSequence(nextSequence, gatingValue);
 
         if (nextSequence <= availableSequence)
         {
@@ -73,6 +97,27 @@ public class EventPoller<T>
         }
     }
 
+    /**
+     * 生产者已经写到了nextSequence所在的槽位(或者正在写入)时，说明消费者被套圈了，直接跳到最新发布的序列。
+     * 由于sequence不在门控序列中，事件在处理过程中仍然可能被覆盖，这里的检测只能保证每次poll开始时不读取已被覆盖的槽位。
+     */
+    private void skipLappedEvents(final Handler<T> eventHandler)
+    {
+        final long nextSequence = sequence.get() + 1L;
+        final long cursor = sequencer.getCursor();
+        if (cursor - nextSequence >= sequencer.getBufferSize() - 1)
+        {
+            final long lost = cursor - nextSequence;
+            lostEventCount += lost;
+            sequence.set(cursor - 1L);
+
+            if (eventHandler instanceof EventLossAware)
+            {
+                ((EventLossAware) eventHandler).onEventsLost(nextSequence, lost);
+            }
+        }
+    }
+
     public static <T> EventPoller<T> newInstance(
         final DataProvider<T> dataProvider,
         final Sequencer sequencer,
@@ -80,25 +125,41 @@ public class EventPoller<T>
         final Sequence cursorSequence,
         final Sequence... gatingSequences)
     {
-        Sequence gatingSequence;
-        if (gatingSequences.length == 0)
-        {
-            gatingSequence = cursorSequence;
-        }
-        else if (gatingSequences.length == 1)
-        {
-            gatingSequence = gatingSequences[0];
-        }
-        else
-        {
-            gatingSequence = new FixedSequenceGroup(gatingSequences);
-        }
+        return new EventPoller<T>(dataProvider, sequencer, sequence, AbstractSequenceBarrier.dependentSequenceFor(cursorSequence, gatingSequences), false);
+    }
 
-        return new EventPoller<T>(dataProvider, sequencer, sequence, gatingSequence);
+    /**
+     * 创建不参与门控的轮询器。它的sequence不应加入RingBuffer的门控序列，因此再慢也不会阻塞生产者；
+     * 被生产者套圈时会跳到最新发布的序列，跳过的事件数量通过{@link #getLostEventCount()}和{@link EventLossAware}报告。
+     *
+     * @param <T>             事件类型
+     * @param dataProvider    数据提供者
+     * @param sequencer       生产者使用的sequencer
+     * @param sequence        轮询器自己的序列
+     * @param cursorSequence  生产者的游标序列
+     * @param gatingSequences 上游消费者的序列，为空时只依赖生产者
+     * @return 不参与门控的轮询器
+     */
+    public static <T> EventPoller<T> newLossyInstance(
+        final DataProvider<T> dataProvider,
+        final Sequencer sequencer,
+        final Sequence sequence,
+        final Sequence cursorSequence,
+        final Sequence... gatingSequences)
+    {
+        return new EventPoller<T>(dataProvider, sequencer, sequence, AbstractSequenceBarrier.dependentSequenceFor(cursorSequence, gatingSequences), true);
     }
 
     public Sequence getSequence()
     {
         return sequence;
     }
+
+    /**
+     * @return 不参与门控的轮询器因被套圈而跳过的事件数量，普通轮询器总是返回0
+     */
+    public long getLostEventCount()
+    {
+        return lostEventCount;
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 在所有消费者处理完事件之后重置事件，释放事件中引用的负载(例如byte[]、解析后的对象)，
+ * 避免它们在槽位被下一圈覆盖之前一直被预分配的事件引用。
+ *
+ * @param <T> 存储的事件以便在事件在交换或者并行协调期间进行共享
+ * @see com.lmax.disruptor.dsl.Disruptor#clearEventsWith(EventResetter)
+ */
+public interface EventResetter<T>
+{
+    /**
+     * 重置事件，通常是把引用类型的字段置为null
+     *
+     * @param event 已经被所有消费者处理完的事件
+     */
+    void reset(T event);
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.lmax.disruptor.util.Util;
+
+/**
+ * 使用fetch-and-add申请序列的多生产者序列器。
+ * <p>
+ * {@link MultiProducerSequencer#next(int)}先检查容量再用CAS更新游标，多个生产者竞争时CAS经常失败，需要重新读取游标、重新检查容量。
+ * 这里用{@link Sequence#getAndAdd(long)}无条件地申请序列，每个生产者一次原子操作就能得到自己的序列，
+ * 然后再单独等待消费者让出被申请的槽。发布和可用性检查与{@link MultiProducerSequencer}完全相同。
+ * </p>
+ * <p>
+ * 注意：申请的序列不能撤回，所以游标可能暂时超过消费者允许的位置，此时{@link #remainingCapacity()}可能为负数，
+ * 生产者在{@link #next(int)}中等待直到槽可用。{@link #tryNext(int)}仍然使用CAS，因为容量不足时不能先申请序列。
+ * </p>
+ */
+public final class FetchAndAddMultiProducerSequencer extends MultiProducerSequencer
+{
+    private final Sequence gatingSequenceCache = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+
+    /**
+     * 用选定的等待策略和缓冲区大小构造一个序列器
+     *
+     * @param bufferSize   将要排序的缓冲区大小
+     * @param waitStrategy 等待序列的等待策略
+     */
+    public FetchAndAddMultiProducerSequencer(int bufferSize, final WaitStrategy waitStrategy)
+    {
+        super(bufferSize, waitStrategy);
+    }
+
+    /**
+     * @see Sequencer#next(int)
+     */
+    @Override
+    public long next(int n)
+    {
+        if (n < 1 || n > bufferSize)
+        {
+            throw new IllegalArgumentException("n must be > 0 and < bufferSize");
+        }
+
+        // 无条件地申请序列, 不会因为其他生产者的竞争而重试
+        final long current = cursor.getAndAdd(n);
+        final long next = current + n;
+
+        // 申请之后再等待消费者让出槽
+        final long wrapPoint = next - bufferSize;
+        final long cachedGatingSequence = gatingSequenceCache.get();
+        if (wrapPoint > cachedGatingSequence || cachedGatingSequence > current)
+        {
+            long gatingSequence;
+            while (wrapPoint > (gatingSequence = Util.getMinimumSequence(gatingSequences, current)))
+            {
+                LockSupport.parkNanos(1L);
+            }
+
+            gatingSequenceCache.set(gatingSequence);
+        }
+
+        return next;
+    }
+}
@@ -20,9 +20,9 @@ import java.util.Arrays;
 import com.lmax.disruptor.util.Util;
 
 /**
- * 在单个序列后面隐藏一组序列
+ * 在单个序列后面隐藏一组序列，并记录上一次扫描得到的最小值，见{@link CachedMinimumSequenceGroup}
  */
-public final class FixedSequenceGroup extends Sequence
+public final class FixedSequenceGroup extends CachedMinimumSequenceGroup
 {
     private final Sequence[] sequences;
 
@@ -36,13 +36,13 @@ public final class FixedSequenceGroup extends Sequence
     }
 
     /**
-     * 获取组的最小序列值
+     * 重新扫描并获取组的最小序列值
      * @return 组的最小序列值
      */
     @Override
     public long get()
     {
-        return Util.getMinimumSequence(sequences);
+        return cacheMinimum(Util.getMinimumSequence(sequences));
     }
 
     @Override
@@ -86,4 +86,13 @@ public final class FixedSequenceGroup extends Sequence
     {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public long getAndAdd(long increment)
+    {
+        throw new UnsupportedOperationException();
+    }
 }
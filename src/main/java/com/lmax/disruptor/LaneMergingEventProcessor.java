@@ -0,0 +1,342 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 把{@link ShardedRingBuffer}中所有lane的事件合并到一个{@link EventHandler}中的事件处理器。
+ * <p>
+ * 默认按lane依次合并：每次轮询取走一条lane中所有已发布的事件作为一个批次，每条lane内部的顺序保持不变，lane之间没有顺序保证。
+ * 指定{@link OrderingKey}时按键合并，键例如生产者写入的时间戳或全局序列标签。每次轮询先取有待合并事件的lane中最新发布的事件的键的最小值作为水位，
+ * 然后在一个批次中按键的顺序合并所有键不大于水位的事件。各生产者的键单调递增时，之后发布的事件的键不会小于水位。
+ * 按键合并只比较当前已发布的事件，某条lane暂时没有事件时不会等待它，所以只有各生产者的键单调递增并且持续发布时才是严格的全局顺序。
+ * </p>
+ * <p>
+ * 传给{@link EventHandler#onEvent(Object, long, boolean)}的序列是合并后的序列，从0开始连续递增，
+ * {@link #getSequence()}返回最后一个处理完的合并序列。处理出错的事件交给{@link ExceptionHandler}后继续处理下一个事件。
+ * 没有事件时先自旋，再让出CPU，最后短暂地park，与{@link SleepingWaitStrategy}相同。
+ * </p>
+ *
+ * @param <T> 事件的类型
+ */
+public final class LaneMergingEventProcessor<T> implements EventProcessor
+{
+    /**
+     * 从事件中取得合并时排序用的键
+     *
+     * @param <T> 事件的类型
+     */
+    public interface OrderingKey<T>
+    {
+        /**
+         * @param event 事件
+         * @return 排序用的键，例如时间戳或全局序列标签
+         */
+        long keyOf(T event);
+    }
+
+    private static final int IDLE = 0;
+    private static final int HALTED = IDLE + 1;
+    private static final int RUNNING = HALTED + 1;
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long IDLE_PARK_NANOS = 100L;
+
+    private final AtomicInteger running = new AtomicInteger(IDLE);
+    private final RingBuffer<T>[] lanes;
+    private final Sequence[] laneSequences;
+    private final EventHandler<? super T> eventHandler;
+    private final OrderingKey<? super T> orderingKey;
+    // 以下数组只在按键合并时由合并线程使用: 每条lane本次轮询可以读到的序列、下一个要合并的序列和队头事件的键
+    private final long[] availableSequences;
+    private final long[] nextSequences;
+    private final long[] headKeys;
+    private final Sequence sequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+    private ExceptionHandler<? super T> exceptionHandler = new FatalExceptionHandler();
+
+    LaneMergingEventProcessor(
+        final RingBuffer<T>[] lanes,
+        final EventHandler<? super T> eventHandler,
+        final OrderingKey<? super T> orderingKey)
+    {
+        this.lanes = lanes;
+        this.eventHandler = eventHandler;
+        this.orderingKey = orderingKey;
+        this.laneSequences = new Sequence[lanes.length];
+        this.availableSequences = new long[lanes.length];
+        this.nextSequences = new long[lanes.length];
+        this.headKeys = new long[lanes.length];
+        for (int i = 0; i < lanes.length; i++)
+        {
+            laneSequences[i] = new Sequence(lanes[i].getCursor());
+            lanes[i].addGatingSequences(laneSequences[i]);
+        }
+    }
+
+    /**
+     * @return 最后一个处理完的合并序列
+     */
+    @Override
+    public Sequence getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * @param index lane的下标
+     * @return 第index条lane已经合并到的序列
+     */
+    public Sequence getLaneSequence(final int index)
+    {
+        return laneSequences[index];
+    }
+
+    @Override
+    public void halt()
+    {
+        running.set(HALTED);
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running.get() != IDLE;
+    }
+
+    /**
+     * 设置一个新的{@link ExceptionHandler}来处理合并过程中的异常
+     *
+     * @param exceptionHandler 替换现有的exceptionHandler
+     */
+    public void setExceptionHandler(final ExceptionHandler<? super T> exceptionHandler)
+    {
+        if (null == exceptionHandler)
+        {
+            throw new NullPointerException();
+        }
+
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    @Override
+    public void run()
+    {
+        if (running.compareAndSet(IDLE, RUNNING))
+        {
+            notifyStart();
+            try
+            {
+                long mergedSequence = sequence.get();
+                int idleCount = 0;
+                while (running.get() == RUNNING)
+                {
+                    final long processedSequence = null == orderingKey
+                        ? mergeLanes(mergedSequence) : mergeOrdered(mergedSequence);
+                    if (processedSequence != mergedSequence)
+                    {
+                        mergedSequence = processedSequence;
+                        idleCount = 0;
+                    }
+                    else
+                    {
+                        idleCount = idle(idleCount);
+                    }
+                }
+            }
+            finally
+            {
+                notifyShutdown();
+                running.set(IDLE);
+            }
+        }
+        else
+        {
+            if (running.get() == RUNNING)
+            {
+                throw new IllegalStateException("Thread is already running");
+            }
+            else
+            {
+                notifyStart();
+                notifyShutdown();
+            }
+        }
+    }
+
+    /**
+     * 依次取走每条lane中所有已发布的事件
+     */
+    private long mergeLanes(long mergedSequence)
+    {
+        for (int i = 0; i < lanes.length; i++)
+        {
+            final RingBuffer<T> lane = lanes[i];
+            final long availableSequence = lane.getCursor();
+            long nextSequence = laneSequences[i].get() + 1L;
+            if (nextSequence > availableSequence)
+            {
+                continue;
+            }
+
+            while (nextSequence <= availableSequence)
+            {
+                mergedSequence++;
+                onEvent(lane.get(nextSequence), mergedSequence, nextSequence == availableSequence);
+                nextSequence++;
+            }
+            laneSequences[i].set(availableSequence);
+            sequence.set(mergedSequence);
+        }
+
+        return mergedSequence;
+    }
+
+    /**
+     * 按键的顺序合并所有键不大于水位的事件
+     */
+    private long mergeOrdered(long mergedSequence)
+    {
+        final long watermark = readLanes();
+        int lane = nextLane(watermark);
+        while (lane >= 0)
+        {
+            final long laneSequence = nextSequences[lane]++;
+            if (laneSequence < availableSequences[lane])
+            {
+                headKeys[lane] = orderingKey.keyOf(lanes[lane].get(laneSequence + 1L));
+            }
+
+            final int followingLane = nextLane(watermark);
+            mergedSequence++;
+            onEvent(lanes[lane].get(laneSequence), mergedSequence, followingLane < 0);
+            lane = followingLane;
+        }
+
+        for (int i = 0; i < lanes.length; i++)
+        {
+            laneSequences[i].set(nextSequences[i] - 1L);
+        }
+        sequence.set(mergedSequence);
+
+        return mergedSequence;
+    }
+
+    /**
+     * 读取每条lane的游标和队头事件的键，返回本次轮询的水位。
+     * 键不单调递增时水位可能小于所有队头的键，此时至少合并键最小的队头事件。
+     */
+    private long readLanes()
+    {
+        long lowestLatestKey = Long.MAX_VALUE;
+        long lowestHeadKey = Long.MAX_VALUE;
+        for (int i = 0; i < lanes.length; i++)
+        {
+            final RingBuffer<T> lane = lanes[i];
+            final long availableSequence = lane.getCursor();
+            final long nextSequence = laneSequences[i].get() + 1L;
+            availableSequences[i] = availableSequence;
+            nextSequences[i] = nextSequence;
+            if (nextSequence <= availableSequence)
+            {
+                headKeys[i] = orderingKey.keyOf(lane.get(nextSequence));
+                lowestHeadKey = Math.min(lowestHeadKey, headKeys[i]);
+                lowestLatestKey = Math.min(lowestLatestKey, orderingKey.keyOf(lane.get(availableSequence)));
+            }
+        }
+
+        return Math.max(lowestLatestKey, lowestHeadKey);
+    }
+
+    /**
+     * @return 队头事件的键最小并且不大于水位的lane，没有时返回-1
+     */
+    private int nextLane(final long watermark)
+    {
+        int chosenLane = -1;
+        long chosenKey = watermark;
+        for (int i = 0; i < lanes.length; i++)
+        {
+            if (nextSequences[i] <= availableSequences[i] && headKeys[i] <= watermark && (chosenLane < 0 || headKeys[i] < chosenKey))
+            {
+                chosenLane = i;
+                chosenKey = headKeys[i];
+            }
+        }
+        return chosenLane;
+    }
+
+    private void onEvent(final T event, final long mergedSequence, final boolean endOfBatch)
+    {
+        try
+        {
+            eventHandler.onEvent(event, mergedSequence, endOfBatch);
+        }
+        catch (final Throwable ex)
+        {
+            exceptionHandler.handleEventException(ex, mergedSequence, event);
+        }
+    }
+
+    private static int idle(final int idleCount)
+    {
+        if (idleCount < SPIN_TRIES)
+        {
+            return idleCount + 1;
+        }
+
+        if (idleCount < SPIN_TRIES + YIELD_TRIES)
+        {
+            Thread.yield();
+            return idleCount + 1;
+        }
+
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+        return idleCount;
+    }
+
+    private void notifyStart()
+    {
+        if (eventHandler instanceof LifecycleAware)
+        {
+            try
+            {
+                ((LifecycleAware) eventHandler).onStart();
+            }
+            catch (final Throwable ex)
+            {
+                exceptionHandler.handleOnStartException(ex);
+            }
+        }
+    }
+
+    private void notifyShutdown()
+    {
+        if (eventHandler instanceof LifecycleAware)
+        {
+            try
+            {
+                ((LifecycleAware) eventHandler).onShutdown();
+            }
+            catch (final Throwable ex)
+            {
+                exceptionHandler.handleOnShutdownException(ex);
+            }
+        }
+    }
+}
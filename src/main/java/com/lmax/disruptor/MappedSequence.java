@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.nio.ByteBuffer;
+
+import sun.misc.Unsafe;
+
+import com.lmax.disruptor.util.Util;
+
+/**
+ * 值存放在直接内存(通常是多个进程共享的{@link java.nio.MappedByteBuffer})中的{@link Sequence}，
+ * 使同一台机器上的多个JVM可以通过同样的序列算法协调。
+ * <p>
+ * 与{@link Sequence}的LhsPadding/RhsPadding一样，调用者应在值的前后各留出至少56个字节，避免伪共享，
+ * 见{@link SharedMemoryRingBuffer}中的布局。
+ * </p>
+ */
+public final class MappedSequence extends Sequence
+{
+    private static final Unsafe UNSAFE = Util.getUnsafe();
+
+    private final ByteBuffer buffer;
+    private final long address;
+
+    /**
+     * 在buffer的offset处创建序列，不修改已有的值。
+     *
+     * @param buffer 直接内存的缓冲区
+     * @param offset 值在buffer中的偏移量，必须按8字节对齐
+     * @throws IllegalArgumentException 如果buffer不是直接内存的，或者offset越界、未对齐
+     */
+    public MappedSequence(final ByteBuffer buffer, final int offset)
+    {
+        if (offset < 0 || offset + 8 > buffer.capacity() || (offset & 7) != 0)
+        {
+            throw new IllegalArgumentException("offset must be 8 byte aligned and within the buffer: " + offset);
+        }
+        // 保留对buffer的引用，防止映射的内存在序列仍在使用时被回收
+        this.buffer = buffer;
+        this.address = Util.getAddressFromDirectByteBuffer(buffer) + offset;
+    }
+
+    @Override
+    public long get()
+    {
+        return UNSAFE.getLongVolatile(null, address);
+    }
+
+    @Override
+    public void set(final long value)
+    {
+        UNSAFE.putOrderedLong(null, address, value);
+    }
+
+    @Override
+    public void setVolatile(final long value)
+    {
+        UNSAFE.putLongVolatile(null, address, value);
+    }
+
+    @Override
+    public boolean compareAndSet(final long expectedValue, final long newValue)
+    {
+        return UNSAFE.compareAndSwapLong(null, address, expectedValue, newValue);
+    }
+
+    @Override
+    public long getAndAdd(final long increment)
+    {
+        return getAndAdd(null, address, increment);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MappedSequence{value=" + get() + ", capacity=" + buffer.capacity() + "}";
+    }
+}
@@ -29,9 +29,9 @@ import com.lmax.disruptor.util.Util;
  * 以确定可读取的最高可用序列, 然后应该使用{@link Sequencer#getHighestPublishedSequence(long, long)}
  * 
  *	MultiProducerSequencer内部多了一个availableBuffer，是一个int型的数组，size大小和RingBuffer的Size一样大，
- *	用来追踪Ringbuffer每个槽的状态，构造MultiProducerSequencer的时候会进行初始化，availableBuffer数组中的每个元素会被初始化成-1。
+ *	用来追踪Ringbuffer每个槽的状态，构造MultiProducerSequencer的时候会进行初始化，availableBuffer数组中的每个元素会被初始化成序列-1对应的标志。
  */
-public final class MultiProducerSequencer extends AbstractSequencer
+public class MultiProducerSequencer extends AbstractSequencer
 {
 	// 获取unsafe
     private static final Unsafe UNSAFE = Util.getUnsafe();
@@ -39,12 +39,34 @@ public final class MultiProducerSequencer extends AbstractSequencer
     private static final long BASE = UNSAFE.arrayBaseOffset(int[].class);
     // 获取元素的大小，也就是int的大小4个字节
     private static final long SCALE = UNSAFE.arrayIndexScale(int[].class);
+    private static final long RANGE_BASE = UNSAFE.arrayBaseOffset(long[].class);
+    private static final long RANGE_SCALE = UNSAFE.arrayIndexScale(long[].class);
+    private static final long RANGE_ENDS_OFFSET;
+    // 可用标志的最高位表示这个槽是批量发布的第一个槽，其余位是圈数
+    private static final int BATCH_START = Integer.MIN_VALUE;
+
+    static
+    {
+        try
+        {
+            RANGE_ENDS_OFFSET = UNSAFE.objectFieldOffset(MultiProducerSequencer.class.getDeclaredField("rangeEnds"));
+        }
+        catch (final Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
     
     // gatingSequenceCache是gatingSequence。用来标识事件处理者的序列
     private final Sequence gatingSequenceCache = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
 
-    // availableBuffer是用来记录每一个ringbuffer槽的状态。
-    private final int[] availableBuffer;
+    // availableBuffer是用来记录每一个ringbuffer槽的状态。通常是一个int[]，在共享内存中时为null，此时偏移量为内存地址
+    private final Object availableBase;
+    private final long availableOffset;
+    // 使用外部availableBuffer时为false，标志中不记录批次，外部初始化的-1也不会被当作批次
+    private final boolean publishRanges;
+    // rangeEnds记录批量发布时第一个槽对应的批次末尾序列，只在标志带有BATCH_START时读取。第一次批量发布时才创建
+    private volatile long[] rangeEnds;
     private final int indexMask;
     // 转了几圈
     private final int indexShift;
@@ -60,13 +82,36 @@ public final class MultiProducerSequencer extends AbstractSequencer
     	// 初始化父类
         super(bufferSize, waitStrategy);
         // 初始化availableBuffer
-        availableBuffer = new int[bufferSize];
+        availableBase = new int[bufferSize];
+        availableOffset = BASE;
+        publishRanges = true;
         indexMask = bufferSize - 1;
         indexShift = Util.log2(bufferSize);
         // 这个逻辑是: 计算availableBuffer中每个元素的偏移量; 定位数组每个值的地址就是(index * SCALE) + BASE
         initialiseAvailableBuffer();
     }
 
+	/**
+	 * 使用外部提供的游标和availableBuffer构造，例如存放在共享内存中的游标和标志，使多个进程可以按同样的算法协调。
+	 * availableBuffer不会被初始化，调用者需要在第一次使用之前把每个标志设置为-1。
+	 *
+	 * @param bufferSize      将要排序的缓冲区大小
+	 * @param waitStrategy    等待序列的等待策略
+	 * @param cursor          生产者的游标
+	 * @param availableBase   Unsafe访问availableBuffer用的对象，按内存地址访问时为null
+	 * @param availableOffset availableBuffer第一个标志的偏移量或内存地址，每个标志占4个字节
+	 */
+    MultiProducerSequencer(
+        int bufferSize, final WaitStrategy waitStrategy, Sequence cursor, Object availableBase, long availableOffset)
+    {
+        super(bufferSize, waitStrategy, cursor);
+        this.availableBase = availableBase;
+        this.availableOffset = availableOffset;
+        this.publishRanges = false;
+        indexMask = bufferSize - 1;
+        indexShift = Util.log2(bufferSize);
+    }
+
     /**
      * 逻辑和前面SingleProducerSequencer内部一样, 区别是这里使用了cursor.get(), 里面获取的是一个volatile的value值
      * @see Sequencer#hasAvailableCapacity(int)
@@ -221,12 +266,14 @@ public final class MultiProducerSequencer extends AbstractSequencer
 
     private void initialiseAvailableBuffer()
     {
-        for (int i = availableBuffer.length - 1; i != 0; i--)
+        // 与-1相同，但不带BATCH_START
+        final int initialFlag = calculateAvailabilityFlag(Sequencer.INITIAL_CURSOR_VALUE);
+        for (int i = bufferSize - 1; i != 0; i--)
         {
-            setAvailableBufferValue(i, -1);
+            setAvailableBufferValue(i, initialFlag);
         }
 
-        setAvailableBufferValue(0, -1);
+        setAvailableBufferValue(0, initialFlag);
     }
 
 	/**
@@ -244,18 +291,49 @@ public final class MultiProducerSequencer extends AbstractSequencer
     }
 
     /**
+     * 批量发布时在rangeEnds中记录批次的末尾序列，并在第一个槽的标志中加上BATCH_START，
+     * {@link #getHighestPublishedSequence(long, long)}读到这个标志之后直接跳到批次末尾，不需要逐个检查批次中的槽。
+     * <p>
+     * 其余槽的标志仍然会逐个设置，因为依赖上游消费者的消费者可能从批次中间开始扫描，{@link #isAvailable(long)}也要对每个槽成立。
+     * 第一个槽的标志最后设置，消费者看到它可用时，批次中所有的标志和rangeEnds都已经可见。
+     * </p>
+     *
      * @see Sequencer#publish(long, long)
      */
     @Override
     public void publish(long lo, long hi)
     {
-        for (long l = lo; l <= hi; l++)
+        if (!publishRanges || lo == hi)
+        {
+            for (long l = lo; l <= hi; l++)
+            {
+                setAvailable(l);
+            }
+        }
+        else
         {
-            setAvailable(l);
+            for (long l = hi; l > lo; l--)
+            {
+                setAvailable(l);
+            }
+            UNSAFE.putOrderedLong(rangeEnds(), rangeEndAddress(lo), hi);
+            setAvailableBufferValue(calculateIndex(lo), calculateAvailabilityFlag(lo) | BATCH_START);
         }
         waitStrategy.signalAllWhenBlocking();
     }
 
+    private long[] rangeEnds()
+    {
+        final long[] ends = rangeEnds;
+        if (null != ends)
+        {
+            return ends;
+        }
+
+        UNSAFE.compareAndSwapObject(this, RANGE_ENDS_OFFSET, null, new long[bufferSize]);
+        return rangeEnds;
+    }
+
 	/**
 	 * 以下方法适用于availableBuffer标志
 	 * <p>
@@ -274,8 +352,8 @@ public final class MultiProducerSequencer extends AbstractSequencer
 
     private void setAvailableBufferValue(int index, int flag)
     {
-        long bufferAddress = (index * SCALE) + BASE;
-        UNSAFE.putOrderedInt(availableBuffer, bufferAddress, flag);
+        long bufferAddress = (index * SCALE) + availableOffset;
+        UNSAFE.putOrderedInt(availableBase, bufferAddress, flag);
     }
 
     /**
@@ -288,28 +366,47 @@ public final class MultiProducerSequencer extends AbstractSequencer
     {
         int index = calculateIndex(sequence);
         int flag = calculateAvailabilityFlag(sequence);
-        long bufferAddress = (index * SCALE) + BASE;
-        return UNSAFE.getIntVolatile(availableBuffer, bufferAddress) == flag;
+        return (getAvailableBufferValue(index) & ~BATCH_START) == flag;
     }
 
+    private int getAvailableBufferValue(int index)
+    {
+        long bufferAddress = (index * SCALE) + availableOffset;
+        return UNSAFE.getIntVolatile(availableBase, bufferAddress);
+    }
+
+    /**
+     * 逐个检查槽的可用标志，只有标志带有BATCH_START时才读取rangeEnds并跳到批次末尾，单个发布的槽不需要额外的读取。
+     */
     @Override
     public long getHighestPublishedSequence(long lowerBound, long availableSequence)
     {
         for (long sequence = lowerBound; sequence <= availableSequence; sequence++)
         {
-            if (!isAvailable(sequence))
+            final int value = getAvailableBufferValue(calculateIndex(sequence));
+            if ((value & ~BATCH_START) != calculateAvailabilityFlag(sequence))
             {
                 return sequence - 1;
             }
+
+            if (value < 0 && publishRanges)
+            {
+                sequence = UNSAFE.getLongVolatile(rangeEnds, rangeEndAddress(sequence));
+            }
         }
 
         return availableSequence;
     }
 
-    // 计算数组中的存储的数据
+    private long rangeEndAddress(final long sequence)
+    {
+        return (calculateIndex(sequence) * RANGE_SCALE) + RANGE_BASE;
+    }
+
+    // 计算数组中的存储的数据，最高位留给BATCH_START。槽中的旧标志只会是上一圈的，去掉最高位之后仍然不会相同
     private int calculateAvailabilityFlag(final long sequence)
     {
-        return (int) (sequence >>> indexShift);
+        return (int) (sequence >>> indexShift) & ~BATCH_START;
     }
 
     // 计算数组中位置 sequence&(buffsize-1)
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 定义RingBuffer预分配事件的方式
+ */
+public enum PreallocationMode
+{
+	/**
+	 * 在创建RingBuffer的线程上依次创建所有事件
+	 */
+    SEQUENTIAL,
+
+	/**
+	 * 使用fork-join把槽位拆分成多段并行创建事件，缩短大容量RingBuffer的创建时间
+	 */
+    PARALLEL,
+
+	/**
+	 * 不预先创建事件，由第一次访问槽位的线程(通常是生产者)创建，事件因此分配在访问它的线程所在的NUMA节点上。
+	 * 第一次访问之后的开销与预分配相同
+	 */
+    LAZY
+}
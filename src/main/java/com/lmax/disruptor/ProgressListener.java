@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * {@link BatchEventProcessor}每次更新自己的序列之后，在处理器线程上通知注册的监听器，
+ * 等待消费者处理到某个序列的一方因此不需要反复读取序列。
+ *
+ * @see BatchEventProcessor#addProgressListener(ProgressListener)
+ */
+public interface ProgressListener
+{
+    /**
+     * 处理器的序列已经更新。实现应当尽快返回，不能阻塞处理器线程。
+     *
+     * @param sequence 处理器当前的序列
+     */
+    void onProgress(long sequence);
+
+    /**
+     * 处理器的线程已经退出主循环，{@link BatchEventProcessor#isRunning()}已经返回false。
+     *
+     * @param sequence 处理器最终的序列
+     */
+    void onStop(long sequence);
+}
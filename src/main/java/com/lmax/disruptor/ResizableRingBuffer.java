@@ -0,0 +1,375 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 可以在静止点调整容量的单生产者环形缓冲区，用于在持续背压时扩容、空闲时缩容。
+ * <p>
+ * 序列由一个按最大容量创建的{@link SingleProducerSequencer}管理，栅栏、轮询器和门控序列都和普通的{@link RingBuffer}一样工作；
+ * 当前容量由这里在申请序列时额外限制。槽位保存在不可变的一代entries中，调整容量时整体替换成新的一代，
+ * 因此{@link RingBuffer}保持固定容量，热点路径上的字段仍然是final的。
+ * </p>
+ * <p>
+ * 这个类是线程不安全的，申请、发布和调整容量都只能由唯一的生产者线程调用。
+ * </p>
+ *
+ * @param <E> 存储的事件类型
+ * @see RingBufferResizer
+ */
+public final class ResizableRingBuffer<E> implements Cursored, EventSequencer<E>
+{
+    private final EventFactory<E> eventFactory;
+    private final SingleProducerSequencer sequencer;
+    private final int maxBufferSize;
+    // 当前一代的entries，生产者在发布之前替换，消费者读到游标之后就能看到新的一代
+    private volatile Generation generation;
+    // 生产者申请到的最大序列，只由生产者访问
+    private long claimedSequence = Sequencer.INITIAL_CURSOR_VALUE;
+
+    ResizableRingBuffer(
+        final EventFactory<E> eventFactory,
+        final int bufferSize,
+        final int maxBufferSize,
+        final WaitStrategy waitStrategy)
+    {
+        checkBufferSize(bufferSize);
+        if (maxBufferSize < bufferSize)
+        {
+            throw new IllegalArgumentException("maxBufferSize must not be less than bufferSize");
+        }
+
+        this.eventFactory = eventFactory;
+        this.sequencer = new SingleProducerSequencer(maxBufferSize, waitStrategy);
+        this.maxBufferSize = maxBufferSize;
+        this.generation = new Generation(newEntries(null, bufferSize));
+    }
+
+	/**
+	 * 创建可以调整容量的单生产者环形缓冲区。
+	 *
+	 * @param eventFactory  用于创建事件
+	 * @param bufferSize    初始容量，必须是2的幂
+	 * @param maxBufferSize 可以扩容到的最大容量，必须是2的幂
+	 * @param waitStrategy  消费者等待生产者时使用的等待策略
+	 * @param <E>           存储的事件类型
+	 * @return 新的环形缓冲区
+	 * @throws IllegalArgumentException 如果容量不是2的幂，或者bufferSize大于maxBufferSize
+	 */
+    public static <E> ResizableRingBuffer<E> create(
+        final EventFactory<E> eventFactory,
+        final int bufferSize,
+        final int maxBufferSize,
+        final WaitStrategy waitStrategy)
+    {
+        return new ResizableRingBuffer<>(eventFactory, bufferSize, maxBufferSize, waitStrategy);
+    }
+
+    @Override
+    public E get(final long sequence)
+    {
+        return generation.get(sequence);
+    }
+
+    @Override
+    public int getBufferSize()
+    {
+        return generation.bufferSize;
+    }
+
+	/**
+	 * @return 可以扩容到的最大容量
+	 */
+    public int getMaxBufferSize()
+    {
+        return maxBufferSize;
+    }
+
+    @Override
+    public boolean hasAvailableCapacity(final int requiredCapacity)
+    {
+        return claimedSequence + requiredCapacity - generation.bufferSize <= sequencer.getMinimumSequence();
+    }
+
+    @Override
+    public long remainingCapacity()
+    {
+        return generation.bufferSize - (claimedSequence - sequencer.getMinimumSequence());
+    }
+
+    @Override
+    public long next()
+    {
+        return next(1);
+    }
+
+    @Override
+    public long next(final int n)
+    {
+        final int bufferSize = generation.bufferSize;
+        if (n < 1 || n > bufferSize)
+        {
+            throw new IllegalArgumentException("n must be > 0 and < bufferSize");
+        }
+
+        // sequencer按最大容量检查绕圈，这里先按当前容量等待消费者
+        final long wrapPoint = claimedSequence + n - bufferSize;
+        while (wrapPoint > sequencer.getMinimumSequence())
+        {
+            LockSupport.parkNanos(1L);
+        }
+
+        claimedSequence = sequencer.next(n);
+        return claimedSequence;
+    }
+
+    @Override
+    public long tryNext() throws InsufficientCapacityException
+    {
+        return tryNext(1);
+    }
+
+    @Override
+    public long tryNext(final int n) throws InsufficientCapacityException
+    {
+        if (n < 1)
+        {
+            throw new IllegalArgumentException("n must be > 0");
+        }
+        if (!hasAvailableCapacity(n))
+        {
+            throw InsufficientCapacityException.INSTANCE;
+        }
+
+        claimedSequence = sequencer.tryNext(n);
+        return claimedSequence;
+    }
+
+    @Override
+    public void publish(final long sequence)
+    {
+        sequencer.publish(sequence);
+    }
+
+    @Override
+    public void publish(final long lo, final long hi)
+    {
+        sequencer.publish(lo, hi);
+    }
+
+	/**
+	 * 申请一个序列，用translator填充事件并发布。
+	 *
+	 * @param translator 填充事件
+	 */
+    public void publishEvent(final EventTranslator<E> translator)
+    {
+        final long sequence = next();
+        try
+        {
+            translator.translateTo(get(sequence), sequence);
+        }
+        finally
+        {
+            sequencer.publish(sequence);
+        }
+    }
+
+	/**
+	 * 申请一个序列，用translator和参数填充事件并发布。
+	 *
+	 * @param translator 填充事件
+	 * @param arg0       传给translator的参数
+	 * @param <A>        参数类型
+	 */
+    public <A> void publishEvent(final EventTranslatorOneArg<E, A> translator, final A arg0)
+    {
+        final long sequence = next();
+        try
+        {
+            translator.translateTo(get(sequence), sequence, arg0);
+        }
+        finally
+        {
+            sequencer.publish(sequence);
+        }
+    }
+
+	/**
+	 * 有足够的容量时申请一个序列，用translator和参数填充事件并发布。
+	 *
+	 * @param translator 填充事件
+	 * @param arg0       传给translator的参数
+	 * @param <A>        参数类型
+	 * @return 如果没有足够的容量返回false
+	 */
+    public <A> boolean tryPublishEvent(final EventTranslatorOneArg<E, A> translator, final A arg0)
+    {
+        try
+        {
+            final long sequence = tryNext();
+            try
+            {
+                translator.translateTo(get(sequence), sequence, arg0);
+            }
+            finally
+            {
+                sequencer.publish(sequence);
+            }
+            return true;
+        }
+        catch (final InsufficientCapacityException e)
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public long getCursor()
+    {
+        return sequencer.getCursor();
+    }
+
+	/**
+	 * @param gatingSequences 要加入门控的消费者序列
+	 * @see Sequencer#addGatingSequences(Sequence...)
+	 */
+    public void addGatingSequences(final Sequence... gatingSequences)
+    {
+        sequencer.addGatingSequences(gatingSequences);
+    }
+
+	/**
+	 * @param sequence 要移除的消费者序列
+	 * @return 如果找到并移除了序列返回true
+	 * @see Sequencer#removeGatingSequence(Sequence)
+	 */
+    public boolean removeGatingSequence(final Sequence sequence)
+    {
+        return sequencer.removeGatingSequence(sequence);
+    }
+
+	/**
+	 * @param sequencesToTrack 要跟踪的上游序列
+	 * @return 消费者使用的序列栅栏
+	 * @see Sequencer#newBarrier(Sequence...)
+	 */
+    public SequenceBarrier newBarrier(final Sequence... sequencesToTrack)
+    {
+        return sequencer.newBarrier(sequencesToTrack);
+    }
+
+	/**
+	 * 在静止点把环形缓冲区迁移到新的容量。
+	 * <p>
+	 * 新一代的entries先在旁边创建好，旧的事件对象按槽位顺序复用，增加的槽位由eventFactory创建；
+	 * 然后等待所有消费者处理完已发布的事件，此时没有消费者会再读取旧的槽位，再整体替换成新的一代。
+	 * 序列号保持连续，停顿时间大致等于消费者处理完当前积压事件的时间。
+	 * 消费者在超时之前没有追上时放弃调整，容量保持不变。
+	 * </p>
+	 * <p>
+	 * 只能由生产者线程在两次发布之间调用(不能有已申请未发布的序列)。不参与门控的消费者在
+	 * {@link BatchEventProcessor#setLossy(Cursored, int)}时传入的容量不会随之改变。
+	 * </p>
+	 *
+	 * @param newBufferSize 新的容量，必须是2的幂且不大于{@link #getMaxBufferSize()}
+	 * @param timeout       等待消费者追上游标的时间
+	 * @param unit          timeout的单位
+	 * @throws TimeoutException         如果消费者在超时之前没有处理完已发布的事件
+	 * @throws IllegalArgumentException 如果newBufferSize不是2的幂或者大于最大容量
+	 * @throws IllegalStateException    如果生产者有已申请未发布的序列
+	 */
+    public void resize(final int newBufferSize, final long timeout, final TimeUnit unit) throws TimeoutException
+    {
+        checkBufferSize(newBufferSize);
+        if (newBufferSize > maxBufferSize)
+        {
+            throw new IllegalArgumentException("bufferSize must not be greater than maxBufferSize");
+        }
+
+        final long cursor = sequencer.getCursor();
+        if (claimedSequence != cursor)
+        {
+            throw new IllegalStateException("Cannot resize while sequences are claimed but not published");
+        }
+
+        final Generation newGeneration = new Generation(newEntries(generation, newBufferSize));
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (sequencer.getMinimumSequence() < cursor)
+        {
+            if (System.nanoTime() - deadline >= 0)
+            {
+                throw TimeoutException.INSTANCE;
+            }
+            LockSupport.parkNanos(1L);
+        }
+
+        generation = newGeneration;
+    }
+
+    private Object[] newEntries(final Generation current, final int bufferSize)
+    {
+        final Object[] entries = new Object[bufferSize];
+        final int reused = null == current ? 0 : Math.min(current.bufferSize, bufferSize);
+        if (reused > 0)
+        {
+            System.arraycopy(current.entries, 0, entries, 0, reused);
+        }
+        for (int i = reused; i < bufferSize; i++)
+        {
+            entries[i] = eventFactory.newInstance();
+        }
+        return entries;
+    }
+
+    private static void checkBufferSize(final int bufferSize)
+    {
+        if (bufferSize < 1)
+        {
+            throw new IllegalArgumentException("bufferSize must not be less than 1");
+        }
+        if (Integer.bitCount(bufferSize) != 1)
+        {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+    }
+
+	/**
+	 * 一代entries，创建之后不再修改
+	 */
+    private final class Generation
+    {
+        private final Object[] entries;
+        private final int bufferSize;
+        private final int indexMask;
+
+        Generation(final Object[] entries)
+        {
+            this.entries = entries;
+            this.bufferSize = entries.length;
+            this.indexMask = entries.length - 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        E get(final long sequence)
+        {
+            return (E) entries[(int) sequence & indexMask];
+        }
+    }
+}
@@ -16,6 +16,9 @@
 package com.lmax.disruptor;
 
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import sun.misc.Unsafe;
 
 import com.lmax.disruptor.dsl.ProducerType;
@@ -75,12 +78,19 @@ abstract class RingBufferFields<E> extends RingBufferPad
     protected final int bufferSize;
     // sequencer=SingleProducerSequencer或者MultiProducerSequencer的引用
     protected final Sequencer sequencer;
+    // 创建事件的工厂，懒加载模式下在第一次访问槽位时使用，值模式(value ring)下为null
+    private final EventFactory<E> eventFactory;
+    // 是否在第一次访问槽位时才创建事件
+    private final boolean lazy;
 
     RingBufferFields(
         EventFactory<E> eventFactory,
-        Sequencer sequencer)
+        Sequencer sequencer,
+        PreallocationMode preallocationMode)
     {
         this.sequencer = sequencer;
+        this.eventFactory = eventFactory;
+        this.lazy = eventFactory != null && preallocationMode == PreallocationMode.LAZY;
         this.bufferSize = sequencer.getBufferSize();
 
         if (bufferSize < 1)
@@ -94,8 +104,23 @@ abstract class RingBufferFields<E> extends RingBufferPad
 
         this.indexMask = bufferSize - 1;
         this.entries = new Object[sequencer.getBufferSize() + 2 * BUFFER_PAD];
-        // 最后要填充事件
-        fill(eventFactory);
+        // 最后要填充事件，值模式下槽位保持为null，由生产者发布时写入引用
+        if (eventFactory != null)
+        {
+            switch (preallocationMode)
+            {
+                case SEQUENTIAL:
+                    fill(eventFactory);
+                    break;
+                case PARALLEL:
+                    fillInParallel(eventFactory);
+                    break;
+                case LAZY:
+                    break;
+                default:
+                    throw new IllegalStateException(preallocationMode.toString());
+            }
+        }
     }
 
 	/**
@@ -111,6 +136,68 @@ abstract class RingBufferFields<E> extends RingBufferPad
         }
     }
 
+	/**
+	 * 使用fork-join并行创建事件，join返回之后所有事件对创建RingBuffer的线程可见。
+	 */
+    private void fillInParallel(EventFactory<E> eventFactory)
+    {
+        final ForkJoinPool pool = new ForkJoinPool();
+        try
+        {
+            pool.invoke(new FillTask<E>(entries, eventFactory, BUFFER_PAD, BUFFER_PAD + bufferSize));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+	/**
+	 * 第一次访问槽位时创建事件。多个线程同时访问同一个空槽位时只有一个事件会被使用。
+	 */
+    @SuppressWarnings("unchecked")
+    private E createLazily(long sequence)
+    {
+        final long offset = REF_ARRAY_BASE + ((sequence & indexMask) << REF_ELEMENT_SHIFT);
+        final E event = eventFactory.newInstance();
+        if (UNSAFE.compareAndSwapObject(entries, offset, null, event))
+        {
+            return event;
+        }
+        return (E) UNSAFE.getObjectVolatile(entries, offset);
+    }
+
+	/**
+	 * 是否是值模式：槽位不预分配事件，而是由生产者按引用写入不可变的事件对象。
+	 *
+	 * @return 如果是通过{@link RingBuffer#createValueRing(com.lmax.disruptor.dsl.ProducerType, int, WaitStrategy)}创建的则返回true
+	 */
+    public final boolean isValueRing()
+    {
+        return eventFactory == null;
+    }
+
+	/**
+	 * 把引用写入sequence对应的槽位。写入之后的发布操作保证消费者能看到这个引用。
+	 */
+    protected final void putElement(long sequence, E value)
+    {
+        UNSAFE.putObject(entries, REF_ARRAY_BASE + ((sequence & indexMask) << REF_ELEMENT_SHIFT), value);
+    }
+
+	/**
+	 * 获取sequence对应的事件，延迟预分配时槽位为空则创建事件
+	 */
+    protected final E eventAt(long sequence)
+    {
+        final E event = elementAt(sequence);
+        if (event == null && lazy)
+        {
+            return createLazily(sequence);
+        }
+        return event;
+    }
+
     @SuppressWarnings("unchecked")
     protected final E elementAt(long sequence)
     {
@@ -121,6 +208,49 @@ abstract class RingBufferFields<E> extends RingBufferPad
     }
 }
 
+/**
+ * 并行填充entries的fork-join任务，槽位数量超过阈值时对半拆分
+ *
+ * @param <E> RingBuffer中的事件类
+ */
+final class FillTask<E> extends RecursiveAction
+{
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 4096;
+
+    private final Object[] entries;
+    private final EventFactory<E> eventFactory;
+    private final int from;
+    private final int to;
+
+    FillTask(final Object[] entries, final EventFactory<E> eventFactory, final int from, final int to)
+    {
+        this.entries = entries;
+        this.eventFactory = eventFactory;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute()
+    {
+        if (to - from <= THRESHOLD)
+        {
+            for (int i = from; i < to; i++)
+            {
+                entries[i] = eventFactory.newInstance();
+            }
+        }
+        else
+        {
+            final int middle = (from + to) >>> 1;
+            invokeAll(
+                new FillTask<E>(entries, eventFactory, from, middle),
+                new FillTask<E>(entries, eventFactory, middle, to));
+        }
+    }
+}
+
 /**
  * 内部用数组来实现, 同时有保存数组长度的域bufferSize和下标掩码indexMask, 还有一个sequencer
  * Disruptor最主要的组件，负责存储和更新事件对象。
@@ -146,7 +276,23 @@ public final class RingBuffer<E> extends RingBufferFields<E> implements Cursored
         EventFactory<E> eventFactory,
         Sequencer sequencer)
     {
-        super(eventFactory, sequencer);
+        this(eventFactory, sequencer, PreallocationMode.SEQUENTIAL);
+    }
+
+	/**
+	 * 使用完整选项集构造RingBuffer。
+	 *
+	 * @param eventFactory      用于填充RingBuffer的newInstance entries条目
+	 * @param sequencer         用于处理通过RingBuffer移动的事件的顺序
+	 * @param preallocationMode 预分配事件的方式
+	 * @throws IllegalArgumentException 如果bufferSize小于1或不是2的幂
+	 */
+    RingBuffer(
+        EventFactory<E> eventFactory,
+        Sequencer sequencer,
+        PreallocationMode preallocationMode)
+    {
+        super(eventFactory, sequencer, preallocationMode);
     }
 
     /**
@@ -185,6 +331,25 @@ public final class RingBuffer<E> extends RingBufferFields<E> implements Cursored
         return createMultiProducer(factory, bufferSize, new BlockingWaitStrategy());
     }
 
+    /**
+	 * 创建使用fetch-and-add申请序列的多生产者RingBuffer，适用于生产者之间竞争激烈的场景。
+	 *
+	 * @param              <E> RingBuffer中的事件类
+	 * @param factory      用于在RingBuffer内创建事件
+	 * @param bufferSize   在RingBuffer中创建的元素数量
+	 * @param waitStrategy 用于确定如何等待新元素变得可用
+	 * @return 构造的RingBuffer
+	 * @throws IllegalArgumentException 如果bufferSize小于1或不是2的幂
+	 * @see FetchAndAddMultiProducerSequencer
+	 */
+    public static <E> RingBuffer<E> createFetchAndAddMultiProducer(
+        EventFactory<E> factory,
+        int bufferSize,
+        WaitStrategy waitStrategy)
+    {
+        return new RingBuffer<E>(factory, new FetchAndAddMultiProducerSequencer(bufferSize, waitStrategy));
+    }
+
     /**
 	 * 使用指定的等待策略创建新的单个生产者的RingBuffer。
 	 *
@@ -250,6 +415,67 @@ public final class RingBuffer<E> extends RingBufferFields<E> implements Cursored
         }
     }
 
+	/**
+	 * 使用指定的生产者类型和预分配方式创建一个新的RingBuffer，用于缩短大容量RingBuffer的创建时间，
+	 * 或者让事件分配在生产者线程所在的NUMA节点上。
+	 *
+	 * @param <E> RingBuffer中的事件类
+	 * @param producerType      生产者类型使用{@link ProducerType}
+	 * @param factory           用于在RingBuffer内创建事件。
+	 * @param bufferSize        在RingBuffer中创建的元素数量
+	 * @param waitStrategy      等待策略：用于确定如何等待新元素变得可用。
+	 * @param preallocationMode 预分配事件的方式
+	 * @return 构造一个RingBuffer
+	 * @throws IllegalArgumentException 如果bufferSize小于1或不是2的幂
+	 * @see PreallocationMode
+	 */
+    public static <E> RingBuffer<E> create(
+        ProducerType producerType,
+        EventFactory<E> factory,
+        int bufferSize,
+        WaitStrategy waitStrategy,
+        PreallocationMode preallocationMode)
+    {
+        switch (producerType)
+        {
+            case SINGLE:
+                return new RingBuffer<E>(factory, new SingleProducerSequencer(bufferSize, waitStrategy), preallocationMode);
+            case MULTI:
+                return new RingBuffer<E>(factory, new MultiProducerSequencer(bufferSize, waitStrategy), preallocationMode);
+            default:
+                throw new IllegalStateException(producerType.toString());
+        }
+    }
+
+	/**
+	 * 创建值模式(value ring)的RingBuffer。槽位不预分配事件，生产者通过{@link #publishValue(Object)}
+	 * 按引用发布不可变的事件对象，适用于事件本身就是不可变值对象、不适合复制到预分配事件中的场景。
+	 * <p>槽位在被覆盖之前一直持有事件的引用，如果需要消费完成后尽早释放引用，
+	 * 可以使用{@link com.lmax.disruptor.dsl.Disruptor#clearValuesAfterProcessing()}。</p>
+	 *
+	 * @param <E> RingBuffer中的事件类
+	 * @param producerType 生产者类型使用{@link ProducerType}
+	 * @param bufferSize   RingBuffer的容量
+	 * @param waitStrategy 等待策略：用于确定如何等待新元素变得可用。
+	 * @return 构造一个值模式的RingBuffer
+	 * @throws IllegalArgumentException 如果bufferSize小于1或不是2的幂
+	 */
+    public static <E> RingBuffer<E> createValueRing(
+        ProducerType producerType,
+        int bufferSize,
+        WaitStrategy waitStrategy)
+    {
+        switch (producerType)
+        {
+            case SINGLE:
+                return new RingBuffer<E>(null, new SingleProducerSequencer(bufferSize, waitStrategy));
+            case MULTI:
+                return new RingBuffer<E>(null, new MultiProducerSequencer(bufferSize, waitStrategy));
+            default:
+                throw new IllegalStateException(producerType.toString());
+        }
+    }
+
     /**
      * <p>获取RingBuffer中给定序列的事件</p>
      * <p>此调用有2个用途, 首先在发布到环形缓冲区时使用此调用; 在调用 {@link RingBuffer#next()}之后使用此调用来获取;
@@ -264,7 +490,7 @@ public final class RingBuffer<E> extends RingBufferFields<E> implements Cursored
     @Override
     public E get(long sequence)
     {
-        return elementAt(sequence);
+        return eventAt(sequence);
     }
 
     /**
@@ -392,6 +618,19 @@ public final class RingBuffer<E> extends RingBufferFields<E> implements Cursored
         sequencer.addGatingSequences(gatingSequences);
     }
 
+	/**
+	 * 按序列当前的值将其添加到gatingSequences列表中，用于让新的消费者从指定的序列开始处理。
+	 * 序列不能落后于当前最慢的消费者，否则对应的事件可能已被覆盖。
+	 *
+	 * @param gatingSequences 要增加的序列
+	 * @return 添加成功返回true，否则返回false
+	 * @see Sequencer#tryAddGatingSequences(Sequence...)
+	 */
+    public boolean tryAddGatingSequences(Sequence... gatingSequences)
+    {
+        return sequencer.tryAddGatingSequences(gatingSequences);
+    }
+
 	/**
 	 * 从添加到RingBuffer的所有gatingSequences中获取最小序列值。
 	 *
@@ -436,6 +675,19 @@ public final class RingBuffer<E> extends RingBufferFields<E> implements Cursored
         return sequencer.newPoller(this, gatingSequences);
     }
 
+    /**
+	 * 为此RingBuffer创建不参与门控的事件轮询器，适用于监控、采样等不能阻塞生产者的消费者。
+	 * 不要把返回的轮询器的序列加入门控序列。
+	 *
+	 * @param gatingSequences 上游消费者的序列
+	 * @return 一个被套圈时会跳过事件的轮询器
+	 * @see EventPoller#getLostEventCount()
+	 */
+    public EventPoller<E> newLossyPoller(Sequence... gatingSequences)
+    {
+        return sequencer.newLossyPoller(this, gatingSequences);
+    }
+
     /**
      * 获取RingBuffer中的当前游标值, 收到的实际值取决于正在使用的{@link Sequencer}的类型
      *
@@ -877,6 +1129,65 @@ public final class RingBuffer<E> extends RingBufferFields<E> implements Cursored
         }
     }
 
+	/**
+	 * 在值模式的RingBuffer中按引用发布一个事件，不复制事件的内容。事件对象在发布之后不应再被修改。
+	 *
+	 * @param value 要发布的事件
+	 * @throws IllegalStateException 如果不是值模式的RingBuffer
+	 * @see #createValueRing(ProducerType, int, WaitStrategy)
+	 */
+    public void publishValue(E value)
+    {
+        checkValueRing();
+        final long sequence = sequencer.next();
+        putElement(sequence, value);
+        sequencer.publish(sequence);
+    }
+
+	/**
+	 * 与{@link #publishValue(Object)}相同，但RingBuffer中没有可用空间时不阻塞，而是返回false。
+	 *
+	 * @param value 要发布的事件
+	 * @return 发布成功返回true，没有可用空间返回false
+	 * @throws IllegalStateException 如果不是值模式的RingBuffer
+	 */
+    public boolean tryPublishValue(E value)
+    {
+        checkValueRing();
+        try
+        {
+            final long sequence = sequencer.tryNext();
+            putElement(sequence, value);
+            sequencer.publish(sequence);
+            return true;
+        }
+        catch (InsufficientCapacityException e)
+        {
+            return false;
+        }
+    }
+
+	/**
+	 * 清除值模式RingBuffer中给定序列的槽位，使事件对象不再被RingBuffer引用。
+	 * 只能在所有需要读取该事件的消费者都处理完之后、生产者覆盖该槽位之前调用。
+	 *
+	 * @param sequence 要清除的序列
+	 * @throws IllegalStateException 如果不是值模式的RingBuffer
+	 */
+    public void clearValue(long sequence)
+    {
+        checkValueRing();
+        putElement(sequence, null);
+    }
+
+    private void checkValueRing()
+    {
+        if (!isValueRing())
+        {
+            throw new IllegalStateException("Values can only be published by reference to a RingBuffer created by createValueRing");
+        }
+    }
+
     /**
      * 发布指定的序列; 此操作将此特定消息标记为可供读取
      *
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据剩余容量调整{@link ResizableRingBuffer}容量的策略。
+ * <p>
+ * 生产者线程在两次发布之间调用{@link #check()}：剩余容量连续多次低于四分之一时扩容一倍，
+ * 连续多次完全空闲(所有事件都已被消费)时缩容一半，容量始终在[minBufferSize, maxBufferSize]之间。
+ * 实际的迁移由{@link ResizableRingBuffer#resize(int, long, TimeUnit)}在静止点完成，
+ * 消费者在resizeTimeout之内没有追上时放弃这一次调整，因此check()最多停顿resizeTimeout。
+ * </p>
+ * <p>
+ * 这个类是线程不安全的，只能由唯一的生产者线程使用。
+ * </p>
+ *
+ * @param <E> RingBuffer中存储的事件类型
+ */
+public final class RingBufferResizer<E>
+{
+    private final ResizableRingBuffer<E> ringBuffer;
+    private final int minBufferSize;
+    private final int maxBufferSize;
+    private final int growAfterChecks;
+    private final int shrinkAfterChecks;
+    private final long resizeTimeoutNanos;
+    // 连续检测到剩余容量不足的次数
+    private int lowCapacityChecks = 0;
+    // 连续检测到完全空闲的次数
+    private int idleChecks = 0;
+
+    /**
+     * @param ringBuffer        要调整的RingBuffer
+     * @param minBufferSize     缩容的下限，必须是2的幂
+     * @param maxBufferSize     扩容的上限，必须是2的幂，不能大于ringBuffer的最大容量
+     * @param growAfterChecks   剩余容量连续多少次不足时扩容
+     * @param shrinkAfterChecks 连续多少次完全空闲时缩容
+     * @param resizeTimeout     每次调整等待消费者追上游标的时间
+     * @param unit              resizeTimeout的单位
+     */
+    public RingBufferResizer(
+        final ResizableRingBuffer<E> ringBuffer,
+        final int minBufferSize,
+        final int maxBufferSize,
+        final int growAfterChecks,
+        final int shrinkAfterChecks,
+        final long resizeTimeout,
+        final TimeUnit unit)
+    {
+        if (Integer.bitCount(minBufferSize) != 1 || Integer.bitCount(maxBufferSize) != 1)
+        {
+            throw new IllegalArgumentException("minBufferSize and maxBufferSize must be powers of 2");
+        }
+        if (minBufferSize > ringBuffer.getBufferSize() || maxBufferSize < ringBuffer.getBufferSize())
+        {
+            throw new IllegalArgumentException("bufferSize of the ring buffer must be between minBufferSize and maxBufferSize");
+        }
+        if (maxBufferSize > ringBuffer.getMaxBufferSize())
+        {
+            throw new IllegalArgumentException("maxBufferSize must not be greater than maxBufferSize of the ring buffer");
+        }
+        if (growAfterChecks < 1 || shrinkAfterChecks < 1)
+        {
+            throw new IllegalArgumentException("growAfterChecks and shrinkAfterChecks must be > 0");
+        }
+
+        this.ringBuffer = ringBuffer;
+        this.minBufferSize = minBufferSize;
+        this.maxBufferSize = maxBufferSize;
+        this.growAfterChecks = growAfterChecks;
+        this.shrinkAfterChecks = shrinkAfterChecks;
+        this.resizeTimeoutNanos = unit.toNanos(resizeTimeout);
+    }
+
+    /**
+     * 检测剩余容量，必要时调整RingBuffer的容量。只能由生产者线程在两次发布之间调用。
+     * 消费者在resizeTimeout之内没有追上游标时放弃这一次调整，之后重新开始计数。
+     *
+     * @return 如果调整了容量返回true
+     */
+    public boolean check()
+    {
+        final int bufferSize = ringBuffer.getBufferSize();
+        final long remainingCapacity = ringBuffer.remainingCapacity();
+
+        if (remainingCapacity <= bufferSize >> 2)
+        {
+            idleChecks = 0;
+            if (++lowCapacityChecks >= growAfterChecks && bufferSize < maxBufferSize)
+            {
+                lowCapacityChecks = 0;
+                return resize(bufferSize << 1);
+            }
+        }
+        else if (remainingCapacity == bufferSize)
+        {
+            lowCapacityChecks = 0;
+            if (++idleChecks >= shrinkAfterChecks && bufferSize > minBufferSize)
+            {
+                idleChecks = 0;
+                return resize(bufferSize >> 1);
+            }
+        }
+        else
+        {
+            lowCapacityChecks = 0;
+            idleChecks = 0;
+        }
+
+        return false;
+    }
+
+    private boolean resize(final int newBufferSize)
+    {
+        try
+        {
+            ringBuffer.resize(newBufferSize, resizeTimeoutNanos, TimeUnit.NANOSECONDS);
+            return true;
+        }
+        catch (final TimeoutException e)
+        {
+            return false;
+        }
+    }
+}
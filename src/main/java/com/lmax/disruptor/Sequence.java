@@ -15,6 +15,10 @@
  */
 package com.lmax.disruptor;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
 import sun.misc.Unsafe;
 
 import com.lmax.disruptor.util.Util;
@@ -45,6 +49,8 @@ public class Sequence extends RhsPadding
     static final long INITIAL_VALUE = -1L;
     private static final Unsafe UNSAFE;
     private static final long VALUE_OFFSET;
+    // JDK8开始Unsafe提供getAndAddLong(在x86上是一条lock xadd指令)，JDK7上为null，退化为CAS循环
+    private static final MethodHandle GET_AND_ADD_LONG;
 
     static
     {
@@ -57,6 +63,19 @@ public class Sequence extends RhsPadding
         {
             throw new RuntimeException(e);
         }
+
+        MethodHandle getAndAddLong;
+        try
+        {
+            getAndAddLong = MethodHandles.lookup()
+                .findVirtual(Unsafe.class, "getAndAddLong", MethodType.methodType(long.class, Object.class, long.class, long.class))
+                .bindTo(UNSAFE);
+        }
+        catch (final Exception e)
+        {
+            getAndAddLong = null;
+        }
+        GET_AND_ADD_LONG = getAndAddLong;
     }
 
 	/**
@@ -148,6 +167,45 @@ public class Sequence extends RhsPadding
         return newValue;
     }
 
+	/**
+	 * 以原子方式添加提供的值并返回原来的值。与{@link #addAndGet(long)}不同，竞争激烈时不会因为CAS失败而重试，
+	 * 运行在JDK7上时退化为CAS循环。
+	 *
+	 * @param increment 自动添加值到序列
+	 * @return 增量前的值
+	 */
+    public long getAndAdd(final long increment)
+    {
+        return getAndAdd(this, VALUE_OFFSET, increment);
+    }
+
+    /**
+     * 对base和offset处的long执行getAndAdd，供值不在value字段中的子类使用
+     */
+    final long getAndAdd(final Object base, final long offset, final long increment)
+    {
+        if (null == GET_AND_ADD_LONG)
+        {
+            long currentValue;
+            do
+            {
+                currentValue = get();
+            }
+            while (!compareAndSet(currentValue, currentValue + increment));
+
+            return currentValue;
+        }
+
+        try
+        {
+            return (long) GET_AND_ADD_LONG.invokeExact(base, offset, increment);
+        }
+        catch (final Throwable t)
+        {
+            throw new IllegalStateException(t);
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -19,6 +19,8 @@ import static java.util.Arrays.copyOf;
 
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import com.lmax.disruptor.util.Util;
+
 /**
  * 提供用于管理{@link SequenceGroup}对象的静态方法
  */
@@ -56,6 +58,55 @@ class SequenceGroups
         }
     }
 
+    /**
+     * 按序列当前的值添加，而不是像{@link #addSequences}那样重置为游标。
+     * 生产者缓存的门控值不会超过安装时其余序列的最小值，所以只要添加的序列不落后于其余序列的最小值，
+     * 就不会有尚未处理的槽位被覆盖；否则添加失败并回滚。
+     *
+     * @return 添加成功返回true
+     */
+    static <T> boolean tryAddSequences(
+        final T holder,
+        final AtomicReferenceFieldUpdater<T, Sequence[]> updater,
+        final Cursored cursor,
+        final Sequence... sequencesToAdd)
+    {
+        Sequence[] updatedSequences;
+        Sequence[] currentSequences;
+
+        do
+        {
+            currentSequences = updater.get(holder);
+            if (isBehind(currentSequences, cursor, sequencesToAdd))
+            {
+                return false;
+            }
+
+            updatedSequences = copyOf(currentSequences, currentSequences.length + sequencesToAdd.length);
+            System.arraycopy(sequencesToAdd, 0, updatedSequences, currentSequences.length, sequencesToAdd.length);
+        }
+        while (!updater.compareAndSet(holder, currentSequences, updatedSequences));
+
+        // 安装之前其余序列可能已经前进，生产者可能缓存了更大的值，需要再检查一次
+        if (isBehind(currentSequences, cursor, sequencesToAdd))
+        {
+            for (Sequence sequence : sequencesToAdd)
+            {
+                removeSequence(holder, updater, sequence);
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    private static boolean isBehind(
+        final Sequence[] currentSequences, final Cursored cursor, final Sequence[] sequencesToAdd)
+    {
+        return Util.getMinimumSequence(sequencesToAdd) <
+            Util.getMinimumSequence(currentSequences, cursor.getCursor());
+    }
+
     static <T> boolean removeSequence(
         final T holder,
         final AtomicReferenceFieldUpdater<T, Sequence[]> sequenceUpdater,
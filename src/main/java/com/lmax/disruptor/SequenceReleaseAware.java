@@ -0,0 +1,32 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 事件处理器实现此接口后，{@link BatchEventProcessor}在构造时提供一个{@link SequenceReleaser}。
+ * 适用于把事件复制出来再做耗时处理的消费者：复制完成后立即释放槽，生产者不必等到整个批次处理完。
+ * <p>
+ * 与{@link SequenceReportingEventHandler}不同，释放的序列会经过检查，不会超过正在处理的事件，也不会使序列倒退。
+ * 通过Disruptor DSL设置的事件处理器同样适用。
+ * </p>
+ */
+public interface SequenceReleaseAware
+{
+    /**
+     * @param sequenceReleaser 用于提前释放槽
+     */
+    void setSequenceReleaser(SequenceReleaser sequenceReleaser);
+}
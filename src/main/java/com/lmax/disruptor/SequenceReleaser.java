@@ -0,0 +1,35 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 由{@link BatchEventProcessor}提供给{@link SequenceReleaseAware}的事件处理器，用于在批次中途提前释放已经用完的槽。
+ *
+ * @see SequenceReleaseAware
+ */
+public interface SequenceReleaser
+{
+    /**
+     * 声明已经用完sequence及之前的所有槽，处理器随即把自己的序列推进到sequence，生产者可以重新使用这些槽。
+     * 释放之后不能再读取这些槽中的事件。只能在处理器线程上调用，例如在{@link EventHandler#onEvent(Object, long, boolean)}中。
+     * 小于等于已释放序列的调用不产生任何效果。
+     *
+     * @param sequence 已经用完的最大序列
+     * @throws IllegalArgumentException 如果sequence大于正在处理的事件的序列
+     * @throws IllegalStateException    如果不是在处理器线程上调用
+     */
+    void release(long sequence);
+}
@@ -51,6 +51,15 @@ public interface Sequencer extends Cursored, Sequenced
 	 */
     void addGatingSequences(Sequence... gatingSequences);
 
+	/**
+	 * 按序列当前的值将其添加到追踪序列组中，与{@link #addGatingSequences(Sequence...)}不同，不会把序列重置为游标。
+	 * 如果添加的序列落后于当前最慢的追踪序列(没有追踪序列时为游标)，它对应的槽位可能已被覆盖，此时添加失败。
+	 * 
+	 * @param gatingSequences 要添加的序列
+	 * @return 添加成功返回true，否则返回false且追踪序列组不变
+	 */
+    boolean tryAddGatingSequences(Sequence... gatingSequences);
+
 	/**
 	 * 从gatingSequences中移除指定的sequence，从追踪序列组中移除指定的序列
 	 *
@@ -93,4 +102,14 @@ public interface Sequencer extends Cursored, Sequenced
 	 * @return EventPoller 给定的生产者和控制序列来创建一个EventPoller
 	 */
     <T> EventPoller<T> newPoller(DataProvider<T> provider, Sequence... gatingSequences);
+
+	/**
+	 * 创建一个不参与门控的EventPoller，它的序列不会加入门控序列，被生产者套圈时会跳过事件
+	 * 
+	 * @param <T> 事件类型
+	 * @param provider 数据生产者
+	 * @param gatingSequences 上游消费者的序列
+	 * @return EventPoller 不会阻塞生产者的EventPoller
+	 */
+    <T> EventPoller<T> newLossyPoller(DataProvider<T> provider, Sequence... gatingSequences);
 }
\ No newline at end of file
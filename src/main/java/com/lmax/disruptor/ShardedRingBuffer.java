@@ -0,0 +1,186 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 分片的多生产者前端：每个注册的生产者线程拥有一条独立的单生产者RingBuffer(lane)，
+ * 由{@link LaneMergingEventProcessor}把所有lane合并到一个事件处理器中。
+ * <p>
+ * 与{@link MultiProducerSequencer}相比，生产者之间不再竞争同一个游标，每个生产者只写自己lane的游标和槽，
+ * 不会与其他生产者共享被写入的缓存行。lane的数量在创建时确定，生产者线程结束之前应该通过{@link #releaseProducer()}归还lane。
+ * </p>
+ * <p>
+ * 合并处理器轮询每条lane的游标，不通过等待策略等待，所以lane使用不需要唤醒的{@link BusySpinWaitStrategy}，
+ * 发布时没有额外的开销。
+ * </p>
+ *
+ * @param <T> 事件的类型
+ */
+public final class ShardedRingBuffer<T>
+{
+    private final RingBuffer<T>[] lanes;
+    // 每条lane当前的生产者线程，null表示空闲
+    private final AtomicReferenceArray<Thread> owners;
+
+    /**
+     * @param eventFactory   用于预分配每条lane中的事件
+     * @param laneCount      lane的数量，即最多可以注册的生产者数量
+     * @param laneBufferSize 每条lane的大小，必须是2的幂
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedRingBuffer(final EventFactory<T> eventFactory, final int laneCount, final int laneBufferSize)
+    {
+        if (laneCount < 1)
+        {
+            throw new IllegalArgumentException("laneCount must not be less than 1");
+        }
+
+        lanes = (RingBuffer<T>[]) new RingBuffer<?>[laneCount];
+        owners = new AtomicReferenceArray<>(laneCount);
+        for (int i = 0; i < laneCount; i++)
+        {
+            lanes[i] = RingBuffer.createSingleProducer(eventFactory, laneBufferSize, new BusySpinWaitStrategy());
+        }
+    }
+
+    /**
+     * 为当前线程分配一条空闲的lane。同一个线程多次调用时返回同一条lane。
+     * 返回的RingBuffer只能由当前线程发布事件，直到调用{@link #releaseProducer()}。
+     *
+     * @return 当前线程的lane
+     * @throws IllegalStateException 如果所有的lane都已经分配给了其他线程
+     */
+    public RingBuffer<T> registerProducer()
+    {
+        final Thread thread = Thread.currentThread();
+        int index = indexOf(thread);
+        for (int i = 0; i < lanes.length && index < 0; i++)
+        {
+            if (owners.compareAndSet(i, null, thread))
+            {
+                index = i;
+            }
+        }
+
+        if (index < 0)
+        {
+            throw new IllegalStateException("All " + lanes.length + " lanes have already been registered");
+        }
+        return lanes[index];
+    }
+
+    /**
+     * 归还当前线程的lane，之后可以分配给其他生产者线程。已经发布但还没有被合并的事件不受影响。
+     * 当前线程没有注册时什么都不做。
+     */
+    public void releaseProducer()
+    {
+        final int index = indexOf(Thread.currentThread());
+        if (index >= 0)
+        {
+            owners.set(index, null);
+        }
+    }
+
+    /**
+     * @param index lane的下标
+     * @return 第index条lane
+     */
+    public RingBuffer<T> getLane(final int index)
+    {
+        return lanes[index];
+    }
+
+    /**
+     * @return lane的数量
+     */
+    public int getLaneCount()
+    {
+        return lanes.length;
+    }
+
+    /**
+     * @return 已经注册的生产者数量
+     */
+    public int getRegisteredProducerCount()
+    {
+        int count = 0;
+        for (int i = 0; i < lanes.length; i++)
+        {
+            if (null != owners.get(i))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 所有lane中已发布但还没有被合并的事件数量
+     */
+    public long getBacklog()
+    {
+        long backlog = 0;
+        for (final RingBuffer<T> lane : lanes)
+        {
+            backlog += lane.getCursor() - lane.getMinimumGatingSequence();
+        }
+        return backlog;
+    }
+
+    /**
+     * 创建按lane依次批量合并的处理器，每条lane内部的顺序保持不变。
+     *
+     * @param eventHandler 处理合并后的事件
+     * @return 合并处理器
+     */
+    public LaneMergingEventProcessor<T> newMergingProcessor(final EventHandler<? super T> eventHandler)
+    {
+        return new LaneMergingEventProcessor<T>(lanes, eventHandler, null);
+    }
+
+    /**
+     * 创建按orderingKey合并的处理器，每次从所有lane的队头中选择键最小的事件，例如时间戳或全局序列标签。
+     *
+     * @param eventHandler 处理合并后的事件
+     * @param orderingKey  从事件中取得排序用的键
+     * @return 合并处理器
+     */
+    public LaneMergingEventProcessor<T> newMergingProcessor(
+        final EventHandler<? super T> eventHandler,
+        final LaneMergingEventProcessor.OrderingKey<? super T> orderingKey)
+    {
+        if (null == orderingKey)
+        {
+            throw new NullPointerException();
+        }
+        return new LaneMergingEventProcessor<T>(lanes, eventHandler, orderingKey);
+    }
+
+    private int indexOf(final Thread thread)
+    {
+        for (int i = 0; i < lanes.length; i++)
+        {
+            if (owners.get(i) == thread)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
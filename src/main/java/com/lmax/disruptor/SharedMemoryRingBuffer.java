@@ -0,0 +1,376 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.Util;
+
+/**
+ * 存放在内存映射文件中的环形缓冲区，使同一台机器上的多个进程可以通过它交换固定长度的事件。
+ * <p>
+ * 游标、消费者序列、{@link MultiProducerSequencer}的availableBuffer和所有的槽都在共享的{@link MappedByteBuffer}中，
+ * 生产者使用与普通{@link RingBuffer}相同的{@link SingleProducerSequencer}/{@link MultiProducerSequencer}算法，
+ * 只是把序列换成了{@link MappedSequence}。文件的布局如下：
+ * </p>
+ * <pre>
+ *   [头部 128字节] [游标 128字节] [消费者序列 consumerCount * 128字节] [availableBuffer bufferSize * 4字节，按128字节对齐] [槽 bufferSize * slotSize字节]
+ * </pre>
+ * <p>
+ * 每个序列与{@link Sequence}一样前后各有填充，值位于每个128字节块的第56个字节处。
+ * 消费者的数量在创建文件时确定，每个消费者进程通过下标使用自己的序列，生产者会等待所有消费者。
+ * </p>
+ * <p>
+ * 注意：阻塞型的等待策略只能唤醒同一个进程中的线程，跨进程时请使用{@link BusySpinWaitStrategy}、
+ * {@link YieldingWaitStrategy}或{@link SleepingWaitStrategy}这类不依赖通知的等待策略。
+ * </p>
+ */
+public final class SharedMemoryRingBuffer implements DataProvider<ByteBuffer>, Cursored
+{
+    // 文件头部的魔数和版本号，作为一个long在文件初始化完成后最后写入
+    private static final int MAGIC = 0x4C4D4158;
+    private static final int VERSION = 1;
+    private static final long HEADER = MAGIC | ((long) VERSION << 32);
+
+    private static final int BLOCK_SIZE = 128;
+    private static final int VALUE_OFFSET = 56;
+
+    private static final int HEADER_OFFSET = 0;
+    private static final int BUFFER_SIZE_OFFSET = 8;
+    private static final int SLOT_SIZE_OFFSET = 12;
+    private static final int CONSUMER_COUNT_OFFSET = 16;
+    private static final int PRODUCER_TYPE_OFFSET = 20;
+
+    private static final int CURSOR_OFFSET = BLOCK_SIZE;
+    private static final int CONSUMERS_OFFSET = BLOCK_SIZE * 2;
+
+    private final MappedByteBuffer buffer;
+    private final int bufferSize;
+    private final int slotSize;
+    private final ProducerType producerType;
+    private final Sequencer sequencer;
+    private final Sequence[] consumerSequences;
+    private final ByteBuffer[] slots;
+
+    private SharedMemoryRingBuffer(final MappedByteBuffer buffer, final WaitStrategy waitStrategy)
+    {
+        this.buffer = buffer;
+        this.bufferSize = buffer.getInt(BUFFER_SIZE_OFFSET);
+        this.slotSize = buffer.getInt(SLOT_SIZE_OFFSET);
+        this.producerType = ProducerType.values()[buffer.getInt(PRODUCER_TYPE_OFFSET)];
+
+        final int consumerCount = buffer.getInt(CONSUMER_COUNT_OFFSET);
+        final int availableOffset = availableOffset(consumerCount);
+        final int slotsOffset = slotsOffset(bufferSize, consumerCount);
+
+        final Sequence cursor = new MappedSequence(buffer, CURSOR_OFFSET + VALUE_OFFSET);
+        final AbstractSequencer mappedSequencer;
+        if (ProducerType.SINGLE == producerType)
+        {
+            mappedSequencer = new SingleProducerSequencer(bufferSize, waitStrategy, cursor);
+        }
+        else
+        {
+            final long address = Util.getAddressFromDirectByteBuffer(buffer) + availableOffset;
+            mappedSequencer = new MultiProducerSequencer(bufferSize, waitStrategy, cursor, null, address);
+        }
+
+        consumerSequences = new Sequence[consumerCount];
+        for (int i = 0; i < consumerCount; i++)
+        {
+            consumerSequences[i] = new MappedSequence(buffer, consumerOffset(i) + VALUE_OFFSET);
+        }
+        // 消费者序列保存在文件中，其他进程的消费者可能还没有处理完，按保存的值安装而不是重置为游标
+        mappedSequencer.setGatingSequences(consumerSequences);
+        sequencer = mappedSequencer;
+
+        slots = new ByteBuffer[bufferSize];
+        for (int i = 0; i < bufferSize; i++)
+        {
+            final ByteBuffer view = buffer.duplicate();
+            view.limit(slotsOffset + (i + 1) * slotSize).position(slotsOffset + i * slotSize);
+            slots[i] = view.slice().order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * 创建(或覆盖)共享文件并初始化游标、消费者序列和槽。
+     *
+     * @param file          共享的文件，已存在时会被清空
+     * @param producerType  生产者类型，多个进程同时发布时使用{@link ProducerType#MULTI}
+     * @param bufferSize    槽的数量，必须是2的幂
+     * @param slotSize      每个槽的字节数，会向上对齐到8字节
+     * @param consumerCount 消费者的数量
+     * @param waitStrategy  本进程中使用的等待策略
+     * @return 映射到文件上的环形缓冲区
+     * @throws IOException 如果文件无法创建或映射
+     * @throws IllegalArgumentException 如果参数无效或者文件会超过2GB
+     */
+    public static SharedMemoryRingBuffer create(
+        final File file,
+        final ProducerType producerType,
+        final int bufferSize,
+        final int slotSize,
+        final int consumerCount,
+        final WaitStrategy waitStrategy) throws IOException
+    {
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1)
+        {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+        if (slotSize < 1)
+        {
+            throw new IllegalArgumentException("slotSize must not be less than 1");
+        }
+        if (consumerCount < 1)
+        {
+            throw new IllegalArgumentException("consumerCount must not be less than 1");
+        }
+
+        final int alignedSlotSize = align(slotSize, 8);
+        final long length = (long) slotsOffset(bufferSize, consumerCount) + (long) bufferSize * alignedSlotSize;
+        if (length > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Shared ring buffer must not exceed 2GB: " + length);
+        }
+
+        final MappedByteBuffer buffer = map(file, length, true);
+        buffer.putInt(BUFFER_SIZE_OFFSET, bufferSize);
+        buffer.putInt(SLOT_SIZE_OFFSET, alignedSlotSize);
+        buffer.putInt(CONSUMER_COUNT_OFFSET, consumerCount);
+        buffer.putInt(PRODUCER_TYPE_OFFSET, producerType.ordinal());
+
+        new MappedSequence(buffer, CURSOR_OFFSET + VALUE_OFFSET).set(Sequencer.INITIAL_CURSOR_VALUE);
+        for (int i = 0; i < consumerCount; i++)
+        {
+            new MappedSequence(buffer, consumerOffset(i) + VALUE_OFFSET).set(Sequencer.INITIAL_CURSOR_VALUE);
+        }
+        final int availableOffset = availableOffset(consumerCount);
+        for (int i = 0; i < bufferSize; i++)
+        {
+            buffer.putInt(availableOffset + i * 4, -1);
+        }
+
+        final SharedMemoryRingBuffer ringBuffer = new SharedMemoryRingBuffer(buffer, waitStrategy);
+        // 最后写入魔数，其他进程看到魔数时文件已经初始化完成
+        new MappedSequence(buffer, HEADER_OFFSET).setVolatile(HEADER);
+        return ringBuffer;
+    }
+
+    /**
+     * 打开另一个进程创建的共享文件。
+     *
+     * @param file         由{@link #create(File, ProducerType, int, int, int, WaitStrategy)}创建的文件
+     * @param waitStrategy 本进程中使用的等待策略
+     * @return 映射到文件上的环形缓冲区
+     * @throws IOException 如果文件无法映射
+     * @throws IllegalStateException 如果文件还没有初始化完成或者不是共享环形缓冲区
+     */
+    public static SharedMemoryRingBuffer open(final File file, final WaitStrategy waitStrategy) throws IOException
+    {
+        final long length = file.length();
+        if (length < BLOCK_SIZE * 2)
+        {
+            throw new IllegalStateException("File is not an initialised shared ring buffer: " + file);
+        }
+
+        final MappedByteBuffer buffer = map(file, length, false);
+        if (new MappedSequence(buffer, HEADER_OFFSET).get() != HEADER)
+        {
+            throw new IllegalStateException("File is not an initialised shared ring buffer: " + file);
+        }
+        return new SharedMemoryRingBuffer(buffer, waitStrategy);
+    }
+
+    private static MappedByteBuffer map(final File file, final long length, final boolean create) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            if (create)
+            {
+                raf.setLength(0);
+                raf.setLength(length);
+            }
+            final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    private static int consumerOffset(final int consumerIndex)
+    {
+        return CONSUMERS_OFFSET + consumerIndex * BLOCK_SIZE;
+    }
+
+    private static int availableOffset(final int consumerCount)
+    {
+        return consumerOffset(consumerCount);
+    }
+
+    private static int slotsOffset(final int bufferSize, final int consumerCount)
+    {
+        return availableOffset(consumerCount) + align(bufferSize * 4, BLOCK_SIZE);
+    }
+
+    private static int align(final int value, final int alignment)
+    {
+        return (value + alignment - 1) & ~(alignment - 1);
+    }
+
+    /**
+     * 获取序列对应的槽。返回的缓冲区是槽的视图，使用本机字节序，调用者不应在多个线程间共享同一个视图的position。
+     *
+     * @param sequence 序列
+     * @return 槽的视图
+     */
+    @Override
+    public ByteBuffer get(final long sequence)
+    {
+        return slots[(int) sequence & (bufferSize - 1)];
+    }
+
+    /**
+     * @see Sequencer#next()
+     * @return 下一个可用的序列
+     */
+    public long next()
+    {
+        return sequencer.next();
+    }
+
+    /**
+     * @see Sequencer#next(int)
+     * @param n 申请的序列数量
+     * @return 申请到的最大序列
+     */
+    public long next(final int n)
+    {
+        return sequencer.next(n);
+    }
+
+    /**
+     * @see Sequencer#tryNext()
+     * @return 下一个可用的序列
+     * @throws InsufficientCapacityException 如果没有可用的槽
+     */
+    public long tryNext() throws InsufficientCapacityException
+    {
+        return sequencer.tryNext();
+    }
+
+    /**
+     * 发布序列，使其他进程中的消费者可以看到槽中的数据。
+     *
+     * @param sequence 要发布的序列
+     */
+    public void publish(final long sequence)
+    {
+        sequencer.publish(sequence);
+    }
+
+    /**
+     * 发布一段序列。
+     *
+     * @param lo 第一个要发布的序列
+     * @param hi 最后一个要发布的序列
+     */
+    public void publish(final long lo, final long hi)
+    {
+        sequencer.publish(lo, hi);
+    }
+
+    /**
+     * 创建一个等待已发布序列的栏栅。
+     *
+     * @param sequencesToTrack 需要等待的其他消费者序列
+     * @return 序列栏栅
+     */
+    public SequenceBarrier newBarrier(final Sequence... sequencesToTrack)
+    {
+        return sequencer.newBarrier(sequencesToTrack);
+    }
+
+    /**
+     * 创建使用共享文件中第consumerIndex个消费者序列的事件处理器，处理器从该序列当前的值继续处理。
+     *
+     * @param consumerIndex 消费者的下标
+     * @param barrier       处理器使用的栏栅
+     * @param eventHandler  事件处理器
+     * @return 事件处理器
+     */
+    public BatchEventProcessor<ByteBuffer> newEventProcessor(
+        final int consumerIndex,
+        final SequenceBarrier barrier,
+        final EventHandler<? super ByteBuffer> eventHandler)
+    {
+        return new BatchEventProcessor<ByteBuffer>(this, barrier, eventHandler, getConsumerSequence(consumerIndex));
+    }
+
+    /**
+     * @param consumerIndex 消费者的下标
+     * @return 共享文件中第consumerIndex个消费者序列
+     */
+    public Sequence getConsumerSequence(final int consumerIndex)
+    {
+        return consumerSequences[consumerIndex];
+    }
+
+    @Override
+    public long getCursor()
+    {
+        return sequencer.getCursor();
+    }
+
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    public int getSlotSize()
+    {
+        return slotSize;
+    }
+
+    public int getConsumerCount()
+    {
+        return consumerSequences.length;
+    }
+
+    public ProducerType getProducerType()
+    {
+        return producerType;
+    }
+
+    /**
+     * @return 映射的文件内容
+     */
+    public MappedByteBuffer buffer()
+    {
+        return buffer;
+    }
+}
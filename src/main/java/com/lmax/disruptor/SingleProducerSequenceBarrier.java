@@ -0,0 +1,61 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 单生产者使用的{@link SequenceBarrier}。
+ * <p>
+ * 单生产者在写完事件后才更新游标，游标之前的所有序列都已经发布，
+ * 所以不需要像{@link ProcessingSequenceBarrier}那样再调用{@link Sequencer#getHighestPublishedSequence(long, long)}扫描可用的槽。
+ * </p>
+ */
+final class SingleProducerSequenceBarrier extends AbstractSequenceBarrier
+{
+    /**
+     * @param waitStrategy       等待策略
+     * @param cursorSequence     生产者序号
+     * @param dependentSequences 依赖的Sequence
+     */
+    SingleProducerSequenceBarrier(
+        final WaitStrategy waitStrategy,
+        final Sequence cursorSequence,
+        final Sequence[] dependentSequences)
+    {
+        super(waitStrategy, cursorSequence, dependentSequences);
+    }
+
+    /**
+     * 该方法不保证总是返回未处理的序号; 如果有更多的可处理序号时,返回的序号也可能是超过指定序号的
+     */
+    @Override
+    public long waitFor(final long sequence)
+        throws AlertException, InterruptedException, TimeoutException
+    {
+        checkAlert();
+
+        // 上一次扫描得到的依赖序列的最小值已经满足要求时，不需要再读取每一个依赖的序列
+        if (null != dependentGroup)
+        {
+            final long cachedSequence = dependentGroup.getCachedMinimum();
+            if (cachedSequence >= sequence)
+            {
+                return cachedSequence;
+            }
+        }
+
+        return waitStrategy.waitFor(sequence, cursorSequence, dependentSequence, this);
+    }
+}
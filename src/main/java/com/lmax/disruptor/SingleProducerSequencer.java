@@ -26,9 +26,9 @@ abstract class SingleProducerSequencerPad extends AbstractSequencer
 {
     protected long p1, p2, p3, p4, p5, p6, p7;
 
-    SingleProducerSequencerPad(int bufferSize, WaitStrategy waitStrategy)
+    SingleProducerSequencerPad(int bufferSize, WaitStrategy waitStrategy, Sequence cursor)
     {
-        super(bufferSize, waitStrategy);
+        super(bufferSize, waitStrategy, cursor);
     }
 }
 
@@ -37,9 +37,9 @@ abstract class SingleProducerSequencerPad extends AbstractSequencer
  */
 abstract class SingleProducerSequencerFields extends SingleProducerSequencerPad
 {
-    SingleProducerSequencerFields(int bufferSize, WaitStrategy waitStrategy)
+    SingleProducerSequencerFields(int bufferSize, WaitStrategy waitStrategy, Sequence cursor)
     {
-        super(bufferSize, waitStrategy);
+        super(bufferSize, waitStrategy, cursor);
     }
 
     // nextValue-生产者申请到的下一个位置序列
@@ -66,7 +66,20 @@ public final class SingleProducerSequencer extends SingleProducerSequencerFields
 	 */
     public SingleProducerSequencer(int bufferSize, WaitStrategy waitStrategy)
     {
-        super(bufferSize, waitStrategy);
+        super(bufferSize, waitStrategy, new Sequence(Sequencer.INITIAL_CURSOR_VALUE));
+    }
+
+	/**
+	 * 使用外部提供的游标构造，生产者从游标当前的值继续申请序列。
+	 *
+	 * @param bufferSize   这个序列的buffer大小
+	 * @param waitStrategy 等待策略
+	 * @param cursor       生产者的游标
+	 */
+    SingleProducerSequencer(int bufferSize, WaitStrategy waitStrategy, Sequence cursor)
+    {
+        super(bufferSize, waitStrategy, cursor);
+        this.nextValue = cursor.get();
     }
 
     /**
@@ -196,6 +209,17 @@ public final class SingleProducerSequencer extends SingleProducerSequencerFields
         return nextSequence;
     }
 
+    /**
+     * 单生产者发布时游标之前的序列都已可用，返回的栏栅不需要再扫描可用的槽。
+     *
+     * @see Sequencer#newBarrier(Sequence...)
+     */
+    @Override
+    public SequenceBarrier newBarrier(Sequence... sequencesToTrack)
+    {
+        return new SingleProducerSequenceBarrier(waitStrategy, cursor, sequencesToTrack);
+    }
+
     /**
      * remainingCapacity方法就是环形队列的容量减去事件生产者与消费者的序列差
      * 
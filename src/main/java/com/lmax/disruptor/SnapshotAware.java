@@ -0,0 +1,44 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 有状态的{@link EventHandler}实现此接口后，{@link BatchEventProcessor}会在一致的序列上请求其保存快照，
+ * 重启时再由{@link com.lmax.disruptor.dsl.Disruptor#startFromSnapshot()}从快照恢复，
+ * 从而不必重放全部历史事件。
+ * <p>
+ * 两个回调不会被并发调用：{@link #onSnapshot(long)}在处理器线程上执行，
+ * {@link #restoreSnapshot()}在Disruptor启动之前由启动线程执行。
+ * </p>
+ */
+public interface SnapshotAware
+{
+    /**
+     * 保存当前状态。调用时，序列号小于等于sequence的事件都已处理完，且更大的事件都尚未处理。
+     *
+     * @param sequence 快照对应的序列
+     * @throws Exception 如果保存失败，交由处理器的{@link ExceptionHandler}处理
+     */
+    void onSnapshot(long sequence) throws Exception;
+
+    /**
+     * 从最近一次的快照恢复状态。
+     *
+     * @return 快照对应的序列，如果没有可用的快照则返回{@link Sequencer#INITIAL_CURSOR_VALUE}
+     * @throws Exception 如果恢复失败
+     */
+    long restoreSnapshot() throws Exception;
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+/**
+ * 在单个序列后面隐藏两个序列，与{@link FixedSequenceGroup}相同，但不需要遍历数组。
+ */
+final class TwoSequenceGroup extends CachedMinimumSequenceGroup
+{
+    private final Sequence first;
+    private final Sequence second;
+
+    /**
+     * @param first  第一个要跟踪的序列
+     * @param second 第二个要跟踪的序列
+     */
+    TwoSequenceGroup(final Sequence first, final Sequence second)
+    {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * 重新读取并获取两个序列中较小的值
+     * @return 两个序列中较小的值
+     */
+    @Override
+    public long get()
+    {
+        return cacheMinimum(Math.min(first.get(), second.get()));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[" + first + ", " + second + "]";
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public void set(long value)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public boolean compareAndSet(long expectedValue, long newValue)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public long incrementAndGet()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public long addAndGet(long increment)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public long getAndAdd(long increment)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
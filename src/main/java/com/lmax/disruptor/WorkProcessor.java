@@ -15,7 +15,7 @@
  */
 package com.lmax.disruptor;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 1.首先，由于是Work模式,必然是多个事件消费者(WorkProcessor)处理同一批事件,那么肯定会存在多个消费者对同一个要处理事件的竞争,所以出现了一个workSequence,所有的消费者都使用这一个workSequence,大家通过对workSequence的原子操作来保证不会处理相同的事件
@@ -30,8 +30,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public final class WorkProcessor<T>
     implements EventProcessor
 {
-	// 运行状态标识
-    private final AtomicBoolean running = new AtomicBoolean(false);
+    private static final int IDLE = 0;
+    private static final int HALTED = IDLE + 1;
+    private static final int RUNNING = HALTED + 1;
+
+	// 运行状态标识，停止之后直到线程退出主循环之前仍然视为运行中
+    private final AtomicInteger running = new AtomicInteger(IDLE);
     // 工作序列
     private final Sequence sequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
     // 事件队列
@@ -91,14 +95,14 @@ public final class WorkProcessor<T>
     @Override
     public void halt()
     {
-        running.set(false);
+        running.set(HALTED);
         sequenceBarrier.alert();
     }
 
     @Override
     public boolean isRunning()
     {
-        return running.get();
+        return running.get() != IDLE;
     }
 
 	/**
@@ -110,9 +114,18 @@ public final class WorkProcessor<T>
     public void run()
     {
     	// 判断线程是否启动，状态设置与检测
-        if (!running.compareAndSet(false, true))
+        if (!running.compareAndSet(IDLE, RUNNING))
         {
-            throw new IllegalStateException("Thread is already running");
+            if (running.get() == RUNNING)
+            {
+                throw new IllegalStateException("Thread is already running");
+            }
+
+            // 启动之前已经被停止
+            notifyStart();
+            notifyShutdown();
+            running.compareAndSet(HALTED, IDLE);
+            return;
         }
         // 先清除序列栅栏的通知状态
         sequenceBarrier.clearAlert();
@@ -168,7 +181,7 @@ public final class WorkProcessor<T>
             catch (final AlertException ex)
             {
             	// 处理通知
-                if (!running.get())
+                if (running.get() != RUNNING)
                 {
                 	// 如果当前处理器被停止，那么退出主循环
                     break;
@@ -186,7 +199,7 @@ public final class WorkProcessor<T>
         // 退出主循环后, 如果workHandler实现了LifecycleAware, 这里会对其进行一个关闭通知
         notifyShutdown();
         // 设置当前处理器状态为停止
-        running.set(false);
+        running.set(IDLE);
     }
 
     private void notifyTimeout(final long availableSequence)
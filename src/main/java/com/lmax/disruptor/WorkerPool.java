@@ -182,12 +182,24 @@ public final class WorkerPool<T>
     }
 
 	/**
-	 * 获取当前WorkerPool运行状态
+	 * 获取当前WorkerPool运行状态，停止之后直到所有workers的线程退出之前仍然视为运行中
 	 * 
 	 * @return 已经运行，尚未运行
 	 */
     public boolean isRunning()
     {
-        return started.get();
+        if (started.get())
+        {
+            return true;
+        }
+
+        for (WorkProcessor<?> processor : workProcessors)
+        {
+            if (processor.isRunning())
+            {
+                return true;
+            }
+        }
+        return false;
     }
 }
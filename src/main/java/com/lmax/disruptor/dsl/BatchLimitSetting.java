@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.dsl;
+
+import java.util.concurrent.TimeUnit;
+
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventProcessor;
+
+/**
+ * 为特定消费者设置批次限制的支持类
+ *
+ * 例如:
+ *
+ * <pre>
+ * <code>disruptorWizard.limitBatchesFor(eventHandler).toSize(256).toTime(100, TimeUnit.MICROSECONDS);</code>
+ * </pre>
+ *
+ * @param <T> 要处理的事件类型
+ */
+public class BatchLimitSetting<T>
+{
+    private final EventHandler<T> eventHandler;
+    private final ConsumerRepository<T> consumerRepository;
+
+    BatchLimitSetting(
+        final EventHandler<T> eventHandler,
+        final ConsumerRepository<T> consumerRepository)
+    {
+        this.eventHandler = eventHandler;
+        this.consumerRepository = consumerRepository;
+    }
+
+	/**
+	 * 限制一个批次最多处理的事件数量，见{@link BatchEventProcessor#setMaxBatchSize(int)}
+	 *
+	 * @param maxBatchSize 一个批次最多处理的事件数量
+	 * @return 当前对象，可以继续设置时间限制
+	 */
+    public BatchLimitSetting<T> toSize(final int maxBatchSize)
+    {
+        getBatchEventProcessor().setMaxBatchSize(maxBatchSize);
+        return this;
+    }
+
+	/**
+	 * 限制一个批次最长的处理时间，见{@link BatchEventProcessor#setMaxBatchTime(long, TimeUnit)}
+	 *
+	 * @param maxBatchTime 一个批次最长的处理时间
+	 * @param unit         maxBatchTime的单位
+	 * @return 当前对象，可以继续设置大小限制
+	 */
+    public BatchLimitSetting<T> toTime(final long maxBatchTime, final TimeUnit unit)
+    {
+        getBatchEventProcessor().setMaxBatchTime(maxBatchTime, unit);
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BatchEventProcessor<T> getBatchEventProcessor()
+    {
+        final EventProcessor eventProcessor = consumerRepository.getEventProcessorFor(eventHandler);
+        if (eventProcessor instanceof BatchEventProcessor)
+        {
+            return (BatchEventProcessor<T>) eventProcessor;
+        }
+
+        throw new RuntimeException(
+            "EventProcessor: " + eventProcessor + " is not a BatchEventProcessor " +
+            "and does not support batch limits");
+    }
+}
@@ -23,5 +23,7 @@ interface ConsumerInfo
 
     void markAsUsedInBarrier();
 
+    void markAsEndOfChain();
+
     boolean isRunning();
 }
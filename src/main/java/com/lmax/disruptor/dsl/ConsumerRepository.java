@@ -31,6 +31,11 @@ class ConsumerRepository<T> implements Iterable<ConsumerInfo>
     private final Map<Sequence, ConsumerInfo> eventProcessorInfoBySequence =
         new IdentityHashMap<>();
     private final Collection<ConsumerInfo> consumerInfos = new ArrayList<>();
+    // 每个消费者所依赖的上游序列，运行时移除消费者后用于恢复上游的链末端状态
+    private final Map<ConsumerInfo, Sequence[]> barrierSequencesByConsumer = new IdentityHashMap<>();
+    // 直接添加的自定义消费者，不知道它们依赖哪些上游序列
+    private final Set<ConsumerInfo> consumersWithUnknownDependencies =
+        Collections.newSetFromMap(new IdentityHashMap<ConsumerInfo, Boolean>());
 
     // 添加事件消费者(Event模式)、事件消费者和序列栅栏到仓库中
     public void add(
@@ -50,6 +55,18 @@ class ConsumerRepository<T> implements Iterable<ConsumerInfo>
         final EventProcessorInfo<T> consumerInfo = new EventProcessorInfo<>(processor, null, null);
         eventProcessorInfoBySequence.put(processor.getSequence(), consumerInfo);
         consumerInfos.add(consumerInfo);
+        consumersWithUnknownDependencies.add(consumerInfo);
+    }
+
+    // 添加不消费RingBuffer的辅助消费者，例如死信队列的重试线程，它只随Disruptor启动和停止，不在链末端也不被其它消费者依赖
+    public void addIndependent(final EventProcessor processor)
+    {
+        if (!eventProcessorInfoBySequence.containsKey(processor.getSequence()))
+        {
+            add(processor);
+            unMarkEventProcessorsAsEndOfChain(processor.getSequence());
+            recordBarrierSequences(new Sequence[] {processor.getSequence()}, new Sequence[0]);
+        }
     }
 
     // 添加事件消费者(Work模式)和序列栅栏到仓库中
@@ -104,6 +121,98 @@ class ConsumerRepository<T> implements Iterable<ConsumerInfo>
         }
     }
 
+    // 记录消费者所依赖的上游序列
+    public void recordBarrierSequences(final Sequence[] processorSequences, final Sequence[] barrierSequences)
+    {
+        for (Sequence processorSequence : processorSequences)
+        {
+            final ConsumerInfo consumerInfo = getEventProcessorInfo(processorSequence);
+            barrierSequencesByConsumer.put(consumerInfo, barrierSequences);
+            consumersWithUnknownDependencies.remove(consumerInfo);
+        }
+    }
+
+    public ConsumerInfo getConsumerInfoFor(final EventHandler<T> handler)
+    {
+        final ConsumerInfo consumerInfo = getEventProcessorInfo(handler);
+        if (consumerInfo == null)
+        {
+            throw new IllegalArgumentException("The event handler " + handler + " is not processing events.");
+        }
+
+        return consumerInfo;
+    }
+
+    public ConsumerInfo getConsumerInfoFor(final Sequence sequence)
+    {
+        final ConsumerInfo consumerInfo = getEventProcessorInfo(sequence);
+        if (consumerInfo == null)
+        {
+            throw new IllegalArgumentException("The sequence " + sequence + " is not used by any consumer.");
+        }
+
+        return consumerInfo;
+    }
+
+    // 判断是否还有其他消费者依赖于该消费者，存在不知道依赖关系的自定义消费者时保守地认为有
+    public boolean hasDependents(final ConsumerInfo consumerInfo)
+    {
+        for (ConsumerInfo other : consumersWithUnknownDependencies)
+        {
+            if (other != consumerInfo)
+            {
+                return true;
+            }
+        }
+
+        final Set<Sequence> sequences = Collections.newSetFromMap(new IdentityHashMap<Sequence, Boolean>());
+        Collections.addAll(sequences, consumerInfo.getSequences());
+
+        for (Sequence[] barrierSequences : barrierSequencesByConsumer.values())
+        {
+            for (Sequence barrierSequence : barrierSequences)
+            {
+                if (sequences.contains(barrierSequence))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // 从仓库中移除消费者，返回因此重新成为链末端的上游消费者的序列
+    public Sequence[] remove(final ConsumerInfo consumerInfo)
+    {
+        consumerInfos.remove(consumerInfo);
+        consumersWithUnknownDependencies.remove(consumerInfo);
+        for (Sequence sequence : consumerInfo.getSequences())
+        {
+            eventProcessorInfoBySequence.remove(sequence);
+        }
+        eventProcessorInfoByEventHandler.values().remove(consumerInfo);
+
+        final Sequence[] barrierSequences = barrierSequencesByConsumer.remove(consumerInfo);
+        if (barrierSequences == null)
+        {
+            return new Sequence[0];
+        }
+
+        final List<Sequence> endOfChainSequences = new ArrayList<>();
+        final Set<ConsumerInfo> upstreams = Collections.newSetFromMap(new IdentityHashMap<ConsumerInfo, Boolean>());
+        for (Sequence barrierSequence : barrierSequences)
+        {
+            final ConsumerInfo upstream = getEventProcessorInfo(barrierSequence);
+            if (upstream != null && upstreams.add(upstream) && !hasDependents(upstream))
+            {
+                upstream.markAsEndOfChain();
+                Collections.addAll(endOfChainSequences, upstream.getSequences());
+            }
+        }
+
+        return endOfChainSequences.toArray(new Sequence[endOfChainSequences.size()]);
+    }
+
     @Override
     public Iterator<ConsumerInfo> iterator()
     {
@@ -16,23 +16,34 @@
 package com.lmax.disruptor.dsl;
 
 import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.CompletionRing;
+import com.lmax.disruptor.CooperativeEventProcessor;
+import com.lmax.disruptor.CooperativeScheduler;
 import com.lmax.disruptor.EventFactory;
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventLossAware;
 import com.lmax.disruptor.EventProcessor;
+import com.lmax.disruptor.EventResetter;
 import com.lmax.disruptor.EventTranslator;
 import com.lmax.disruptor.EventTranslatorOneArg;
 import com.lmax.disruptor.EventTranslatorThreeArg;
 import com.lmax.disruptor.EventTranslatorTwoArg;
 import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.LaneMergingEventProcessor;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.Sequence;
 import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.ShardedRingBuffer;
+import com.lmax.disruptor.Sequencer;
+import com.lmax.disruptor.SnapshotAware;
 import com.lmax.disruptor.TimeoutException;
 import com.lmax.disruptor.WaitStrategy;
 import com.lmax.disruptor.WorkHandler;
 import com.lmax.disruptor.WorkerPool;
 import com.lmax.disruptor.util.Util;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -60,12 +71,16 @@ public class Disruptor<T>
     private final RingBuffer<T> ringBuffer;
     // 用于执行消费者的执行器
     private final Executor executor;
+    // 协作式调度器，不为null时消费者以CooperativeEventProcessor的形式运行
+    private final CooperativeScheduler scheduler;
     // 消费者仓库,就是消费者的集合
     private final ConsumerRepository<T> consumerRepository = new ConsumerRepository<>();
     // 启动时检查,只能启动一次
     private final AtomicBoolean started = new AtomicBoolean(false);
     // 异常处理
     private ExceptionHandler<? super T> exceptionHandler = new ExceptionHandlerWrapper<>();
+    // 启动时追加到处理链末端的清理阶段，没有配置时为null
+    private EventHandler<T> clearingHandler;
 
     /**
 	 * 通过构造方法,可以对内部的环和消费者进行初始化。
@@ -137,13 +152,56 @@ public class Disruptor<T>
             new BasicExecutor(threadFactory));
     }
 
+	/**
+	 * 使用已经创建好的RingBuffer创建一个新的Disruptor，例如通过
+	 * {@link RingBuffer#createValueRing(ProducerType, int, WaitStrategy)}创建的值模式RingBuffer。
+	 *
+	 * @param ringBuffer    保存事件的RingBuffer
+	 * @param threadFactory {@link ThreadFactory}来执行消费者
+	 */
+    public Disruptor(final RingBuffer<T> ringBuffer, final ThreadFactory threadFactory)
+    {
+        this(ringBuffer, new BasicExecutor(threadFactory));
+    }
+
+	/**
+	 * 创建一个在共享的{@link CooperativeScheduler}上运行消费者的Disruptor。
+	 * 通过{@link #handleEventsWith(EventHandler[])}等方法设置的消费者以{@link CooperativeEventProcessor}的形式
+	 * 由调度器的载体线程运行，不再各自占用一个线程；许多Disruptor可以共享同一个调度器。
+	 * 工作池和自定义的消费者仍然在调度器创建的独立线程上运行。
+	 *
+	 * @param eventFactory   创建事件events
+	 * @param ringBufferSize RingBuffer的大小必须是2的幂
+	 * @param scheduler      运行消费者的调度器
+	 * @param producerType   声明生产者的类型
+	 * @param waitStrategy   声明等待策略，发布事件时同时唤醒调度器
+	 */
+    public Disruptor(
+            final EventFactory<T> eventFactory,
+            final int ringBufferSize,
+            final CooperativeScheduler scheduler,
+            final ProducerType producerType,
+            final WaitStrategy waitStrategy)
+    {
+        this(
+            RingBuffer.create(producerType, eventFactory, ringBufferSize, scheduler.wrap(waitStrategy)),
+            scheduler,
+            scheduler);
+    }
+
     /**
      * 构造函数，参数包括一个RingBuffer对象和Executor对象，前者由于保存数据，后者用于执行消费者函数
      */
     private Disruptor(final RingBuffer<T> ringBuffer, final Executor executor)
+    {
+        this(ringBuffer, executor, null);
+    }
+
+    private Disruptor(final RingBuffer<T> ringBuffer, final Executor executor, final CooperativeScheduler scheduler)
     {
         this.ringBuffer = ringBuffer;
         this.executor = executor;
+        this.scheduler = scheduler;
     }
 
     /**
@@ -219,6 +277,87 @@ public class Disruptor<T>
         return new EventHandlerGroup<>(this, consumerRepository, Util.getSequencesFor(processors));
     }
 
+	/**
+	 * 设置不参与门控(lossy)的消费者，适用于监控、审计采样等附加在热点RingBuffer上的旁路消费者。
+	 * 这些消费者的序列不会加入门控序列，再慢也不会阻塞生产者；被生产者套圈时会跳到最新发布的序列，
+	 * 跳过的事件数量通过{@link EventLossAware}和{@link BatchEventProcessor#getLostEventCount()}报告。
+	 * <p>它们也不算作链的末端，{@link #shutdown()}不会等待它们处理完剩余的事件。</p>
+	 *
+	 * @param handlers 处理事件
+	 */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public final void handleEventsLossilyWith(final EventHandler<? super T>... handlers)
+    {
+        checkNotStarted();
+
+        final Sequence[] processorSequences = new Sequence[handlers.length];
+        for (int i = 0; i < handlers.length; i++)
+        {
+            final SequenceBarrier barrier = ringBuffer.newBarrier();
+            final BatchEventProcessor<T> batchEventProcessor =
+                new BatchEventProcessor<>(ringBuffer, barrier, handlers[i]);
+            batchEventProcessor.setLossy(ringBuffer, ringBuffer.getBufferSize());
+
+            if (exceptionHandler != null)
+            {
+                batchEventProcessor.setExceptionHandler(exceptionHandler);
+            }
+
+            consumerRepository.add(batchEventProcessor, handlers[i], barrier);
+            processorSequences[i] = batchEventProcessor.getSequence();
+        }
+
+        consumerRepository.unMarkEventProcessorsAsEndOfChain(processorSequences);
+    }
+
+	/**
+	 * 把{@link ShardedRingBuffer}作为前端：每个生产者线程向自己的lane发布事件，
+	 * 合并处理器把所有lane中的事件依次复制到Disruptor的RingBuffer中，之后的消费者照常通过{@link #handleEventsWith}设置。
+	 * 合并处理器随Disruptor启动和停止，但不算作链的末端。
+	 *
+	 * @param shardedRingBuffer 生产者写入的分片RingBuffer
+	 * @param copier            把lane中的事件复制到RingBuffer的事件中
+	 * @return 合并处理器
+	 */
+    public LaneMergingEventProcessor<T> mergeFrom(
+        final ShardedRingBuffer<T> shardedRingBuffer,
+        final EventTranslatorOneArg<T, T> copier)
+    {
+        checkNotStarted();
+        return addMergingProcessor(
+            shardedRingBuffer.newMergingProcessor(new LaneRepublishingEventHandler<>(ringBuffer, copier)));
+    }
+
+	/**
+	 * 与{@link #mergeFrom(ShardedRingBuffer, EventTranslatorOneArg)}相同，但每次从所有lane的队头中选择orderingKey最小的事件复制到RingBuffer中。
+	 *
+	 * @param shardedRingBuffer 生产者写入的分片RingBuffer
+	 * @param copier            把lane中的事件复制到RingBuffer的事件中
+	 * @param orderingKey       从事件中取得排序用的键，例如时间戳或全局序列标签
+	 * @return 合并处理器
+	 */
+    public LaneMergingEventProcessor<T> mergeFrom(
+        final ShardedRingBuffer<T> shardedRingBuffer,
+        final EventTranslatorOneArg<T, T> copier,
+        final LaneMergingEventProcessor.OrderingKey<? super T> orderingKey)
+    {
+        checkNotStarted();
+        return addMergingProcessor(
+            shardedRingBuffer.newMergingProcessor(new LaneRepublishingEventHandler<>(ringBuffer, copier), orderingKey));
+    }
+
+    private LaneMergingEventProcessor<T> addMergingProcessor(final LaneMergingEventProcessor<T> processor)
+    {
+        if (exceptionHandler != null)
+        {
+            processor.setExceptionHandler(exceptionHandler);
+        }
+
+        consumerRepository.addIndependent(processor);
+        return processor;
+    }
+
 	/**
 	 * handleEventsWithWorkerPool内部会创建WorkerPool 设置{@link WorkerPool}以将事件分发到工作处理线程池
 	 * 每个事件仅由其中一个消费者处理,当调用{@link #start()}时,Disruptor将自动启动此消费者。
@@ -233,6 +372,28 @@ public class Disruptor<T>
         return createWorkerPool(new Sequence[0], workHandlers);
     }
 
+	/**
+	 * <p>设置有序并行阶段：每个工作者实例由一个线程运行，按序列轮流分担事件，例如并行计算结果并写回事件中。
+	 * 与{@link #handleEventsWithWorkerPool(WorkHandler[])}不同，之后的阶段只会越过所有工作者都已经处理完的连续序列，
+	 * 因此可以在后续阶段按序列顺序提交结果：</p>
+	 *
+	 * <pre>
+	 * <code>dw.handleEventsWithOrderedWorkers(A1, A2, A3).then(commit);</code>
+	 * </pre>
+	 *
+	 * <p>每个工作者都会经过所有事件并跳过不属于自己的事件。工作者通过内部的{@link EventHandler}注册，
+	 * 不能用工作者本身查找序列或设置异常处理。</p>
+	 *
+	 * @param workHandlers 工作者，每个实例对应一个线程
+	 * @return {@link EventHandlerGroup} 可用于链的依赖
+	 */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public final EventHandlerGroup<T> handleEventsWithOrderedWorkers(final WorkHandler<? super T>... workHandlers)
+    {
+        return createOrderedWorkers(new Sequence[0], workHandlers);
+    }
+
     /**
 	 * <p>事件消费异常处理。请注意,只有在调用此方法后,涉及的消费者才会使用异常消费者</p>
 	 *
@@ -275,6 +436,22 @@ public class Disruptor<T>
         return new ExceptionHandlerSetting<>(eventHandler, consumerRepository);
     }
 
+	/**
+	 * 限制特定消费者一个批次的大小或处理时间，使长批次中途也能更新序列，必须在Disruptor启动之前调用。
+	 *
+	 * <pre>
+	 * disruptorWizard.limitBatchesFor(eventHandler).toSize(256).toTime(100, TimeUnit.MICROSECONDS);
+	 * </pre>
+	 *
+	 * @param eventHandler 要限制批次的事件处理
+	 * @return a BatchLimitSetting dsl对象 - 打算通过链接方法调用来使用
+	 */
+    public BatchLimitSetting<T> limitBatchesFor(final EventHandler<T> eventHandler)
+    {
+        checkNotStarted();
+        return new BatchLimitSetting<>(eventHandler, consumerRepository);
+    }
+
 	/**
 	 * <p>创建一组时间处理作为依赖 如果A必须在B之前处理事件,例如</p>
 	 * 
@@ -381,6 +558,49 @@ public class Disruptor<T>
         ringBuffer.publishEvent(eventTranslator, arg0, arg1, arg2);
     }
 
+	/**
+	 * 在值模式的RingBuffer中按引用发布一个不可变的事件
+	 *
+	 * @param value 要发布的事件
+	 * @see RingBuffer#publishValue(Object)
+	 */
+    public void publishValue(final T value)
+    {
+        ringBuffer.publishValue(value);
+    }
+
+	/**
+	 * 在值模式的RingBuffer上，启动时在处理链的末端追加一个清理阶段，所有消费者处理完事件之后清除对应的槽位，
+	 * 使事件对象不再被RingBuffer引用。清理阶段参与门控，生产者不会覆盖还没有清理的槽位。
+	 * <p>清理之后读取槽位会得到null，因此不能再在启动之后通过{@link #attachEventHandlers(EventHandler[])}等方法添加消费者，
+	 * 不参与门控的消费者被套圈时也可能读到null。必须在{@link #start()}之前调用。</p>
+	 *
+	 * @throws IllegalStateException 如果不是值模式的RingBuffer，已经配置了清理阶段，或者Disruptor已经启动
+	 * @see RingBuffer#createValueRing(ProducerType, int, WaitStrategy)
+	 */
+    public void clearValuesAfterProcessing()
+    {
+        if (!ringBuffer.isValueRing())
+        {
+            throw new IllegalStateException("Values can only be cleared on a RingBuffer created by createValueRing");
+        }
+        setClearingHandler(new ValueClearingEventHandler<>(ringBuffer));
+    }
+
+	/**
+	 * 启动时在处理链的末端追加一个清理阶段，所有链末端的消费者处理完事件之后，由清理阶段调用eventResetter重置事件，
+	 * 释放事件中引用的负载，避免它们在槽位被下一圈覆盖之前一直可达。清理阶段替代链末端的消费者参与门控，
+	 * 重置在清理阶段自己的线程上执行，不会增加其他消费者的开销。
+	 * <p>启动之后不能再通过{@link #attachEventHandlers(EventHandler[])}等方法添加消费者。必须在{@link #start()}之前调用。</p>
+	 *
+	 * @param eventResetter 重置事件
+	 * @throws IllegalStateException 如果已经配置了清理阶段，或者Disruptor已经启动
+	 */
+    public void clearEventsWith(final EventResetter<? super T> eventResetter)
+    {
+        setClearingHandler(new ResettingEventHandler<T>(eventResetter));
+    }
+
 	/**
 	 * 启动过程中会将事件消费者的序列设置为RingBuffer的追踪序列。设置RingBuffer以防止覆盖最慢的消费者尚未处理的任何entry。
 	 * 添加所有消费者后,只能调用一次此方法。
@@ -389,6 +609,10 @@ public class Disruptor<T>
 	 */
     public RingBuffer<T> start()
     {
+        if (clearingHandler != null && !started.get())
+        {
+            addClearingStage();
+        }
         checkOnlyStartedOnce();
         for (final ConsumerInfo consumerInfo : consumerRepository)
         {
@@ -398,6 +622,207 @@ public class Disruptor<T>
         return ringBuffer;
     }
 
+	/**
+	 * 从{@link SnapshotAware}消费者保存的快照启动。所有实现了{@link SnapshotAware}的消费者先恢复各自的快照，
+	 * 然后RingBuffer的游标与所有消费者的序列被重置到快照序列，之后的事件从快照序列的下一个开始处理，
+	 * 启动时间因此不再取决于全部的历史事件。
+	 * <p>如果没有任何可用的快照，等同于{@link #start()}。添加所有消费者后,只能调用一次此方法。</p>
+	 *
+	 * @return 配置完成的RingBuffer.
+	 * @throws IllegalStateException 如果恢复快照失败，或者各消费者的快照序列不一致
+	 */
+    @SuppressWarnings("deprecation")
+    public RingBuffer<T> startFromSnapshot()
+    {
+        checkNotStarted();
+
+        long snapshotSequence = Sequencer.INITIAL_CURSOR_VALUE;
+        boolean restored = false;
+        for (final ConsumerInfo consumerInfo : consumerRepository)
+        {
+            final SnapshotAware snapshotAware = getSnapshotAware(consumerInfo);
+            if (snapshotAware != null)
+            {
+                final long sequence = restoreSnapshot(snapshotAware);
+                if (restored && sequence != snapshotSequence)
+                {
+                    throw new IllegalStateException(
+                        "Snapshots were taken at different sequences: " + snapshotSequence + " and " + sequence);
+                }
+                snapshotSequence = sequence;
+                restored = true;
+            }
+        }
+
+        if (snapshotSequence != Sequencer.INITIAL_CURSOR_VALUE)
+        {
+            ringBuffer.resetTo(snapshotSequence);
+            for (final ConsumerInfo consumerInfo : consumerRepository)
+            {
+                for (final Sequence sequence : consumerInfo.getSequences())
+                {
+                    sequence.set(snapshotSequence);
+                }
+            }
+        }
+
+        return start();
+    }
+
+	/**
+	 * 请求所有{@link SnapshotAware}消费者在同一个序列上保存快照。该序列是下一个将被发布的序列，
+	 * 每个消费者都会在处理完它之后、处理后续事件之前在自己的线程上调用{@link SnapshotAware#onSnapshot(long)}，
+	 * 因此所有快照都对应同一个一致的序列。
+	 *
+	 * @return 快照将要对应的序列
+	 * @throws IllegalStateException 如果有{@link SnapshotAware}消费者不是由{@link BatchEventProcessor}运行的，
+	 *                               例如通过{@link CooperativeScheduler}运行，此时不会请求任何快照
+	 */
+    public long snapshot()
+    {
+        final List<BatchEventProcessor<?>> processors = new ArrayList<>();
+        for (final ConsumerInfo consumerInfo : consumerRepository)
+        {
+            if (getSnapshotAware(consumerInfo) != null)
+            {
+                final EventProcessor processor = ((EventProcessorInfo<?>) consumerInfo).getEventProcessor();
+                if (!(processor instanceof BatchEventProcessor))
+                {
+                    throw new IllegalStateException("Snapshots are only supported by BatchEventProcessor: " + processor);
+                }
+                processors.add((BatchEventProcessor<?>) processor);
+            }
+        }
+
+        final long snapshotSequence = ringBuffer.getCursor() + 1L;
+        for (final BatchEventProcessor<?> processor : processors)
+        {
+            processor.requestSnapshot(snapshotSequence);
+        }
+        return snapshotSequence;
+    }
+
+	/**
+	 * 在已经启动的Disruptor上添加消费者，不需要重启整个处理链。新的消费者从当前游标之后的事件开始处理，
+	 * 并立即加入门控序列、由executor启动。
+	 * <p>与其他配置方法一样，此方法不是线程安全的，应由同一个线程调用。</p>
+	 *
+	 * @param handlers 处理事件
+	 * @return {@link EventHandlerGroup} 包含新消费者的序列
+	 * @throws IllegalStateException 如果Disruptor还没有启动，或者配置了清理阶段
+	 */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public final EventHandlerGroup<T> attachEventHandlers(final EventHandler<? super T>... handlers)
+    {
+        checkStarted();
+        checkNoClearingStage();
+
+        final List<SequenceBarrier> barriers = new ArrayList<>(handlers.length);
+        final List<BatchEventProcessor<T>> processors = createDetachedEventProcessors(handlers, barriers);
+        final Sequence[] processorSequences = Util.getSequencesFor(processors.toArray(new EventProcessor[processors.size()]));
+
+        ringBuffer.addGatingSequences(processorSequences);
+        startAttachedEventProcessors(handlers, barriers, processors);
+
+        return new EventHandlerGroup<>(this, consumerRepository, processorSequences);
+    }
+
+	/**
+	 * 在已经启动的Disruptor上添加消费者，并从指定的序列开始处理，例如从某个已知的位置重放仍在RingBuffer中的事件。
+	 * 起始序列不能早于当前最慢的消费者，因为更早的事件可能已被覆盖；也不能晚于下一个将被发布的序列。
+	 * <p>与其他配置方法一样，此方法不是线程安全的，应由同一个线程调用。</p>
+	 *
+	 * @param startSequence 新消费者处理的第一个序列
+	 * @param handlers      处理事件
+	 * @return {@link EventHandlerGroup} 包含新消费者的序列
+	 * @throws IllegalStateException    如果Disruptor还没有启动，或者配置了清理阶段
+	 * @throws IllegalArgumentException 如果startSequence对应的事件已经不能安全地读取
+	 */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public final EventHandlerGroup<T> attachEventHandlers(final long startSequence, final EventHandler<? super T>... handlers)
+    {
+        checkStarted();
+        checkNoClearingStage();
+        if (startSequence > ringBuffer.getCursor() + 1L)
+        {
+            throw new IllegalArgumentException("startSequence must not be after the next published sequence");
+        }
+
+        final List<SequenceBarrier> barriers = new ArrayList<>(handlers.length);
+        final List<BatchEventProcessor<T>> processors = createDetachedEventProcessors(handlers, barriers);
+        final Sequence[] processorSequences = Util.getSequencesFor(processors.toArray(new EventProcessor[processors.size()]));
+        for (final Sequence sequence : processorSequences)
+        {
+            sequence.set(startSequence - 1L);
+        }
+
+        if (!ringBuffer.tryAddGatingSequences(processorSequences))
+        {
+            throw new IllegalArgumentException(
+                "startSequence " + startSequence + " is behind the slowest consumer, its events may have been overwritten");
+        }
+        startAttachedEventProcessors(handlers, barriers, processors);
+
+        return new EventHandlerGroup<>(this, consumerRepository, processorSequences);
+    }
+
+	/**
+	 * 在已经启动的Disruptor上添加{@link WorkerPool}，它从当前游标之后的事件开始处理。
+	 * <p>与其他配置方法一样，此方法不是线程安全的，应由同一个线程调用。</p>
+	 *
+	 * @param workHandlers 要处理的事件
+	 * @return 新添加的{@link WorkerPool}，可用于{@link #detachWorkerPool(WorkerPool)}
+	 * @throws IllegalStateException 如果Disruptor还没有启动，或者配置了清理阶段
+	 */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public final WorkerPool<T> attachWorkerPool(final WorkHandler<T>... workHandlers)
+    {
+        checkStarted();
+        checkNoClearingStage();
+
+        final SequenceBarrier sequenceBarrier = ringBuffer.newBarrier();
+        final WorkerPool<T> workerPool = new WorkerPool<>(ringBuffer, sequenceBarrier, exceptionHandler, workHandlers);
+
+        ringBuffer.addGatingSequences(workerPool.getWorkerSequences());
+        consumerRepository.add(workerPool, sequenceBarrier);
+        workerPool.start(executor);
+
+        return workerPool;
+    }
+
+	/**
+	 * 从Disruptor中移除消费者。先等待它处理完调用时已经发布的事件，然后停止它，等它的线程退出之后再将它移出门控序列，
+	 * 因此停止时正在处理的批次不会读到已经被生产者覆盖的槽位。
+	 * 已经启动的Disruptor中，要移除的消费者必须仍在运行，否则会一直等待。
+	 * 如果它是上游消费者唯一的下游，上游消费者会重新成为链的末端并加入门控序列。
+	 * <p>与其他配置方法一样，此方法不是线程安全的，应由同一个线程调用。</p>
+	 *
+	 * @param handler 要移除的消费者
+	 * @throws IllegalArgumentException 如果handler不是由当前Disruptor管理的
+	 * @throws IllegalStateException    如果还有其他消费者依赖于它，或者存在不知道依赖关系的自定义消费者
+	 */
+    public void detachEventHandler(final EventHandler<T> handler)
+    {
+        detach(consumerRepository.getConsumerInfoFor(handler));
+    }
+
+	/**
+	 * 从Disruptor中移除{@link WorkerPool}。先等待它处理完调用时已经发布的事件，然后停止它，等所有workers的线程退出之后再将它移出门控序列。
+	 * 已经启动的Disruptor中，要移除的WorkerPool必须仍在运行，否则会一直等待。
+	 * <p>与其他配置方法一样，此方法不是线程安全的，应由同一个线程调用。</p>
+	 *
+	 * @param workerPool 要移除的WorkerPool
+	 * @throws IllegalArgumentException 如果workerPool不是由当前Disruptor管理的
+	 * @throws IllegalStateException    如果还有其他消费者依赖于它，或者存在不知道依赖关系的自定义消费者
+	 */
+    public void detachWorkerPool(final WorkerPool<T> workerPool)
+    {
+        detach(consumerRepository.getConsumerInfoFor(workerPool.getWorkerSequences()[0]));
+    }
+
 	/**
 	 * 在通过当前disruptor创建的所有消费者上调用{@link com.lmax.disruptor.EventProcessor#halt()}
 	 */
@@ -427,6 +852,8 @@ public class Disruptor<T>
 
 	/**
 	 * <p>等待所有消费者当前处理所有事件,然后停止消费者。</p>
+	 * <p>通过{@link #drain()}等待处理链末端的消费者处理到调用时的游标，等待期间不会占用CPU反复读取序列。
+	 * 等待的线程被中断时与超时一样放弃等待，并保留中断状态。</p>
 	 * <p>此方法不会关闭executor,也不会等待消费者线程的最终终止。</p>
 	 *
 	 * @param timeout  等待处理所有事件的时间量。<code>-1</code>时将给出无限超时
@@ -435,18 +862,118 @@ public class Disruptor<T>
 	 */
     public void shutdown(final long timeout, final TimeUnit timeUnit) throws TimeoutException
     {
-        final long timeOutAt = System.currentTimeMillis() + timeUnit.toMillis(timeout);
-        while (hasBacklog())
+        final DrainFuture drainFuture = drain();
+        try
         {
-            if (timeout >= 0 && System.currentTimeMillis() > timeOutAt)
+            if (timeout < 0)
             {
-                throw TimeoutException.INSTANCE;
+                drainFuture.get();
             }
-            // Busy spin
+            else
+            {
+                drainFuture.get(timeout, timeUnit);
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            drainFuture.cancel(false);
+            throw TimeoutException.INSTANCE;
+        }
+        catch (final java.util.concurrent.TimeoutException e)
+        {
+            drainFuture.cancel(false);
+            throw TimeoutException.INSTANCE;
         }
         halt();
     }
 
+	/**
+	 * <p>异步等待处理链末端所有正在运行的消费者处理到调用时的游标，不停止消费者。</p>
+	 * <p>{@link BatchEventProcessor}在更新序列后通知返回的Future，等待的线程不会反复读取序列。</p>
+	 *
+	 * @return 处理完成时完成的Future，结果是调用时的游标
+	 */
+    public DrainFuture drain()
+    {
+        return newDrainFuture(consumerRepository.getLastSequenceInChain(false), ringBuffer.getCursor(), true);
+    }
+
+	/**
+	 * <p>异步等待指定的消费者处理到调用时的游标，不停止消费者。
+	 * 可以为每个阶段分别创建，例如滚动重启时按顺序等待各个阶段处理完之后再分别停止。</p>
+	 *
+	 * @param handlers 要等待的事件处理
+	 * @return 处理完成时完成的Future，结果是调用时的游标
+	 */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public final DrainFuture drain(final EventHandler<T>... handlers)
+    {
+        final Sequence[] sequences = new Sequence[handlers.length];
+        for (int i = 0; i < handlers.length; i++)
+        {
+            sequences[i] = consumerRepository.getSequenceFor(handlers[i]);
+        }
+        return newDrainFuture(sequences, ringBuffer.getCursor(), true);
+    }
+
+	/**
+	 * <p>创建一个{@link CompletionRing}，用于等待发布的序列被处理链末端的所有消费者处理完，例如处理完之后回复请求方。
+	 * 必须在设置完所有消费者之后调用，末端的消费者必须都是{@link BatchEventProcessor}。</p>
+	 *
+	 * @return 新的CompletionRing
+	 * @throws IllegalStateException 如果末端的消费者不是{@link BatchEventProcessor}
+	 */
+    public CompletionRing newCompletionRing()
+    {
+        final Sequence[] terminalSequences = consumerRepository.getLastSequenceInChain(true);
+        final List<BatchEventProcessor<?>> terminalProcessors = new ArrayList<>();
+        for (final Sequence terminalSequence : terminalSequences)
+        {
+            final ConsumerInfo consumerInfo = consumerRepository.getConsumerInfoFor(terminalSequence);
+            final EventProcessor processor = consumerInfo instanceof EventProcessorInfo
+                ? ((EventProcessorInfo<?>) consumerInfo).getEventProcessor() : null;
+            if (!(processor instanceof BatchEventProcessor))
+            {
+                throw new IllegalStateException("End of chain consumer " + consumerInfo + " does not report progress");
+            }
+            if (!terminalProcessors.contains(processor))
+            {
+                terminalProcessors.add((BatchEventProcessor<?>) processor);
+            }
+        }
+
+        return new CompletionRing(
+            ringBuffer.getBufferSize(),
+            terminalProcessors.toArray(new BatchEventProcessor<?>[terminalProcessors.size()]));
+    }
+
+    private DrainFuture newDrainFuture(final Sequence[] sequences, final long targetSequence, final boolean stoppedIsDrained)
+    {
+        final ConsumerInfo[] consumerInfos = new ConsumerInfo[sequences.length];
+        final List<BatchEventProcessor<?>> signallingProcessors = new ArrayList<>();
+        for (int i = 0; i < sequences.length; i++)
+        {
+            consumerInfos[i] = consumerRepository.getConsumerInfoFor(sequences[i]);
+            if (consumerInfos[i] instanceof EventProcessorInfo)
+            {
+                final EventProcessor processor = ((EventProcessorInfo<?>) consumerInfos[i]).getEventProcessor();
+                if (processor instanceof BatchEventProcessor && !signallingProcessors.contains(processor))
+                {
+                    signallingProcessors.add((BatchEventProcessor<?>) processor);
+                }
+            }
+        }
+
+        return new DrainFuture(
+            targetSequence,
+            sequences,
+            consumerInfos,
+            signallingProcessors.toArray(new BatchEventProcessor<?>[signallingProcessors.size()]),
+            stoppedIsDrained);
+    }
+
 	/**
 	 * 如果{@link BatchEventProcessor}的行为不合适，这对于创建自定义事件处理器很有用。
 	 * 
@@ -494,7 +1021,7 @@ public class Disruptor<T>
 	 * 获取特定消费者使用的{@link SequenceBarrier}。请注意,{@link SequenceBarrier}可能由多个消费者共享。
 	 *
 	 * @param handler 获得栏栅的消费者。
-	 * @return 消费者使用的SequenceBarrier。
+	 * @return 消费者使用的SequenceBarrier。由{@link CooperativeScheduler}运行的消费者没有栅栏，返回null。
 	 */
     public SequenceBarrier getBarrierFor(final EventHandler<T> handler)
     {
@@ -512,20 +1039,134 @@ public class Disruptor<T>
         return consumerRepository.getSequenceFor(b1).get();
     }
 
-	/**
-	 * 确认所有消费者是否已使用所有消息
-	 */
-    private boolean hasBacklog()
+    private List<BatchEventProcessor<T>> createDetachedEventProcessors(
+        final EventHandler<? super T>[] handlers, final List<SequenceBarrier> barriers)
+    {
+        final List<BatchEventProcessor<T>> processors = new ArrayList<>(handlers.length);
+        for (final EventHandler<? super T> handler : handlers)
+        {
+            // 每个消费者使用自己的栅栏，移除其中一个消费者时不会通知同批添加的其他消费者
+            final SequenceBarrier barrier = ringBuffer.newBarrier();
+            final BatchEventProcessor<T> processor = new BatchEventProcessor<>(ringBuffer, barrier, handler);
+            if (exceptionHandler != null)
+            {
+                processor.setExceptionHandler(exceptionHandler);
+            }
+            barriers.add(barrier);
+            processors.add(processor);
+        }
+        return processors;
+    }
+
+    private void startAttachedEventProcessors(
+        final EventHandler<? super T>[] handlers, final List<SequenceBarrier> barriers, final List<BatchEventProcessor<T>> processors)
+    {
+        for (int i = 0; i < handlers.length; i++)
+        {
+            final BatchEventProcessor<T> processor = processors.get(i);
+            consumerRepository.add(processor, handlers[i], barriers.get(i));
+            executor.execute(processor);
+        }
+    }
+
+    private void detach(final ConsumerInfo consumerInfo)
+    {
+        if (consumerRepository.hasDependents(consumerInfo))
+        {
+            throw new IllegalStateException("Cannot detach a consumer that other consumers depend on");
+        }
+
+        // 启动之后消费者线程可能还没有开始运行，因此只要Disruptor已经启动就等待消费者处理完调用时已经发布的事件，不把未运行视为已处理完
+        final Sequence[] sequences = consumerInfo.getSequences();
+        if (started.get())
+        {
+            awaitUninterruptibly(newDrainFuture(sequences, ringBuffer.getCursor(), false));
+        }
+
+        consumerInfo.halt();
+
+        // 停止时正在处理的批次可能还没有结束，等消费者的线程退出之后再移出门控序列，否则这些槽位可能已经被生产者覆盖
+        if (started.get())
+        {
+            awaitUninterruptibly(newDrainFuture(sequences, Long.MAX_VALUE, true));
+        }
+
+        // 上游消费者在被移除的消费者仍处于门控序列中时重新加入，此时它们不会落后于最慢的门控序列
+        final Sequence[] upstreamSequences = consumerRepository.remove(consumerInfo);
+        if (upstreamSequences.length > 0 && !ringBuffer.tryAddGatingSequences(upstreamSequences))
+        {
+            throw new IllegalStateException("Failed to restore gating sequences of upstream consumers");
+        }
+
+        for (final Sequence sequence : sequences)
+        {
+            ringBuffer.removeGatingSequence(sequence);
+        }
+    }
+
+    private static void awaitUninterruptibly(final DrainFuture drainFuture)
+    {
+        boolean interrupted = false;
+        while (!drainFuture.isDone())
+        {
+            try
+            {
+                drainFuture.get();
+            }
+            catch (final InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void setClearingHandler(final EventHandler<T> handler)
     {
-        final long cursor = ringBuffer.getCursor();
-        for (final Sequence consumer : consumerRepository.getLastSequenceInChain(false))
+        checkNotStarted();
+        if (clearingHandler != null)
         {
-            if (cursor > consumer.get())
+            throw new IllegalStateException("An end of chain clearing stage has already been configured.");
+        }
+        clearingHandler = handler;
+    }
+
+    private void addClearingStage()
+    {
+        new EventHandlerGroup<>(this, consumerRepository, consumerRepository.getLastSequenceInChain(true))
+            .handleEventsWith(clearingHandler);
+
+        // 从快照启动时游标已经被重置，清理阶段从游标开始，不能在起始序列上阻塞生产者
+        consumerRepository.getSequenceFor(clearingHandler).set(ringBuffer.getCursor());
+    }
+
+    private static SnapshotAware getSnapshotAware(final ConsumerInfo consumerInfo)
+    {
+        if (consumerInfo instanceof EventProcessorInfo)
+        {
+            final EventHandler<?> handler = ((EventProcessorInfo<?>) consumerInfo).getHandler();
+            if (handler instanceof SnapshotAware)
             {
-                return true;
+                return (SnapshotAware) handler;
             }
         }
-        return false;
+        return null;
+    }
+
+    private static long restoreSnapshot(final SnapshotAware snapshotAware)
+    {
+        try
+        {
+            return snapshotAware.restoreSnapshot();
+        }
+        catch (final Exception e)
+        {
+            throw new IllegalStateException("Failed to restore snapshot for " + snapshotAware, e);
+        }
     }
 
     EventHandlerGroup<T> createEventProcessors(
@@ -535,22 +1176,27 @@ public class Disruptor<T>
         checkNotStarted();
 
         final Sequence[] processorSequences = new Sequence[eventHandlers.length];
-        final SequenceBarrier barrier = ringBuffer.newBarrier(barrierSequences);
 
         for (int i = 0, eventHandlersLength = eventHandlers.length; i < eventHandlersLength; i++)
         {
             final EventHandler<? super T> eventHandler = eventHandlers[i];
-
-            final BatchEventProcessor<T> batchEventProcessor =
-                new BatchEventProcessor<>(ringBuffer, barrier, eventHandler);
-
-            if (exceptionHandler != null)
+            final EventProcessor eventProcessor;
+            final SequenceBarrier barrier;
+            if (null != scheduler)
             {
-                batchEventProcessor.setExceptionHandler(exceptionHandler);
+                // 协作式的处理器通过EventPoller读取事件，不使用栅栏
+                eventProcessor = createCooperativeEventProcessor(barrierSequences, eventHandler);
+                barrier = null;
+            }
+            else
+            {
+                // 每个消费者使用自己的栅栏，运行时移除其中一个消费者时停止它不会通知同组的其他消费者
+                barrier = ringBuffer.newBarrier(barrierSequences);
+                eventProcessor = createBatchEventProcessor(barrier, eventHandler);
             }
 
-            consumerRepository.add(batchEventProcessor, eventHandler, barrier);
-            processorSequences[i] = batchEventProcessor.getSequence();
+            consumerRepository.add(eventProcessor, eventHandler, barrier);
+            processorSequences[i] = eventProcessor.getSequence();
         }
 
         updateGatingSequencesForNextInChain(barrierSequences, processorSequences);
@@ -558,6 +1204,32 @@ public class Disruptor<T>
         return new EventHandlerGroup<>(this, consumerRepository, processorSequences);
     }
 
+    private BatchEventProcessor<T> createBatchEventProcessor(
+        final SequenceBarrier barrier, final EventHandler<? super T> eventHandler)
+    {
+        final BatchEventProcessor<T> batchEventProcessor =
+            new BatchEventProcessor<>(ringBuffer, barrier, eventHandler);
+
+        if (exceptionHandler != null)
+        {
+            batchEventProcessor.setExceptionHandler(exceptionHandler);
+        }
+        return batchEventProcessor;
+    }
+
+    private CooperativeEventProcessor<T> createCooperativeEventProcessor(
+        final Sequence[] barrierSequences, final EventHandler<? super T> eventHandler)
+    {
+        final CooperativeEventProcessor<T> cooperativeEventProcessor =
+            new CooperativeEventProcessor<>(ringBuffer, eventHandler, barrierSequences);
+
+        if (exceptionHandler != null)
+        {
+            cooperativeEventProcessor.setExceptionHandler(exceptionHandler);
+        }
+        return cooperativeEventProcessor;
+    }
+
     private void updateGatingSequencesForNextInChain(final Sequence[] barrierSequences, final Sequence[] processorSequences)
     {
         if (processorSequences.length > 0)
@@ -568,6 +1240,7 @@ public class Disruptor<T>
                 ringBuffer.removeGatingSequence(barrierSequence);
             }
             consumerRepository.unMarkEventProcessorsAsEndOfChain(barrierSequences);
+            consumerRepository.recordBarrierSequences(processorSequences, barrierSequences);
         }
     }
 
@@ -580,7 +1253,19 @@ public class Disruptor<T>
             eventProcessors[i] = processorFactories[i].createEventProcessor(ringBuffer, barrierSequences);
         }
 
-        return handleEventsWith(eventProcessors);
+        final EventHandlerGroup<T> eventHandlerGroup = handleEventsWith(eventProcessors);
+        consumerRepository.recordBarrierSequences(Util.getSequencesFor(eventProcessors), barrierSequences);
+        return eventHandlerGroup;
+    }
+
+    EventHandlerGroup<T> createOrderedWorkers(
+        final Sequence[] barrierSequences, final WorkHandler<? super T>[] workHandlers)
+    {
+        if (workHandlers.length == 0)
+        {
+            throw new IllegalArgumentException("At least one work handler is required");
+        }
+        return createEventProcessors(barrierSequences, OrderedWorkerEventHandler.<T>stripe(workHandlers));
     }
 
     EventHandlerGroup<T> createWorkerPool(
@@ -607,6 +1292,22 @@ public class Disruptor<T>
         }
     }
 
+    private void checkStarted()
+    {
+        if (!started.get())
+        {
+            throw new IllegalStateException("Consumers can only be attached after calling start, use handleEventsWith instead.");
+        }
+    }
+
+    private void checkNoClearingStage()
+    {
+        if (clearingHandler != null)
+        {
+            throw new IllegalStateException("Consumers can not be attached after an end of chain clearing stage has been added.");
+        }
+    }
+
     private void checkOnlyStartedOnce()
     {
         if (!started.compareAndSet(false, true))
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.dsl;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.ProgressListener;
+import com.lmax.disruptor.Sequence;
+
+/**
+ * <p>等待一组消费者处理到目标序列的{@link Future}，由{@link Disruptor#drain()}和{@link Disruptor#drain(EventHandler[])}创建，
+ * 结果是目标序列。</p>
+ * <p>{@link BatchEventProcessor}在更新序列之后通过{@link ProgressListener}通知，最后一个到达目标的消费者完成这个Future，
+ * 等待的线程阻塞在闩锁上，不会反复读取序列。其他消费者(例如{@link com.lmax.disruptor.WorkerPool})不能通知，
+ * 等待的线程每隔{@link #RECHECK_INTERVAL_NANOS}纳秒检查一次。{@link Disruptor#drain()}创建的Future把已经停止的消费者视为已经处理完，
+ * 运行时移除消费者时则一直等到消费者处理到目标序列，或者以{@link Long#MAX_VALUE}为目标等到消费者的线程退出。</p>
+ *
+ * @see Disruptor#drain()
+ */
+public final class DrainFuture implements Future<Long>
+{
+    /**
+     * 等待时重新检查消费者状态的间隔，用于发现不能通知的消费者和已经停止的消费者
+     */
+    public static final long RECHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long targetSequence;
+    private final Sequence[] sequences;
+    private final ConsumerInfo[] consumerInfos;
+    private final BatchEventProcessor<?>[] signallingProcessors;
+    private final boolean stoppedIsDrained;
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private final ProgressListener progressListener = new ProgressListener()
+    {
+        @Override
+        public void onProgress(final long sequence)
+        {
+            if (sequence >= targetSequence)
+            {
+                checkCompletion();
+            }
+        }
+
+        @Override
+        public void onStop(final long sequence)
+        {
+            checkCompletion();
+        }
+    };
+    private volatile boolean cancelled = false;
+
+    DrainFuture(
+        final long targetSequence,
+        final Sequence[] sequences,
+        final ConsumerInfo[] consumerInfos,
+        final BatchEventProcessor<?>[] signallingProcessors,
+        final boolean stoppedIsDrained)
+    {
+        this.targetSequence = targetSequence;
+        this.sequences = sequences;
+        this.consumerInfos = consumerInfos;
+        this.signallingProcessors = signallingProcessors;
+        this.stoppedIsDrained = stoppedIsDrained;
+
+        for (final BatchEventProcessor<?> processor : signallingProcessors)
+        {
+            processor.addProgressListener(progressListener);
+        }
+
+        // 注册之后再检查一次，消费者可能已经处理到目标
+        checkCompletion();
+    }
+
+    /**
+     * @return 等待消费者处理到的序列
+     */
+    public long getTargetSequence()
+    {
+        return targetSequence;
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        if (isDone())
+        {
+            return false;
+        }
+
+        cancelled = true;
+        complete();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone()
+    {
+        return completed.getCount() == 0;
+    }
+
+    @Override
+    public Long get() throws InterruptedException
+    {
+        while (!completed.await(RECHECK_INTERVAL_NANOS, TimeUnit.NANOSECONDS))
+        {
+            checkCompletion();
+        }
+
+        return result();
+    }
+
+    @Override
+    public Long get(final long timeout, final TimeUnit unit) throws InterruptedException, TimeoutException
+    {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long remaining = unit.toNanos(timeout);
+        while (!completed.await(Math.min(remaining, RECHECK_INTERVAL_NANOS), TimeUnit.NANOSECONDS))
+        {
+            checkCompletion();
+            remaining = deadline - System.nanoTime();
+            if (remaining <= 0 && !isDone())
+            {
+                throw new TimeoutException();
+            }
+        }
+
+        return result();
+    }
+
+    private Long result()
+    {
+        if (cancelled)
+        {
+            throw new CancellationException();
+        }
+
+        return Long.valueOf(targetSequence);
+    }
+
+    private void checkCompletion()
+    {
+        if (isDone())
+        {
+            return;
+        }
+
+        for (int i = 0; i < sequences.length; i++)
+        {
+            if (sequences[i].get() < targetSequence && (consumerInfos[i].isRunning() || !stoppedIsDrained))
+            {
+                return;
+            }
+        }
+
+        complete();
+    }
+
+    private void complete()
+    {
+        for (final BatchEventProcessor<?> processor : signallingProcessors)
+        {
+            processor.removeProgressListener(progressListener);
+        }
+        completed.countDown();
+    }
+}
@@ -144,6 +144,44 @@ public class EventHandlerGroup<T>
         return handleEventsWithWorkerPool(handlers);
     }
 
+    /**
+	 * <p>
+	 * 在该组中的消费者之后设置有序并行阶段，见{@link Disruptor#handleEventsWithOrderedWorkers(WorkHandler[])}
+	 * </p>
+	 *
+	 * <pre>
+	 * <code>dw.handleEventsWith(A).thenHandleEventsWithOrderedWorkers(B1, B2).then(C);</code>
+	 * </pre>
+	 *
+	 * @param handlers 工作者，每个实例对应一个线程
+	 * @return 一个{@link EventHandlerGroup},可用于在创建的消费者上设置消费者栏栅
+	 */
+    @SafeVarargs
+    public final EventHandlerGroup<T> thenHandleEventsWithOrderedWorkers(final WorkHandler<? super T>... handlers)
+    {
+        return handleEventsWithOrderedWorkers(handlers);
+    }
+
+    /**
+	 * <p>
+	 * 设置有序并行阶段，它只会在该组中的每个消费者处理完事件后处理事件，
+	 * 见{@link Disruptor#handleEventsWithOrderedWorkers(WorkHandler[])}
+	 * </p>
+	 *
+	 * <pre>
+	 * <code>dw.after(A).handleEventsWithOrderedWorkers(B1, B2);</code>
+	 * </pre>
+	 *
+	 * @param handlers 工作者，每个实例对应一个线程
+	 * @return 一个{@link EventHandlerGroup},可用于在创建的消费者上设置消费者栏栅
+	 */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public final EventHandlerGroup<T> handleEventsWithOrderedWorkers(final WorkHandler<? super T>... handlers)
+    {
+        return disruptor.createOrderedWorkers(sequences, handlers);
+    }
+
     /**
 	 * <p>
 	 * 设置批处理程序以处理来自RingBuffer的事件
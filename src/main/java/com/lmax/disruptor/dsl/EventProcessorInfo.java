@@ -93,6 +93,12 @@ class EventProcessorInfo<T> implements ConsumerInfo
         endOfChain = false;
     }
 
+    @Override
+    public void markAsEndOfChain()
+    {
+        endOfChain = true;
+    }
+
     @Override
     public boolean isRunning()
     {
@@ -16,6 +16,8 @@
 package com.lmax.disruptor.dsl;
 
 import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.CooperativeEventProcessor;
+import com.lmax.disruptor.DeadLetterQueue;
 import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.EventProcessor;
 import com.lmax.disruptor.ExceptionHandler;
@@ -53,16 +55,53 @@ public class ExceptionHandlerSetting<T>
     public void with(ExceptionHandler<? super T> exceptionHandler)
     {
         final EventProcessor eventProcessor = consumerRepository.getEventProcessorFor(eventHandler);
-        if (eventProcessor instanceof BatchEventProcessor)
+        if (eventProcessor instanceof CooperativeEventProcessor)
         {
-            ((BatchEventProcessor<T>) eventProcessor).setExceptionHandler(exceptionHandler);
-            consumerRepository.getBarrierFor(eventHandler).alert();
+            ((CooperativeEventProcessor<T>) eventProcessor).setExceptionHandler(exceptionHandler);
         }
         else
         {
-            throw new RuntimeException(
-                "EventProcessor: " + eventProcessor + " is not a BatchEventProcessor " +
-                "and does not support exception handlers");
+            getBatchEventProcessor().setExceptionHandler(exceptionHandler);
+            consumerRepository.getBarrierFor(eventHandler).alert();
+        }
+    }
+
+	/**
+	 * 指定要与消费者一起使用的{@link ExceptionHandler}，并在事件处理出错后继续处理同一批次中剩余的事件，
+	 * 见{@link BatchEventProcessor#setRecoverWithinBatch(boolean)}。必须在Disruptor启动之前调用。
+	 *
+	 * @param exceptionHandler 要使用的异常处理，例如{@link com.lmax.disruptor.DeadLetterExceptionHandler}
+	 */
+    public void withBatchRecovery(ExceptionHandler<? super T> exceptionHandler)
+    {
+        final BatchEventProcessor<T> batchEventProcessor = getBatchEventProcessor();
+        batchEventProcessor.setExceptionHandler(exceptionHandler);
+        batchEventProcessor.setRecoverWithinBatch(true);
+    }
+
+	/**
+	 * 把消费者处理出错的事件转存到死信队列中重试，同时启用批次内恢复，使故障风暴中主流程不必为每个出错的事件结束批次。
+	 * 死信队列的重试线程随Disruptor启动和停止，多个消费者可以共用同一个死信队列。必须在Disruptor启动之前调用。
+	 *
+	 * @param deadLetterQueue 死信队列
+	 */
+    public void withDeadLetterQueue(DeadLetterQueue<T> deadLetterQueue)
+    {
+        withBatchRecovery(deadLetterQueue);
+        consumerRepository.addIndependent(deadLetterQueue);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BatchEventProcessor<T> getBatchEventProcessor()
+    {
+        final EventProcessor eventProcessor = consumerRepository.getEventProcessorFor(eventHandler);
+        if (eventProcessor instanceof BatchEventProcessor)
+        {
+            return (BatchEventProcessor<T>) eventProcessor;
         }
+
+        throw new RuntimeException(
+            "EventProcessor: " + eventProcessor + " is not a BatchEventProcessor " +
+            "and does not support exception handlers");
     }
 }
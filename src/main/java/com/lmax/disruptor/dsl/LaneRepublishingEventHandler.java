@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.dsl;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.RingBuffer;
+
+/**
+ * <p>把{@link com.lmax.disruptor.ShardedRingBuffer}中合并出的事件复制到Disruptor的RingBuffer中，
+ * 合并处理器因此可以作为Disruptor的第一个阶段使用。</p>
+ *
+ * @param <T> 事件的类型
+ * @see Disruptor#mergeFrom(com.lmax.disruptor.ShardedRingBuffer, EventTranslatorOneArg)
+ */
+class LaneRepublishingEventHandler<T> implements EventHandler<T>
+{
+    private final RingBuffer<T> ringBuffer;
+    private final EventTranslatorOneArg<T, T> copier;
+
+    LaneRepublishingEventHandler(final RingBuffer<T> ringBuffer, final EventTranslatorOneArg<T, T> copier)
+    {
+        this.ringBuffer = ringBuffer;
+        this.copier = copier;
+    }
+
+    @Override
+    public void onEvent(final T event, final long sequence, final boolean endOfBatch) throws Exception
+    {
+        ringBuffer.publishEvent(copier, event);
+    }
+}
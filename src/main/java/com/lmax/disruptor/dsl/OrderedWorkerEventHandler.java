@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.dsl;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.WorkHandler;
+
+/**
+ * <p>有序并行阶段中的一个工作者：每个工作者由独立的{@link com.lmax.disruptor.BatchEventProcessor}运行，
+ * 只处理sequence % workerCount == workerIndex的事件，其余事件直接跳过。</p>
+ * <p>与{@link com.lmax.disruptor.WorkerPool}不同，工作者之间不竞争共享的workSequence；
+ * 每个处理器的序列在批次结束时推进到整个批次，下一个阶段的栏栅取这些序列的最小值，只会越过所有工作者都已经处理完的连续序列，
+ * 因此下一个阶段仍然严格按序列顺序看到结果。</p>
+ *
+ * @param <T> 事件的类型
+ * @see Disruptor#handleEventsWithOrderedWorkers(WorkHandler[])
+ */
+class OrderedWorkerEventHandler<T> implements EventHandler<T>, LifecycleAware
+{
+    private final WorkHandler<? super T> workHandler;
+    private final int workerIndex;
+    private final int workerCount;
+
+    OrderedWorkerEventHandler(final WorkHandler<? super T> workHandler, final int workerIndex, final int workerCount)
+    {
+        this.workHandler = workHandler;
+        this.workerIndex = workerIndex;
+        this.workerCount = workerCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> EventHandler<? super T>[] stripe(final WorkHandler<? super T>[] workHandlers)
+    {
+        final EventHandler<? super T>[] handlers = (EventHandler<? super T>[]) new EventHandler<?>[workHandlers.length];
+        for (int i = 0; i < workHandlers.length; i++)
+        {
+            handlers[i] = new OrderedWorkerEventHandler<T>(workHandlers[i], i, workHandlers.length);
+        }
+        return handlers;
+    }
+
+    @Override
+    public void onEvent(final T event, final long sequence, final boolean endOfBatch) throws Exception
+    {
+        if (sequence % workerCount == workerIndex)
+        {
+            workHandler.onEvent(event);
+        }
+    }
+
+    @Override
+    public void onStart()
+    {
+        if (workHandler instanceof LifecycleAware)
+        {
+            ((LifecycleAware) workHandler).onStart();
+        }
+    }
+
+    @Override
+    public void onShutdown()
+    {
+        if (workHandler instanceof LifecycleAware)
+        {
+            ((LifecycleAware) workHandler).onShutdown();
+        }
+    }
+}
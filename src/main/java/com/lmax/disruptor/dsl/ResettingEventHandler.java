@@ -0,0 +1,42 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.dsl;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventResetter;
+
+/**
+ * <p>位于处理链末端的清理阶段，在所有消费者处理完事件之后调用{@link EventResetter}重置事件，
+ * 重置的开销由清理阶段自己的线程承担，不会落在其他消费者的线程上。</p>
+ *
+ * @param <T> 事件的类型
+ * @see Disruptor#clearEventsWith(EventResetter)
+ */
+class ResettingEventHandler<T> implements EventHandler<T>
+{
+    private final EventResetter<? super T> eventResetter;
+
+    ResettingEventHandler(final EventResetter<? super T> eventResetter)
+    {
+        this.eventResetter = eventResetter;
+    }
+
+    @Override
+    public void onEvent(final T event, final long sequence, final boolean endOfBatch) throws Exception
+    {
+        eventResetter.reset(event);
+    }
+}
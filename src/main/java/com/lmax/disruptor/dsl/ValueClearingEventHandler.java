@@ -0,0 +1,42 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.dsl;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+
+/**
+ * <p>值模式RingBuffer的清理阶段，位于处理链的末端，在所有消费者处理完事件之后清除对应的槽位，
+ * 使不可变的事件对象不再被RingBuffer引用，尽早成为可回收的对象。</p>
+ *
+ * @param <T> 事件的类型
+ * @see Disruptor#clearValuesAfterProcessing()
+ */
+class ValueClearingEventHandler<T> implements EventHandler<T>
+{
+    private final RingBuffer<T> ringBuffer;
+
+    ValueClearingEventHandler(final RingBuffer<T> ringBuffer)
+    {
+        this.ringBuffer = ringBuffer;
+    }
+
+    @Override
+    public void onEvent(final T event, final long sequence, final boolean endOfBatch) throws Exception
+    {
+        ringBuffer.clearValue(sequence);
+    }
+}
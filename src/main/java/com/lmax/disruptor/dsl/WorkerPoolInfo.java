@@ -57,6 +57,12 @@ class WorkerPoolInfo<T> implements ConsumerInfo
         endOfChain = false;
     }
 
+    @Override
+    public void markAsEndOfChain()
+    {
+        endOfChain = true;
+    }
+
     @Override
     public boolean isRunning()
     {
@@ -20,6 +20,8 @@ import com.lmax.disruptor.Sequence;
 import sun.misc.Unsafe;
 
 import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
 
@@ -120,6 +122,42 @@ public final class Util
         return THE_UNSAFE;
     }
 
+	/**
+	 * 获取直接内存ByteBuffer(包括MappedByteBuffer)的起始内存地址，用于通过Unsafe按地址访问。
+	 *
+	 * @param buffer 直接内存的ByteBuffer
+	 * @return buffer的起始内存地址
+	 * @throws IllegalArgumentException 如果buffer不是直接内存的
+	 */
+    public static long getAddressFromDirectByteBuffer(final ByteBuffer buffer)
+    {
+        if (!buffer.isDirect())
+        {
+            throw new IllegalArgumentException("buffer is not direct");
+        }
+        return THE_UNSAFE.getLong(buffer, BufferAddressHolder.BUFFER_ADDRESS_OFFSET);
+    }
+
+    /**
+     * 延迟查找java.nio.Buffer的address字段，只有使用直接内存的调用者才会触发，查找失败不影响Util的其它功能
+     */
+    private static final class BufferAddressHolder
+    {
+        private static final long BUFFER_ADDRESS_OFFSET;
+
+        static
+        {
+            try
+            {
+                BUFFER_ADDRESS_OFFSET = THE_UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException("Unable to find the address field of java.nio.Buffer", e);
+            }
+        }
+    }
+
 	/**
 	 * 计算提供的整数的log2,取整数,小数点后省略。
 	 * 
@@ -0,0 +1,63 @@
+package com.lmax.disruptor.immutable;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+
+public class ValueRingPerformanceTest
+{
+    private final RingBuffer<SimpleEvent> ringBuffer;
+
+    public ValueRingPerformanceTest()
+    {
+        ringBuffer = RingBuffer.createValueRing(ProducerType.SINGLE, Constants.SIZE, new YieldingWaitStrategy());
+    }
+
+    public void run()
+    {
+        try
+        {
+            doRun();
+        }
+        catch (InterruptedException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void doRun() throws InterruptedException
+    {
+        BatchEventProcessor<SimpleEvent> batchEventProcessor =
+            new BatchEventProcessor<SimpleEvent>(
+                ringBuffer,
+                ringBuffer.newBarrier(),
+                new SimpleEventHandler());
+        ringBuffer.addGatingSequences(batchEventProcessor.getSequence());
+
+        Thread t = new Thread(batchEventProcessor);
+        t.start();
+
+        long iterations = Constants.ITERATIONS;
+        for (long l = 0; l < iterations; l++)
+        {
+            SimpleEvent e = new SimpleEvent(l, l, l, l);
+            ringBuffer.publishValue(e);
+        }
+
+        while (batchEventProcessor.getSequence().get() != iterations - 1)
+        {
+            LockSupport.parkNanos(1);
+        }
+
+        batchEventProcessor.halt();
+        t.join();
+    }
+
+    public static void main(String[] args)
+    {
+        new ValueRingPerformanceTest().run();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.preallocation;
+
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.PreallocationMode;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+
+/**
+ * 比较不同预分配方式创建大容量RingBuffer所需的时间
+ */
+public final class PreallocationBenchmark
+{
+    private static final int BUFFER_SIZE = 1 << 22;
+    private static final int RUNS = 5;
+
+    public static final class PayloadEvent
+    {
+        private final long[] fields = new long[16];
+        private final byte[] payload = new byte[256];
+
+        public long[] getFields()
+        {
+            return fields;
+        }
+
+        public byte[] getPayload()
+        {
+            return payload;
+        }
+    }
+
+    private static final EventFactory<PayloadEvent> FACTORY = new EventFactory<PayloadEvent>()
+    {
+        @Override
+        public PayloadEvent newInstance()
+        {
+            return new PayloadEvent();
+        }
+    };
+
+    public static void main(final String[] args)
+    {
+        for (int run = 0; run < RUNS; run++)
+        {
+            for (final PreallocationMode mode : PreallocationMode.values())
+            {
+                final long start = System.nanoTime();
+                final RingBuffer<PayloadEvent> ringBuffer =
+                    RingBuffer.create(ProducerType.SINGLE, FACTORY, BUFFER_SIZE, new YieldingWaitStrategy(), mode);
+                final long elapsed = System.nanoTime() - start;
+
+                System.out.format(
+                    "Run %d, %s: created %d slots in %dms%n",
+                    Integer.valueOf(run), mode, Integer.valueOf(ringBuffer.getBufferSize()),
+                    Long.valueOf(elapsed / 1000000L));
+                System.gc();
+            }
+        }
+    }
+}
@@ -31,12 +31,14 @@ import com.lmax.disruptor.SequenceBarrier;
 import com.lmax.disruptor.support.ValueAdditionEventHandler;
 import com.lmax.disruptor.support.ValueBatchPublisher;
 import com.lmax.disruptor.support.ValueEvent;
+import com.lmax.disruptor.support.ValuePublisher;
 import com.lmax.disruptor.util.DaemonThreadFactory;
 
 /**
  * <pre>
  *
  * Sequence a series of events from multiple publishers going to one event processor.
+ * P1 and P2 publish batches of 256 events while P3 publishes single events interleaved with them.
  *
  * +----+
  * | P1 |------+
@@ -83,7 +85,9 @@ public final class ThreeToOneSequencedBatchThroughputTest extends AbstractPerfTe
 {
     private static final int NUM_PUBLISHERS = 3;
     private static final int BUFFER_SIZE = 1024 * 64;
-    private static final long ITERATIONS = 1000L * 1000L * 100L;
+    private static final int BATCH_SIZE = 256;
+    private static final long ITERATIONS_PER_PUBLISHER = ((1000L * 1000L * 100L) / NUM_PUBLISHERS / BATCH_SIZE) * BATCH_SIZE;
+    private static final long ITERATIONS = ITERATIONS_PER_PUBLISHER * NUM_PUBLISHERS;
     private final ExecutorService executor = Executors.newFixedThreadPool(NUM_PUBLISHERS + 1, DaemonThreadFactory.INSTANCE);
     private final CyclicBarrier cyclicBarrier = new CyclicBarrier(NUM_PUBLISHERS + 1);
 
@@ -96,13 +100,14 @@ public final class ThreeToOneSequencedBatchThroughputTest extends AbstractPerfTe
     private final ValueAdditionEventHandler handler = new ValueAdditionEventHandler();
     private final BatchEventProcessor<ValueEvent> batchEventProcessor =
         new BatchEventProcessor<ValueEvent>(ringBuffer, sequenceBarrier, handler);
-    private final ValueBatchPublisher[] valuePublishers = new ValueBatchPublisher[NUM_PUBLISHERS];
+    private final Runnable[] valuePublishers = new Runnable[NUM_PUBLISHERS];
 
     {
-        for (int i = 0; i < NUM_PUBLISHERS; i++)
+        for (int i = 0; i < NUM_PUBLISHERS - 1; i++)
         {
-            valuePublishers[i] = new ValueBatchPublisher(cyclicBarrier, ringBuffer, ITERATIONS / NUM_PUBLISHERS, 10);
+            valuePublishers[i] = new ValueBatchPublisher(cyclicBarrier, ringBuffer, ITERATIONS_PER_PUBLISHER, BATCH_SIZE);
         }
+        valuePublishers[NUM_PUBLISHERS - 1] = new ValuePublisher(cyclicBarrier, ringBuffer, ITERATIONS_PER_PUBLISHER);
 
         ringBuffer.addGatingSequences(batchEventProcessor.getSequence());
     }
@@ -120,7 +125,7 @@ public final class ThreeToOneSequencedBatchThroughputTest extends AbstractPerfTe
     {
         final CountDownLatch latch = new CountDownLatch(1);
         handler
-            .reset(latch, batchEventProcessor.getSequence().get() + ((ITERATIONS / NUM_PUBLISHERS) * NUM_PUBLISHERS));
+            .reset(latch, batchEventProcessor.getSequence().get() + ITERATIONS);
 
         Future<?>[] futures = new Future[NUM_PUBLISHERS];
         for (int i = 0; i < NUM_PUBLISHERS; i++)
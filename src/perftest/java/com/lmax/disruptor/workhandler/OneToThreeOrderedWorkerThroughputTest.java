@@ -0,0 +1,208 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.workhandler;
+
+import static com.lmax.disruptor.support.PerfTestUtil.failIfNot;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.lmax.disruptor.AbstractPerfTestDisruptor;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.support.FunctionEvent;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+
+/**
+ * <pre>
+ *
+ * Enrich events in parallel with N ordered workers, then commit the results in sequence order.
+ * Run with 1 worker (a single BatchEventProcessor) as the baseline and 3 workers for comparison.
+ *
+ *              +-----+
+ *            +>| W1  |-+
+ *            | +-----+ |
+ * +----+     | +-----+ |   +-----+
+ * | P1 |-----+>| W2  |-+-->| EP1 |
+ * +----+     | +-----+ |   +-----+
+ *            | +-----+ |
+ *            +>| W3  |-+
+ *              +-----+
+ *
+ * P1  - Publisher 1
+ * W1  - Ordered worker 1, handles sequence % 3 == 0
+ * W2  - Ordered worker 2, handles sequence % 3 == 1
+ * W3  - Ordered worker 3, handles sequence % 3 == 2
+ * EP1 - Commit EventProcessor, sees events in sequence order
+ *
+ * </pre>
+ */
+public final class OneToThreeOrderedWorkerThroughputTest extends AbstractPerfTestDisruptor
+{
+    private static final int BUFFER_SIZE = 1024 * 8;
+    private static final long ITERATIONS = 1000L * 1000L * 10L;
+    private static final int ENRICHMENT_ROUNDS = 64;
+
+    private final int workerCount;
+    private final long expectedResult;
+    private final CommitHandler commitHandler = new CommitHandler();
+    private final RingBuffer<FunctionEvent> ringBuffer;
+
+    {
+        long temp = 0L;
+        for (long i = 0; i < ITERATIONS; i++)
+        {
+            temp += enrich(i);
+        }
+        expectedResult = temp;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @SuppressWarnings("unchecked")
+    public OneToThreeOrderedWorkerThroughputTest(final int workerCount)
+    {
+        this.workerCount = workerCount;
+
+        final WorkHandler<FunctionEvent>[] workers = new WorkHandler[workerCount];
+        for (int i = 0; i < workerCount; i++)
+        {
+            workers[i] = new EnrichmentHandler();
+        }
+
+        Disruptor<FunctionEvent> disruptor =
+            new Disruptor<FunctionEvent>(
+                FunctionEvent.EVENT_FACTORY,
+                BUFFER_SIZE, DaemonThreadFactory.INSTANCE,
+                ProducerType.SINGLE,
+                new YieldingWaitStrategy());
+        disruptor.handleEventsWithOrderedWorkers(workers).then(commitHandler);
+        this.ringBuffer = disruptor.start();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected int getRequiredProcessorCount()
+    {
+        return workerCount + 2;
+    }
+
+    @Override
+    protected long runDisruptorPass() throws InterruptedException
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long firstSequence = ringBuffer.getCursor() + 1;
+        commitHandler.reset(latch, firstSequence, firstSequence + ITERATIONS - 1);
+
+        long start = System.currentTimeMillis();
+
+        for (long i = 0; i < ITERATIONS; i++)
+        {
+            long sequence = ringBuffer.next();
+            ringBuffer.get(sequence).setOperandOne(i);
+            ringBuffer.publish(sequence);
+        }
+
+        latch.await();
+        long opsPerSecond = (ITERATIONS * 1000L) / (System.currentTimeMillis() - start);
+
+        failIfNot(0L, commitHandler.getOutOfOrderCount());
+        failIfNot(expectedResult, commitHandler.getResult());
+
+        return opsPerSecond;
+    }
+
+    private static long enrich(final long value)
+    {
+        long x = value + 1;
+        for (int i = 0; i < ENRICHMENT_ROUNDS; i++)
+        {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+        }
+        return x;
+    }
+
+    private static final class EnrichmentHandler implements WorkHandler<FunctionEvent>
+    {
+        @Override
+        public void onEvent(final FunctionEvent event) throws Exception
+        {
+            event.setStepOneResult(enrich(event.getOperandOne()));
+        }
+    }
+
+    private static final class CommitHandler implements EventHandler<FunctionEvent>
+    {
+        private long result;
+        private long expectedOperand;
+        private long outOfOrderCount;
+        private long firstSequence;
+        private long lastSequence;
+        private CountDownLatch latch;
+
+        public void reset(final CountDownLatch latch, final long firstSequence, final long lastSequence)
+        {
+            this.result = 0L;
+            this.expectedOperand = 0L;
+            this.outOfOrderCount = 0L;
+            this.firstSequence = firstSequence;
+            this.lastSequence = lastSequence;
+            this.latch = latch;
+        }
+
+        public long getResult()
+        {
+            return result;
+        }
+
+        public long getOutOfOrderCount()
+        {
+            return outOfOrderCount;
+        }
+
+        @Override
+        public void onEvent(final FunctionEvent event, final long sequence, final boolean endOfBatch) throws Exception
+        {
+            if (sequence < firstSequence)
+            {
+                return;
+            }
+
+            if (event.getOperandOne() != expectedOperand++)
+            {
+                outOfOrderCount++;
+            }
+            result += event.getStepOneResult();
+
+            if (sequence == lastSequence)
+            {
+                latch.countDown();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        new OneToThreeOrderedWorkerThroughputTest(1).testImplementations();
+        new OneToThreeOrderedWorkerThroughputTest(3).testImplementations();
+    }
+}
@@ -23,9 +23,11 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.lmax.disruptor.RingBuffer.createMultiProducer;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public final class BatchEventProcessorTest
@@ -88,6 +90,107 @@ public final class BatchEventProcessorTest
         thread.join();
     }
 
+    @Test
+    public void shouldContinueBatchAfterExceptionWhenRecoveringWithinBatch()
+        throws Exception
+    {
+        final RingBuffer<StubEvent> deadLetters = createMultiProducer(StubEvent.EVENT_FACTORY, 8);
+        final Sequence deadLetterSequence = new Sequence();
+        deadLetters.addGatingSequences(deadLetterSequence);
+        final DeadLetterExceptionHandler.Translator<StubEvent, StubEvent> translator =
+            new DeadLetterExceptionHandler.Translator<StubEvent, StubEvent>()
+            {
+                @Override
+                public void translateTo(final StubEvent deadLetter, final long sequence, final StubEvent failed, final Throwable ex)
+                {
+                    deadLetter.copy(failed);
+                }
+            };
+
+        final OddFailingEventHandler eventHandler = new OddFailingEventHandler(new CountDownLatch(6));
+        final BatchEventProcessor<StubEvent> batchEventProcessor = new BatchEventProcessor<StubEvent>(
+            ringBuffer, sequenceBarrier, eventHandler);
+        ringBuffer.addGatingSequences(batchEventProcessor.getSequence());
+        batchEventProcessor.setExceptionHandler(new DeadLetterExceptionHandler<StubEvent, StubEvent>(
+            deadLetters, translator, new FatalExceptionHandler()));
+        batchEventProcessor.setRecoverWithinBatch(true);
+
+        for (int i = 0; i < 6; i++)
+        {
+            final long sequence = ringBuffer.next();
+            ringBuffer.get(sequence).setValue(i);
+            ringBuffer.publish(sequence);
+        }
+
+        Thread thread = new Thread(batchEventProcessor);
+        thread.start();
+
+        assertTrue(eventHandler.latch.await(2, TimeUnit.SECONDS));
+        batchEventProcessor.halt();
+        thread.join();
+
+        assertEquals(1, eventHandler.batches);
+        assertEquals(5L, batchEventProcessor.getSequence().get());
+        assertEquals(2L, deadLetters.getCursor());
+        assertEquals(1, deadLetters.get(0).getValue());
+        assertEquals(3, deadLetters.get(1).getValue());
+        assertEquals(5, deadLetters.get(2).getValue());
+    }
+
+    @Test
+    public void shouldReportEventOnceWhenExceptionHandlerFailsWithinBatch()
+        throws Exception
+    {
+        final List<Long> reported = new ArrayList<Long>();
+        final BatchEventProcessor<StubEvent> batchEventProcessor = new BatchEventProcessor<StubEvent>(
+            ringBuffer, sequenceBarrier, new OddFailingEventHandler(new CountDownLatch(2)));
+        ringBuffer.addGatingSequences(batchEventProcessor.getSequence());
+        batchEventProcessor.setRecoverWithinBatch(true);
+        batchEventProcessor.setExceptionHandler(new ExceptionHandler<StubEvent>()
+        {
+            @Override
+            public void handleEventException(final Throwable ex, final long sequence, final StubEvent event)
+            {
+                reported.add(sequence);
+                throw new IllegalStateException("fatal", ex);
+            }
+
+            @Override
+            public void handleOnStartException(final Throwable ex)
+            {
+            }
+
+            @Override
+            public void handleOnShutdownException(final Throwable ex)
+            {
+            }
+        });
+
+        for (int i = 0; i < 2; i++)
+        {
+            final long sequence = ringBuffer.next();
+            ringBuffer.get(sequence).setValue(i);
+            ringBuffer.publish(sequence);
+        }
+
+        final AtomicReference<Throwable> escaped = new AtomicReference<Throwable>();
+        final Thread thread = new Thread(batchEventProcessor);
+        thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler()
+        {
+            @Override
+            public void uncaughtException(final Thread t, final Throwable e)
+            {
+                escaped.set(e);
+            }
+        });
+        thread.start();
+        thread.join(2000);
+
+        assertEquals(Arrays.asList(1L), reported);
+        assertEquals("fatal", escaped.get().getMessage());
+        assertFalse(batchEventProcessor.isRunning());
+    }
+
     private static class LatchEventHandler implements EventHandler<StubEvent>
     {
         private final CountDownLatch latch;
@@ -132,6 +235,33 @@ public final class BatchEventProcessorTest
         }
     }
 
+    private static class OddFailingEventHandler implements EventHandler<StubEvent>, BatchStartAware
+    {
+        private final CountDownLatch latch;
+        private int batches;
+
+        OddFailingEventHandler(CountDownLatch latch)
+        {
+            this.latch = latch;
+        }
+
+        @Override
+        public void onBatchStart(long batchSize)
+        {
+            batches++;
+        }
+
+        @Override
+        public void onEvent(StubEvent event, long sequence, boolean endOfBatch) throws Exception
+        {
+            latch.countDown();
+            if (event.getValue() % 2 == 1)
+            {
+                throw new IllegalStateException("odd value " + event.getValue());
+            }
+        }
+    }
+
     private static class ExceptionEventHandler implements EventHandler<StubEvent>
     {
         @Override
@@ -188,6 +318,406 @@ public final class BatchEventProcessorTest
         assertEquals(Arrays.asList(3L, 2L, 1L), batchSizes);
     }
 
+    @Test
+    public void shouldEndBatchWhenMaxBatchSizeIsReached() throws Exception
+    {
+        final BatchRecordingHandler handler = new BatchRecordingHandler(10, 0L);
+        final BatchEventProcessor<StubEvent> batchEventProcessor =
+            new BatchEventProcessor<StubEvent>(ringBuffer, sequenceBarrier, handler);
+        batchEventProcessor.setMaxBatchSize(4);
+
+        for (int i = 0; i < 10; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+
+        Thread thread = new Thread(batchEventProcessor);
+        thread.start();
+        assertTrue(handler.latch.await(2, TimeUnit.SECONDS));
+        batchEventProcessor.halt();
+        thread.join();
+
+        assertEquals(Arrays.asList(4L, 4L, 2L), handler.batchSizes);
+        assertEquals(Arrays.asList(3L, 7L, 9L), handler.endOfBatchSequences);
+    }
+
+    @Test
+    public void shouldEndBatchWhenMaxBatchTimeIsExceeded() throws Exception
+    {
+        final BatchRecordingHandler handler = new BatchRecordingHandler(3, 5L);
+        final BatchEventProcessor<StubEvent> batchEventProcessor =
+            new BatchEventProcessor<StubEvent>(ringBuffer, sequenceBarrier, handler);
+        batchEventProcessor.setMaxBatchTime(1, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 3; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+
+        Thread thread = new Thread(batchEventProcessor);
+        thread.start();
+        assertTrue(handler.latch.await(2, TimeUnit.SECONDS));
+        batchEventProcessor.halt();
+        thread.join();
+
+        // the event that starts after the limit has passed closes the batch
+        assertEquals(Arrays.asList(1L, 2L), handler.endOfBatchSequences);
+        assertEquals(2L, batchEventProcessor.getSequence().get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMaxBatchSizeLessThanOne()
+    {
+        new BatchEventProcessor<StubEvent>(ringBuffer, sequenceBarrier, new BatchRecordingHandler(1, 0L))
+            .setMaxBatchSize(0);
+    }
+
+    private static class BatchRecordingHandler implements EventHandler<StubEvent>, BatchStartAware
+    {
+        private final List<Long> batchSizes = new ArrayList<Long>();
+        private final List<Long> endOfBatchSequences = new ArrayList<Long>();
+        private final CountDownLatch latch;
+        private final long sleepMillis;
+
+        BatchRecordingHandler(final int expectedEvents, final long sleepMillis)
+        {
+            this.latch = new CountDownLatch(expectedEvents);
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public void onBatchStart(long batchSize)
+        {
+            batchSizes.add(batchSize);
+        }
+
+        @Override
+        public void onEvent(StubEvent event, long sequence, boolean endOfBatch) throws Exception
+        {
+            if (sleepMillis > 0)
+            {
+                Thread.sleep(sleepMillis);
+            }
+            if (endOfBatch)
+            {
+                endOfBatchSequences.add(sequence);
+            }
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void shouldAdvanceSequenceWhenHandlerReleasesMidBatch() throws Exception
+    {
+        final ReleasingHandler handler = new ReleasingHandler(4)
+        {
+            @Override
+            void onEvent(final long sequence)
+            {
+                if (sequence == 1)
+                {
+                    releaser.release(1);
+                }
+            }
+        };
+        final BatchEventProcessor<StubEvent> batchEventProcessor =
+            new BatchEventProcessor<StubEvent>(ringBuffer, sequenceBarrier, handler);
+        handler.processorSequence = batchEventProcessor.getSequence();
+
+        for (int i = 0; i < 4; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+
+        Thread thread = new Thread(batchEventProcessor);
+        thread.start();
+        assertTrue(handler.latch.await(2, TimeUnit.SECONDS));
+        batchEventProcessor.halt();
+        thread.join();
+
+        assertEquals(Arrays.asList(-1L, -1L, 1L, 1L), handler.sequencesSeen);
+        assertEquals(3L, batchEventProcessor.getSequence().get());
+    }
+
+    @Test
+    public void shouldRejectReleaseBeyondTheEventBeingProcessed() throws Exception
+    {
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        final ReleasingHandler handler = new ReleasingHandler(2)
+        {
+            @Override
+            void onEvent(final long sequence)
+            {
+                if (sequence == 0)
+                {
+                    try
+                    {
+                        releaser.release(1);
+                    }
+                    catch (final IllegalArgumentException e)
+                    {
+                        failures.add(e);
+                    }
+                }
+            }
+        };
+        final BatchEventProcessor<StubEvent> batchEventProcessor =
+            new BatchEventProcessor<StubEvent>(ringBuffer, sequenceBarrier, handler);
+        handler.processorSequence = batchEventProcessor.getSequence();
+
+        ringBuffer.publish(ringBuffer.next());
+        ringBuffer.publish(ringBuffer.next());
+
+        Thread thread = new Thread(batchEventProcessor);
+        thread.start();
+        assertTrue(handler.latch.await(2, TimeUnit.SECONDS));
+        batchEventProcessor.halt();
+        thread.join();
+
+        assertEquals(1, failures.size());
+        assertEquals(Arrays.asList(-1L, -1L), handler.sequencesSeen);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectReleaseFromAnotherThread()
+    {
+        final ReleasingHandler handler = new ReleasingHandler(1);
+        new BatchEventProcessor<StubEvent>(ringBuffer, sequenceBarrier, handler);
+
+        handler.releaser.release(0);
+    }
+
+    private static class ReleasingHandler implements EventHandler<StubEvent>, SequenceReleaseAware
+    {
+        final List<Long> sequencesSeen = new ArrayList<Long>();
+        final CountDownLatch latch;
+        SequenceReleaser releaser;
+        Sequence processorSequence;
+
+        ReleasingHandler(final int expectedEvents)
+        {
+            latch = new CountDownLatch(expectedEvents);
+        }
+
+        @Override
+        public void setSequenceReleaser(final SequenceReleaser sequenceReleaser)
+        {
+            this.releaser = sequenceReleaser;
+        }
+
+        @Override
+        public void onEvent(StubEvent event, long sequence, boolean endOfBatch) throws Exception
+        {
+            sequencesSeen.add(processorSequence.get());
+            onEvent(sequence);
+            latch.countDown();
+        }
+
+        void onEvent(final long sequence)
+        {
+        }
+    }
+
+    @Test
+    public void shouldTakeSnapshotAtRequestedSequence()
+        throws Exception
+    {
+        final List<Long> processed = new ArrayList<Long>();
+        final List<Long> snapshots = new ArrayList<Long>();
+        final CountDownLatch eventLatch = new CountDownLatch(5);
+
+        final class SnapshotEventHandler
+            implements EventHandler<StubEvent>, SnapshotAware
+        {
+            @Override
+            public void onEvent(StubEvent event, long sequence, boolean endOfBatch)
+                throws Exception
+            {
+                processed.add(sequence);
+                eventLatch.countDown();
+            }
+
+            @Override
+            public void onSnapshot(long sequence)
+            {
+                snapshots.add(sequence);
+                snapshots.add((long) processed.size());
+            }
+
+            @Override
+            public long restoreSnapshot()
+            {
+                return Sequencer.INITIAL_CURSOR_VALUE;
+            }
+        }
+
+        final BatchEventProcessor<StubEvent> batchEventProcessor =
+            new BatchEventProcessor<StubEvent>(
+                ringBuffer, sequenceBarrier, new SnapshotEventHandler());
+        batchEventProcessor.requestSnapshot(2L);
+
+        for (int i = 0; i < 5; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+
+        Thread thread = new Thread(batchEventProcessor);
+        thread.start();
+        assertTrue(eventLatch.await(2, TimeUnit.SECONDS));
+
+        batchEventProcessor.halt();
+        thread.join();
+
+        assertEquals(Arrays.asList(2L, 3L), snapshots);
+    }
+
+    @Test(timeout = 5000)
+    public void shouldKeepSnapshotRequestMadeWhileBatchIsProcessed()
+        throws Exception
+    {
+        final List<Long> snapshots = new ArrayList<Long>();
+        final CountDownLatch snapshotLatch = new CountDownLatch(2);
+        final BatchEventProcessor<?>[] processorHolder = new BatchEventProcessor<?>[1];
+
+        final class RequestingSnapshotEventHandler
+            implements EventHandler<StubEvent>, SnapshotAware
+        {
+            @Override
+            public void onEvent(StubEvent event, long sequence, boolean endOfBatch)
+            {
+                if (sequence == 0L)
+                {
+                    // a newer request arrives before the batch ending at sequence 0 completes
+                    processorHolder[0].requestSnapshot(3L);
+                }
+            }
+
+            @Override
+            public void onSnapshot(long sequence)
+            {
+                snapshots.add(sequence);
+                snapshotLatch.countDown();
+            }
+
+            @Override
+            public long restoreSnapshot()
+            {
+                return Sequencer.INITIAL_CURSOR_VALUE;
+            }
+        }
+
+        final BatchEventProcessor<StubEvent> batchEventProcessor =
+            new BatchEventProcessor<StubEvent>(
+                ringBuffer, sequenceBarrier, new RequestingSnapshotEventHandler());
+        processorHolder[0] = batchEventProcessor;
+        batchEventProcessor.requestSnapshot(0L);
+
+        for (int i = 0; i < 2; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+
+        Thread thread = new Thread(batchEventProcessor);
+        thread.start();
+        for (int i = 0; i < 2; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+        assertTrue(snapshotLatch.await(2, TimeUnit.SECONDS));
+
+        batchEventProcessor.halt();
+        thread.join();
+
+        assertEquals(Arrays.asList(0L, 3L), snapshots);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectSnapshotRequestForHandlerNotSnapshotAware()
+    {
+        final BatchEventProcessor<StubEvent> batchEventProcessor = new BatchEventProcessor<StubEvent>(
+            ringBuffer, sequenceBarrier, new ExceptionEventHandler());
+        batchEventProcessor.requestSnapshot(0L);
+    }
+
+    @Test
+    public void shouldSkipLappedEventsInLossyMode()
+        throws Exception
+    {
+        final List<Long> processed = new ArrayList<Long>();
+        final CountDownLatch eventLatch = new CountDownLatch(2);
+        final EventHandler<StubEvent> handler = new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(StubEvent event, long sequence, boolean endOfBatch) throws Exception
+            {
+                processed.add(sequence);
+                eventLatch.countDown();
+            }
+        };
+
+        final BatchEventProcessor<StubEvent> batchEventProcessor =
+            new BatchEventProcessor<StubEvent>(ringBuffer, sequenceBarrier, handler);
+        batchEventProcessor.setLossy(ringBuffer, ringBuffer.getBufferSize());
+
+        for (int i = 0; i < 40; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+
+        Thread thread = new Thread(batchEventProcessor);
+        thread.start();
+
+        while (batchEventProcessor.getSequence().get() < 39L)
+        {
+            Thread.yield();
+        }
+        ringBuffer.publish(ringBuffer.next());
+        assertTrue(eventLatch.await(2, TimeUnit.SECONDS));
+
+        batchEventProcessor.halt();
+        thread.join();
+
+        assertEquals(Arrays.asList(39L, 40L), processed);
+        assertEquals(39L, batchEventProcessor.getLostEventCount());
+    }
+
+    @Test
+    public void shouldNotifyProgressListenersWhenStopped() throws Exception
+    {
+        final CountDownLatch stopLatch = new CountDownLatch(1);
+        final BatchEventProcessor<StubEvent> batchEventProcessor =
+            new BatchEventProcessor<StubEvent>(ringBuffer, sequenceBarrier, new LatchLifeCycleHandler());
+        batchEventProcessor.addProgressListener(
+            new ProgressListener()
+            {
+                @Override
+                public void onProgress(final long sequence)
+                {
+                }
+
+                @Override
+                public void onStop(final long sequence)
+                {
+                    // the processor must already report itself as stopped
+                    if (!batchEventProcessor.isRunning())
+                    {
+                        stopLatch.countDown();
+                    }
+                }
+            });
+
+        final Thread thread = new Thread(batchEventProcessor);
+        thread.start();
+        while (!batchEventProcessor.isRunning())
+        {
+            Thread.yield();
+        }
+        batchEventProcessor.halt();
+
+        assertTrue(stopLatch.await(2, TimeUnit.SECONDS));
+        thread.join();
+    }
+
     @Test
     public void shouldAlwaysHalt() throws InterruptedException
     {
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.Test;
+
+public class ByteRingBufferTest
+{
+    private final ByteRingBuffer ringBuffer = new ByteRingBuffer(ByteBuffer.allocate(256));
+    private final List<String> received = new ArrayList<String>();
+    private final ByteRingBuffer.Handler recordingHandler = new ByteRingBuffer.Handler()
+    {
+        @Override
+        public void onMessage(final int typeId, final ByteBuffer buffer, final int index, final int length)
+        {
+            final byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+            {
+                bytes[i] = buffer.get(index + i);
+            }
+            received.add(typeId + ":" + new String(bytes));
+        }
+    };
+
+    @Test
+    public void shouldReadVariableLengthMessagesInOrder() throws Exception
+    {
+        assertTrue(write(1, "a"));
+        assertTrue(write(2, "hello world"));
+        assertTrue(write(3, ""));
+
+        assertThat(ringBuffer.read(recordingHandler), is(3));
+        assertThat(received, is(Arrays.asList("1:a", "2:hello world", "3:")));
+        assertThat(ringBuffer.size(), is(0));
+    }
+
+    @Test
+    public void shouldPadAndWrapAroundEndOfBuffer() throws Exception
+    {
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 40; i++)
+        {
+            final String message = "message-" + i + "-" + "xxxxxxxx".substring(i % 8);
+            assertTrue(write(7, message));
+            expected.add("7:" + message);
+            if (i % 3 == 2)
+            {
+                while (ringBuffer.read(recordingHandler) != 0)
+                {
+                    // 读取到缓冲区末尾后需要再读一次才能从开头继续
+                }
+            }
+        }
+        while (ringBuffer.read(recordingHandler) != 0)
+        {
+            // 读取剩余的消息
+        }
+
+        assertThat(received, is(expected));
+    }
+
+    @Test
+    public void shouldRejectClaimWhenFull() throws Exception
+    {
+        int written = 0;
+        while (write(1, "0123456789abcdef0123456"))
+        {
+            written++;
+        }
+        assertThat(written, is(8));
+
+        assertThat(ringBuffer.read(recordingHandler, 1), is(1));
+        assertTrue(write(1, "0123456789abcdef0123456"));
+        assertFalse(write(1, "0123456789abcdef0123456"));
+    }
+
+    @Test
+    public void shouldSkipAbortedClaims() throws Exception
+    {
+        final int index = ringBuffer.tryClaim(1, 4);
+        assertTrue(write(2, "kept"));
+        ringBuffer.abort(index);
+
+        assertThat(ringBuffer.read(recordingHandler), is(1));
+        assertThat(received, is(Arrays.asList("2:kept")));
+    }
+
+    @Test
+    public void shouldStopAtUncommittedRecord() throws Exception
+    {
+        assertTrue(write(1, "first"));
+        final int index = ringBuffer.tryClaim(2, 6);
+        ringBuffer.buffer().put(index, (byte) 's');
+        for (int i = 1; i < 6; i++)
+        {
+            ringBuffer.buffer().put(index + i, (byte) 'x');
+        }
+        assertTrue(write(3, "third"));
+
+        assertThat(ringBuffer.read(recordingHandler), is(1));
+        ringBuffer.commit(index);
+        assertThat(ringBuffer.read(recordingHandler), is(2));
+        assertThat(received, is(Arrays.asList("1:first", "2:sxxxxx", "3:third")));
+    }
+
+    @Test
+    public void shouldWorkOverDirectBuffer() throws Exception
+    {
+        final ByteRingBuffer directRingBuffer = new ByteRingBuffer(ByteBuffer.allocateDirect(1024));
+        final byte[] bytes = "direct".getBytes();
+        for (int i = 0; i < 100; i++)
+        {
+            assertTrue(directRingBuffer.write(i, bytes, 0, bytes.length));
+            assertThat(directRingBuffer.read(recordingHandler), is(1));
+        }
+        assertThat(received.get(99), is("99:direct"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMessagesLongerThanMaxLength() throws Exception
+    {
+        ringBuffer.tryClaim(1, ringBuffer.maxMessageLength() + 1);
+    }
+
+    @Test
+    public void shouldKeepOrderPerProducerWithConcurrentProducers() throws Exception
+    {
+        final int producers = 3;
+        final int messagesPerProducer = 2000;
+        final ByteRingBuffer sharedRingBuffer = new ByteRingBuffer(ByteBuffer.allocateDirect(4096));
+        final CyclicBarrier barrier = new CyclicBarrier(producers);
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++)
+        {
+            final int producerId = p;
+            threads[p] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        barrier.await();
+                        for (int i = 0; i < messagesPerProducer; i++)
+                        {
+                            int index;
+                            while ((index = sharedRingBuffer.tryClaim(producerId, 8 + (i % 5))) < 0)
+                            {
+                                Thread.yield();
+                            }
+                            sharedRingBuffer.buffer().putLong(index, i);
+                            sharedRingBuffer.commit(index);
+                        }
+                    }
+                    catch (final Exception e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        final long[] nextExpected = new long[producers];
+        final boolean[] outOfOrder = new boolean[1];
+        final ByteRingBuffer.Handler handler = new ByteRingBuffer.Handler()
+        {
+            @Override
+            public void onMessage(final int typeId, final ByteBuffer buffer, final int index, final int length)
+            {
+                if (buffer.getLong(index) != nextExpected[typeId] || length != 8 + (int) (nextExpected[typeId] % 5))
+                {
+                    outOfOrder[0] = true;
+                }
+                nextExpected[typeId]++;
+            }
+        };
+
+        int total = 0;
+        while (total < producers * messagesPerProducer)
+        {
+            total += sharedRingBuffer.read(handler);
+        }
+        for (final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertFalse(outOfOrder[0]);
+        assertThat(sharedRingBuffer.size(), is(0));
+    }
+
+    private boolean write(final int typeId, final String message)
+    {
+        final byte[] bytes = message.getBytes();
+        return ringBuffer.write(typeId, bytes, 0, bytes.length);
+    }
+}
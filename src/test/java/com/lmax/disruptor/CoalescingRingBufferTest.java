@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CoalescingRingBufferTest
+{
+    private final CoalescingRingBuffer<String> buffer = new CoalescingRingBuffer<String>(4);
+
+    @Test
+    public void shouldOverwritePendingValueForSameKey()
+    {
+        assertTrue(buffer.offer(1L, "a1"));
+        assertTrue(buffer.offer(2L, "b1"));
+        assertTrue(buffer.offer(1L, "a2"));
+
+        assertThat(buffer.size(), is(2));
+        assertThat(drain(), is(Arrays.asList("a2", "b1")));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void shouldAppendWhenKeyAlreadyConsumed()
+    {
+        buffer.offer(1L, "a1");
+        assertThat(drain(), is(Arrays.asList("a1")));
+
+        buffer.offer(1L, "a2");
+        assertThat(drain(), is(Arrays.asList("a2")));
+    }
+
+    @Test
+    public void shouldRejectDistinctKeysWhenFull()
+    {
+        for (long key = 0; key < 4; key++)
+        {
+            assertTrue(buffer.offer(key, "v" + key));
+        }
+
+        assertTrue(buffer.isFull());
+        assertFalse(buffer.offer(5L, "v5"));
+        assertTrue(buffer.offer(2L, "v2'"));
+        assertThat(buffer.rejectionCount(), is(1L));
+
+        assertThat(drain(), is(Arrays.asList("v0", "v1", "v2'", "v3")));
+        assertTrue(buffer.offer(5L, "v5"));
+    }
+
+    @Test
+    public void shouldLimitNumberOfPolledItems()
+    {
+        buffer.offer(1L, "a");
+        buffer.offer(2L, "b");
+        buffer.offer(3L, "c");
+
+        final List<String> bucket = new ArrayList<String>();
+        assertThat(buffer.poll(bucket, 2), is(2));
+        assertThat(bucket, is(Arrays.asList("a", "b")));
+
+        buffer.offer(4L, "d");
+        assertThat(drain(), is(Arrays.asList("c", "d")));
+    }
+
+    @Test
+    public void shouldWrapAroundManyTimes()
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            buffer.offer(i, "x" + i);
+            buffer.offer(i, "y" + i);
+            assertThat(drain(), is(Arrays.asList("y" + i)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCapacityNotPowerOfTwo()
+    {
+        new CoalescingRingBuffer<String>(3);
+    }
+
+    @Test
+    public void shouldAlwaysDeliverLatestValueWithConcurrentConsumer() throws Exception
+    {
+        final CoalescingRingBuffer<long[]> coalescing = new CoalescingRingBuffer<long[]>(8);
+        final int keys = 5;
+        final long updates = 200000L;
+        final long[] lastSeen = new long[keys];
+        Arrays.fill(lastSeen, -1L);
+
+        final Thread producer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (long i = 0; i < updates; i++)
+                {
+                    final long key = i % keys;
+                    while (!coalescing.offer(key, new long[]{key, i}))
+                    {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        final List<long[]> bucket = new ArrayList<long[]>();
+        while (producer.isAlive() || !coalescing.isEmpty())
+        {
+            bucket.clear();
+            coalescing.poll(bucket);
+            for (long[] update : bucket)
+            {
+                final int key = (int) update[0];
+                assertTrue("Values for a key must never go backwards", update[1] >= lastSeen[key]);
+                lastSeen[key] = update[1];
+            }
+        }
+        producer.join();
+
+        for (int key = 0; key < keys; key++)
+        {
+            assertEquals(updates - keys + key, lastSeen[key]);
+        }
+    }
+
+    private List<String> drain()
+    {
+        final List<String> bucket = new ArrayList<String>();
+        buffer.poll(bucket);
+        return bucket;
+    }
+}
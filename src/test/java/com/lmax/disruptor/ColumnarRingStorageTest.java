@@ -0,0 +1,228 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.lmax.disruptor.ColumnarRingStorage.BooleanColumn;
+import com.lmax.disruptor.ColumnarRingStorage.DoubleColumn;
+import com.lmax.disruptor.ColumnarRingStorage.IntColumn;
+import com.lmax.disruptor.ColumnarRingStorage.LongColumn;
+
+public class ColumnarRingStorageTest
+{
+    public interface Quote
+    {
+        long getPrice();
+
+        void setPrice(long price);
+
+        int getSize();
+
+        void setSize(int size);
+
+        double getWeight();
+
+        void setWeight(double weight);
+
+        boolean isBid();
+
+        void setBid(boolean bid);
+    }
+
+    public interface BrokenQuote
+    {
+        long getPrice();
+
+        void setPrice(int price);
+    }
+
+    private static final class QuoteFlyweight extends ColumnarRingStorage.Flyweight implements Quote
+    {
+        private final LongColumn price;
+        private final IntColumn size;
+        private final DoubleColumn weight;
+        private final BooleanColumn bid;
+
+        QuoteFlyweight(final ColumnarRingStorage<Quote> storage)
+        {
+            price = storage.getColumn("price", LongColumn.class);
+            size = storage.getColumn("size", IntColumn.class);
+            weight = storage.getColumn("weight", DoubleColumn.class);
+            bid = storage.getColumn("bid", BooleanColumn.class);
+        }
+
+        @Override
+        public long getPrice()
+        {
+            return price.get(sequence());
+        }
+
+        @Override
+        public void setPrice(final long value)
+        {
+            price.set(sequence(), value);
+        }
+
+        @Override
+        public int getSize()
+        {
+            return size.get(sequence());
+        }
+
+        @Override
+        public void setSize(final int value)
+        {
+            size.set(sequence(), value);
+        }
+
+        @Override
+        public double getWeight()
+        {
+            return weight.get(sequence());
+        }
+
+        @Override
+        public void setWeight(final double value)
+        {
+            weight.set(sequence(), value);
+        }
+
+        @Override
+        public boolean isBid()
+        {
+            return bid.get(sequence());
+        }
+
+        @Override
+        public void setBid(final boolean value)
+        {
+            bid.set(sequence(), value);
+        }
+    }
+
+    private static final ColumnarRingStorage.FlyweightFactory<Quote> QUOTE_FACTORY =
+        new ColumnarRingStorage.FlyweightFactory<Quote>()
+        {
+            @Override
+            public Quote newInstance(final ColumnarRingStorage<Quote> storage)
+            {
+                return new QuoteFlyweight(storage);
+            }
+        };
+
+    private final ColumnarRingStorage<Quote> storage = ColumnarRingStorage.create(Quote.class, 4);
+
+    @Test
+    public void shouldStoreFlyweightWritesInColumns()
+    {
+        final Quote quote = storage.newCursor(QUOTE_FACTORY).get(5L);
+        quote.setPrice(42L);
+        quote.setSize(7);
+        quote.setWeight(0.5D);
+        quote.setBid(true);
+
+        assertThat(storage.getColumn("price", LongColumn.class).get(5L), is(42L));
+        assertThat(storage.getColumn("size", IntColumn.class).get(5L), is(7));
+        assertThat(storage.getColumn("weight", DoubleColumn.class).get(5L), is(0.5D));
+        assertThat(storage.getColumn("bid", BooleanColumn.class).get(5L), is(true));
+    }
+
+    @Test
+    public void shouldReuseOneFlyweightPerCursor()
+    {
+        storage.getColumn("price", LongColumn.class).set(2L, 99L);
+        final DataProvider<Quote> cursor = storage.newCursor(QUOTE_FACTORY);
+
+        assertThat(cursor.get(6L).getPrice(), is(99L));
+        assertThat(cursor.get(3L).getPrice(), is(0L));
+        assertTrue(cursor.get(2L) == cursor.get(6L));
+        assertTrue(cursor.get(2L) != storage.newCursor(QUOTE_FACTORY).get(2L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectFactoryNotCreatingFlyweights()
+    {
+        storage.newCursor(new ColumnarRingStorage.FlyweightFactory<Quote>()
+        {
+            @Override
+            public Quote newInstance(final ColumnarRingStorage<Quote> storage)
+            {
+                return null;
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectColumnOfWrongType()
+    {
+        storage.getColumn("price", IntColumn.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectPropertyWithMismatchedSetter()
+    {
+        ColumnarRingStorage.create(BrokenQuote.class, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectBufferSizeNotPowerOfTwo()
+    {
+        ColumnarRingStorage.create(Quote.class, 3);
+    }
+
+    @Test
+    public void shouldProcessColumnsWithBatchEventProcessor() throws Exception
+    {
+        final SingleProducerSequencer sequencer = new SingleProducerSequencer(4, new BlockingWaitStrategy());
+        final AtomicLong total = new AtomicLong();
+        final CountDownLatch latch = new CountDownLatch(10);
+        final BatchEventProcessor<Quote> processor = new BatchEventProcessor<Quote>(
+            storage.newCursor(QUOTE_FACTORY), sequencer.newBarrier(), new EventHandler<Quote>()
+            {
+                @Override
+                public void onEvent(final Quote event, final long sequence, final boolean endOfBatch) throws Exception
+                {
+                    total.addAndGet(event.getPrice());
+                    latch.countDown();
+                }
+            });
+        sequencer.addGatingSequences(processor.getSequence());
+
+        final DataProvider<Quote> producerCursor = storage.newCursor(QUOTE_FACTORY);
+        final Thread thread = new Thread(processor);
+        thread.start();
+        for (long i = 0; i < 10; i++)
+        {
+            final long sequence = sequencer.next();
+            producerCursor.get(sequence).setPrice(i);
+            sequencer.publish(sequence);
+        }
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertThat(total.get(), is(45L));
+        processor.halt();
+        thread.join();
+    }
+}
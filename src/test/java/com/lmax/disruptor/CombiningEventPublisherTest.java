@@ -0,0 +1,241 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.lmax.disruptor.support.LongEvent;
+
+public class CombiningEventPublisherTest
+{
+    private static final EventTranslatorOneArg<LongEvent, Long> VALUE_TRANSLATOR =
+        new EventTranslatorOneArg<LongEvent, Long>()
+        {
+            @Override
+            public void translateTo(final LongEvent event, final long sequence, final Long value)
+            {
+                event.set(value.longValue());
+            }
+        };
+
+    @Test
+    public void shouldPublishEventBeforeReturning()
+    {
+        final RingBuffer<LongEvent> ringBuffer = RingBuffer.createMultiProducer(LongEvent.FACTORY, 8);
+        final CombiningEventPublisher<LongEvent> publisher = new CombiningEventPublisher<LongEvent>(ringBuffer, 4);
+
+        publisher.publishEvent(VALUE_TRANSLATOR, 7L);
+        publisher.publishEvent(new EventTranslator<LongEvent>()
+        {
+            @Override
+            public void translateTo(final LongEvent event, final long sequence)
+            {
+                event.set(sequence + 100);
+            }
+        });
+
+        assertThat(ringBuffer.getCursor(), is(1L));
+        assertThat(ringBuffer.get(0).get(), is(7L));
+        assertThat(ringBuffer.get(1).get(), is(101L));
+    }
+
+    @Test
+    public void shouldPublishEveryEventFromManyThreadsExactlyOnce() throws Exception
+    {
+        final int threadCount = 8;
+        final int eventsPerThread = 2000;
+        final int total = threadCount * eventsPerThread;
+        final RingBuffer<LongEvent> ringBuffer = RingBuffer.createMultiProducer(LongEvent.FACTORY, 1 << 16);
+        final CombiningEventPublisher<LongEvent> publisher = new CombiningEventPublisher<LongEvent>(ringBuffer, 4);
+
+        final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        final Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++)
+        {
+            final long base = (long) t * eventsPerThread;
+            threads[t] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        barrier.await();
+                    }
+                    catch (final Exception e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                    for (int i = 0; i < eventsPerThread; i++)
+                    {
+                        publisher.publishEvent(VALUE_TRANSLATOR, base + i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertThat(ringBuffer.getCursor(), is((long) total - 1));
+        // the barrier reports the highest contiguously published sequence
+        assertThat(ringBuffer.newBarrier().waitFor(0L), is((long) total - 1));
+        final boolean[] seen = new boolean[total];
+        for (int i = 0; i < total; i++)
+        {
+            final int value = (int) ringBuffer.get(i).get();
+            assertThat("duplicate value " + value, seen[value], is(false));
+            seen[value] = true;
+        }
+    }
+
+    @Test
+    public void shouldRethrowTranslatorFailureAndStillPublishTheSequence() throws Exception
+    {
+        final RingBuffer<LongEvent> ringBuffer = RingBuffer.createMultiProducer(LongEvent.FACTORY, 8);
+        final CombiningEventPublisher<LongEvent> publisher = new CombiningEventPublisher<LongEvent>(ringBuffer, 4);
+
+        try
+        {
+            publisher.publishEvent(new EventTranslator<LongEvent>()
+            {
+                @Override
+                public void translateTo(final LongEvent event, final long sequence)
+                {
+                    throw new IllegalStateException("bad translator");
+                }
+            });
+            fail("Expected the translator failure to be rethrown");
+        }
+        catch (final IllegalStateException e)
+        {
+            assertThat(e.getMessage(), is("bad translator"));
+        }
+
+        publisher.publishEvent(VALUE_TRANSLATOR, 3L);
+
+        assertThat(ringBuffer.getCursor(), is(1L));
+        assertThat(ringBuffer.newBarrier().waitFor(0L), is(1L));
+        assertThat(ringBuffer.get(1).get(), is(3L));
+    }
+
+    @Test
+    public void shouldPublishRequestsQueuedBehindTheCombinerAsOneBatch() throws Exception
+    {
+        final CountingWaitStrategy waitStrategy = new CountingWaitStrategy();
+        final RingBuffer<LongEvent> ringBuffer = RingBuffer.createMultiProducer(LongEvent.FACTORY, 64, waitStrategy);
+        final CombiningEventPublisher<LongEvent> publisher = new CombiningEventPublisher<LongEvent>(ringBuffer, 4);
+
+        final CountDownLatch inTranslator = new CountDownLatch(1);
+        final CountDownLatch releaseTranslator = new CountDownLatch(1);
+        final Thread combiner = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                publisher.publishEvent(new EventTranslator<LongEvent>()
+                {
+                    @Override
+                    public void translateTo(final LongEvent event, final long sequence)
+                    {
+                        inTranslator.countDown();
+                        try
+                        {
+                            releaseTranslator.await();
+                        }
+                        catch (final InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        });
+        combiner.start();
+        assertTrue(inTranslator.await(5, TimeUnit.SECONDS));
+
+        final Thread[] waiting = new Thread[3];
+        for (int i = 0; i < waiting.length; i++)
+        {
+            final long value = i;
+            waiting[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    publisher.publishEvent(VALUE_TRANSLATOR, value);
+                }
+            });
+            waiting[i].start();
+        }
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (publisher.getPendingCount() < 4 && System.currentTimeMillis() < deadline)
+        {
+            Thread.yield();
+        }
+        assertThat(publisher.getPendingCount(), is(4));
+
+        releaseTranslator.countDown();
+        combiner.join();
+        for (final Thread thread : waiting)
+        {
+            thread.join();
+        }
+
+        assertThat(ringBuffer.getCursor(), is(3L));
+        assertThat(waitStrategy.signals.get(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMoreSlotsThanTheRingBufferCanHold()
+    {
+        new CombiningEventPublisher<LongEvent>(RingBuffer.createMultiProducer(LongEvent.FACTORY, 4), 8);
+    }
+
+    private static final class CountingWaitStrategy implements WaitStrategy
+    {
+        private final WaitStrategy delegate = new BlockingWaitStrategy();
+        private final AtomicInteger signals = new AtomicInteger();
+
+        @Override
+        public long waitFor(
+            final long sequence, final Sequence cursor, final Sequence dependentSequence, final SequenceBarrier barrier)
+            throws AlertException, InterruptedException, TimeoutException
+        {
+            return delegate.waitFor(sequence, cursor, dependentSequence, barrier);
+        }
+
+        @Override
+        public void signalAllWhenBlocking()
+        {
+            signals.incrementAndGet();
+            delegate.signalAllWhenBlocking();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.support.StubEvent;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+
+public class CompletionRingTest
+{
+    private final RingBuffer<StubEvent> ringBuffer = RingBuffer.createMultiProducer(StubEvent.EVENT_FACTORY, 16);
+    private final CountDownLatch releaseSlowHandler = new CountDownLatch(1);
+    private final BatchEventProcessor<StubEvent> fastProcessor =
+        new BatchEventProcessor<StubEvent>(ringBuffer, ringBuffer.newBarrier(), new NoOpHandler());
+    private final BatchEventProcessor<StubEvent> slowProcessor =
+        new BatchEventProcessor<StubEvent>(ringBuffer, ringBuffer.newBarrier(), new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                releaseSlowHandler.await();
+            }
+        });
+    private final List<Thread> threads = new ArrayList<Thread>();
+
+    {
+        ringBuffer.addGatingSequences(fastProcessor.getSequence(), slowProcessor.getSequence());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        releaseSlowHandler.countDown();
+        fastProcessor.halt();
+        slowProcessor.halt();
+        for (final Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    @Test
+    public void shouldCompleteCallbackOnlyWhenAllTerminalProcessorsHaveProcessedTheSequence() throws Exception
+    {
+        final CompletionRing completionRing = new CompletionRing(16, fastProcessor, slowProcessor);
+        final RecordingCallback callback = new RecordingCallback(1);
+
+        final long sequence = ringBuffer.next();
+        completionRing.onProcessed(sequence, callback);
+        ringBuffer.publish(sequence);
+        start(fastProcessor, slowProcessor);
+
+        while (fastProcessor.getSequence().get() < sequence)
+        {
+            Thread.yield();
+        }
+        assertThat(callback.sequences.isEmpty(), is(true));
+
+        releaseSlowHandler.countDown();
+
+        assertTrue(callback.latch.await(2, TimeUnit.SECONDS));
+        assertThat(callback.sequences, is(Collections.singletonList(sequence)));
+        assertThat(completionRing.getCompletedSequence(), is(sequence));
+    }
+
+    @Test
+    public void shouldCompleteEveryWaiterInTheProcessedBatch() throws Exception
+    {
+        final CompletionRing completionRing = new CompletionRing(16, fastProcessor);
+        final RecordingCallback[] callbacks = new RecordingCallback[4];
+        for (int i = 0; i < callbacks.length; i++)
+        {
+            callbacks[i] = new RecordingCallback(1);
+            final long sequence = ringBuffer.next();
+            completionRing.onProcessed(sequence, callbacks[i]);
+            ringBuffer.publish(sequence);
+        }
+        start(fastProcessor);
+
+        for (int i = 0; i < callbacks.length; i++)
+        {
+            assertTrue(callbacks[i].latch.await(2, TimeUnit.SECONDS));
+            assertThat(callbacks[i].sequences, is(Collections.singletonList((long) i)));
+        }
+    }
+
+    @Test
+    public void shouldRunCallbackImmediatelyForAlreadyProcessedSequence() throws Exception
+    {
+        final CompletionRing completionRing = new CompletionRing(16, fastProcessor);
+        start(fastProcessor);
+        ringBuffer.publish(ringBuffer.next());
+        completionRing.awaitProcessed(0L);
+
+        final RecordingCallback callback = new RecordingCallback(1);
+        completionRing.onProcessed(0L, callback);
+
+        assertThat(callback.latch.getCount(), is(0L));
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void shouldTimeOutWaitingForUnprocessedSequence() throws Exception
+    {
+        final CompletionRing completionRing = new CompletionRing(16, slowProcessor);
+        start(slowProcessor);
+        final long sequence = ringBuffer.next();
+        ringBuffer.publish(sequence);
+
+        completionRing.awaitProcessed(sequence, 20, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void shouldAwaitRepliesFromManyPublishersThroughTheDsl() throws Exception
+    {
+        final Disruptor<StubEvent> disruptor =
+            new Disruptor<StubEvent>(StubEvent.EVENT_FACTORY, 64, DaemonThreadFactory.INSTANCE);
+        disruptor.handleEventsWith(new NoOpHandler()).then(new NoOpHandler(), new NoOpHandler());
+        final CompletionRing completionRing = disruptor.newCompletionRing();
+        final RingBuffer<StubEvent> disruptorRing = disruptor.start();
+
+        final int publisherCount = 4;
+        final int requestsPerPublisher = 2000;
+        final Thread[] publishers = new Thread[publisherCount];
+        for (int p = 0; p < publisherCount; p++)
+        {
+            publishers[p] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < requestsPerPublisher; i++)
+                    {
+                        final long sequence = disruptorRing.next();
+                        disruptorRing.publish(sequence);
+                        completionRing.awaitProcessed(sequence);
+                    }
+                }
+            });
+            publishers[p].start();
+        }
+        for (final Thread publisher : publishers)
+        {
+            publisher.join(10000);
+            assertThat(publisher.isAlive(), is(false));
+        }
+
+        assertThat(completionRing.getCompletedSequence(), is((long) publisherCount * requestsPerPublisher - 1));
+        disruptor.halt();
+    }
+
+    @Test
+    public void shouldReportCallbackFailureWithoutStoppingTerminalProcessor() throws Exception
+    {
+        final CompletionRing completionRing = new CompletionRing(16, fastProcessor);
+        final List<Long> failedSequences = Collections.synchronizedList(new ArrayList<Long>());
+        completionRing.setExceptionHandler(new ExceptionHandler<Object>()
+        {
+            @Override
+            public void handleEventException(final Throwable ex, final long sequence, final Object event)
+            {
+                failedSequences.add(sequence);
+            }
+
+            @Override
+            public void handleOnStartException(final Throwable ex)
+            {
+            }
+
+            @Override
+            public void handleOnShutdownException(final Throwable ex)
+            {
+            }
+        });
+        final RecordingCallback callback = new RecordingCallback(1);
+
+        final long failingSequence = ringBuffer.next();
+        completionRing.onProcessed(failingSequence, new CompletionRing.Callback()
+        {
+            @Override
+            public void onProcessed(final long sequence)
+            {
+                throw new IllegalStateException("reply failed");
+            }
+        });
+        final long sequence = ringBuffer.next();
+        completionRing.onProcessed(sequence, callback);
+        ringBuffer.publish(failingSequence, sequence);
+        start(fastProcessor);
+
+        assertTrue(callback.latch.await(2, TimeUnit.SECONDS));
+        assertThat(failedSequences, is(Collections.singletonList(failingSequence)));
+
+        ringBuffer.publish(ringBuffer.next());
+        completionRing.awaitProcessed(sequence + 1L, 2, TimeUnit.SECONDS);
+        assertTrue(fastProcessor.isRunning());
+    }
+
+    @Test(timeout = 60000)
+    public void shouldCompleteProgressNotifiedWhileTimedOutWaiterIsRemoved() throws Exception
+    {
+        final CompletionRing completionRing = new CompletionRing(16, fastProcessor);
+        final Sequence terminalSequence = fastProcessor.getSequence();
+        final int iterations = 20000;
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final Thread progressThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (long sequence = 0; sequence < iterations; sequence++)
+                    {
+                        barrier.await();
+                        terminalSequence.set(sequence);
+                        completionRing.onProgress(sequence);
+                        barrier.await();
+                    }
+                }
+                catch (final Exception e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        progressThread.start();
+
+        for (long sequence = 0; sequence < iterations; sequence++)
+        {
+            barrier.await();
+            try
+            {
+                completionRing.awaitProcessed(sequence, 0, TimeUnit.NANOSECONDS);
+            }
+            catch (final TimeoutException e)
+            {
+                // the final notification races with removing this waiter
+            }
+            barrier.await();
+
+            assertThat(completionRing.getCompletedSequence(), is(sequence));
+        }
+        progressThread.join();
+    }
+
+    private void start(final BatchEventProcessor<?>... processors)
+    {
+        for (final BatchEventProcessor<?> processor : processors)
+        {
+            final Thread thread = new Thread(processor);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    private static final class NoOpHandler implements EventHandler<StubEvent>
+    {
+        @Override
+        public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch)
+        {
+        }
+    }
+
+    private static final class RecordingCallback extends CompletionRing.Callback
+    {
+        private final List<Long> sequences = Collections.synchronizedList(new ArrayList<Long>());
+        private final CountDownLatch latch;
+
+        RecordingCallback(final int expected)
+        {
+            latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onProcessed(final long sequence)
+        {
+            sequences.add(sequence);
+            latch.countDown();
+        }
+    }
+}
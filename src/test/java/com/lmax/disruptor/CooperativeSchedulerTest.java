@@ -0,0 +1,382 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.lmax.disruptor.support.StubEvent;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+
+public class CooperativeSchedulerTest
+{
+    private final CooperativeScheduler scheduler = new CooperativeScheduler(2, 4, DaemonThreadFactory.INSTANCE);
+    private final RingBuffer<StubEvent> ringBuffer =
+        RingBuffer.createMultiProducer(StubEvent.EVENT_FACTORY, 64, scheduler.wrap(new BlockingWaitStrategy()));
+    private final List<CooperativeEventProcessor<StubEvent>> processors = new ArrayList<CooperativeEventProcessor<StubEvent>>();
+
+    @After
+    public void tearDown() throws Exception
+    {
+        for (final CooperativeEventProcessor<StubEvent> processor : processors)
+        {
+            processor.halt();
+        }
+        scheduler.halt();
+    }
+
+    @Test(timeout = 5000)
+    public void shouldRunManyProcessorsOnTheCarrierThreads() throws Exception
+    {
+        final Set<Thread> threadsUsed = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final CountDownLatch allProcessed = new CountDownLatch(20);
+        final long[] lastSequences = new long[20];
+        for (int i = 0; i < 20; i++)
+        {
+            final int index = i;
+            lastSequences[i] = -1L;
+            start(new EventHandler<StubEvent>()
+            {
+                @Override
+                public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+                {
+                    threadsUsed.add(Thread.currentThread());
+                    assertThat(sequence, is(lastSequences[index] + 1));
+                    lastSequences[index] = sequence;
+                    if (sequence == 99L)
+                    {
+                        allProcessed.countDown();
+                    }
+                }
+            });
+        }
+
+        publish(100);
+
+        assertTrue(allProcessed.await(4, TimeUnit.SECONDS));
+        assertThat(scheduler.getProcessorCount(), is(20));
+        assertTrue(threadsUsed.size() <= 2);
+    }
+
+    @Test(timeout = 5000)
+    public void shouldOnlyProcessEventsAfterDependentProcessors() throws Exception
+    {
+        final CountDownLatch lastEventProcessed = new CountDownLatch(1);
+        final AtomicLong violations = new AtomicLong();
+        final CooperativeEventProcessor<StubEvent> first = start(new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                event.setTestString("first");
+            }
+        });
+        start(new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                if (!"first".equals(event.getTestString()))
+                {
+                    violations.incrementAndGet();
+                }
+                if (sequence == 49L)
+                {
+                    lastEventProcessed.countDown();
+                }
+            }
+        }, first.getSequence());
+
+        publish(50);
+
+        assertTrue(lastEventProcessed.await(4, TimeUnit.SECONDS));
+        assertThat(violations.get(), is(0L));
+    }
+
+    @Test(timeout = 5000)
+    public void shouldEndBatchWhenBudgetIsExhausted() throws Exception
+    {
+        final CountDownLatch lastEventProcessed = new CountDownLatch(1);
+        final List<Long> batchEnds = new ArrayList<Long>();
+        final CooperativeEventProcessor<StubEvent> processor = new CooperativeEventProcessor<StubEvent>(
+            ringBuffer, new EventHandler<StubEvent>()
+            {
+                @Override
+                public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+                {
+                    if (endOfBatch)
+                    {
+                        batchEnds.add(Long.valueOf(sequence));
+                    }
+                    if (sequence == 9L)
+                    {
+                        lastEventProcessed.countDown();
+                    }
+                }
+            });
+        ringBuffer.addGatingSequences(processor.getSequence());
+        processors.add(processor);
+        publish(10);
+
+        scheduler.execute(processor);
+
+        assertTrue(lastEventProcessed.await(4, TimeUnit.SECONDS));
+        assertThat(batchEnds.toString(), is("[3, 7, 9]"));
+    }
+
+    @Test(timeout = 5000)
+    public void shouldNotifyShutdownAndDeregisterWhenHalted() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch shutdown = new CountDownLatch(1);
+        final CooperativeEventProcessor<StubEvent> processor = start(new LifecycleEventHandler(started, shutdown));
+
+        assertTrue(started.await(4, TimeUnit.SECONDS));
+        assertTrue(processor.isRunning());
+
+        processor.halt();
+
+        assertTrue(shutdown.await(4, TimeUnit.SECONDS));
+        while (processor.isRunning() || scheduler.getProcessorCount() != 0)
+        {
+            Thread.yield();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void shouldPassExceptionsToExceptionHandlerAndContinue() throws Exception
+    {
+        final CountDownLatch lastEventProcessed = new CountDownLatch(1);
+        final AtomicLong failedSequence = new AtomicLong(-1L);
+        final CooperativeEventProcessor<StubEvent> processor = new CooperativeEventProcessor<StubEvent>(
+            ringBuffer, new EventHandler<StubEvent>()
+            {
+                @Override
+                public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+                {
+                    if (sequence == 1L)
+                    {
+                        throw new IllegalStateException();
+                    }
+                    if (sequence == 2L)
+                    {
+                        lastEventProcessed.countDown();
+                    }
+                }
+            });
+        processor.setExceptionHandler(new ExceptionHandler<Object>()
+        {
+            @Override
+            public void handleEventException(final Throwable ex, final long sequence, final Object event)
+            {
+                failedSequence.set(sequence);
+            }
+
+            @Override
+            public void handleOnStartException(final Throwable ex)
+            {
+            }
+
+            @Override
+            public void handleOnShutdownException(final Throwable ex)
+            {
+            }
+        });
+        ringBuffer.addGatingSequences(processor.getSequence());
+        processors.add(processor);
+        scheduler.execute(processor);
+
+        publish(3);
+
+        assertTrue(lastEventProcessed.await(4, TimeUnit.SECONDS));
+        assertThat(failedSequence.get(), is(1L));
+        assertTrue(processor.isRunning());
+    }
+
+    @Test(timeout = 5000)
+    public void shouldPassProcessorFailureToCarrierUncaughtExceptionHandler() throws Exception
+    {
+        final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CooperativeScheduler failingScheduler = new CooperativeScheduler(1, 4, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable r)
+            {
+                final Thread thread = DaemonThreadFactory.INSTANCE.newThread(r);
+                thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler()
+                {
+                    @Override
+                    public void uncaughtException(final Thread t, final Throwable e)
+                    {
+                        uncaught.add(e);
+                    }
+                });
+                return thread;
+            }
+        });
+        final RingBuffer<StubEvent> failingRingBuffer =
+            RingBuffer.createMultiProducer(StubEvent.EVENT_FACTORY, 64, failingScheduler.wrap(new BlockingWaitStrategy()));
+        final IllegalStateException failure = new IllegalStateException("fatal");
+        final CooperativeEventProcessor<StubEvent> processor = new CooperativeEventProcessor<StubEvent>(
+            failingRingBuffer, new EventHandler<StubEvent>()
+            {
+                @Override
+                public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+                {
+                    throw failure;
+                }
+            });
+        processor.setExceptionHandler(new ExceptionHandler<Object>()
+        {
+            @Override
+            public void handleEventException(final Throwable ex, final long sequence, final Object event)
+            {
+                throw (RuntimeException) ex;
+            }
+
+            @Override
+            public void handleOnStartException(final Throwable ex)
+            {
+            }
+
+            @Override
+            public void handleOnShutdownException(final Throwable ex)
+            {
+            }
+        });
+        failingRingBuffer.addGatingSequences(processor.getSequence());
+
+        try
+        {
+            failingScheduler.execute(processor);
+            failingRingBuffer.publishEvent(StubEvent.TRANSLATOR, 0, "");
+
+            while (uncaught.isEmpty() || failingScheduler.getProcessorCount() != 0)
+            {
+                Thread.yield();
+            }
+            assertTrue(uncaught.get(0) == failure);
+        }
+        finally
+        {
+            failingScheduler.halt();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void shouldRunOnCallingThreadUntilHaltedOutsideScheduler() throws Exception
+    {
+        final Set<Thread> threadsUsed = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final CountDownLatch allProcessed = new CountDownLatch(10);
+        final CooperativeEventProcessor<StubEvent> processor = new CooperativeEventProcessor<StubEvent>(
+            ringBuffer, new EventHandler<StubEvent>()
+            {
+                @Override
+                public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+                {
+                    threadsUsed.add(Thread.currentThread());
+                    allProcessed.countDown();
+                }
+            });
+        final Thread thread = DaemonThreadFactory.INSTANCE.newThread(processor);
+        thread.start();
+
+        for (int i = 0; i < 10; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+
+        assertTrue(allProcessed.await(2, TimeUnit.SECONDS));
+        processor.halt();
+        thread.join();
+
+        assertThat(threadsUsed, is(Collections.singleton(thread)));
+        assertThat(processor.getSequence().get(), is(9L));
+        assertFalse(processor.isRunning());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldRejectProcessorsAfterHalt() throws Exception
+    {
+        scheduler.halt();
+
+        scheduler.execute(new CooperativeEventProcessor<StubEvent>(ringBuffer, new LifecycleEventHandler(null, null)));
+    }
+
+    private CooperativeEventProcessor<StubEvent> start(
+        final EventHandler<StubEvent> handler, final Sequence... dependentSequences)
+    {
+        final CooperativeEventProcessor<StubEvent> processor =
+            new CooperativeEventProcessor<StubEvent>(ringBuffer, handler, dependentSequences);
+        ringBuffer.addGatingSequences(processor.getSequence());
+        processors.add(processor);
+        scheduler.execute(processor);
+        return processor;
+    }
+
+    private void publish(final int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            ringBuffer.publishEvent(StubEvent.TRANSLATOR, i, null);
+        }
+    }
+
+    private static final class LifecycleEventHandler implements EventHandler<StubEvent>, LifecycleAware
+    {
+        private final CountDownLatch started;
+        private final CountDownLatch shutdown;
+
+        LifecycleEventHandler(final CountDownLatch started, final CountDownLatch shutdown)
+        {
+            this.started = started;
+            this.shutdown = shutdown;
+        }
+
+        @Override
+        public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+        {
+        }
+
+        @Override
+        public void onStart()
+        {
+            started.countDown();
+        }
+
+        @Override
+        public void onShutdown()
+        {
+            shutdown.countDown();
+        }
+    }
+}
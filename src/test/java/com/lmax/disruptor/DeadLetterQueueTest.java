@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.support.StubEvent;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+
+public class DeadLetterQueueTest
+{
+    private static final EventTranslatorOneArg<StubEvent, StubEvent> COPIER =
+        new EventTranslatorOneArg<StubEvent, StubEvent>()
+        {
+            @Override
+            public void translateTo(final StubEvent event, final long sequence, final StubEvent failed)
+            {
+                event.copy(failed);
+            }
+        };
+
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch failureLatch = new CountDownLatch(1);
+    private final ExceptionHandler<StubEvent> failureHandler = new ExceptionHandler<StubEvent>()
+    {
+        @Override
+        public void handleEventException(final Throwable ex, final long sequence, final StubEvent event)
+        {
+            failures.add(sequence + ":" + event.getValue() + ":" + ex.getMessage());
+            failureLatch.countDown();
+        }
+
+        @Override
+        public void handleOnStartException(final Throwable ex)
+        {
+        }
+
+        @Override
+        public void handleOnShutdownException(final Throwable ex)
+        {
+        }
+    };
+
+    private DeadLetterQueue<StubEvent> deadLetterQueue;
+
+    @After
+    public void tearDown()
+    {
+        if (deadLetterQueue != null)
+        {
+            deadLetterQueue.halt();
+        }
+    }
+
+    @Test
+    public void shouldRetryCopyOfFailedEventUntilHandlerSucceeds() throws Exception
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch succeeded = new CountDownLatch(1);
+        deadLetterQueue = newDeadLetterQueue(8, new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                if (attempts.incrementAndGet() < 3)
+                {
+                    throw new IllegalStateException("attempt " + attempts.get());
+                }
+                assertThat(event.getValue(), is(7));
+                assertThat(sequence, is(42L));
+                succeeded.countDown();
+            }
+        }, 3);
+
+        final StubEvent event = new StubEvent(7);
+        deadLetterQueue.handleEventException(new IllegalStateException("first"), 42L, event);
+        event.setValue(8);
+        deadLetterQueue.start(DaemonThreadFactory.INSTANCE);
+
+        assertTrue(succeeded.await(5, TimeUnit.SECONDS));
+        assertThat(attempts.get(), is(3));
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void shouldReportEventsThatFailEveryAttempt() throws Exception
+    {
+        deadLetterQueue = newDeadLetterQueue(8, new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                throw new IllegalStateException("still failing");
+            }
+        }, 2);
+        deadLetterQueue.start(DaemonThreadFactory.INSTANCE);
+
+        deadLetterQueue.handleEventException(new IllegalStateException("first"), 3L, new StubEvent(5));
+
+        assertTrue(failureLatch.await(5, TimeUnit.SECONDS));
+        assertThat(failures, is(Arrays.asList("3:5:still failing")));
+    }
+
+    @Test
+    public void shouldReportFailuresImmediatelyWhenQueueIsFull() throws Exception
+    {
+        deadLetterQueue = newDeadLetterQueue(2, new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+            }
+        }, 1);
+
+        for (int i = 0; i < 3; i++)
+        {
+            deadLetterQueue.handleEventException(new IllegalStateException("full"), i, new StubEvent(i));
+        }
+
+        assertThat(failures, is(Arrays.asList("2:2:full")));
+        assertThat(deadLetterQueue.getPendingCount(), is(2L));
+    }
+
+    @Test
+    public void shouldRetryFailedEventsFromDisruptorConsumer() throws Exception
+    {
+        final List<Integer> retried = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch retriedLatch = new CountDownLatch(3);
+        deadLetterQueue = newDeadLetterQueue(8, new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                retried.add(event.getValue());
+                retriedLatch.countDown();
+            }
+        }, 1);
+
+        final Disruptor<StubEvent> disruptor = new Disruptor<StubEvent>(
+            StubEvent.EVENT_FACTORY, 16, DaemonThreadFactory.INSTANCE);
+        final EventHandler<StubEvent> oddFailingHandler = new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                if (event.getValue() % 2 == 1)
+                {
+                    throw new IllegalArgumentException("odd");
+                }
+            }
+        };
+        disruptor.handleEventsWith(oddFailingHandler);
+        disruptor.handleExceptionsFor(oddFailingHandler).withDeadLetterQueue(deadLetterQueue);
+        disruptor.start();
+
+        for (int i = 0; i < 6; i++)
+        {
+            disruptor.publishEvent(StubEvent.TRANSLATOR, i, "");
+        }
+
+        assertTrue(retriedLatch.await(5, TimeUnit.SECONDS));
+        assertThat(retried, is(Arrays.asList(1, 3, 5)));
+        disruptor.shutdown();
+        while (deadLetterQueue.isRunning())
+        {
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void shouldNotDelayOtherRetriesBehindRepeatedlyFailingEvent() throws Exception
+    {
+        final CountDownLatch succeeded = new CountDownLatch(1);
+        deadLetterQueue = newDeadLetterQueue(8, new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                if (event.getValue() == 1)
+                {
+                    throw new IllegalStateException("poison");
+                }
+                succeeded.countDown();
+            }
+        }, 30);
+
+        deadLetterQueue.handleEventException(new IllegalStateException("first"), 0L, new StubEvent(1));
+        deadLetterQueue.handleEventException(new IllegalStateException("first"), 1L, new StubEvent(2));
+        deadLetterQueue.start(DaemonThreadFactory.INSTANCE);
+
+        assertTrue(succeeded.await(5, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void shouldSkipDeadLetterWhenCopyFails() throws Exception
+    {
+        final List<Integer> retried = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch retriedLatch = new CountDownLatch(1);
+        deadLetterQueue = new DeadLetterQueue<StubEvent>(
+            StubEvent.EVENT_FACTORY,
+            new EventTranslatorOneArg<StubEvent, StubEvent>()
+            {
+                @Override
+                public void translateTo(final StubEvent event, final long sequence, final StubEvent failed)
+                {
+                    if (failed.getValue() == 1)
+                    {
+                        throw new IllegalArgumentException("cannot copy");
+                    }
+                    event.copy(failed);
+                }
+            },
+            8,
+            new EventHandler<StubEvent>()
+            {
+                @Override
+                public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+                {
+                    retried.add(event.getValue());
+                    retriedLatch.countDown();
+                }
+            },
+            failureHandler, 1, 1, TimeUnit.MILLISECONDS);
+
+        deadLetterQueue.handleEventException(new IllegalStateException("first"), 0L, new StubEvent(1));
+        deadLetterQueue.handleEventException(new IllegalStateException("second"), 1L, new StubEvent(2));
+        assertThat(failures, is(Arrays.asList("0:1:first")));
+
+        deadLetterQueue.start(DaemonThreadFactory.INSTANCE);
+
+        assertTrue(retriedLatch.await(5, TimeUnit.SECONDS));
+        while (deadLetterQueue.getPendingCount() != 0)
+        {
+            Thread.yield();
+        }
+        assertThat(retried, is(Arrays.asList(2)));
+    }
+
+    private DeadLetterQueue<StubEvent> newDeadLetterQueue(
+        final int bufferSize, final EventHandler<StubEvent> retryHandler, final int maxAttempts)
+    {
+        return new DeadLetterQueue<StubEvent>(
+            StubEvent.EVENT_FACTORY, COPIER, bufferSize, retryHandler, failureHandler, maxAttempts, 1, TimeUnit.MILLISECONDS);
+    }
+}
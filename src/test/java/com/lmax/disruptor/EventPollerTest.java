@@ -4,6 +4,8 @@ import com.lmax.disruptor.EventPoller.PollState;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
@@ -89,4 +91,64 @@ public class EventPollerTest
 
         assertThat(events.size(), is(4));
     }
+
+    @Test
+    public void shouldSkipLappedEventsWithoutGatingProducer() throws Exception
+    {
+        final List<Long> sequences = new ArrayList<Long>();
+        final List<Long> losses = new ArrayList<Long>();
+
+        final class LossAwareHandler implements EventPoller.Handler<long[]>, EventLossAware
+        {
+            @Override
+            public boolean onEvent(long[] event, long sequence, boolean endOfBatch) throws Exception
+            {
+                sequences.add(event[0]);
+                return true;
+            }
+
+            @Override
+            public void onEventsLost(long firstLostSequence, long count)
+            {
+                losses.add(firstLostSequence);
+                losses.add(count);
+            }
+        }
+
+        EventFactory<long[]> factory = new EventFactory<long[]>()
+        {
+            @Override
+            public long[] newInstance()
+            {
+                return new long[1];
+            }
+        };
+
+        final RingBuffer<long[]> ringBuffer = RingBuffer.createMultiProducer(factory, 4, new SleepingWaitStrategy());
+        final EventPoller<long[]> poller = ringBuffer.newLossyPoller();
+        final LossAwareHandler handler = new LossAwareHandler();
+
+        for (int i = 0; i < 10; i++)
+        {
+            long next = ringBuffer.next();
+            ringBuffer.get(next)[0] = next;
+            ringBuffer.publish(next);
+        }
+
+        assertThat(poller.poll(handler), is(PollState.PROCESSING));
+        assertThat(sequences, is(Arrays.asList(9L)));
+        assertThat(losses, is(Arrays.asList(0L, 9L)));
+        assertThat(poller.getLostEventCount(), is(9L));
+
+        for (int i = 0; i < 2; i++)
+        {
+            long next = ringBuffer.next();
+            ringBuffer.get(next)[0] = next;
+            ringBuffer.publish(next);
+        }
+
+        assertThat(poller.poll(handler), is(PollState.PROCESSING));
+        assertThat(sequences, is(Arrays.asList(9L, 10L, 11L)));
+        assertThat(poller.getLostEventCount(), is(9L));
+    }
 }
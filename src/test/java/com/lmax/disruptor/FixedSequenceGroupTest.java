@@ -37,4 +37,21 @@ public class FixedSequenceGroupTest
         sequence1.set(48);
         assertThat(group.get(), is(47L));
     }
+
+    @Test
+    public void shouldOnlyRescanWhenRequiredSequenceExceedsCachedMinimum() throws Exception
+    {
+        Sequence sequence1 = new Sequence(34);
+        Sequence sequence2 = new Sequence(47);
+        FixedSequenceGroup group = new FixedSequenceGroup(new Sequence[]{sequence1, sequence2});
+
+        assertThat(group.get(), is(34L));
+        sequence1.set(40);
+
+        assertThat(group.get(30), is(34L));
+        assertThat(group.getCachedMinimum(), is(34L));
+
+        assertThat(group.get(35), is(40L));
+        assertThat(group.getCachedMinimum(), is(40L));
+    }
 }
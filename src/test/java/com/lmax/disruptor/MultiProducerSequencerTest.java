@@ -18,6 +18,9 @@ package com.lmax.disruptor;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.util.BitSet;
+import java.util.concurrent.CyclicBarrier;
+
 import org.junit.Test;
 
 public class MultiProducerSequencerTest
@@ -38,4 +41,179 @@ public class MultiProducerSequencerTest
         assertThat(publisher.isAvailable(5), is(true));
         assertThat(publisher.isAvailable(6), is(false));
     }
+
+    @Test
+    public void shouldSkipPublishedRangesAndStopAtUnpublishedSequence() throws Exception
+    {
+        final Sequencer sequencer = new MultiProducerSequencer(16, new BlockingWaitStrategy());
+        sequencer.addGatingSequences(new Sequence());
+
+        final long firstHi = sequencer.next(8);
+        final long single = sequencer.next();
+        final long secondHi = sequencer.next(3);
+        sequencer.publish(firstHi - 7, firstHi);
+        sequencer.publish(secondHi - 2, secondHi);
+
+        assertThat(sequencer.getHighestPublishedSequence(0, secondHi), is(7L));
+        assertThat(sequencer.getHighestPublishedSequence(3, secondHi), is(7L));
+        assertThat(sequencer.isAvailable(5), is(true));
+        assertThat(sequencer.isAvailable(single), is(false));
+        assertThat(sequencer.isAvailable(10), is(true));
+
+        sequencer.publish(single);
+
+        assertThat(sequencer.getHighestPublishedSequence(0, secondHi), is(11L));
+        assertThat(sequencer.getHighestPublishedSequence(10, secondHi), is(11L));
+        assertThat(sequencer.getHighestPublishedSequence(0, 5), is(5L));
+    }
+
+    @Test
+    public void shouldNotTreatRangeFromPreviousLapAsPublished() throws Exception
+    {
+        final Sequencer sequencer = new MultiProducerSequencer(8, new BlockingWaitStrategy());
+        final Sequence gatingSequence = new Sequence();
+        sequencer.addGatingSequences(gatingSequence);
+
+        sequencer.publish(0, sequencer.next(8));
+        gatingSequence.set(7L);
+
+        final long single = sequencer.next();
+        sequencer.publish(single);
+        final long hi = sequencer.next(4);
+
+        assertThat(sequencer.getHighestPublishedSequence(8, hi), is(8L));
+        assertThat(sequencer.isAvailable(9), is(false));
+    }
+
+    @Test
+    public void shouldSeeEveryEventWithRangeAndSingleEventPublishersInterleaved() throws Exception
+    {
+        final int bufferSize = 64;
+        final int batchSize = 16;
+        final int batchesPerPublisher = 2000;
+        final int singleEvents = batchSize * batchesPerPublisher;
+        final long total = 2L * batchSize * batchesPerPublisher + singleEvents;
+        final Sequencer sequencer = new MultiProducerSequencer(bufferSize, new BlockingWaitStrategy());
+        final Sequence gatingSequence = new Sequence();
+        sequencer.addGatingSequences(gatingSequence);
+        final long[] values = new long[bufferSize];
+
+        final CyclicBarrier start = new CyclicBarrier(3);
+        final Thread[] threads = new Thread[3];
+        for (int i = 0; i < threads.length; i++)
+        {
+            final boolean batching = i < 2;
+            threads[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (final Exception e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                    final int claims = batching ? batchesPerPublisher : singleEvents;
+                    final int n = batching ? batchSize : 1;
+                    for (int j = 0; j < claims; j++)
+                    {
+                        final long hi = sequencer.next(n);
+                        final long lo = hi - (n - 1);
+                        for (long l = lo; l <= hi; l++)
+                        {
+                            values[(int) l & (bufferSize - 1)] = l;
+                        }
+                        sequencer.publish(lo, hi);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        long nextSequence = 0;
+        while (nextSequence < total)
+        {
+            final long available = sequencer.getHighestPublishedSequence(nextSequence, sequencer.getCursor());
+            for (long l = nextSequence; l <= available; l++)
+            {
+                assertThat(values[(int) l & (bufferSize - 1)], is(l));
+            }
+            if (available >= nextSequence)
+            {
+                nextSequence = available + 1;
+                gatingSequence.set(available);
+            }
+        }
+
+        for (final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertThat(sequencer.getCursor(), is(total - 1));
+    }
+
+    @Test
+    public void shouldClaimEachSequenceOnceWithFetchAndAddUnderContention() throws Exception
+    {
+        final int producers = 4;
+        final int claimsPerProducer = 10000;
+        final Sequencer sequencer = new FetchAndAddMultiProducerSequencer(64, new BlockingWaitStrategy());
+        final Sequence gatingSequence = new Sequence();
+        sequencer.addGatingSequences(gatingSequence);
+
+        final BitSet claimed = new BitSet(producers * claimsPerProducer);
+        final CyclicBarrier start = new CyclicBarrier(producers);
+        final Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++)
+        {
+            threads[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (final Exception e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                    for (int j = 0; j < claimsPerProducer; j++)
+                    {
+                        final long sequence = sequencer.next();
+                        synchronized (claimed)
+                        {
+                            claimed.set((int) sequence);
+                        }
+                        sequencer.publish(sequence);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        long nextSequence = 0;
+        while (nextSequence < producers * claimsPerProducer)
+        {
+            final long available = sequencer.getHighestPublishedSequence(nextSequence, sequencer.getCursor());
+            if (available >= nextSequence)
+            {
+                nextSequence = available + 1;
+                gatingSequence.set(available);
+            }
+        }
+
+        for (final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertThat(claimed.cardinality(), is(producers * claimsPerProducer));
+        assertThat(sequencer.getCursor(), is((long) producers * claimsPerProducer - 1));
+    }
 }
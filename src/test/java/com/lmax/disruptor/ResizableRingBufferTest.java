@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.lmax.disruptor.support.StubEvent;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+
+public class ResizableRingBufferTest
+{
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(DaemonThreadFactory.INSTANCE);
+    private final ResizableRingBuffer<StubEvent> ringBuffer =
+        ResizableRingBuffer.create(StubEvent.EVENT_FACTORY, 4, 16, new BlockingWaitStrategy());
+    private final Sequence consumer = new Sequence();
+    private final EventTranslatorOneArg<StubEvent, Integer> translator = new EventTranslatorOneArg<StubEvent, Integer>()
+    {
+        @Override
+        public void translateTo(final StubEvent event, final long sequence, final Integer value)
+        {
+            event.setValue(value);
+        }
+    };
+
+    {
+        ringBuffer.addGatingSequences(consumer);
+    }
+
+    @Test
+    public void shouldResizeAtQuiescentPoint() throws Exception
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            ringBuffer.publishEvent(translator, i);
+        }
+        assertThat(ringBuffer.remainingCapacity(), is(0L));
+        assertFalse(ringBuffer.tryPublishEvent(translator, 4));
+        final StubEvent reused = ringBuffer.get(1);
+
+        consumer.set(3);
+        ringBuffer.resize(8, 1, TimeUnit.SECONDS);
+
+        assertThat(ringBuffer.getBufferSize(), is(8));
+        assertThat(ringBuffer.remainingCapacity(), is(8L));
+        assertTrue(ringBuffer.get(1) == reused);
+
+        for (int i = 4; i < 12; i++)
+        {
+            assertTrue(ringBuffer.tryPublishEvent(translator, i));
+        }
+        assertFalse(ringBuffer.tryPublishEvent(translator, 12));
+
+        for (int i = 4; i < 12; i++)
+        {
+            assertThat(ringBuffer.get(i).getValue(), is(i));
+        }
+    }
+
+    @Test
+    public void shouldWaitForConsumersBeforeResizing() throws Exception
+    {
+        ringBuffer.publish(ringBuffer.next());
+        ringBuffer.publish(ringBuffer.next());
+
+        final Future<?> resize = executor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    ringBuffer.resize(2, 5, TimeUnit.SECONDS);
+                }
+                catch (final TimeoutException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        Thread.sleep(50);
+        assertFalse(resize.isDone());
+        assertThat(ringBuffer.getBufferSize(), is(4));
+
+        consumer.set(1);
+        resize.get();
+        assertThat(ringBuffer.getBufferSize(), is(2));
+    }
+
+    @Test
+    public void shouldKeepCapacityWhenConsumersDoNotCatchUpInTime() throws Exception
+    {
+        ringBuffer.publish(ringBuffer.next());
+
+        try
+        {
+            ringBuffer.resize(8, 10, TimeUnit.MILLISECONDS);
+            throw new AssertionError("Resize should have timed out");
+        }
+        catch (final TimeoutException e)
+        {
+            assertThat(ringBuffer.getBufferSize(), is(4));
+            assertThat(ringBuffer.remainingCapacity(), is(3L));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotResizeWithClaimedButUnpublishedSequences() throws Exception
+    {
+        ringBuffer.next();
+        ringBuffer.resize(8, 1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotResizeAboveMaxBufferSize() throws Exception
+    {
+        ringBuffer.resize(32, 1, TimeUnit.SECONDS);
+    }
+}
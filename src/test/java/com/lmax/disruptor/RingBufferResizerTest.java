@@ -0,0 +1,153 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Test;
+
+import com.lmax.disruptor.support.StubEvent;
+
+public class RingBufferResizerTest
+{
+    private final ResizableRingBuffer<StubEvent> ringBuffer =
+        ResizableRingBuffer.create(StubEvent.EVENT_FACTORY, 8, 16, new BlockingWaitStrategy());
+    private final Sequence consumer = new Sequence();
+    private final RingBufferResizer<StubEvent> resizer =
+        new RingBufferResizer<StubEvent>(ringBuffer, 4, 16, 2, 3, 1, TimeUnit.SECONDS);
+
+    {
+        ringBuffer.addGatingSequences(consumer);
+    }
+
+    @Test
+    public void shouldGrowAfterSustainedLowRemainingCapacity() throws Exception
+    {
+        publish(7);
+
+        assertFalse(resizer.check());
+        consumer.set(ringBuffer.getCursor());
+        consumer.set(ringBuffer.getCursor());
+        publish(7);
+        final Thread drainer = catchUpLater();
+        assertTrue(resizer.check());
+        drainer.join();
+
+        assertThat(ringBuffer.getBufferSize(), is(16));
+    }
+
+    @Test
+    public void shouldNotGrowAboveMaximum() throws Exception
+    {
+        for (int i = 0; i < 2; i++)
+        {
+            publish(ringBuffer.getBufferSize() - 1);
+            Thread drainer = catchUpLater();
+            resizer.check();
+            resizer.check();
+            drainer.join();
+        }
+        assertThat(ringBuffer.getBufferSize(), is(16));
+
+        publish(15);
+        consumer.set(ringBuffer.getCursor() - 1);
+        assertFalse(resizer.check());
+        assertFalse(resizer.check());
+        assertThat(ringBuffer.getBufferSize(), is(16));
+    }
+
+    @Test
+    public void shouldShrinkWhenIdle() throws Exception
+    {
+        assertFalse(resizer.check());
+        assertFalse(resizer.check());
+        assertTrue(resizer.check());
+        assertThat(ringBuffer.getBufferSize(), is(4));
+
+        for (int i = 0; i < 6; i++)
+        {
+            assertFalse(resizer.check());
+        }
+        assertThat(ringBuffer.getBufferSize(), is(4));
+    }
+
+    @Test
+    public void shouldResetCountersWhenLoadChanges() throws Exception
+    {
+        assertFalse(resizer.check());
+        assertFalse(resizer.check());
+        publish(4);
+        assertFalse(resizer.check());
+        consumer.set(ringBuffer.getCursor());
+        assertFalse(resizer.check());
+        assertFalse(resizer.check());
+        assertThat(ringBuffer.getBufferSize(), is(8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectRingBufferOutsideBounds() throws Exception
+    {
+        new RingBufferResizer<StubEvent>(ringBuffer, 16, 32, 1, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMaximumAboveRingBufferMaximum() throws Exception
+    {
+        new RingBufferResizer<StubEvent>(ringBuffer, 4, 32, 1, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldGiveUpGrowingWhenConsumersDoNotCatchUpInTime() throws Exception
+    {
+        final RingBufferResizer<StubEvent> impatientResizer =
+            new RingBufferResizer<StubEvent>(ringBuffer, 4, 16, 1, 1, 10, TimeUnit.MILLISECONDS);
+        publish(7);
+
+        assertFalse(impatientResizer.check());
+        assertThat(ringBuffer.getBufferSize(), is(8));
+        assertThat(ringBuffer.remainingCapacity(), is(1L));
+    }
+
+    private void publish(final int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+    }
+
+    private Thread catchUpLater()
+    {
+        final long cursor = ringBuffer.getCursor();
+        final Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+                consumer.set(cursor);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -18,6 +18,7 @@ package com.lmax.disruptor;
 import static com.lmax.disruptor.RingBuffer.createMultiProducer;
 import static com.lmax.disruptor.RingBufferEventMatcher.ringBufferWithEvents;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -25,7 +26,10 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
@@ -33,9 +37,11 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import com.lmax.disruptor.dsl.ProducerType;
 import com.lmax.disruptor.support.StubEvent;
 import com.lmax.disruptor.support.TestWaiter;
 import com.lmax.disruptor.util.DaemonThreadFactory;
@@ -1310,6 +1316,106 @@ public class RingBufferTest
         assertThat(ringBuffer.getMinimumGatingSequence(), is(7L));
     }
 
+    @Test
+    public void shouldOnlyTryAddGatingSequencesNotBehindSlowestConsumer() throws Exception
+    {
+        final RingBuffer<StubEvent> ringBuffer = RingBuffer.createMultiProducer(StubEvent.EVENT_FACTORY, 16);
+        final Sequence slowest = new Sequence();
+        ringBuffer.addGatingSequences(slowest);
+
+        for (int i = 0; i < 10; i++)
+        {
+            ringBuffer.publish(ringBuffer.next());
+        }
+        slowest.set(4);
+
+        final Sequence behind = new Sequence(3);
+        assertFalse(ringBuffer.tryAddGatingSequences(behind));
+        assertThat(ringBuffer.getMinimumGatingSequence(), is(4L));
+
+        final Sequence replaying = new Sequence(4);
+        assertTrue(ringBuffer.tryAddGatingSequences(replaying));
+        assertThat(replaying.get(), is(4L));
+        assertTrue(ringBuffer.removeGatingSequence(slowest));
+        assertThat(ringBuffer.getMinimumGatingSequence(), is(4L));
+    }
+
+    @Test
+    public void shouldPreallocateEventsInParallel() throws Exception
+    {
+        final int bufferSize = 1 << 15;
+        final RingBuffer<StubEvent> ringBuffer = RingBuffer.create(
+            ProducerType.SINGLE, StubEvent.EVENT_FACTORY, bufferSize, new BlockingWaitStrategy(), PreallocationMode.PARALLEL);
+
+        final Set<StubEvent> events = Collections.newSetFromMap(new IdentityHashMap<StubEvent, Boolean>());
+        for (int i = 0; i < bufferSize; i++)
+        {
+            final StubEvent event = ringBuffer.get(i);
+            assertThat(event, is(notNullValue()));
+            events.add(event);
+        }
+        assertThat(events.size(), is(bufferSize));
+    }
+
+    @Test
+    public void shouldCreateEventsLazilyOnFirstTouch() throws Exception
+    {
+        final AtomicInteger created = new AtomicInteger();
+        final RingBuffer<StubEvent> ringBuffer = RingBuffer.create(
+            ProducerType.MULTI,
+            new EventFactory<StubEvent>()
+            {
+                @Override
+                public StubEvent newInstance()
+                {
+                    return new StubEvent(created.incrementAndGet());
+                }
+            },
+            8, new BlockingWaitStrategy(), PreallocationMode.LAZY);
+        assertThat(created.get(), is(0));
+
+        ringBuffer.publishEvent(StubEvent.TRANSLATOR, 7, "first");
+
+        assertThat(created.get(), is(1));
+        assertTrue(ringBuffer.get(0) == ringBuffer.get(8));
+        assertThat(ringBuffer.get(0).getTestString(), is("first"));
+        assertThat(created.get(), is(1));
+    }
+
+    @Test
+    public void shouldPublishValuesByReference() throws Exception
+    {
+        final RingBuffer<StubEvent> ringBuffer =
+            RingBuffer.createValueRing(ProducerType.MULTI, 4, new BlockingWaitStrategy());
+        final Sequence consumer = new Sequence();
+        ringBuffer.addGatingSequences(consumer);
+        assertThat(ringBuffer.get(0), is(nullValue()));
+
+        final StubEvent[] values = new StubEvent[4];
+        for (int i = 0; i < 4; i++)
+        {
+            values[i] = new StubEvent(i);
+            assertTrue(ringBuffer.tryPublishValue(values[i]));
+        }
+        assertFalse(ringBuffer.tryPublishValue(new StubEvent(4)));
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(ringBuffer.get(i) == values[i]);
+        }
+
+        ringBuffer.clearValue(0);
+        assertThat(ringBuffer.get(0), is(nullValue()));
+        assertTrue(ringBuffer.get(1) == values[1]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotPublishValueToPreallocatedRingBuffer() throws Exception
+    {
+        final RingBuffer<StubEvent> ringBuffer = RingBuffer.createSingleProducer(StubEvent.EVENT_FACTORY, 4);
+        ringBuffer.publishValue(new StubEvent(0));
+    }
+
     @Test
     public void shouldHandleResetToAndNotWrapUnnecessarilySingleProducer() throws Exception
     {
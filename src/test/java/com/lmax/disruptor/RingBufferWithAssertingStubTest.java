@@ -143,6 +143,12 @@ public class RingBufferWithAssertingStubTest
 
         }
 
+        @Override
+        public boolean tryAddGatingSequences(Sequence... gatingSequences)
+        {
+            return false;
+        }
+
         @Override
         public boolean removeGatingSequence(Sequence sequence)
         {
@@ -172,5 +178,11 @@ public class RingBufferWithAssertingStubTest
         {
             return null;
         }
+
+        @Override
+        public <T> EventPoller<T> newLossyPoller(DataProvider<T> provider, Sequence... gatingSequences)
+        {
+            return null;
+        }
     }
 }
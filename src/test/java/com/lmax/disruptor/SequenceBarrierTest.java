@@ -24,7 +24,11 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static com.lmax.disruptor.RingBuffer.createMultiProducer;
+import static com.lmax.disruptor.RingBuffer.createSingleProducer;
+import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 
@@ -184,6 +188,70 @@ public final class SequenceBarrierTest
         assertFalse(sequenceBarrier.isAlerted());
     }
 
+    @Test
+    public void shouldSelectDependentSequenceByNumberOfDependencies()
+    {
+        final Sequence cursor = new Sequence();
+        final Sequence sequence1 = new Sequence(7);
+        final Sequence sequence2 = new Sequence(5);
+        final Sequence sequence3 = new Sequence(9);
+
+        assertSame(cursor, AbstractSequenceBarrier.dependentSequenceFor(cursor, new Sequence[0]));
+        assertSame(sequence1, AbstractSequenceBarrier.dependentSequenceFor(cursor, new Sequence[]{sequence1}));
+
+        final Sequence pair = AbstractSequenceBarrier.dependentSequenceFor(cursor, new Sequence[]{sequence1, sequence2});
+        assertTrue(pair instanceof TwoSequenceGroup);
+        assertThat(pair.get(), is(5L));
+        sequence2.set(8);
+        assertThat(pair.get(), is(7L));
+
+        final Sequence group =
+            AbstractSequenceBarrier.dependentSequenceFor(cursor, new Sequence[]{sequence1, sequence2, sequence3});
+        assertTrue(group instanceof FixedSequenceGroup);
+        assertThat(group.get(), is(7L));
+    }
+
+    @Test
+    public void shouldUseSingleProducerBarrierForSingleProducer() throws Exception
+    {
+        final RingBuffer<StubEvent> singleProducerRingBuffer = createSingleProducer(StubEvent.EVENT_FACTORY, 64);
+        for (int i = 0; i < 10; i++)
+        {
+            singleProducerRingBuffer.publish(singleProducerRingBuffer.next());
+        }
+
+        final SequenceBarrier noDependencies = singleProducerRingBuffer.newBarrier();
+        assertTrue(noDependencies instanceof SingleProducerSequenceBarrier);
+        assertThat(noDependencies.waitFor(5), is(9L));
+
+        final SequenceBarrier twoDependencies = singleProducerRingBuffer.newBarrier(new Sequence(9), new Sequence(6));
+        assertThat(twoDependencies.waitFor(6), is(6L));
+        assertThat(twoDependencies.getCursor(), is(6L));
+
+        assertTrue(ringBuffer.newBarrier() instanceof ProcessingSequenceBarrier);
+    }
+
+    @Test
+    public void shouldNotReadDependentSequencesWhenCachedMinimumIsSufficient() throws Exception
+    {
+        fillRingBuffer(10);
+
+        final CountingSequence sequence1 = new CountingSequence(8);
+        final CountingSequence sequence2 = new CountingSequence(9);
+        final CountingSequence sequence3 = new CountingSequence(9);
+        final SequenceBarrier sequenceBarrier = ringBuffer.newBarrier(sequence1, sequence2, sequence3);
+
+        assertThat(sequenceBarrier.waitFor(8), is(8L));
+        final int reads = sequence1.reads;
+
+        assertThat(sequenceBarrier.waitFor(5), is(8L));
+        assertThat(sequence1.reads, is(reads));
+
+        sequence1.set(9);
+        assertThat(sequenceBarrier.waitFor(9), is(9L));
+        assertTrue(sequence1.reads > reads);
+    }
+
     private void fillRingBuffer(long expectedNumberMessages) throws InterruptedException
     {
         for (long i = 0; i < expectedNumberMessages; i++)
@@ -212,4 +280,21 @@ public final class SequenceBarrierTest
             return super.get();
         }
     }
+
+    private static final class CountingSequence extends Sequence
+    {
+        private int reads;
+
+        private CountingSequence(final long initialValue)
+        {
+            super(initialValue);
+        }
+
+        @Override
+        public long get()
+        {
+            reads++;
+            return super.get();
+        }
+    }
 }
@@ -25,16 +25,19 @@ public class SequencerTest {
 	private final Sequencer sequencer;
 	private final Sequence gatingSequence = new Sequence();
 	private final ProducerType producerType;
+	private final boolean fetchAndAdd;
 
-	public SequencerTest(ProducerType producerType, WaitStrategy waitStrategy) {
+	public SequencerTest(ProducerType producerType, WaitStrategy waitStrategy, boolean fetchAndAdd) {
 		this.producerType = producerType;
+		this.fetchAndAdd = fetchAndAdd;
 		this.sequencer = newProducer(producerType, BUFFER_SIZE, waitStrategy);
 	}
 
 	@Parameters
 	public static Collection<Object[]> generateData() {
-		Object[][] allocators = { { ProducerType.SINGLE, new BlockingWaitStrategy() },
-				{ ProducerType.MULTI, new BlockingWaitStrategy() }, };
+		Object[][] allocators = { { ProducerType.SINGLE, new BlockingWaitStrategy(), false },
+				{ ProducerType.MULTI, new BlockingWaitStrategy(), false },
+				{ ProducerType.MULTI, new BlockingWaitStrategy(), true }, };
 		return Arrays.asList(allocators);
 	}
 
@@ -96,7 +99,12 @@ public class SequencerTest {
 		});
 
 		waitingLatch.await();
-		assertThat(sequencer.getCursor(), is(expectedFullSequence));
+		if (fetchAndAdd) {
+			// fetch-and-add claims before waiting for capacity, so only publication is held up
+			assertFalse(sequencer.isAvailable(expectedFullSequence + 1L));
+		} else {
+			assertThat(sequencer.getCursor(), is(expectedFullSequence));
+		}
 
 		gatingSequence.set(Sequencer.INITIAL_CURSOR_VALUE + 1L);
 
@@ -233,7 +241,9 @@ public class SequencerTest {
 		case SINGLE:
 			return new SingleProducerSequencer(bufferSize, waitStrategy);
 		case MULTI:
-			return new MultiProducerSequencer(bufferSize, waitStrategy);
+			return fetchAndAdd
+				? new FetchAndAddMultiProducerSequencer(bufferSize, waitStrategy)
+				: new MultiProducerSequencer(bufferSize, waitStrategy);
 		default:
 			throw new IllegalStateException(producerType.toString());
 		}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.support.StubEvent;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+
+public class ShardedRingBufferTest
+{
+    private static final int EVENTS_PER_PRODUCER = 10000;
+
+    private static final EventTranslatorOneArg<StubEvent, Integer> VALUE_TRANSLATOR =
+        new EventTranslatorOneArg<StubEvent, Integer>()
+        {
+            @Override
+            public void translateTo(final StubEvent event, final long sequence, final Integer value)
+            {
+                event.setValue(value.intValue());
+            }
+        };
+
+    private static final LaneMergingEventProcessor.OrderingKey<StubEvent> VALUE_KEY =
+        new LaneMergingEventProcessor.OrderingKey<StubEvent>()
+        {
+            @Override
+            public long keyOf(final StubEvent event)
+            {
+                return event.getValue();
+            }
+        };
+
+    @Test
+    public void shouldAssignOneLanePerProducerThread() throws Exception
+    {
+        final ShardedRingBuffer<StubEvent> sharded = new ShardedRingBuffer<StubEvent>(StubEvent.EVENT_FACTORY, 2, 16);
+
+        final RingBuffer<StubEvent> lane = sharded.registerProducer();
+        assertTrue(lane == sharded.registerProducer());
+
+        final RingBuffer<?>[] otherLane = new RingBuffer<?>[1];
+        final Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                otherLane[0] = sharded.registerProducer();
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertTrue(lane != otherLane[0]);
+        assertThat(sharded.getRegisteredProducerCount(), is(2));
+    }
+
+    @Test
+    public void shouldReuseLaneReleasedByProducer() throws Exception
+    {
+        final ShardedRingBuffer<StubEvent> sharded = new ShardedRingBuffer<StubEvent>(StubEvent.EVENT_FACTORY, 1, 16);
+
+        final RingBuffer<?>[] releasedLane = new RingBuffer<?>[1];
+        final Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                releasedLane[0] = sharded.registerProducer();
+                sharded.releaseProducer();
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(sharded.getRegisteredProducerCount(), is(0));
+        assertTrue(releasedLane[0] == sharded.registerProducer());
+        assertThat(sharded.getRegisteredProducerCount(), is(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectMoreProducersThanLanes() throws Exception
+    {
+        final ShardedRingBuffer<StubEvent> sharded = new ShardedRingBuffer<StubEvent>(StubEvent.EVENT_FACTORY, 1, 16);
+
+        final Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sharded.registerProducer();
+            }
+        });
+        thread.start();
+        thread.join();
+
+        sharded.registerProducer();
+    }
+
+    @Test
+    public void shouldMergeAllLanesPreservingPerLaneOrder() throws Exception
+    {
+        final int producerCount = 3;
+        final ShardedRingBuffer<StubEvent> sharded =
+            new ShardedRingBuffer<StubEvent>(StubEvent.EVENT_FACTORY, producerCount, 64);
+        final RecordingHandler handler = new RecordingHandler(producerCount * EVENTS_PER_PRODUCER);
+        final LaneMergingEventProcessor<StubEvent> processor = sharded.newMergingProcessor(handler);
+
+        final Thread mergeThread = new Thread(processor);
+        mergeThread.start();
+
+        final CyclicBarrier startBarrier = new CyclicBarrier(producerCount);
+        final Thread[] producers = new Thread[producerCount];
+        for (int p = 0; p < producerCount; p++)
+        {
+            final int producerId = p;
+            producers[p] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    final RingBuffer<StubEvent> lane = sharded.registerProducer();
+                    try
+                    {
+                        startBarrier.await();
+                    }
+                    catch (final Exception e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+
+                    for (int i = 0; i < EVENTS_PER_PRODUCER; i++)
+                    {
+                        lane.publishEvent(VALUE_TRANSLATOR, producerId * EVENTS_PER_PRODUCER + i);
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        assertTrue(handler.latch.await(10, TimeUnit.SECONDS));
+        processor.halt();
+        mergeThread.join();
+        for (final Thread producer : producers)
+        {
+            producer.join();
+        }
+
+        final int[] lastSeen = new int[producerCount];
+        Arrays.fill(lastSeen, -1);
+        for (final int value : handler.values)
+        {
+            final int producerId = value / EVENTS_PER_PRODUCER;
+            final int index = value % EVENTS_PER_PRODUCER;
+            assertThat(index, is(lastSeen[producerId] + 1));
+            lastSeen[producerId] = index;
+        }
+        assertThat(handler.sequences.get(handler.sequences.size() - 1), is((long) (producerCount * EVENTS_PER_PRODUCER - 1)));
+        assertThat(processor.getSequence().get(), is((long) (producerCount * EVENTS_PER_PRODUCER - 1)));
+        assertThat(sharded.getBacklog(), is(0L));
+    }
+
+    @Test
+    public void shouldMergeByOrderingKeyAcrossLanes() throws Exception
+    {
+        final ShardedRingBuffer<StubEvent> sharded = new ShardedRingBuffer<StubEvent>(StubEvent.EVENT_FACTORY, 3, 16);
+        final RecordingHandler handler = new RecordingHandler(9);
+        final LaneMergingEventProcessor<StubEvent> processor = sharded.newMergingProcessor(handler, VALUE_KEY);
+
+        final int[][] keysByLane = {{0, 4, 5}, {1, 2, 8}, {3, 6, 7}};
+        for (int lane = 0; lane < keysByLane.length; lane++)
+        {
+            for (final int key : keysByLane[lane])
+            {
+                sharded.getLane(lane).publishEvent(VALUE_TRANSLATOR, key);
+            }
+        }
+
+        final Thread mergeThread = new Thread(processor);
+        mergeThread.start();
+        assertTrue(handler.latch.await(5, TimeUnit.SECONDS));
+        processor.halt();
+        mergeThread.join();
+
+        assertThat(handler.values, is(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8)));
+        assertThat(handler.sequences, is(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L)));
+        // watermarks are 5 (lowest latest key), then 7, then 8
+        assertThat(handler.batchEnds, is(Arrays.asList(5L, 7L, 8L)));
+    }
+
+    @Test
+    public void shouldReportHandlerExceptionsAndContinueMerging() throws Exception
+    {
+        final ShardedRingBuffer<StubEvent> sharded = new ShardedRingBuffer<StubEvent>(StubEvent.EVENT_FACTORY, 1, 16);
+        final RecordingHandler handler = new RecordingHandler(2)
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                if (event.getValue() == 1)
+                {
+                    throw new IllegalStateException();
+                }
+                super.onEvent(event, sequence, endOfBatch);
+            }
+        };
+        final List<Long> failedSequences = Collections.synchronizedList(new ArrayList<Long>());
+        final LaneMergingEventProcessor<StubEvent> processor = sharded.newMergingProcessor(handler);
+        processor.setExceptionHandler(new ExceptionHandler<Object>()
+        {
+            @Override
+            public void handleEventException(final Throwable ex, final long sequence, final Object event)
+            {
+                failedSequences.add(sequence);
+            }
+
+            @Override
+            public void handleOnStartException(final Throwable ex)
+            {
+            }
+
+            @Override
+            public void handleOnShutdownException(final Throwable ex)
+            {
+            }
+        });
+
+        for (int i = 0; i < 3; i++)
+        {
+            sharded.getLane(0).publishEvent(VALUE_TRANSLATOR, i);
+        }
+
+        final Thread mergeThread = new Thread(processor);
+        mergeThread.start();
+        assertTrue(handler.latch.await(5, TimeUnit.SECONDS));
+        processor.halt();
+        mergeThread.join();
+
+        assertThat(handler.values, is(Arrays.asList(0, 2)));
+        assertThat(failedSequences, is(Collections.singletonList(1L)));
+    }
+
+    @Test
+    public void shouldMergeLanesIntoDisruptor() throws Exception
+    {
+        final ShardedRingBuffer<StubEvent> sharded = new ShardedRingBuffer<StubEvent>(StubEvent.EVENT_FACTORY, 2, 16);
+        final Disruptor<StubEvent> disruptor =
+            new Disruptor<StubEvent>(StubEvent.EVENT_FACTORY, 16, DaemonThreadFactory.INSTANCE);
+        final RecordingHandler handler = new RecordingHandler(4);
+
+        disruptor.mergeFrom(
+            sharded,
+            new EventTranslatorOneArg<StubEvent, StubEvent>()
+            {
+                @Override
+                public void translateTo(final StubEvent event, final long sequence, final StubEvent laneEvent)
+                {
+                    event.copy(laneEvent);
+                }
+            },
+            VALUE_KEY);
+        disruptor.handleEventsWith(handler);
+        disruptor.start();
+
+        sharded.getLane(0).publishEvent(VALUE_TRANSLATOR, 0);
+        sharded.getLane(1).publishEvent(VALUE_TRANSLATOR, 1);
+        sharded.getLane(0).publishEvent(VALUE_TRANSLATOR, 2);
+        sharded.getLane(1).publishEvent(VALUE_TRANSLATOR, 3);
+
+        assertTrue(handler.latch.await(5, TimeUnit.SECONDS));
+        disruptor.shutdown(5, TimeUnit.SECONDS);
+
+        assertThat(handler.values.size(), is(4));
+        assertThat(disruptor.getRingBuffer().getCursor(), is(3L));
+    }
+
+    private static class RecordingHandler implements EventHandler<StubEvent>
+    {
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Long> sequences = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Long> batchEnds = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch latch;
+
+        RecordingHandler(final int expected)
+        {
+            latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+        {
+            values.add(event.getValue());
+            sequences.add(sequence);
+            if (endOfBatch)
+            {
+                batchEnds.add(sequence);
+            }
+            latch.countDown();
+        }
+    }
+}
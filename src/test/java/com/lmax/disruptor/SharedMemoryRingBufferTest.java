@@ -0,0 +1,238 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.lmax.disruptor.dsl.ProducerType;
+
+public class SharedMemoryRingBufferTest
+{
+    private File file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        file = File.createTempFile("shared-ring", ".dat");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void shouldShareCursorSlotsAndConsumerSequencesBetweenMappings() throws Exception
+    {
+        final SharedMemoryRingBuffer producer =
+            SharedMemoryRingBuffer.create(file, ProducerType.SINGLE, 8, 12, 2, new YieldingWaitStrategy());
+        final SharedMemoryRingBuffer consumer = SharedMemoryRingBuffer.open(file, new YieldingWaitStrategy());
+
+        assertThat(consumer.getBufferSize(), is(8));
+        assertThat(consumer.getSlotSize(), is(16));
+        assertThat(consumer.getConsumerCount(), is(2));
+        assertThat(consumer.getProducerType(), is(ProducerType.SINGLE));
+        assertThat(consumer.getCursor(), is(-1L));
+
+        final long sequence = producer.next();
+        producer.get(sequence).putLong(0, 42L);
+        producer.publish(sequence);
+
+        assertThat(consumer.getCursor(), is(0L));
+        assertThat(consumer.get(0).getLong(0), is(42L));
+
+        consumer.getConsumerSequence(1).set(0L);
+        assertThat(producer.getConsumerSequence(1).get(), is(0L));
+        assertThat(consumer.getConsumerSequence(1).getAndAdd(2L), is(0L));
+        assertThat(producer.getConsumerSequence(1).get(), is(2L));
+        assertTrue(producer.getConsumerSequence(1).compareAndSet(2L, 0L));
+        assertThat(producer.getConsumerSequence(0).get(), is(-1L));
+    }
+
+    @Test
+    public void shouldGateProducerOnConsumerSequencesInAnotherMapping() throws Exception
+    {
+        final SharedMemoryRingBuffer producer =
+            SharedMemoryRingBuffer.create(file, ProducerType.MULTI, 4, 8, 1, new YieldingWaitStrategy());
+        final SharedMemoryRingBuffer consumer = SharedMemoryRingBuffer.open(file, new YieldingWaitStrategy());
+
+        for (int i = 0; i < 4; i++)
+        {
+            producer.publish(producer.tryNext());
+        }
+
+        try
+        {
+            producer.tryNext();
+            throw new AssertionError("Expected InsufficientCapacityException");
+        }
+        catch (InsufficientCapacityException e)
+        {
+            // 预期的异常
+        }
+
+        consumer.getConsumerSequence(0).set(0L);
+        assertThat(producer.tryNext(), is(4L));
+    }
+
+    @Test
+    public void shouldResumeProducerFromSharedCursor() throws Exception
+    {
+        final SharedMemoryRingBuffer first =
+            SharedMemoryRingBuffer.create(file, ProducerType.SINGLE, 8, 8, 1, new YieldingWaitStrategy());
+        first.publish(first.next(3));
+
+        final SharedMemoryRingBuffer second = SharedMemoryRingBuffer.open(file, new YieldingWaitStrategy());
+        assertThat(second.next(), is(3L));
+        assertThat(second.getConsumerSequence(0).get(), is(-1L));
+    }
+
+    @Test
+    public void shouldNotMoveStoredConsumerSequencesWhenOpened() throws Exception
+    {
+        final SharedMemoryRingBuffer first =
+            SharedMemoryRingBuffer.create(file, ProducerType.MULTI, 8, 8, 2, new YieldingWaitStrategy());
+        first.publish(0, first.next(6));
+        first.getConsumerSequence(1).set(2L);
+
+        final SharedMemoryRingBuffer second = SharedMemoryRingBuffer.open(file, new YieldingWaitStrategy());
+
+        assertThat(first.getConsumerSequence(0).get(), is(-1L));
+        assertThat(first.getConsumerSequence(1).get(), is(2L));
+        assertThat(second.getConsumerSequence(0).get(), is(-1L));
+        assertThat(second.getConsumerSequence(1).get(), is(2L));
+        // consumer 0 has not read anything, so only 8 - 6 slots are free
+        assertThat(second.tryNext(), is(6L));
+        assertThat(second.tryNext(), is(7L));
+        try
+        {
+            second.tryNext();
+            fail("producer must not overwrite slots consumer 0 has not read");
+        }
+        catch (final InsufficientCapacityException e)
+        {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectFileThatIsNotInitialised() throws Exception
+    {
+        SharedMemoryRingBuffer.open(file, new YieldingWaitStrategy());
+    }
+
+    @Test
+    public void shouldReceiveEventsPublishedByAnotherProcess() throws Exception
+    {
+        final int count = 10000;
+        final SharedMemoryRingBuffer ringBuffer =
+            SharedMemoryRingBuffer.create(file, ProducerType.MULTI, 64, 8, 1, new YieldingWaitStrategy());
+        final SummingHandler handler = new SummingHandler(count);
+        final BatchEventProcessor<ByteBuffer> processor =
+            ringBuffer.newEventProcessor(0, ringBuffer.newBarrier(), handler);
+        final Thread thread = new Thread(processor);
+        thread.start();
+
+        final Process child = startChild(ChildProducer.class, file.getPath(), String.valueOf(count));
+        try
+        {
+            assertThat(child.waitFor(), is(0));
+            assertTrue(handler.latch.await(10, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            child.destroy();
+            processor.halt();
+            thread.join();
+        }
+
+        assertThat(handler.sum, is((long) count * (count - 1) / 2));
+        assertThat(handler.outOfOrder, is(false));
+        assertThat(ringBuffer.getConsumerSequence(0).get(), is((long) count - 1));
+    }
+
+    private static Process startChild(final Class<?> mainClass, final String... args) throws IOException
+    {
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final String[] command = new String[args.length + 4];
+        command[0] = java;
+        command[1] = "-cp";
+        command[2] = System.getProperty("java.class.path");
+        command[3] = mainClass.getName();
+        System.arraycopy(args, 0, command, 4, args.length);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * 在子进程中打开共享文件并发布0到count-1。
+     */
+    public static final class ChildProducer
+    {
+        public static void main(final String[] args) throws Exception
+        {
+            final SharedMemoryRingBuffer ringBuffer =
+                SharedMemoryRingBuffer.open(new File(args[0]), new YieldingWaitStrategy());
+            final int count = Integer.parseInt(args[1]);
+            for (long i = 0; i < count; i++)
+            {
+                final long sequence = ringBuffer.next();
+                ringBuffer.get(sequence).putLong(0, i);
+                ringBuffer.publish(sequence);
+            }
+        }
+    }
+
+    private static final class SummingHandler implements EventHandler<ByteBuffer>
+    {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final int count;
+        private long sum;
+        private long expected;
+        private boolean outOfOrder;
+
+        SummingHandler(final int count)
+        {
+            this.count = count;
+        }
+
+        @Override
+        public void onEvent(final ByteBuffer event, final long sequence, final boolean endOfBatch)
+        {
+            final long value = event.getLong(0);
+            outOfOrder |= value != expected++;
+            sum += value;
+            if (sequence == count - 1)
+            {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -127,4 +127,28 @@ public class ConsumerRepositoryTest
         assertTrue("Included eventProcessor 1", seen1);
         assertTrue("Included eventProcessor 2", seen2);
     }
+
+    @Test
+    public void shouldRestoreEndOfChainWhenLastDependentIsRemoved() throws Exception
+    {
+        consumerRepository.add(eventProcessor1, handler1, barrier1);
+        consumerRepository.add(eventProcessor2, handler2, barrier2);
+
+        final Sequence[] barrierSequences = {eventProcessor1.getSequence()};
+        consumerRepository.unMarkEventProcessorsAsEndOfChain(barrierSequences);
+        consumerRepository.recordBarrierSequences(new Sequence[]{eventProcessor2.getSequence()}, barrierSequences);
+
+        final ConsumerInfo upstream = consumerRepository.getConsumerInfoFor(handler1);
+        final ConsumerInfo downstream = consumerRepository.getConsumerInfoFor(handler2);
+        assertTrue(consumerRepository.hasDependents(upstream));
+        assertFalse(consumerRepository.hasDependents(downstream));
+
+        final Sequence[] endOfChainSequences = consumerRepository.remove(downstream);
+
+        assertThat(endOfChainSequences.length, equalTo(1));
+        assertThat(endOfChainSequences[0], sameInstance(eventProcessor1.getSequence()));
+        assertTrue(upstream.isEndOfChain());
+        assertThat(consumerRepository.getBarrierFor(handler2), is(nullValue()));
+        assertFalse(consumerRepository.iterator().next() != upstream);
+    }
 }
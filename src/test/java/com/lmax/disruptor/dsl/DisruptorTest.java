@@ -17,8 +17,10 @@ package com.lmax.disruptor.dsl;
 
 import com.lmax.disruptor.BatchEventProcessor;
 import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.CooperativeScheduler;
 import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.EventProcessor;
+import com.lmax.disruptor.EventResetter;
 import com.lmax.disruptor.EventTranslator;
 import com.lmax.disruptor.EventTranslatorOneArg;
 import com.lmax.disruptor.ExceptionHandler;
@@ -26,27 +28,38 @@ import com.lmax.disruptor.FatalExceptionHandler;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.Sequence;
 import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.SequenceReleaseAware;
+import com.lmax.disruptor.SequenceReleaser;
 import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.WorkerPool;
 import com.lmax.disruptor.dsl.stubs.DelayedEventHandler;
 import com.lmax.disruptor.dsl.stubs.EventHandlerStub;
 import com.lmax.disruptor.dsl.stubs.EvilEqualsEventHandler;
 import com.lmax.disruptor.dsl.stubs.ExceptionThrowingEventHandler;
+import com.lmax.disruptor.dsl.stubs.SequenceRecordingEventHandler;
 import com.lmax.disruptor.dsl.stubs.SleepingEventHandler;
+import com.lmax.disruptor.dsl.stubs.SnapshotEventHandler;
 import com.lmax.disruptor.dsl.stubs.StubExceptionHandler;
 import com.lmax.disruptor.dsl.stubs.StubPublisher;
 import com.lmax.disruptor.dsl.stubs.StubThreadFactory;
 import com.lmax.disruptor.dsl.stubs.TestWorkHandler;
+import com.lmax.disruptor.support.StubEvent;
 import com.lmax.disruptor.support.TestEvent;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static java.lang.Thread.yield;
@@ -54,7 +67,9 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -136,6 +151,533 @@ public class DisruptorTest
     }
 
 
+    @Test
+    public void shouldResumeFromSnapshotSequence() throws Exception
+    {
+        final SnapshotEventHandler<TestEvent> handler1 = new SnapshotEventHandler<TestEvent>(9L);
+        final SnapshotEventHandler<TestEvent> handler2 = new SnapshotEventHandler<TestEvent>(9L);
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        disruptor.handleEventsWith(handler1).then(handler2).then(new EventHandlerStub<TestEvent>(countDownLatch));
+
+        ringBuffer = disruptor.startFromSnapshot();
+        publishEvent();
+
+        assertTrue(countDownLatch.await(TIMEOUT_IN_SECONDS, SECONDS));
+        assertThat(disruptor.getCursor(), is(10L));
+        assertThat(handler1.getLastSequence(), is(10L));
+        assertThat(handler2.getLastSequence(), is(10L));
+    }
+
+    @Test
+    public void shouldTakeSnapshotsAtTheSameSequence() throws Exception
+    {
+        final SnapshotEventHandler<TestEvent> handler1 = new SnapshotEventHandler<TestEvent>(-1L);
+        final SnapshotEventHandler<TestEvent> handler2 = new SnapshotEventHandler<TestEvent>(-1L);
+        disruptor.handleEventsWith(handler1, handler2);
+
+        ringBuffer = disruptor.startFromSnapshot();
+        publishEvent();
+        publishEvent();
+
+        final long snapshotSequence = disruptor.snapshot();
+        publishEvent();
+        publishEvent();
+
+        assertThat(snapshotSequence, is(2L));
+        assertTrue(handler1.awaitSnapshot(TIMEOUT_IN_SECONDS, SECONDS));
+        assertTrue(handler2.awaitSnapshot(TIMEOUT_IN_SECONDS, SECONDS));
+        assertThat(handler1.getSnapshotSequence(), is(2L));
+        assertThat(handler2.getSnapshotSequence(), is(2L));
+    }
+
+    @Test
+    public void shouldNotCreateBarrierForHandlerRunOnCooperativeScheduler() throws Exception
+    {
+        final CooperativeScheduler scheduler = new CooperativeScheduler(1, 8, new StubThreadFactory());
+        final Disruptor<TestEvent> cooperativeDisruptor = new Disruptor<TestEvent>(
+            TestEvent.EVENT_FACTORY, 16, scheduler, ProducerType.SINGLE, new BlockingWaitStrategy());
+        final SequenceRecordingEventHandler<TestEvent> handler = new SequenceRecordingEventHandler<TestEvent>();
+        cooperativeDisruptor.handleEventsWith(handler);
+
+        cooperativeDisruptor.handleExceptionsFor(handler).with(new FatalExceptionHandler());
+
+        assertNull(cooperativeDisruptor.getBarrierFor(handler));
+        scheduler.halt();
+    }
+
+    @Test(timeout = 5000)
+    public void shouldRejectSnapshotForHandlerRunOnCooperativeScheduler() throws Exception
+    {
+        final CooperativeScheduler scheduler = new CooperativeScheduler(1, 8, new StubThreadFactory());
+        final Disruptor<TestEvent> cooperativeDisruptor = new Disruptor<TestEvent>(
+            TestEvent.EVENT_FACTORY, 16, scheduler, ProducerType.SINGLE, new BlockingWaitStrategy());
+        final SnapshotEventHandler<TestEvent> handler = new SnapshotEventHandler<TestEvent>(-1L);
+        cooperativeDisruptor.handleEventsWith(handler);
+        cooperativeDisruptor.start();
+        try
+        {
+            cooperativeDisruptor.snapshot();
+            fail("Should have rejected snapshot for cooperatively scheduled handler");
+        }
+        catch (final IllegalStateException expected)
+        {
+            assertThat(cooperativeDisruptor.getCursor(), is(-1L));
+        }
+        finally
+        {
+            cooperativeDisruptor.halt();
+            scheduler.halt();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectSnapshotsTakenAtDifferentSequences() throws Exception
+    {
+        disruptor.handleEventsWith(new SnapshotEventHandler<TestEvent>(3L), new SnapshotEventHandler<TestEvent>(5L));
+
+        disruptor.startFromSnapshot();
+    }
+
+    @Test
+    public void shouldNotGateProducerOnLossyConsumer() throws Exception
+    {
+        final DelayedEventHandler lossyHandler = createDelayedEventHandler();
+        disruptor.handleEventsLossilyWith(lossyHandler);
+
+        ringBuffer = disruptor.start();
+        lossyHandler.awaitStart();
+
+        final StubPublisher stubPublisher = new StubPublisher(ringBuffer);
+        executor.newThread(stubPublisher).start();
+
+        assertProducerReaches(stubPublisher, 10, false);
+        stubPublisher.halt();
+    }
+
+    @Test
+    public void shouldHandOffValuesByReferenceAndClearThemAfterTheLastStage() throws Exception
+    {
+        disruptor = new Disruptor<TestEvent>(
+            RingBuffer.<TestEvent>createValueRing(ProducerType.SINGLE, 4, new BlockingWaitStrategy()), executor);
+        final SequenceRecordingEventHandler<TestEvent> handler1 = new SequenceRecordingEventHandler<TestEvent>();
+        final List<TestEvent> received = new CopyOnWriteArrayList<TestEvent>();
+        disruptor.handleEventsWith(handler1).then(new EventHandler<TestEvent>()
+        {
+            @Override
+            public void onEvent(final TestEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                received.add(event);
+            }
+        });
+        disruptor.clearValuesAfterProcessing();
+        ringBuffer = disruptor.start();
+
+        final List<TestEvent> published = new ArrayList<TestEvent>();
+        for (int i = 0; i < 10; i++)
+        {
+            final TestEvent value = new TestEvent();
+            published.add(value);
+            disruptor.publishValue(value);
+        }
+
+        while (ringBuffer.getMinimumGatingSequence() < 9L)
+        {
+            yield();
+        }
+
+        assertThat(received, is(published));
+        for (long sequence = 6L; sequence <= 9L; sequence++)
+        {
+            assertNull(ringBuffer.get(sequence));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotAttachHandlerWhenValuesAreCleared() throws Exception
+    {
+        disruptor = new Disruptor<TestEvent>(
+            RingBuffer.<TestEvent>createValueRing(ProducerType.MULTI, 4, new BlockingWaitStrategy()), executor);
+        disruptor.handleEventsWith(new SequenceRecordingEventHandler<TestEvent>());
+        disruptor.clearValuesAfterProcessing();
+        disruptor.start();
+
+        disruptor.attachEventHandlers(new SequenceRecordingEventHandler<TestEvent>());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotClearValuesOfPreallocatedRingBuffer() throws Exception
+    {
+        disruptor.clearValuesAfterProcessing();
+    }
+
+    @Test
+    public void shouldResetEventsOnceEveryTerminalConsumerHasPassed() throws Exception
+    {
+        final Disruptor<StubEvent> stubDisruptor = new Disruptor<StubEvent>(
+            StubEvent.EVENT_FACTORY, 4, executor, ProducerType.SINGLE, new BlockingWaitStrategy());
+        final AtomicLong payloadsSeen = new AtomicLong();
+        final EventHandler<StubEvent> fastHandler = new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                if (event.getTestString() != null)
+                {
+                    payloadsSeen.incrementAndGet();
+                }
+            }
+        };
+        final EventHandler<StubEvent> slowHandler = new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                Thread.sleep(1);
+                if (event.getTestString() != null)
+                {
+                    payloadsSeen.incrementAndGet();
+                }
+            }
+        };
+        stubDisruptor.handleEventsWith(fastHandler, slowHandler);
+        stubDisruptor.clearEventsWith(new EventResetter<StubEvent>()
+        {
+            @Override
+            public void reset(final StubEvent event)
+            {
+                event.setTestString(null);
+            }
+        });
+        final RingBuffer<StubEvent> stubRingBuffer = stubDisruptor.start();
+
+        try
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                stubRingBuffer.publishEvent(StubEvent.TRANSLATOR, i, "payload");
+            }
+
+            while (stubRingBuffer.getMinimumGatingSequence() < 9L)
+            {
+                yield();
+            }
+
+            assertThat(payloadsSeen.get(), is(20L));
+            for (long sequence = 6L; sequence <= 9L; sequence++)
+            {
+                assertNull(stubRingBuffer.get(sequence).getTestString());
+            }
+        }
+        finally
+        {
+            stubDisruptor.halt();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void shouldCommitOrderedWorkerResultsInSequenceOrder() throws Exception
+    {
+        final Disruptor<StubEvent> stubDisruptor = new Disruptor<StubEvent>(
+            StubEvent.EVENT_FACTORY, 8, executor, ProducerType.SINGLE, new BlockingWaitStrategy());
+        final int[] eventsPerWorker = new int[3];
+        final List<WorkHandler<StubEvent>> workers = new ArrayList<WorkHandler<StubEvent>>();
+        for (int i = 0; i < eventsPerWorker.length; i++)
+        {
+            final int workerIndex = i;
+            workers.add(new WorkHandler<StubEvent>()
+            {
+                @Override
+                public void onEvent(final StubEvent event) throws Exception
+                {
+                    eventsPerWorker[workerIndex]++;
+                    event.setTestString("worker-" + workerIndex + ":" + event.getValue());
+                }
+            });
+        }
+        final List<String> committed = new CopyOnWriteArrayList<String>();
+        final CountDownLatch allCommitted = new CountDownLatch(30);
+        final EventHandler<StubEvent> commitHandler = new EventHandler<StubEvent>()
+        {
+            @Override
+            public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+            {
+                committed.add(event.getTestString());
+                allCommitted.countDown();
+            }
+        };
+        stubDisruptor.handleEventsWithOrderedWorkers(workers.get(0), workers.get(1), workers.get(2)).then(commitHandler);
+        final RingBuffer<StubEvent> stubRingBuffer = stubDisruptor.start();
+
+        try
+        {
+            for (int i = 0; i < 30; i++)
+            {
+                stubRingBuffer.publishEvent(StubEvent.TRANSLATOR, i, null);
+            }
+
+            assertTrue(allCommitted.await(4, SECONDS));
+            for (int i = 0; i < 30; i++)
+            {
+                assertThat(committed.get(i), is("worker-" + (i % 3) + ":" + i));
+            }
+            assertThat(eventsPerWorker, is(new int[] {10, 10, 10}));
+        }
+        finally
+        {
+            stubDisruptor.halt();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void shouldRunHandlersOfSeveralDisruptorsOnSharedScheduler() throws Exception
+    {
+        final CooperativeScheduler scheduler = new CooperativeScheduler(1, 8, new StubThreadFactory());
+        final List<Disruptor<StubEvent>> disruptors = new ArrayList<Disruptor<StubEvent>>();
+        final CountDownLatch allProcessed = new CountDownLatch(3);
+        try
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                final Disruptor<StubEvent> cooperativeDisruptor = new Disruptor<StubEvent>(
+                    StubEvent.EVENT_FACTORY, 16, scheduler, ProducerType.SINGLE, new BlockingWaitStrategy());
+                final SequenceRecordingEventHandler<StubEvent> firstStage = new SequenceRecordingEventHandler<StubEvent>();
+                cooperativeDisruptor.handleEventsWith(firstStage).then(new EventHandler<StubEvent>()
+                {
+                    @Override
+                    public void onEvent(final StubEvent event, final long sequence, final boolean endOfBatch) throws Exception
+                    {
+                        if (sequence == 39L)
+                        {
+                            allProcessed.countDown();
+                        }
+                    }
+                });
+                cooperativeDisruptor.start();
+                disruptors.add(cooperativeDisruptor);
+            }
+
+            for (int i = 0; i < 40; i++)
+            {
+                for (final Disruptor<StubEvent> cooperativeDisruptor : disruptors)
+                {
+                    cooperativeDisruptor.getRingBuffer().publishEvent(StubEvent.TRANSLATOR, i, null);
+                }
+            }
+
+            assertTrue(allProcessed.await(4, SECONDS));
+            assertThat(scheduler.getProcessorCount(), is(6));
+        }
+        finally
+        {
+            for (final Disruptor<StubEvent> cooperativeDisruptor : disruptors)
+            {
+                cooperativeDisruptor.halt();
+            }
+            scheduler.halt();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRequireAtLeastOneOrderedWorker() throws Exception
+    {
+        disruptor.handleEventsWithOrderedWorkers();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldOnlyAllowOneClearingStage() throws Exception
+    {
+        disruptor.clearEventsWith(new EventResetter<TestEvent>()
+        {
+            @Override
+            public void reset(final TestEvent event)
+            {
+            }
+        });
+        disruptor.clearEventsWith(new EventResetter<TestEvent>()
+        {
+            @Override
+            public void reset(final TestEvent event)
+            {
+            }
+        });
+    }
+
+    @Test
+    public void shouldAttachHandlerToRunningDisruptorAtCursor() throws Exception
+    {
+        final SequenceRecordingEventHandler<TestEvent> handler1 = new SequenceRecordingEventHandler<TestEvent>();
+        disruptor.handleEventsWith(handler1);
+
+        publishEvent();
+        publishEvent();
+        assertTrue(handler1.awaitSequence(1L, TIMEOUT_IN_SECONDS, SECONDS));
+
+        final SequenceRecordingEventHandler<TestEvent> handler2 = new SequenceRecordingEventHandler<TestEvent>();
+        disruptor.attachEventHandlers(handler2);
+        publishEvent();
+
+        assertTrue(handler2.awaitSequence(2L, TIMEOUT_IN_SECONDS, SECONDS));
+        assertThat(handler2.getSequences(), is(Arrays.asList(2L)));
+    }
+
+    @Test
+    public void shouldAttachHandlerAtChosenSequenceNotBehindSlowestConsumer() throws Exception
+    {
+        final DelayedEventHandler slowHandler = createDelayedEventHandler();
+        disruptor.handleEventsWith(slowHandler);
+
+        publishEvent();
+        publishEvent();
+
+        final SequenceRecordingEventHandler<TestEvent> handler = new SequenceRecordingEventHandler<TestEvent>();
+        disruptor.attachEventHandlers(0L, handler);
+        assertTrue(handler.awaitSequence(1L, TIMEOUT_IN_SECONDS, SECONDS));
+        assertThat(handler.getSequences(), is(Arrays.asList(0L, 1L)));
+
+        slowHandler.processEvent();
+        slowHandler.processEvent();
+        while (disruptor.getSequenceValueFor(slowHandler) < 1L)
+        {
+            yield();
+        }
+
+        try
+        {
+            disruptor.attachEventHandlers(0L, new SequenceRecordingEventHandler<TestEvent>());
+            fail("Should not attach a handler behind the slowest consumer");
+        }
+        catch (final IllegalArgumentException e)
+        {
+            assertThat(ringBuffer.getMinimumGatingSequence(), is(1L));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotAttachHandlerBeforeStart() throws Exception
+    {
+        disruptor.attachEventHandlers(new SequenceRecordingEventHandler<TestEvent>());
+    }
+
+    @Test
+    public void shouldDetachHandlerAfterDrainingPublishedEvents() throws Exception
+    {
+        final SequenceRecordingEventHandler<TestEvent> handler1 = new SequenceRecordingEventHandler<TestEvent>();
+        final SequenceRecordingEventHandler<TestEvent> handler2 = new SequenceRecordingEventHandler<TestEvent>();
+        disruptor.handleEventsWith(handler1).then(handler2);
+
+        publishEvent();
+        publishEvent();
+        publishEvent();
+        disruptor.detachEventHandler(handler2);
+
+        assertThat(handler2.getSequences(), is(Arrays.asList(0L, 1L, 2L)));
+        assertTrue(handler2.isShutdown());
+
+        for (int i = 0; i < 8; i++)
+        {
+            publishEvent();
+        }
+
+        assertTrue(handler1.awaitSequence(10L, TIMEOUT_IN_SECONDS, SECONDS));
+        assertThat(handler2.getSequences(), is(Arrays.asList(0L, 1L, 2L)));
+        assertThat(ringBuffer.getMinimumGatingSequence(), is(disruptor.getSequenceValueFor(handler1)));
+    }
+
+    @Test
+    public void shouldKeepSiblingConsumingAfterDetachingHandlerFromSameGroup() throws Exception
+    {
+        final SequenceRecordingEventHandler<TestEvent> handler1 = new SequenceRecordingEventHandler<TestEvent>();
+        final SequenceRecordingEventHandler<TestEvent> handler2 = new SequenceRecordingEventHandler<TestEvent>();
+        disruptor.handleEventsWith(handler1, handler2);
+
+        publishEvent();
+        disruptor.detachEventHandler(handler1);
+
+        for (int i = 0; i < 8; i++)
+        {
+            publishEvent();
+        }
+
+        assertTrue(handler2.awaitSequence(8L, TIMEOUT_IN_SECONDS, SECONDS));
+        assertThat(handler1.getSequences(), is(Arrays.asList(0L)));
+        assertThat(ringBuffer.getMinimumGatingSequence(), is(8L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotDetachHandlerWithDependents() throws Exception
+    {
+        final SequenceRecordingEventHandler<TestEvent> handler1 = new SequenceRecordingEventHandler<TestEvent>();
+        disruptor.handleEventsWith(handler1).then(new SequenceRecordingEventHandler<TestEvent>());
+
+        disruptor.start();
+        disruptor.detachEventHandler(handler1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotDetachHandlerWithDependentsCreatedByFactory() throws Exception
+    {
+        final SequenceRecordingEventHandler<TestEvent> handler1 = new SequenceRecordingEventHandler<TestEvent>();
+        disruptor.handleEventsWith(handler1).then(
+            new EventProcessorFactory<TestEvent>()
+            {
+                @Override
+                public EventProcessor createEventProcessor(
+                    final RingBuffer<TestEvent> ringBuffer, final Sequence[] barrierSequences)
+                {
+                    return new BatchEventProcessor<TestEvent>(
+                        ringBuffer, ringBuffer.newBarrier(barrierSequences), new SequenceRecordingEventHandler<TestEvent>());
+                }
+            });
+
+        disruptor.start();
+        disruptor.detachEventHandler(handler1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotDetachHandlerWhenCustomProcessorDependenciesAreUnknown() throws Exception
+    {
+        final SequenceRecordingEventHandler<TestEvent> handler1 = new SequenceRecordingEventHandler<TestEvent>();
+        disruptor.handleEventsWith(handler1);
+        final RingBuffer<TestEvent> rb = disruptor.getRingBuffer();
+        disruptor.handleEventsWith(new BatchEventProcessor<TestEvent>(
+            rb, disruptor.after(handler1).asSequenceBarrier(), new SequenceRecordingEventHandler<TestEvent>()));
+
+        disruptor.start();
+        disruptor.detachEventHandler(handler1);
+    }
+
+    @Test
+    public void shouldAttachAndDetachWorkerPool() throws Exception
+    {
+        final SequenceRecordingEventHandler<TestEvent> handler = new SequenceRecordingEventHandler<TestEvent>();
+        disruptor.handleEventsWith(handler);
+        publishEvent();
+
+        final AtomicLong processed = new AtomicLong();
+        final WorkHandler<TestEvent> workHandler = new WorkHandler<TestEvent>()
+        {
+            @Override
+            public void onEvent(final TestEvent event) throws Exception
+            {
+                processed.incrementAndGet();
+            }
+        };
+        final WorkerPool<TestEvent> workerPool = disruptor.attachWorkerPool(workHandler, workHandler);
+
+        publishEvent();
+        publishEvent();
+        disruptor.detachWorkerPool(workerPool);
+
+        assertThat(processed.get(), is(2L));
+        assertThat(workerPool.isRunning(), is(false));
+
+        for (int i = 0; i < 8; i++)
+        {
+            publishEvent();
+        }
+        assertTrue(handler.awaitSequence(10L, TIMEOUT_IN_SECONDS, SECONDS));
+    }
+
     @Test
     public void shouldBatchOfEvents() throws Exception
     {
@@ -481,6 +1023,112 @@ public class DisruptorTest
         waitFor(reference);
     }
 
+    @Test
+    public void shouldRecoverWithinBatchWhenConfiguredThroughExceptionHandlerSetting()
+        throws Exception
+    {
+        final RuntimeException testException = new RuntimeException();
+        final ExceptionThrowingEventHandler eventHandler = new ExceptionThrowingEventHandler(testException);
+        disruptor.handleEventsWith(eventHandler);
+
+        final CountDownLatch failures = new CountDownLatch(3);
+        disruptor.handleExceptionsFor(eventHandler).withBatchRecovery(new ExceptionHandler<Object>()
+        {
+            @Override
+            public void handleEventException(final Throwable ex, final long sequence, final Object event)
+            {
+                failures.countDown();
+            }
+
+            @Override
+            public void handleOnStartException(final Throwable ex)
+            {
+            }
+
+            @Override
+            public void handleOnShutdownException(final Throwable ex)
+            {
+            }
+        });
+
+        publishEvent();
+        publishEvent();
+        publishEvent();
+
+        assertTrue(failures.await(5, TimeUnit.SECONDS));
+        while (disruptor.getSequenceValueFor(eventHandler) < 2L)
+        {
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void shouldLimitBatchSizeWhenConfiguredThroughBatchLimitSetting() throws Exception
+    {
+        final List<Long> endOfBatchSequences = new CopyOnWriteArrayList<Long>();
+        final CountDownLatch processed = new CountDownLatch(4);
+        final EventHandler<TestEvent> eventHandler = new EventHandler<TestEvent>()
+        {
+            @Override
+            public void onEvent(final TestEvent event, final long sequence, final boolean endOfBatch)
+            {
+                if (endOfBatch)
+                {
+                    endOfBatchSequences.add(sequence);
+                }
+                processed.countDown();
+            }
+        };
+        disruptor.handleEventsWith(eventHandler);
+        disruptor.limitBatchesFor(eventHandler).toSize(2).toTime(1, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 4; i++)
+        {
+            disruptor.publishEvent(new EventTranslator<TestEvent>()
+            {
+                @Override
+                public void translateTo(final TestEvent event, final long sequence)
+                {
+                }
+            });
+        }
+        disruptor.start();
+
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        assertThat(endOfBatchSequences, equalTo(Arrays.asList(1L, 3L)));
+    }
+
+    @Test
+    public void shouldProvideSequenceReleaserToHandlersAddedThroughTheDsl() throws Exception
+    {
+        final AtomicLong sequenceAfterRelease = new AtomicLong(Long.MIN_VALUE);
+        final CountDownLatch processed = new CountDownLatch(1);
+        final class ReleasingEventHandler implements EventHandler<TestEvent>, SequenceReleaseAware
+        {
+            private SequenceReleaser releaser;
+
+            @Override
+            public void setSequenceReleaser(final SequenceReleaser sequenceReleaser)
+            {
+                this.releaser = sequenceReleaser;
+            }
+
+            @Override
+            public void onEvent(final TestEvent event, final long sequence, final boolean endOfBatch)
+            {
+                releaser.release(sequence);
+                sequenceAfterRelease.set(disruptor.getSequenceValueFor(this));
+                processed.countDown();
+            }
+        }
+        disruptor.handleEventsWith(new ReleasingEventHandler());
+
+        publishEvent();
+
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        assertThat(sequenceAfterRelease.get(), is(0L));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void shouldThrowExceptionWhenAddingEventProcessorsAfterTheProducerBarrierHasBeenCreated()
         throws Exception
@@ -691,6 +1339,54 @@ public class DisruptorTest
         //Then
     }
 
+    @Test(timeout = 5000)
+    public void shouldCompleteDrainFutureWhenTerminalConsumersReachCursor() throws Exception
+    {
+        final DelayedEventHandler delayedEventHandler = createDelayedEventHandler();
+        disruptor.handleEventsWith(delayedEventHandler);
+        publishEvent();
+        publishEvent();
+
+        final DrainFuture drainFuture = disruptor.drain();
+        assertThat(drainFuture.getTargetSequence(), is(1L));
+        assertFalse(drainFuture.isDone());
+
+        delayedEventHandler.processEvent();
+        delayedEventHandler.processEvent();
+
+        assertThat(drainFuture.get(2, SECONDS), is(1L));
+        assertTrue(drainFuture.isDone());
+    }
+
+    @Test(timeout = 5000)
+    public void shouldDrainEachStageIndependently() throws Exception
+    {
+        final SequenceRecordingEventHandler<TestEvent> firstStage = new SequenceRecordingEventHandler<TestEvent>();
+        final DelayedEventHandler secondStage = createDelayedEventHandler();
+        disruptor.handleEventsWith(firstStage).then(secondStage);
+        publishEvent();
+
+        final DrainFuture firstStageDrained = disruptor.drain(firstStage);
+        final DrainFuture secondStageDrained = disruptor.drain(secondStage);
+
+        assertThat(firstStageDrained.get(2, SECONDS), is(0L));
+        assertFalse(secondStageDrained.isDone());
+
+        secondStage.processEvent();
+
+        assertThat(secondStageDrained.get(2, SECONDS), is(0L));
+    }
+
+    @Test(expected = java.util.concurrent.TimeoutException.class, timeout = 2000)
+    public void shouldTimeOutWaitingForDrainFuture() throws Exception
+    {
+        final DelayedEventHandler delayedEventHandler = createDelayedEventHandler();
+        disruptor.handleEventsWith(delayedEventHandler);
+        publishEvent();
+
+        disruptor.drain().get(50, TimeUnit.MILLISECONDS);
+    }
+
     @Test(timeout = 1000)
     public void shouldTrackRemainingCapacity() throws Exception
     {
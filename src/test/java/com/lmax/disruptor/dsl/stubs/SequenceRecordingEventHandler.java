@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.dsl.stubs;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifecycleAware;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class SequenceRecordingEventHandler<T> implements EventHandler<T>, LifecycleAware
+{
+    private final List<Long> sequences = new CopyOnWriteArrayList<Long>();
+    private volatile boolean shutdown;
+    private volatile long lastSequence = -1L;
+
+    @Override
+    public void onEvent(final T entry, final long sequence, final boolean endOfBatch) throws Exception
+    {
+        sequences.add(sequence);
+        lastSequence = sequence;
+    }
+
+    public boolean awaitSequence(final long sequence, final long timeout, final TimeUnit unit)
+    {
+        final long timeoutAt = System.nanoTime() + unit.toNanos(timeout);
+        while (lastSequence < sequence)
+        {
+            if (System.nanoTime() > timeoutAt)
+            {
+                return false;
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+
+    @Override
+    public void onStart()
+    {
+    }
+
+    @Override
+    public void onShutdown()
+    {
+        shutdown = true;
+    }
+
+    public boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    public List<Long> getSequences()
+    {
+        return sequences;
+    }
+}
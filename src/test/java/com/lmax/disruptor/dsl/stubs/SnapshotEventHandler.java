@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 LMAX Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lmax.disruptor.dsl.stubs;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.SnapshotAware;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SnapshotEventHandler<T> implements EventHandler<T>, SnapshotAware
+{
+    private final long restoredSequence;
+    private final CountDownLatch snapshotLatch = new CountDownLatch(1);
+    private volatile long snapshotSequence = -1L;
+    private volatile long lastSequence = -1L;
+
+    public SnapshotEventHandler(final long restoredSequence)
+    {
+        this.restoredSequence = restoredSequence;
+    }
+
+    @Override
+    public void onEvent(final T entry, final long sequence, final boolean endOfBatch) throws Exception
+    {
+        lastSequence = sequence;
+    }
+
+    @Override
+    public void onSnapshot(final long sequence) throws Exception
+    {
+        snapshotSequence = sequence;
+        snapshotLatch.countDown();
+    }
+
+    @Override
+    public long restoreSnapshot() throws Exception
+    {
+        lastSequence = restoredSequence;
+        return restoredSequence;
+    }
+
+    public boolean awaitSnapshot(final long timeout, final TimeUnit unit) throws InterruptedException
+    {
+        return snapshotLatch.await(timeout, unit);
+    }
+
+    public long getSnapshotSequence()
+    {
+        return snapshotSequence;
+    }
+
+    public long getLastSequence()
+    {
+        return lastSequence;
+    }
+}